@@ -0,0 +1,28 @@
+package com.ldzsai.kelp;
+
+import java.util.List;
+
+import com.ldzsai.kelp.expression.Block;
+import com.ldzsai.kelp.expression.Environment;
+import com.ldzsai.kelp.expression.Expression;
+
+/**
+ * 树遍历解释执行后端
+ */
+public class AstRenderer implements Renderer {
+    // 抽象语法树
+    private final List<Expression> ast;
+
+    public AstRenderer(List<Expression> ast) {
+        this.ast = ast;
+    }
+
+    public List<Expression> getAst() {
+        return ast;
+    }
+
+    @Override
+    public void render(Environment env, Appendable out) throws Exception {
+        Block.render(ast, env, out);
+    }
+}
@@ -0,0 +1,11 @@
+package com.ldzsai.kelp;
+
+/**
+ * 模板执行后端类型
+ */
+public enum Backend {
+    // 树遍历解释执行
+    TREE,
+    // 编译为紧凑字节码，由栈式虚拟机执行
+    BYTECODE
+}
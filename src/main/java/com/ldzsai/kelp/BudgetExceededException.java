@@ -0,0 +1,12 @@
+package com.ldzsai.kelp;
+
+/**
+ * 执行超出预算、超时或被取消
+ */
+public class BudgetExceededException extends KelpException {
+    private static final long serialVersionUID = 1L;
+
+    public BudgetExceededException(String error) {
+        super(error);
+    }
+}
@@ -0,0 +1,192 @@
+package com.ldzsai.kelp;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单次执行的预算计数，通过线程局部变量在求值过程中可见
+ * <p>
+ * 计数只做加法和比较，时钟和取消标记每累计CHECK_INTERVAL步才检查一次；方法调用返回后总是检查，
+ * 以便慢方法之后立即失败。并行片段共享同一个计数，允许并发下少量计数丢失。
+ * 没有任何线程绑定预算计数时，方法调用后的检查只读取一个静态计数，不访问线程局部变量。
+ */
+public final class BudgetTracker {
+    // 检查时钟和取消标记的间隔步数
+    private static final long CHECK_INTERVAL = 1024;
+
+    private static final ThreadLocal<BudgetTracker> CURRENT = new ThreadLocal<>();
+
+    // 绑定了预算计数的线程数
+    private static final AtomicInteger BOUND = new AtomicInteger();
+
+    // 最多求值的节点数，Long.MAX_VALUE表示不限制
+    private final long maxSteps;
+
+    // 截止时间（System.nanoTime），timed为false时无效
+    private final long deadline;
+    private final boolean timed;
+    private final long timeoutMillis;
+
+    // 取消标记，可以为null
+    private final CancellationToken token;
+
+    // 已求值的节点数
+    private long steps;
+
+    // 下一次检查时钟的步数
+    private long nextCheck = CHECK_INTERVAL;
+
+    public BudgetTracker(EvaluationBudget budget, CancellationToken token) {
+        long maxSteps = budget != null ? budget.getMaxSteps() : 0;
+        this.maxSteps = maxSteps > 0 ? maxSteps : Long.MAX_VALUE;
+        this.timeoutMillis = budget != null ? budget.getTimeoutMillis() : 0;
+        this.timed = timeoutMillis > 0;
+        this.deadline = timed ? System.nanoTime() + timeoutMillis * 1_000_000 : 0;
+        this.token = token;
+    }
+
+    /**
+     * 获取当前线程正在使用的预算计数
+     *
+     * @return 预算计数，未设置预算时为null
+     */
+    public static BudgetTracker current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 将预算计数绑定到当前线程
+     *
+     * @param tracker 预算计数，可以为null
+     * @return 之前绑定的预算计数，用于exit恢复
+     */
+    public static BudgetTracker enter(BudgetTracker tracker) {
+        BudgetTracker previous = CURRENT.get();
+        CURRENT.set(tracker);
+        rebind(previous, tracker);
+        return previous;
+    }
+
+    /**
+     * 恢复当前线程之前绑定的预算计数
+     *
+     * @param previous enter返回的预算计数
+     */
+    public static void exit(BudgetTracker previous) {
+        rebind(CURRENT.get(), previous);
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * 在当前线程的预算计数上检查截止时间和取消标记，未设置预算时什么也不做
+     */
+    public static void checkpoint() throws BudgetExceededException {
+        if (BOUND.get() == 0) {
+            return;
+        }
+        BudgetTracker tracker = CURRENT.get();
+        if (tracker != null) {
+            tracker.check();
+        }
+    }
+
+    private static void rebind(BudgetTracker from, BudgetTracker to) {
+        if (from == null && to != null) {
+            BOUND.incrementAndGet();
+        } else if (from != null && to == null) {
+            BOUND.decrementAndGet();
+        }
+    }
+
+    /**
+     * 累计求值步数，每累计一定步数检查一次截止时间和取消标记
+     *
+     * @param count 步数
+     */
+    public void charge(long count) throws BudgetExceededException {
+        long total = steps + count;
+        steps = total;
+        if (total > maxSteps) {
+            throw new BudgetExceededException("Evaluation step limit exceeded: " + maxSteps);
+        }
+        if (total >= nextCheck) {
+            nextCheck = total + CHECK_INTERVAL;
+            check();
+        }
+    }
+
+    /**
+     * 检查截止时间和取消标记
+     */
+    public void check() throws BudgetExceededException {
+        if (token != null && token.isCancelled()) {
+            throw new BudgetExceededException("Evaluation cancelled");
+        }
+        if (timed && System.nanoTime() - deadline > 0) {
+            throw new BudgetExceededException("Evaluation timed out after " + timeoutMillis + " ms");
+        }
+    }
+
+    public long getSteps() {
+        return steps;
+    }
+
+    /**
+     * 包装输出，累计字符数超过上限时抛出异常
+     *
+     * @param out             输出
+     * @param maxOutputLength 最大字符数
+     * @return 带上限的输出
+     */
+    public static Appendable limit(Appendable out, long maxOutputLength) {
+        return new LimitedOutput(out, maxOutputLength);
+    }
+
+    /**
+     * 带字符数上限的输出
+     */
+    private static final class LimitedOutput implements Appendable {
+        private final Appendable out;
+        private final long maxLength;
+        private long length;
+
+        LimitedOutput(Appendable out, long maxLength) {
+            this.out = out;
+            this.maxLength = maxLength;
+        }
+
+        private void reserve(int count) {
+            length += count;
+            if (length > maxLength) {
+                throw new BudgetExceededException("Output limit exceeded: " + maxLength + " characters");
+            }
+        }
+
+        @Override
+        public Appendable append(CharSequence csq) throws IOException {
+            CharSequence text = csq != null ? csq : "null";
+            reserve(text.length());
+            out.append(text);
+            return this;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) throws IOException {
+            CharSequence text = csq != null ? csq : "null";
+            reserve(end - start);
+            out.append(text, start, end);
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) throws IOException {
+            reserve(1);
+            out.append(c);
+            return this;
+        }
+    }
+}
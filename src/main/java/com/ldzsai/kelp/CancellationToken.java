@@ -0,0 +1,19 @@
+package com.ldzsai.kelp;
+
+/**
+ * 协作式取消标记：其他线程调用cancel()后，执行中的模板在下一个检查点抛出BudgetExceededException
+ */
+public class CancellationToken {
+    private volatile boolean cancelled;
+
+    /**
+     * 请求取消
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,54 @@
+package com.ldzsai.kelp;
+
+public enum ComparisonOperator {
+    GREATER(">"),
+    GREATER_EQUAL(">="),
+    LESS("<"),
+    LESS_EQUAL("<="),
+    EQUAL("=="),
+    NOT_EQUAL("!=");
+
+    private final String symbol;
+
+    ComparisonOperator(String symbol) {
+        this.symbol = symbol;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * 是否为相等性比较
+     */
+    public boolean isEquality() {
+        return this == EQUAL || this == NOT_EQUAL;
+    }
+
+    /**
+     * 比较两个数字
+     */
+    public boolean test(double a, double b) {
+        switch (this) {
+            case GREATER:
+                return a > b;
+            case GREATER_EQUAL:
+                return a >= b;
+            case LESS:
+                return a < b;
+            case LESS_EQUAL:
+                return a <= b;
+            case EQUAL:
+                return a == b;
+            default:
+                return a != b;
+        }
+    }
+
+    /**
+     * 按compareTo的结果判断
+     */
+    public boolean test(int comparison) {
+        return test(comparison, 0);
+    }
+}
@@ -0,0 +1,257 @@
+package com.ldzsai.kelp;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Function;
+
+import com.ldzsai.kelp.expression.Environment;
+import com.ldzsai.kelp.expression.Expression;
+import com.ldzsai.kelp.jfr.KelpEvents;
+import com.ldzsai.kelp.jfr.SlowEvaluationEvent;
+import com.ldzsai.kelp.jit.TieredCompiler;
+
+/**
+ * 已编译模板，可重复执行
+ */
+public class CompiledTemplate {
+    // 抽象语法树，非树遍历后端不保留时为null
+    private final List<Expression> ast;
+
+    private static final AtomicReferenceFieldUpdater<CompiledTemplate, Renderer> RENDERER =
+            AtomicReferenceFieldUpdater.newUpdater(CompiledTemplate.class, Renderer.class, "renderer");
+
+    // 执行后端，分层编译完成后被替换
+    private volatile Renderer renderer;
+
+    // 分层编译器，为null时不进行分层编译
+    private final TieredCompiler tieredCompiler;
+
+    // 执行次数，仅用于触发分层编译，允许并发下少量计数丢失
+    private long invocationCount;
+
+    // 是否已提交分层编译
+    private volatile boolean tierUpRequested;
+
+    // 静态规模，用于预算检查，未知时为null
+    private final TemplateMetrics metrics;
+
+    // 模板源码的哈希值，用于关联JFR事件；字节或文件来源为源字节的哈希值，Reader来源为0
+    private int templateHash;
+
+    // 由语法树创建同类模板，特化得到的剩余模板沿用原模板的执行后端；为null时使用树遍历后端
+    private Function<List<Expression>, CompiledTemplate> factory;
+
+    // 按部分环境缓存的特化结果，部分环境被回收后随之释放
+    private final Map<Environment, Specialization> specializations = Collections.synchronizedMap(new WeakHashMap<>());
+
+    public CompiledTemplate(List<Expression> ast) {
+        this(ast, null);
+    }
+
+    public CompiledTemplate(List<Expression> ast, TieredCompiler tieredCompiler) {
+        if (ast == null) {
+            throw new IllegalArgumentException("AST cannot be null");
+        }
+        this.ast = ast;
+        this.renderer = new AstRenderer(ast);
+        this.tieredCompiler = tieredCompiler;
+        this.metrics = TemplateMetrics.of(ast);
+    }
+
+    public CompiledTemplate(Renderer renderer) {
+        this(renderer, renderer instanceof AstRenderer ? TemplateMetrics.of(((AstRenderer) renderer).getAst()) : null);
+    }
+
+    public CompiledTemplate(Renderer renderer, TemplateMetrics metrics) {
+        if (renderer == null) {
+            throw new IllegalArgumentException("Renderer cannot be null");
+        }
+        this.ast = renderer instanceof AstRenderer ? ((AstRenderer) renderer).getAst() : null;
+        this.renderer = renderer;
+        this.tieredCompiler = null;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 获取抽象语法树
+     *
+     * @return 表达式列表，后端不保留语法树时为null
+     */
+    public List<Expression> getAst() {
+        return ast;
+    }
+
+    public Renderer getRenderer() {
+        return renderer;
+    }
+
+    public TemplateMetrics getMetrics() {
+        return metrics;
+    }
+
+    public long getInvocationCount() {
+        return invocationCount;
+    }
+
+    public int getTemplateHash() {
+        return templateHash;
+    }
+
+    public void setTemplateHash(int templateHash) {
+        this.templateHash = templateHash;
+    }
+
+    /**
+     * 设置创建剩余模板的方法，由引擎按自身的执行后端设置
+     *
+     * @param factory 由语法树创建模板
+     */
+    void setFactory(Function<List<Expression>, CompiledTemplate> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * 原子替换执行后端
+     *
+     * @param expected 期望的当前执行后端
+     * @param renderer 新的执行后端
+     * @return 当前执行后端与期望一致并完成替换时返回true
+     */
+    public boolean swapRenderer(Renderer expected, Renderer renderer) {
+        if (renderer == null) {
+            throw new IllegalArgumentException("Renderer cannot be null");
+        }
+        return RENDERER.compareAndSet(this, expected, renderer);
+    }
+
+    /**
+     * 按部分环境中的不可变变量特化模板，只依赖这些变量的子树预先求值，
+     * 得到只依赖其余变量的剩余模板；剩余模板与本模板使用同样的执行后端（并行求值、性能分析或分层编译），
+     * 结果按部分环境缓存，不可变变量被重新设置后重新特化
+     *
+     * @param partialEnv 部分环境，以{@link Environment#setConstant}设置已知变量
+     * @return 剩余模板，渲染时仍需提供其余变量
+     * @see Environment#setConstant(String, Object)
+     */
+    public CompiledTemplate specialize(Environment partialEnv) {
+        if (partialEnv == null) {
+            throw new IllegalArgumentException("Environment cannot be null");
+        }
+        if (ast == null) {
+            throw new IllegalStateException("Template was compiled without an AST and cannot be specialized");
+        }
+        int version = partialEnv.getConstantsVersion();
+        Specialization cached = specializations.get(partialEnv);
+        if (cached != null && cached.version == version) {
+            return cached.template;
+        }
+        List<Expression> residual = new TemplateSpecializer(partialEnv).segments(ast);
+        CompiledTemplate template = factory != null ? factory.apply(residual) : new CompiledTemplate(residual, tieredCompiler);
+        template.factory = factory;
+        template.templateHash = templateHash;
+        specializations.put(partialEnv, new Specialization(version, template));
+        return template;
+    }
+
+    /**
+     * 执行模板
+     *
+     * @param env 执行环境
+     * @return 执行结果
+     * @throws Exception 异常
+     */
+    public String execute(Environment env) throws Exception {
+        StringBuilder result = new StringBuilder();
+        render(env, result);
+        return result.toString();
+    }
+
+    /**
+     * 执行模板并将结果直接写入输出，静态文本分块写出，不整体物化
+     *
+     * @param env 执行环境
+     * @param out 输出
+     * @throws Exception 异常
+     */
+    public void render(Environment env, Appendable out) throws Exception {
+        Renderer current = renderer;
+        if (tieredCompiler != null && !tierUpRequested && ++invocationCount >= tieredCompiler.getThreshold()) {
+            tierUpRequested = true;
+            tieredCompiler.submit(this, ast, current);
+        }
+        // 并发环境在整个渲染过程中使用同一版本
+        Environment snapshot = env != null ? env.snapshot() : null;
+        if (!KelpEvents.isTracking()) {
+            current.render(snapshot, out);
+            return;
+        }
+        SlowEvaluationEvent event = new SlowEvaluationEvent();
+        event.begin();
+        long previous = KelpEvents.enter(templateHash);
+        try {
+            current.render(snapshot, out);
+        } finally {
+            KelpEvents.exit(previous);
+            event.end();
+            if (event.shouldCommit()) {
+                event.setTemplateHash(templateHash);
+                event.setKind("template");
+                event.setStart(-1);
+                event.setEnd(-1);
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * 在预算内执行模板，超出预算、超时或被取消时抛出BudgetExceededException
+     *
+     * @param env    执行环境
+     * @param out    输出
+     * @param budget 预算，为null时不限制
+     * @param token  取消标记，可以为null
+     * @throws Exception 异常
+     */
+    public void render(Environment env, Appendable out, EvaluationBudget budget, CancellationToken token) throws Exception {
+        if (budget == null && token == null) {
+            render(env, out);
+            return;
+        }
+        BudgetTracker tracker = new BudgetTracker(budget, token);
+        if (budget != null && metrics != null) {
+            // 静态规模超出预算时不开始执行
+            if (budget.getMaxDepth() > 0 && metrics.getDepth() > budget.getMaxDepth()) {
+                throw new BudgetExceededException("Nesting depth limit exceeded: " + metrics.getDepth()
+                        + " (max: " + budget.getMaxDepth() + ")");
+            }
+            tracker.charge(metrics.getNodeCount());
+        }
+        tracker.check();
+        Appendable target = budget != null && budget.getMaxOutputLength() > 0
+                ? BudgetTracker.limit(out, budget.getMaxOutputLength()) : out;
+
+        BudgetTracker previous = BudgetTracker.enter(tracker);
+        try {
+            render(env, target);
+        } finally {
+            BudgetTracker.exit(previous);
+        }
+        tracker.check();
+    }
+
+    /**
+     * 特化结果及特化时部分环境的版本
+     */
+    private static final class Specialization {
+        private final int version;
+        private final CompiledTemplate template;
+
+        Specialization(int version, CompiledTemplate template) {
+            this.version = version;
+            this.template = template;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.ldzsai.kelp;
+
+/**
+ * 单次执行的资源预算，各项为0时不限制
+ * <p>
+ * 求值节点数和嵌套深度按语法树静态统计，在执行开始时一次性检查；集合运算按元素逐个计数；
+ * 截止时间和取消标记在方法调用后及每求值约一千个节点时检查。
+ */
+public class EvaluationBudget {
+    // 最多求值的节点数
+    private long maxSteps;
+
+    // 最大嵌套深度
+    private int maxDepth;
+
+    // 最大输出字符数
+    private long maxOutputLength;
+
+    // 执行超时（毫秒）
+    private long timeoutMillis;
+
+    public long getMaxSteps() {
+        return maxSteps;
+    }
+
+    /**
+     * 设置最多求值的节点数，集合运算中每个元素按各阶段函数体的节点数计
+     *
+     * @param maxSteps 节点数，0表示不限制
+     */
+    public void setMaxSteps(long maxSteps) {
+        if (maxSteps < 0) {
+            throw new IllegalArgumentException("Max steps cannot be negative");
+        }
+        this.maxSteps = maxSteps;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * 设置语法树的最大嵌套深度
+     *
+     * @param maxDepth 深度，0表示不限制
+     */
+    public void setMaxDepth(int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("Max depth cannot be negative");
+        }
+        this.maxDepth = maxDepth;
+    }
+
+    public long getMaxOutputLength() {
+        return maxOutputLength;
+    }
+
+    /**
+     * 设置最大输出字符数，超出时立即中止，不再求值后续片段
+     *
+     * @param maxOutputLength 字符数，0表示不限制
+     */
+    public void setMaxOutputLength(long maxOutputLength) {
+        if (maxOutputLength < 0) {
+            throw new IllegalArgumentException("Max output length cannot be negative");
+        }
+        this.maxOutputLength = maxOutputLength;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * 设置执行超时，正在执行的方法调用无法被打断，返回后才会检查
+     *
+     * @param timeoutMillis 超时毫秒数，0表示不限制
+     */
+    public void setTimeoutMillis(long timeoutMillis) {
+        if (timeoutMillis < 0) {
+            throw new IllegalArgumentException("Timeout cannot be negative");
+        }
+        this.timeoutMillis = timeoutMillis;
+    }
+}
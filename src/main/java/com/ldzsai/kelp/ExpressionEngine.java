@@ -1,28 +1,72 @@
 package com.ldzsai.kelp;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 
 import com.ldzsai.kelp.expression.Environment;
 import com.ldzsai.kelp.expression.Expression;
+import com.ldzsai.kelp.expression.Pipeline;
+import com.ldzsai.kelp.format.NumberStyle;
+import com.ldzsai.kelp.format.OutputEncoder;
+import com.ldzsai.kelp.jfr.CacheEvictionEvent;
+import com.ldzsai.kelp.jfr.TemplateCompileEvent;
+import com.ldzsai.kelp.jfr.TimedTokenSource;
+import com.ldzsai.kelp.jit.TieredCompiler;
+import com.ldzsai.kelp.profile.TemplateProfiler;
+import com.ldzsai.kelp.resolver.VariableResolver;
 import com.ldzsai.kelp.token.Token;
+import com.ldzsai.kelp.typed.TypeChecker;
+import com.ldzsai.kelp.typed.TypeSchema;
+import com.ldzsai.kelp.vm.BytecodeCompiler;
 
 public class ExpressionEngine {
     private Environment env;
 
-    private Lexer lexer;
-
-    private Parser parser;
-
-    private List<Token> tokens;
-
     // 新增缓存
-    private final Map<String, List<Expression>> cache = new ConcurrentHashMap<>();
+    private final Map<String, CompiledTemplate> cache = new ConcurrentHashMap<>();
+
+    // 缓存命中/未命中次数
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
 
     // 执行耗时
     private long lastExecutionTime = 0;
 
+    // 执行后端
+    private Backend backend = Backend.TREE;
+
+    // 分层编译器，仅作用于树遍历后端，为null时不进行分层编译
+    private TieredCompiler tieredCompiler;
+
+    // 并行求值执行器，为null时按顺序求值
+    private Executor parallelExecutor;
+
+    // 并行求值的片段开销阈值
+    private int parallelCostThreshold = ParallelRenderer.DEFAULT_COST_THRESHOLD;
+
+    // 单次执行的预算，为null时不限制
+    private EvaluationBudget budget;
+
+    // 采样分析器，为null时不进行分析
+    private TemplateProfiler profiler;
+
+    // 默认输出编码，为null时不编码
+    private OutputEncoder outputEncoder;
+
+    // 数字格式，为null时不格式化
+    private NumberStyle numberStyle;
+
+    // 集合运算的并行阈值
+    private int pipelineParallelThreshold = Pipeline.DEFAULT_PARALLEL_THRESHOLD;
+
     public ExpressionEngine(Environment env) {
         this.env = env;
     }
@@ -43,27 +87,14 @@ public class ExpressionEngine {
         long startTime = System.nanoTime();
 
         try {
-            // 缓存命中判断
-            List<Expression> ast = cache.get(exp);
-            if (ast == null) {
-                tokenizer(exp);
-                ast = parser.buildAst();
-                // 缓存未命中时解析并存储
-                cache.put(exp, ast); 
-            }
-
-            StringBuilder result = new StringBuilder();
-            for (Expression expression : ast) {
-                Object value = expression.evaluate(env);
-                if (value != null) {
-                    result.append(value);
-                }
-            }
+            StringBuilder out = new StringBuilder();
+            lookup(exp).render(env, out, budget, null);
+            String result = out.toString();
 
             // 记录结束时间并计算耗时（单位：毫秒）
             lastExecutionTime = (System.nanoTime() - startTime) / 1_000_000;
 
-            return result.toString();
+            return result;
         } catch (Exception e) {
             // 记录结束时间并计算耗时（单位：毫秒）
             lastExecutionTime = (System.nanoTime() - startTime) / 1_000_000;
@@ -76,20 +107,294 @@ public class ExpressionEngine {
     }
 
     /**
-     * 分词
+     * 执行表达式并将结果追加到调用方提供的缓冲，缓存命中时数字、变量、索引访问等常见节点不产生堆分配
+     * 
+     * @param exp 表达式
+     * @param out 输出缓冲，可在多次调用间清空复用
+     * @throws Exception 异常
+     */
+    public void execute(String exp, StringBuilder out) throws Exception {
+        execute(exp, env, out);
+    }
+
+    /**
+     * 以调用方的环境执行表达式并将结果追加到输出缓冲，模板仍经过引擎的缓存，适用于每个请求各自的变量
+     * 
+     * @param exp 表达式
+     * @param env 环境
+     * @param out 输出缓冲
+     * @throws Exception 异常
+     */
+    public void execute(String exp, Environment env, StringBuilder out) throws Exception {
+        if (exp == null) {
+            throw new KelpException("Expression cannot be null");
+        }
+
+        // 记录开始时间
+        long startTime = System.nanoTime();
+
+        try {
+            lookup(exp).render(env, out, budget, null);
+        } catch (Exception e) {
+            if (e instanceof KelpException) {
+                throw e;
+            }
+            throw new KelpException("Error executing expression: " + e.getMessage(), e);
+        } finally {
+            // 记录结束时间并计算耗时（单位：毫秒）
+            lastExecutionTime = (System.nanoTime() - startTime) / 1_000_000;
+        }
+    }
+
+    /**
+     * 从缓存获取已编译模板，未命中时解析并存储
      * 
      * @param exp 表达式
+     * @return 已编译模板
+     */
+    private CompiledTemplate lookup(String exp) throws Exception {
+        // 缓存命中判断
+        CompiledTemplate template = cache.get(exp);
+        if (template != null) {
+            cacheHits.increment();
+        } else {
+            cacheMisses.increment();
+            template = compileSource(exp, null);
+            // 缓存未命中时解析并存储
+            cache.put(exp, template); 
+        }
+        return template;
+    }
+
+    /**
+     * 按类型声明编译模板，类型错误在编译期抛出，不经过缓存
+     * 
+     * @param exp    表达式
+     * @param schema 变量类型声明
+     * @return 已编译模板
      */
-    private void tokenizer(String exp) throws KelpException {
+    public CompiledTemplate compile(String exp, TypeSchema schema) throws KelpException {
+        if (exp == null) {
+            throw new KelpException("Expression cannot be null");
+        }
         try {
-            this.lexer = new Lexer(exp);
-            this.tokens = lexer.tokenizer();
-            this.parser = new Parser(tokens);
+            return compileSource(exp, new TypeChecker(schema));
         } catch (Exception e) {
             if (e instanceof KelpException) {
                 throw e;
             }
-            throw new KelpException("Error tokenizing expression: " + e.getMessage(), e);
+            throw new KelpException("Error compiling template: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 流式编译模板，不经过缓存
+     * 
+     * @param reader 模板输入
+     * @return 已编译模板
+     */
+    public CompiledTemplate compile(Reader reader) throws KelpException {
+        return compile(new StreamingLexer(reader));
+    }
+
+    /**
+     * 以内存映射方式编译UTF-8模板文件，静态文本保持为文件区间，不经过缓存
+     * 
+     * @param path 模板文件
+     * @return 已编译模板
+     */
+    public CompiledTemplate compile(Path path) throws KelpException {
+        try {
+            return compile(StreamingLexer.map(path));
+        } catch (IOException e) {
+            throw new KelpException("Error mapping template file: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 编译UTF-8编码的模板字节，静态文本保持为缓冲区区间，不经过缓存
+     * 
+     * @param buffer 模板字节，范围为position到limit
+     * @return 已编译模板
+     */
+    public CompiledTemplate compile(ByteBuffer buffer) throws KelpException {
+        return compile(new StreamingLexer(buffer));
+    }
+
+    /**
+     * 使用流式词法分析器编译模板；字节来源以源字节的哈希值关联事件，Reader来源无法回读，哈希值为0
+     * 
+     * @param streamingLexer 流式词法分析器
+     * @return 已编译模板
+     */
+    private CompiledTemplate compile(StreamingLexer streamingLexer) throws KelpException {
+        try {
+            TemplateCompileEvent event = new TemplateCompileEvent();
+            event.begin();
+            int sourceHash = streamingLexer.getSourceHash();
+            long lexStart = System.nanoTime();
+            List<Token> tokens = streamingLexer.tokenizer();
+            long parseStart = System.nanoTime();
+            List<Expression> ast = configure(new Parser(tokens)).buildAst();
+            long parseEnd = System.nanoTime();
+            CompiledTemplate template = newTemplate(ast, null);
+            template.setTemplateHash(sourceHash);
+            event.end();
+            if (event.shouldCommit()) {
+                event.setTemplateHash(sourceHash);
+                event.setTemplateLength(streamingLexer.getSourceLength());
+                event.setLexDuration(parseStart - lexStart);
+                event.setParseDuration(parseEnd - parseStart);
+                event.setBackend(backend.name());
+                event.commit();
+            }
+            return template;
+        } catch (Exception e) {
+            if (e instanceof KelpException) {
+                throw e;
+            }
+            throw new KelpException("Error compiling template: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 解析并编译模板源码；录制编译事件时累计拉取分词的耗时，从解析总耗时中分出词法分析时间
+     * 
+     * @param exp     表达式
+     * @param checker 类型检查器，为null时不检查类型
+     * @return 已编译模板
+     */
+    private CompiledTemplate compileSource(String exp, TypeChecker checker) throws KelpException {
+        TemplateCompileEvent event = new TemplateCompileEvent();
+        event.begin();
+        // 词法分析与语法分析按需拉取分词，未命中路径不共享状态
+        TimedTokenSource lexer = event.isEnabled() ? new TimedTokenSource(new Lexer(exp)) : null;
+        long parseStart = System.nanoTime();
+        List<Expression> ast = configure(new Parser(lexer != null ? lexer : new Lexer(exp))).buildAst();
+        long parseEnd = System.nanoTime();
+        CompiledTemplate template = newTemplate(checker != null ? checker.check(ast) : ast, exp);
+        event.end();
+        if (lexer != null && event.shouldCommit()) {
+            event.setTemplateHash(exp.hashCode());
+            event.setTemplateLength(exp.length());
+            event.setLexDuration(lexer.getElapsed());
+            event.setParseDuration(parseEnd - parseStart - lexer.getElapsed());
+            event.setBackend(backend.name());
+            event.commit();
+        }
+        return template;
+    }
+
+    /**
+     * 为解析器设置输出编码和数字格式
+     * 
+     * @param parser 解析器
+     * @return 解析器
+     */
+    private Parser configure(Parser parser) {
+        parser.setOutputEncoder(outputEncoder);
+        parser.setNumberStyle(numberStyle);
+        parser.setPipelineParallelThreshold(pipelineParallelThreshold);
+        return parser;
+    }
+
+    /**
+     * 按当前执行后端创建已编译模板
+     * 
+     * @param ast    抽象语法树
+     * @param source 模板源码，流式编译时为null
+     * @return 已编译模板
+     */
+    private CompiledTemplate newTemplate(List<Expression> ast, String source) throws KelpException {
+        CompiledTemplate template;
+        if (profiler == null && backend == Backend.BYTECODE) {
+            template = new CompiledTemplate(BytecodeCompiler.compile(ast), TemplateMetrics.of(ast));
+        } else {
+            // 特化得到的剩余模板按同样的配置创建
+            Function<List<Expression>, CompiledTemplate> factory = treeFactory(source);
+            template = factory.apply(ast);
+            template.setFactory(factory);
+        }
+        if (source != null) {
+            template.setTemplateHash(source.hashCode());
+        }
+        return template;
+    }
+
+    /**
+     * 按当前配置由语法树创建保留语法树的模板，配置在创建时捕获，之后修改引擎配置不影响已有模板
+     *
+     * @param source 模板源码，用于性能分析的标识，可以为null
+     * @return 由语法树创建模板
+     */
+    private Function<List<Expression>, CompiledTemplate> treeFactory(String source) {
+        TemplateProfiler profiler = this.profiler;
+        if (profiler != null) {
+            return ast -> new CompiledTemplate(profiler.instrument(ast, source));
+        }
+        Executor executor = parallelExecutor;
+        if (executor != null) {
+            int threshold = parallelCostThreshold;
+            return ast -> new CompiledTemplate(new ParallelRenderer(ast, executor, threshold));
+        }
+        TieredCompiler compiler = tieredCompiler;
+        return ast -> new CompiledTemplate(ast, compiler);
+    }
+
+    /**
+     * 执行已编译模板并将结果写入输出
+     * 
+     * @param template 已编译模板
+     * @param out      输出
+     */
+    public void render(CompiledTemplate template, Appendable out) throws KelpException {
+        render(template, out, null);
+    }
+
+    /**
+     * 在预算内执行已编译模板，其他线程可通过取消标记中止执行
+     * 
+     * @param template 已编译模板
+     * @param out      输出
+     * @param token    取消标记，可以为null
+     */
+    public void render(CompiledTemplate template, Appendable out, CancellationToken token) throws KelpException {
+        render(template, env, out, token);
+    }
+
+    /**
+     * 以解析器提供的变量执行已编译模板，变量直接从调用方的数据结构读取，不复制到引擎的环境
+     * 
+     * @param template 已编译模板
+     * @param resolver 变量解析器
+     * @param out      输出
+     */
+    public void render(CompiledTemplate template, VariableResolver resolver, Appendable out) throws KelpException {
+        if (resolver == null) {
+            throw new KelpException("Resolver cannot be null");
+        }
+        render(template, new Environment(resolver), out, null);
+    }
+
+    private void render(CompiledTemplate template, Environment env, Appendable out, CancellationToken token)
+            throws KelpException {
+        if (template == null) {
+            throw new KelpException("Template cannot be null");
+        }
+
+        // 记录开始时间
+        long startTime = System.nanoTime();
+
+        try {
+            template.render(env, out, budget, token);
+        } catch (Exception e) {
+            if (e instanceof KelpException) {
+                throw (KelpException) e;
+            }
+            throw new KelpException("Error executing expression: " + e.getMessage(), e);
+        } finally {
+            // 记录结束时间并计算耗时（单位：毫秒）
+            lastExecutionTime = (System.nanoTime() - startTime) / 1_000_000;
         }
     }
 
@@ -100,6 +405,161 @@ public class ExpressionEngine {
         return lastExecutionTime;
     }
     
+    /**
+     * 获取执行后端
+     */
+    public Backend getBackend() {
+        return backend;
+    }
+
+    /**
+     * 设置执行后端，切换时清空缓存
+     * 
+     * @param backend 执行后端
+     */
+    public void setBackend(Backend backend) {
+        if (backend == null) {
+            throw new IllegalArgumentException("Backend cannot be null");
+        }
+        if (this.backend != backend) {
+            this.backend = backend;
+            evictAll("backend");
+        }
+    }
+
+    public TieredCompiler getTieredCompilation() {
+        return tieredCompiler;
+    }
+
+    /**
+     * 设置分层编译，热点模板执行次数达到阈值后在后台编译为JVM类；切换时清空缓存
+     * 
+     * @param tieredCompiler 分层编译器，为null时关闭
+     */
+    public void setTieredCompilation(TieredCompiler tieredCompiler) {
+        if (this.tieredCompiler != tieredCompiler) {
+            this.tieredCompiler = tieredCompiler;
+            evictAll("tieredCompilation");
+        }
+    }
+
+    public Executor getParallelExecution() {
+        return parallelExecutor;
+    }
+
+    /**
+     * 设置并行求值，开销达到阈值的片段在执行器上并发求值，仅作用于树遍历后端，
+     * 开启后不再进行分层编译；切换时清空缓存
+     * 
+     * @param executor 执行器，为null时关闭
+     */
+    public void setParallelExecution(Executor executor) {
+        if (this.parallelExecutor != executor) {
+            this.parallelExecutor = executor;
+            evictAll("parallelExecution");
+        }
+    }
+
+    public int getParallelCostThreshold() {
+        return parallelCostThreshold;
+    }
+
+    /**
+     * 设置并行求值的片段开销阈值，一次方法调用的开销约为10；切换时清空缓存
+     * 
+     * @param parallelCostThreshold 开销阈值
+     */
+    public void setParallelCostThreshold(int parallelCostThreshold) {
+        if (parallelCostThreshold < 1) {
+            throw new IllegalArgumentException("Cost threshold must be positive");
+        }
+        if (this.parallelCostThreshold != parallelCostThreshold) {
+            this.parallelCostThreshold = parallelCostThreshold;
+            evictAll("parallelCostThreshold");
+        }
+    }
+
+    public EvaluationBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * 设置单次执行的预算，超出时抛出BudgetExceededException；对之后的每次执行生效
+     * 
+     * @param budget 预算，为null时不限制
+     */
+    public void setBudget(EvaluationBudget budget) {
+        this.budget = budget;
+    }
+
+    public TemplateProfiler getProfiling() {
+        return profiler;
+    }
+
+    /**
+     * 设置采样分析，之后编译的模板使用树遍历执行，每N次执行统计一次各节点耗时；
+     * 开启后执行后端、分层编译和并行求值设置不生效；切换时清空缓存
+     * 
+     * @param profiler 采样分析器，为null时关闭
+     */
+    public void setProfiling(TemplateProfiler profiler) {
+        if (this.profiler != profiler) {
+            this.profiler = profiler;
+            evictAll("profiling");
+        }
+    }
+
+    public OutputEncoder getOutputEncoder() {
+        return outputEncoder;
+    }
+
+    /**
+     * 设置未指定编码的片段使用的默认输出编码，如Encoders.HTML；片段中以${expr | raw}跳过编码；切换时清空缓存
+     * 
+     * @param outputEncoder 输出编码，为null时不编码
+     */
+    public void setOutputEncoder(OutputEncoder outputEncoder) {
+        if (this.outputEncoder != outputEncoder) {
+            this.outputEncoder = outputEncoder;
+            evictAll("outputEncoder");
+        }
+    }
+
+    public NumberStyle getNumberStyle() {
+        return numberStyle;
+    }
+
+    /**
+     * 设置片段输出数字时的格式；切换时清空缓存
+     * 
+     * @param numberStyle 数字格式，为null时与Double.toString一致
+     */
+    public void setNumberStyle(NumberStyle numberStyle) {
+        if (this.numberStyle != numberStyle) {
+            this.numberStyle = numberStyle;
+            evictAll("numberStyle");
+        }
+    }
+
+    public int getPipelineParallelThreshold() {
+        return pipelineParallelThreshold;
+    }
+
+    /**
+     * 设置集合运算的并行阈值，元素数量达到阈值的集合在公共ForkJoin池上并行求值；切换时清空缓存
+     * 
+     * @param pipelineParallelThreshold 并行阈值
+     */
+    public void setPipelineParallelThreshold(int pipelineParallelThreshold) {
+        if (pipelineParallelThreshold < 1) {
+            throw new IllegalArgumentException("Threshold must be positive");
+        }
+        if (this.pipelineParallelThreshold != pipelineParallelThreshold) {
+            this.pipelineParallelThreshold = pipelineParallelThreshold;
+            evictAll("pipelineParallelThreshold");
+        }
+    }
+
     /**
      * 获取缓存大小
      * 
@@ -110,9 +570,41 @@ public class ExpressionEngine {
     }
     
     /**
-     * 清空缓存
+     * 获取缓存命中次数
+     */
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * 获取缓存未命中次数，即按表达式解析的次数
+     */
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    /**
+     * 清空缓存，命中统计不清零
      */
     public void clearCache() {
+        evictAll("clearCache");
+    }
+
+    /**
+     * 清空缓存，录制缓存淘汰事件时为每个模板记录一条
+     *
+     * @param reason 清空缓存的操作
+     */
+    private void evictAll(String reason) {
+        if (new CacheEvictionEvent().isEnabled()) {
+            for (String exp : cache.keySet()) {
+                CacheEvictionEvent event = new CacheEvictionEvent();
+                event.setTemplateHash(exp.hashCode());
+                event.setTemplateLength(exp.length());
+                event.setReason(reason);
+                event.commit();
+            }
+        }
         cache.clear();
     }
 }
\ No newline at end of file
@@ -2,131 +2,190 @@ package com.ldzsai.kelp;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import com.ldzsai.kelp.token.Token;
+import com.ldzsai.kelp.token.TokenSource;
 import com.ldzsai.kelp.token.TokenType;
 
 /**
- * 词法分析器
+ * 词法分析器，按需逐个产生分词，不物化分词列表
+ * <p>
+ * ${...}之外的内容作为字符串；之后不再有闭合的}时，剩余内容均按字符串处理。
  */
-public class Lexer {
+public class Lexer implements TokenSource {
+    // 静态文本
+    private static final int TEXT = 0;
+    // ${...}内部
+    private static final int EXPRESSION = 1;
+    // 不含${}包裹的表达式主体
+    private static final int BODY = 2;
+
     private final String input;
     private int position;
 
+    // 输入在整个模板中的起始偏移，分词位置均加上该偏移
+    private final int offset;
+
+    // 最后一个}的位置，其后的${不会闭合
+    private final int lastBrace;
+
+    // 当前扫描模式
+    private int mode = TEXT;
+
     public Lexer(String input) {
+        this(input, 0);
+    }
+
+    public Lexer(String input, int offset) {
         this.input = input != null ? input : "";
         this.position = 0;
+        this.offset = offset;
+        this.lastBrace = this.input.lastIndexOf('}');
     }
 
     /**
-     * 分词
+     * 分词，一次性返回全部分词，以EOF结尾
      * 
      * @return 分词列表
      */
     public List<Token> tokenizer() throws KelpException {
-        try {
-            List<Token> tokens = new ArrayList<>();
+        List<Token> tokens = new ArrayList<>();
+        Token token;
+        while ((token = next()).getType() != TokenType.EOF) {
+            tokens.add(token);
+        }
+        tokens.add(Token.EOF);
+        return tokens;
+    }
 
-            // 抽取表达式片段，除此之外的内容都按照字符串处理,抽取部分按照解析逻辑进行，保持先后顺序
-            List<Integer> chuckPos = extractExpChuckPos(input);
+    /**
+     * 对不含${}包裹的表达式主体进行分词，结果追加到tokens（不追加EOF）
+     * 
+     * @param tokens 分词列表
+     */
+    void tokenizeExpression(List<Token> tokens) throws KelpException {
+        mode = BODY;
+        Token token;
+        while ((token = next()).getType() != TokenType.EOF) {
+            tokens.add(token);
+        }
+    }
 
-            // 若无切片说明内部无合法表达式，按照字符串原样返回
-            if (chuckPos.size() == 0) {
-                tokens.add(new Token(TokenType.STRING, input));
-            } else {
-                // 切片分段处理
-                for (int start : chuckPos) {
-                    // 当前位置i作为起始位置
-                    int startPos = position;
-                    // 第一个切片的开始位置作为第一段字符串的结束位置
-                    int endPos = start;
-
-                    // 添加字符串
-                    String val = input.substring(startPos, endPos);
-                    if (!"".equals(val) && val != null) {
-                        tokens.add(new Token(TokenType.STRING, val));
+    @Override
+    public Token next() throws KelpException {
+        try {
+            while (true) {
+                if (mode == TEXT) {
+                    if (position >= input.length()) {
+                        return Token.EOF;
                     }
-
-                    // 添加表达式，跳过${
+                    int textStart = position;
+                    int start = input.indexOf("${", position);
+                    // 没有闭合的表达式，剩余内容均为字符串
+                    if (start < 0 || start + 2 > lastBrace) {
+                        position = input.length();
+                        return new Token(TokenType.STRING, input.substring(textStart), offset + textStart,
+                                offset + position);
+                    }
+                    // 跳过${
                     position = start + 2;
-                    Token token;
-                    do {
-                        token = nextToken();
-                        tokens.add(token);
-                    } while (token.getType() != TokenType.EOF && position < input.length() && input.charAt(position) != '}');
-
-                    // 跳过}字符
-                    if (position < input.length() && input.charAt(position) == '}') {
-                        position++;
+                    mode = EXPRESSION;
+                    if (start > textStart) {
+                        return new Token(TokenType.STRING, input.substring(textStart, start), offset + textStart,
+                                offset + start);
                     }
+                    continue;
                 }
 
-                // 处理最后一个表达式之后的字符串
-                if (position < input.length()) {
-                    String val = input.substring(position);
-                    if (!val.isEmpty()) {
-                        tokens.add(new Token(TokenType.STRING, val));
-                    }
+                skipWhitespace();
+                if (mode == EXPRESSION && position < input.length() && input.charAt(position) == '}') {
+                    // 跳过}字符
+                    position++;
+                    mode = TEXT;
+                    continue;
                 }
+                if (position >= input.length()) {
+                    return Token.EOF;
+                }
+                return scanToken();
             }
-
-            // 添加结束标记
-            tokens.add(new Token(TokenType.EOF, null));
-
-            return tokens;
         } catch (Exception e) {
             if (e instanceof KelpException) {
-                throw e;
+                throw (KelpException) e;
             }
             throw new KelpException("Error tokenizing input: " + e.getMessage(), e);
         }
     }
 
     /**
-     * 获取下一个分词
+     * 扫描当前位置的分词
      * 
      * @return 分词
      */
-    private Token nextToken() throws KelpException {
-        skipWhitespace();
-        if (position >= input.length()) {
-            return new Token(TokenType.EOF, null);
-        }
-
+    private Token scanToken() throws KelpException {
+        int start = position;
         char ch = input.charAt(position);
         switch (ch) {
             case '+':
                 position++;
-                return new Token(TokenType.PLUS, "+");
+                return token(TokenType.PLUS, "+", start);
             case '-':
                 position++;
-                return new Token(TokenType.MINUS, "-");
+                if (position < input.length() && input.charAt(position) == '>') {
+                    position++;
+                    return token(TokenType.ARROW, "->", start);
+                }
+                return token(TokenType.MINUS, "-", start);
             case '*':
                 position++;
-                return new Token(TokenType.MULTIPLY, "*");
+                return token(TokenType.MULTIPLY, "*", start);
             case '/':
                 position++;
-                return new Token(TokenType.DIVIDE, "/");
+                return token(TokenType.DIVIDE, "/", start);
             case '(':
                 position++;
-                return new Token(TokenType.LPAREN, "(");
+                return token(TokenType.LPAREN, "(", start);
             case ')':
                 position++;
-                return new Token(TokenType.RPAREN, ")");
+                return token(TokenType.RPAREN, ")", start);
             case '.':
                 position++;
-                return new Token(TokenType.PERIOD, ".");
+                return token(TokenType.PERIOD, ".", start);
             case ',':
                 position++;
-                return new Token(TokenType.COMMA, ",");
+                return token(TokenType.COMMA, ",", start);
+            case '|':
+                position++;
+                return token(TokenType.PIPE, "|", start);
+            case '#':
+                return parseDirective();
             case '[':
                 position++;
-                return new Token(TokenType.LBRACKET, "[");
+                return token(TokenType.LBRACKET, "[", start);
             case ']':
                 position++;
-                return new Token(TokenType.RBRACKET, "]");
+                return token(TokenType.RBRACKET, "]", start);
+            case '>':
+                position++;
+                if (position < input.length() && input.charAt(position) == '=') {
+                    position++;
+                    return token(TokenType.GREATER_EQUAL, ">=", start);
+                }
+                return token(TokenType.GREATER, ">", start);
+            case '<':
+                position++;
+                if (position < input.length() && input.charAt(position) == '=') {
+                    position++;
+                    return token(TokenType.LESS_EQUAL, "<=", start);
+                }
+                return token(TokenType.LESS, "<", start);
+            case '=':
+            case '!':
+                if (position + 1 < input.length() && input.charAt(position + 1) == '=') {
+                    position += 2;
+                    return ch == '=' ? token(TokenType.EQUAL, "==", start) : token(TokenType.NOT_EQUAL, "!=", start);
+                }
+                throw new KelpException("Invalid character at position " + position + ": " + ch);
             case '"':
             case '\'':
                 return parseQuotedString();
@@ -161,9 +220,9 @@ public class Lexer {
         String numberStr = input.substring(startPos, position);
         try {
             if (hasDot) {
-                return new Token(TokenType.FLOAT, Double.parseDouble(numberStr));
+                return token(TokenType.FLOAT, Double.parseDouble(numberStr), startPos);
             }
-            return new Token(TokenType.INTEGER, Integer.parseInt(numberStr));
+            return token(TokenType.INTEGER, Integer.parseInt(numberStr), startPos);
         } catch (NumberFormatException e) {
             throw new KelpException("Invalid number format: " + numberStr);
         }
@@ -199,7 +258,7 @@ public class Lexer {
         value = value.replace("\\r", "\r");
         value = value.replace("\\t", "\t");
         
-        return new Token(TokenType.QUOTE, value);
+        return token(TokenType.QUOTE, value, startPos);
     }
 
     /**
@@ -214,25 +273,31 @@ public class Lexer {
             position++;
         }
         String identifier = input.substring(startPos, position);
-        return new Token(TokenType.IDENTIFIER, identifier);
+        return token(TokenType.IDENTIFIER, identifier, startPos);
     }
 
     /**
-     * 抽取${*}中的内容，获得每个表达式切片的起始位置
+     * 解析块指令名，如#if
      * 
-     * @param input 含有表达式的字符串
-     * @return 表达式切片的起始位置
+     * @return 块指令
      */
-    private List<Integer> extractExpChuckPos(String input) {
-        List<Integer> exps = new ArrayList<Integer>();
-        Pattern pattern = Pattern.compile("\\$\\{([^}]*)\\}");
-        Matcher matcher = pattern.matcher(input);
-
-        while (matcher.find()) {
-            int start = matcher.start();
-            exps.add(start);
+    private Token parseDirective() throws KelpException {
+        int startPos = position;
+        position++; // Skip '#'
+        while (position < input.length() && Character.isLetter(input.charAt(position))) {
+            position++;
         }
-        return exps;
+        if (position == startPos + 1) {
+            throw new KelpException("Expected a directive name after '#' at position " + startPos);
+        }
+        return token(TokenType.DIRECTIVE, input.substring(startPos + 1, position), startPos);
+    }
+
+    /**
+     * 创建带起止偏移的分词，结束位置为当前位置
+     */
+    private Token token(TokenType type, Object value, int start) {
+        return new Token(type, value, offset + start, offset + position);
     }
 
     /**
@@ -1,6 +1,6 @@
 package com.ldzsai.kelp;
 
-import java.util.function.BiFunction;
+import java.util.function.DoubleBinaryOperator;
 
 public enum Operator {
     ADD("+", (a, b) -> a + b),
@@ -9,23 +9,18 @@ public enum Operator {
     DIVIDE("/", (a, b) -> a / b);
 
     private final String symbol;
-    private final BiFunction<Double, Double, Double> function;
+    private final DoubleBinaryOperator function;
 
-    Operator(String symbol, BiFunction<Double, Double, Double> function) {
+    Operator(String symbol, DoubleBinaryOperator function) {
         this.symbol = symbol;
         this.function = function;
     }
 
-    public double apply(double a, double b) {
-        return function.apply(a, b);
+    public String getSymbol() {
+        return symbol;
     }
 
-    public static Operator parse(String symbol) {
-        for (Operator op : values()) {
-            if (op.symbol.equals(symbol)) {
-                return op;
-            }
-        }
-        throw new IllegalArgumentException("Unknown operator: " + symbol);
+    public double apply(double a, double b) {
+        return function.applyAsDouble(a, b);
     }
 }
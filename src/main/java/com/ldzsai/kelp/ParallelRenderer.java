@@ -0,0 +1,202 @@
+package com.ldzsai.kelp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import com.ldzsai.kelp.expression.AggregateCall;
+import com.ldzsai.kelp.expression.ArrayAccess;
+import com.ldzsai.kelp.expression.BinaryOperation;
+import com.ldzsai.kelp.expression.Block;
+import com.ldzsai.kelp.expression.Environment;
+import com.ldzsai.kelp.expression.Expression;
+import com.ldzsai.kelp.expression.FloatLiteral;
+import com.ldzsai.kelp.expression.FormattedOutput;
+import com.ldzsai.kelp.expression.FunctionCall;
+import com.ldzsai.kelp.expression.IntegerLiteral;
+import com.ldzsai.kelp.expression.ObjectKeyAccess;
+import com.ldzsai.kelp.expression.PathAccess;
+import com.ldzsai.kelp.expression.Pipeline;
+import com.ldzsai.kelp.expression.StringLiteral;
+import com.ldzsai.kelp.expression.StringMatch;
+import com.ldzsai.kelp.expression.TextSegment;
+import com.ldzsai.kelp.jfr.KelpEvents;
+
+/**
+ * 并行求值后端：开销估算达到阈值的片段提交到执行器并发求值，其余片段在当前线程内求值，
+ * 输出按原顺序拼接
+ * <p>
+ * 模板片段之间没有副作用依赖，执行期间环境只读，因此片段可以独立求值。
+ */
+public class ParallelRenderer extends AstRenderer {
+    // 默认并行阈值：至少包含一次方法调用
+    public static final int DEFAULT_COST_THRESHOLD = 10;
+
+    // 方法调用的估算开销
+    private static final int CALL_COST = 10;
+
+    // 执行器
+    private final Executor executor;
+
+    // 各片段是否并行求值
+    private final boolean[] parallel;
+
+    // 并行求值的片段数
+    private final int parallelCount;
+
+    public ParallelRenderer(List<Expression> ast, Executor executor, int costThreshold) {
+        super(ast);
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor cannot be null");
+        }
+        this.executor = executor;
+        this.parallel = new boolean[ast.size()];
+        int count = 0;
+        for (int i = 0; i < parallel.length; i++) {
+            parallel[i] = cost(ast.get(i)) >= costThreshold;
+            if (parallel[i]) {
+                count++;
+            }
+        }
+        this.parallelCount = count;
+    }
+
+    /**
+     * 获取并行求值的片段数
+     */
+    public int getParallelCount() {
+        return parallelCount;
+    }
+
+    @Override
+    public void render(Environment env, Appendable out) throws Exception {
+        // 只有一个重片段时并行没有收益
+        if (parallelCount < 2) {
+            super.render(env, out);
+            return;
+        }
+
+        List<Expression> ast = getAst();
+        // 并行片段共享调用线程的预算
+        BudgetTracker tracker = BudgetTracker.current();
+        // 并行片段中的事件关联调用线程正在渲染的模板
+        int templateHash = KelpEvents.isTracking() ? KelpEvents.currentTemplateHash() : 0;
+        // 非并行片段位置为null
+        List<CompletableFuture<Object>> futures = new ArrayList<>(ast.size());
+        for (int i = 0; i < ast.size(); i++) {
+            if (!parallel[i]) {
+                futures.add(null);
+            } else {
+                Expression expression = ast.get(i);
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    BudgetTracker previous = BudgetTracker.enter(tracker);
+                    long events = KelpEvents.enter(templateHash);
+                    try {
+                        return expression.evaluate(env);
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    } finally {
+                        KelpEvents.exit(events);
+                        BudgetTracker.exit(previous);
+                    }
+                }, executor));
+            }
+        }
+
+        try {
+            for (int i = 0; i < ast.size(); i++) {
+                Expression expression = ast.get(i);
+                if (expression instanceof TextSegment) {
+                    ((TextSegment) expression).writeTo(out);
+                    continue;
+                }
+                if (expression instanceof Block) {
+                    ((Block) expression).render(env, out);
+                    continue;
+                }
+                Object value = parallel[i] ? join(futures.get(i)) : expression.evaluate(env);
+                if (value != null) {
+                    out.append(String.valueOf(value));
+                }
+            }
+        } catch (Exception e) {
+            // 出错后不再等待剩余片段
+            for (CompletableFuture<Object> future : futures) {
+                if (future != null) {
+                    future.cancel(false);
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 等待片段结果，还原求值时抛出的异常
+     */
+    private Object join(CompletableFuture<Object> future) throws Exception {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 估算表达式的求值开销：方法调用远重于变量访问与算术运算
+     *
+     * @param expr 表达式
+     * @return 估算开销
+     */
+    public static int cost(Expression expr) {
+        if (expr instanceof IntegerLiteral || expr instanceof FloatLiteral || expr instanceof StringLiteral
+                || expr instanceof TextSegment) {
+            return 0;
+        } else if (expr instanceof Block) {
+            // 块指令逐元素写入输出，不并行求值
+            return 0;
+        } else if (expr instanceof BinaryOperation) {
+            BinaryOperation operation = (BinaryOperation) expr;
+            return 1 + cost(operation.getLeft()) + cost(operation.getRight());
+        } else if (expr instanceof ArrayAccess) {
+            ArrayAccess access = (ArrayAccess) expr;
+            return 1 + cost(access.getBaseExpression()) + cost(access.getIndexExpression());
+        } else if (expr instanceof ObjectKeyAccess) {
+            ObjectKeyAccess access = (ObjectKeyAccess) expr;
+            return 1 + cost(access.getBaseExpression()) + cost(access.getKeyExpression());
+        } else if (expr instanceof FunctionCall) {
+            FunctionCall call = (FunctionCall) expr;
+            int cost = CALL_COST + cost(call.getTarget());
+            for (Expression argument : call.getArguments()) {
+                cost += cost(argument);
+            }
+            return cost;
+        } else if (expr instanceof Pipeline) {
+            // 遍历集合，按一次方法调用计
+            return CALL_COST + cost(((Pipeline) expr).getSource());
+        } else if (expr instanceof PathAccess) {
+            PathAccess access = (PathAccess) expr;
+            return access.getSteps().length + cost(access.getBase());
+        } else if (expr instanceof AggregateCall) {
+            return CALL_COST + cost(((AggregateCall) expr).getArgument());
+        } else if (expr instanceof FormattedOutput) {
+            return 1 + cost(((FormattedOutput) expr).getExpression());
+        } else if (expr instanceof StringMatch) {
+            int cost = CALL_COST;
+            for (Expression argument : ((StringMatch) expr).getArguments()) {
+                cost += cost(argument);
+            }
+            return cost;
+        }
+        // 变量及其他节点
+        return 1;
+    }
+}
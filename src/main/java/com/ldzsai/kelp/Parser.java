@@ -1,33 +1,121 @@
 package com.ldzsai.kelp;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
+import com.ldzsai.kelp.expression.AggregateCall;
+import com.ldzsai.kelp.expression.AggregateFunction;
 import com.ldzsai.kelp.expression.ArrayAccess;
 import com.ldzsai.kelp.expression.BinaryOperation;
+import com.ldzsai.kelp.expression.Block;
+import com.ldzsai.kelp.expression.Comparison;
+import com.ldzsai.kelp.expression.EachBlock;
 import com.ldzsai.kelp.expression.Expression;
 import com.ldzsai.kelp.expression.FloatLiteral;
+import com.ldzsai.kelp.expression.FormattedOutput;
 import com.ldzsai.kelp.expression.FunctionCall;
+import com.ldzsai.kelp.expression.IfBlock;
 import com.ldzsai.kelp.expression.IntegerLiteral;
+import com.ldzsai.kelp.expression.Lambda;
 import com.ldzsai.kelp.expression.ObjectKeyAccess;
+import com.ldzsai.kelp.expression.PathAccess;
+import com.ldzsai.kelp.expression.Pipeline;
+import com.ldzsai.kelp.expression.StringFunction;
 import com.ldzsai.kelp.expression.StringLiteral;
+import com.ldzsai.kelp.expression.StringMatch;
+import com.ldzsai.kelp.expression.TextSegment;
 import com.ldzsai.kelp.expression.Variable;
+import com.ldzsai.kelp.format.Encoders;
+import com.ldzsai.kelp.format.NumberStyle;
+import com.ldzsai.kelp.format.OutputEncoder;
 import com.ldzsai.kelp.token.Token;
+import com.ldzsai.kelp.token.TokenSource;
 import com.ldzsai.kelp.token.TokenType;
 
 /**
- * 表达式解析器
+ * 表达式解析器，从分词来源按需拉取分词，只缓冲一个向前看的分词
+ * <p>
+ * 二元运算按优先级爬升解析，新增运算符只需登记优先级，不增加递归层级。
  */
 public class Parser {
-    private final List<Token> tokens;
-    private int currentTokenIndex;
+    // 最大嵌套深度，防止深层括号、参数或下标嵌套导致递归下降栈溢出
+    public static final int MAX_NESTING_DEPTH = 256;
+
+    // 运算符优先级，0表示不是二元运算符
+    private static final int COMPARISON = 1;
+    private static final int ADDITIVE = 2;
+    private static final int MULTIPLICATIVE = 3;
+
+    private final TokenSource source;
+
+    // 向前看的分词，尚未拉取时为null
+    private Token current;
+
+    // 最近消费的分词的结束偏移
+    private int lastEnd = -1;
+
+    // 当前嵌套深度
+    private int depth;
+
+    // 未指定编码的片段使用的默认编码，为null时不编码
+    private OutputEncoder outputEncoder;
+
+    // 数字格式，为null时不格式化
+    private NumberStyle numberStyle;
+
+    // 集合运算的并行阈值
+    private int pipelineParallelThreshold = Pipeline.DEFAULT_PARALLEL_THRESHOLD;
+
+    public Parser(TokenSource source) {
+        if (source == null) {
+            throw new IllegalArgumentException("Token source cannot be null");
+        }
+        this.source = source;
+    }
 
     public Parser(List<Token> tokens) {
         if (tokens == null) {
             throw new IllegalArgumentException("Tokens cannot be null");
         }
-        this.tokens = tokens;
-        this.currentTokenIndex = 0;
+        Iterator<Token> iterator = tokens.iterator();
+        this.source = () -> iterator.hasNext() ? iterator.next() : Token.EOF;
+    }
+
+    public OutputEncoder getOutputEncoder() {
+        return outputEncoder;
+    }
+
+    /**
+     * 设置默认输出编码，片段中以|指定的编码优先
+     */
+    public void setOutputEncoder(OutputEncoder outputEncoder) {
+        this.outputEncoder = outputEncoder;
+    }
+
+    public NumberStyle getNumberStyle() {
+        return numberStyle;
+    }
+
+    public void setNumberStyle(NumberStyle numberStyle) {
+        this.numberStyle = numberStyle;
+    }
+
+    public int getPipelineParallelThreshold() {
+        return pipelineParallelThreshold;
+    }
+
+    /**
+     * 设置集合运算的并行阈值，元素数量达到阈值的集合并行求值
+     */
+    public void setPipelineParallelThreshold(int pipelineParallelThreshold) {
+        if (pipelineParallelThreshold < 1) {
+            throw new IllegalArgumentException("Threshold must be positive");
+        }
+        this.pipelineParallelThreshold = pipelineParallelThreshold;
     }
 
     /**
@@ -37,13 +125,10 @@ public class Parser {
      */
     public List<Expression> buildAst() throws KelpException {
         try {
-            List<Expression> expressions = new ArrayList<>();
-            while (currentTokenIndex < tokens.size() && tokens.get(currentTokenIndex).getType() != TokenType.EOF) {
-                Expression expression = parseExpression();
-                if (expression == null) {
-                    continue;
-                }
-                expressions.add(expression);
+            List<Expression> expressions = parseSegments();
+            Token token = peek();
+            if (token.getType() != TokenType.EOF) {
+                throw new KelpException("Unexpected #" + token.getValue() + " at position " + token.getStart());
             }
             return expressions;
         } catch (Exception e) {
@@ -55,43 +140,214 @@ public class Parser {
     }
 
     /**
-     * 解析表达式
+     * 解析片段序列，遇到结尾或#elseif、#else、#end时停止，不消费该分词
      * 
-     * @return 表达式
+     * @return 片段列表
      */
-    private Expression parseExpression() throws KelpException {
-        if (currentTokenIndex >= tokens.size()) {
-            return null;
+    private List<Expression> parseSegments() throws KelpException {
+        List<Expression> expressions = new ArrayList<>();
+        while (true) {
+            Token first = peek();
+            if (first.getType() == TokenType.EOF || isClause(first)) {
+                return expressions;
+            }
+            Expression expression;
+            if (first.getType() == TokenType.DIRECTIVE) {
+                consume();
+                expression = parseDirective(first);
+            } else {
+                expression = parseExpression(null);
+                // 静态文本不编码
+                if (first.getType() != TokenType.STRING && first.getType() != TokenType.TEXT) {
+                    expression = parseOutput(expression, first);
+                }
+            }
+            expressions.add(expression);
         }
-        
-        Expression expr = parseTerm();
+    }
 
-        while (currentTokenIndex < tokens.size() && isAddSubOp(currentToken())) {
-            Token token = consumeToken();
-            Expression right = parseTerm();
-            Operator op = Operator.parse(token.getValue().toString());
-            expr = new BinaryOperation(expr, op, right);
+    /**
+     * 判断分词是否为块内的分支或结束指令
+     */
+    private static boolean isClause(Token token) {
+        if (token.getType() != TokenType.DIRECTIVE) {
+            return false;
         }
+        String name = token.getValue().toString();
+        return name.equals("elseif") || name.equals("else") || name.equals("end");
+    }
 
-        return expr;
+    /**
+     * 解析以已消费的指令开头的块，直到对应的#end
+     * 
+     * @param directive 指令
+     * @return 块
+     */
+    private Block parseDirective(Token directive) throws KelpException {
+        if (++depth > MAX_NESTING_DEPTH) {
+            throw new KelpException("Expression nesting exceeds the maximum depth of " + MAX_NESTING_DEPTH);
+        }
+        try {
+            switch (directive.getValue().toString()) {
+                case "if":
+                    return span(parseIf(directive), directive);
+                case "each":
+                    return span(parseEach(directive), directive);
+                default:
+                    throw new KelpException("Unknown directive #" + directive.getValue() + " at position "
+                            + directive.getStart());
+            }
+        } finally {
+            depth--;
+        }
+    }
+
+    /**
+     * 解析条件块：#if后的条件、各#elseif分支及可选的#else分支
+     */
+    private IfBlock parseIf(Token directive) throws KelpException {
+        List<Expression> conditions = new ArrayList<>();
+        List<List<Expression>> branches = new ArrayList<>();
+        List<Expression> otherwise = null;
+        conditions.add(parseExpression(null));
+        branches.add(parseSegments());
+        while (true) {
+            Token clause = closing(directive);
+            switch (clause.getValue().toString()) {
+                case "elseif":
+                    if (otherwise != null) {
+                        throw new KelpException("Unexpected #elseif after #else at position " + clause.getStart());
+                    }
+                    conditions.add(parseExpression(null));
+                    branches.add(parseSegments());
+                    break;
+                case "else":
+                    if (otherwise != null) {
+                        throw new KelpException("Duplicate #else at position " + clause.getStart());
+                    }
+                    otherwise = parseSegments();
+                    break;
+                default:
+                    return new IfBlock(conditions, branches, otherwise != null ? otherwise : new ArrayList<>());
+            }
+        }
+    }
+
+    /**
+     * 解析循环块：#each item[, index] in source
+     */
+    private EachBlock parseEach(Token directive) throws KelpException {
+        Token variable = consume();
+        if (variable.getType() != TokenType.IDENTIFIER) {
+            throw new KelpException("Expected a loop variable after #each at position " + directive.getStart());
+        }
+        String indexVariable = null;
+        if (peek().getType() == TokenType.COMMA) {
+            consume(); // Consume ','
+            Token index = consume();
+            if (index.getType() != TokenType.IDENTIFIER) {
+                throw new KelpException("Expected an index variable after ',' at position " + index.getStart());
+            }
+            indexVariable = index.getValue().toString();
+        }
+        Token in = consume();
+        if (in.getType() != TokenType.IDENTIFIER || !"in".equals(in.getValue())) {
+            throw new KelpException("Expected 'in' after the loop variable at position " + in.getStart());
+        }
+        Expression source = parseExpression(null);
+        List<Expression> body = parseSegments();
+        Token clause = closing(directive);
+        if (!"end".equals(clause.getValue())) {
+            throw new KelpException("Unexpected #" + clause.getValue() + " in #each at position " + clause.getStart());
+        }
+        return new EachBlock(variable.getValue().toString(), indexVariable, source, body);
     }
 
     /**
-     * 解析加减法表达式
+     * 消费块内的分支或结束指令，到达结尾时报告未闭合的块
      * 
+     * @param directive 块的起始指令
+     * @return 分支或结束指令
+     */
+    private Token closing(Token directive) throws KelpException {
+        Token token = consume();
+        if (token.getType() == TokenType.EOF) {
+            throw new KelpException("Unclosed #" + directive.getValue() + " at position " + directive.getStart()
+                    + ": expected #end");
+        }
+        return token;
+    }
+
+    /**
+     * 解析顶层片段的输出编码${expr | name}，未指定时使用默认编码
+     * 
+     * @param expression 片段表达式
+     * @param first      片段的首个分词
      * @return 表达式
      */
-    private Expression parseTerm() throws KelpException {
-        Expression expr = parseFactor();
+    private Expression parseOutput(Expression expression, Token first) throws KelpException {
+        OutputEncoder encoder = outputEncoder;
+        if (peek().getType() == TokenType.PIPE) {
+            consume(); // Consume '|'
+            Token name = consume();
+            if (name.getType() != TokenType.IDENTIFIER) {
+                throw new KelpException("Expected an encoder name after '|'");
+            }
+            encoder = Encoders.get(name.getValue().toString());
+            if (encoder == null) {
+                throw new KelpException("Unknown encoder: " + name.getValue());
+            }
+        }
+        if (encoder == null && numberStyle == null) {
+            return expression;
+        }
+        return span(new FormattedOutput(expression, encoder != null ? encoder : Encoders.RAW, numberStyle), first);
+    }
 
-        while (currentTokenIndex < tokens.size() && isMulDivOp(currentToken())) {
-            Token token = consumeToken();
-            Expression right = parseFactor();
-            Operator op = Operator.parse(token.getValue().toString());
-            expr = new BinaryOperation(expr, op, right);
+    /**
+     * 解析表达式
+     * 
+     * @param identifier 已消费的首个标识符，为null时从当前分词开始
+     * @return 表达式
+     */
+    private Expression parseExpression(Token identifier) throws KelpException {
+        if (++depth > MAX_NESTING_DEPTH) {
+            throw new KelpException("Expression nesting exceeds the maximum depth of " + MAX_NESTING_DEPTH);
+        }
+        try {
+            Token first = identifier != null ? identifier : peek();
+            Expression left = identifier != null ? parseIdentifier(identifier) : parseFactor();
+            return parseOperators(left, first, 0);
+        } finally {
+            depth--;
         }
+    }
 
-        return expr;
+    /**
+     * 优先级爬升：吸收优先级高于minPrecedence的二元运算符，同级运算左结合，比较运算不可连用
+     * 
+     * @param left          左操作数
+     * @param first         左操作数的首个分词
+     * @param minPrecedence 最低优先级（不含）
+     * @return 表达式
+     */
+    private Expression parseOperators(Expression left, Token first, int minPrecedence) throws KelpException {
+        while (true) {
+            TokenType type = peek().getType();
+            int precedence = precedence(type);
+            if (precedence <= minPrecedence) {
+                return left;
+            }
+            consume();
+            Token rightFirst = peek();
+            Expression right = parseOperators(parseFactor(), rightFirst, precedence);
+            if (precedence == COMPARISON) {
+                left = span(new Comparison(left, comparisonOperator(type), right), first);
+                // 后续的比较运算符留给调用方报错
+                return left;
+            }
+            left = span(new BinaryOperation(left, operator(type), right), first);
+        }
     }
 
     /**
@@ -100,81 +356,156 @@ public class Parser {
      * @return 表达式
      */
     private Expression parseFactor() throws KelpException {
-        if (currentTokenIndex >= tokens.size()) {
-            throw new KelpException("Unexpected end of expression");
-        }
-        
-        Token token = currentToken();
-        if (token.getType() == TokenType.NUMBER || token.getType() == TokenType.FLOAT
-                || token.getType() == TokenType.INTEGER) {
-            consumeToken();
-            Number numberValue = (Number) token.getValue();
-            if (numberValue instanceof Integer) {
-                return new IntegerLiteral(numberValue.intValue());
-            } else if (numberValue instanceof Double) {
-                return new FloatLiteral(numberValue.doubleValue());
-            } else {
-                throw new KelpException("Unexpected number type at position " + currentTokenIndex);
+        Token token = peek();
+        switch (token.getType()) {
+            case NUMBER:
+            case FLOAT:
+            case INTEGER: {
+                consume();
+                Number numberValue = (Number) token.getValue();
+                if (numberValue instanceof Integer) {
+                    return span(new IntegerLiteral(numberValue.intValue()), token);
+                } else if (numberValue instanceof Double) {
+                    return span(new FloatLiteral(numberValue.doubleValue()), token);
+                }
+                throw new KelpException("Unexpected number type at position " + token.getStart());
             }
-        } else if (token.getType() == TokenType.IDENTIFIER) {
-            consumeToken();
-            return parseChainableExpression(token.getValue().toString());
-        } else if (token.getType() == TokenType.LPAREN) {
-            consumeToken(); // Consume '('
-            Expression expr = parseExpression();
-            if (currentTokenIndex >= tokens.size() || consumeToken().getType() != TokenType.RPAREN) {
-                throw new KelpException("Expected ')'");
+            case IDENTIFIER:
+                consume();
+                return parseIdentifier(token);
+            case LPAREN: {
+                consume(); // Consume '('
+                Expression expr = parseExpression(null);
+                if (consume().getType() != TokenType.RPAREN) {
+                    throw new KelpException("Expected ')'");
+                }
+                return expr;
             }
-            return expr;
-        } else if (token.getType() == TokenType.STRING || token.getType() == TokenType.QUOTE) {
-            consumeToken();
-            return new StringLiteral((String) token.getValue());
+            case STRING:
+            case QUOTE:
+                consume();
+                return span(new StringLiteral((String) token.getValue()), token);
+            case TEXT:
+                consume();
+                return span(new TextSegment((ByteBuffer) token.getValue(), StandardCharsets.UTF_8), token);
+            case EOF:
+                throw new KelpException("Unexpected end of expression");
+            default:
+                throw new KelpException("Invalid token at position " + token.getStart() + ": " + token.getType());
+        }
+    }
+
+    /**
+     * 解析以已消费的标识符开头的变量或内置函数调用及其后的链式访问
+     * 
+     * @param identifier 标识符
+     * @return 表达式
+     */
+    private Expression parseIdentifier(Token identifier) throws KelpException {
+        String name = identifier.getValue().toString();
+        // 只有内置函数名后的左括号构成调用；其他标识符是变量，其后的左括号可能属于下一个片段，如${a}${(b)}
+        if (peek().getType() == TokenType.LPAREN
+                && (StringFunction.find(name) != null || AggregateFunction.find(name) != null)) {
+            return parseChainableExpression(span(parseBuiltinCall(name), identifier), identifier);
         }
-        throw new KelpException("Invalid token at position " + currentTokenIndex + ": " + token.getType());
+        return parseChainableExpression(span(new Variable(name), identifier), identifier);
+    }
+
+    /**
+     * 解析内置函数调用
+     *
+     * @param name 函数名，须为内置函数
+     * @return 表达式
+     */
+    private Expression parseBuiltinCall(String name) throws KelpException {
+        StringFunction stringFunction = StringFunction.find(name);
+        if (stringFunction != null) {
+            List<Expression> arguments = parseArguments();
+            if (arguments.size() < stringFunction.getMinArguments()
+                    || arguments.size() > stringFunction.getMaxArguments()) {
+                int min = stringFunction.getMinArguments();
+                int max = stringFunction.getMaxArguments();
+                throw new KelpException("Function " + name + " expects " + min + (max > min ? " to " + max : "")
+                        + " arguments, but got " + arguments.size());
+            }
+            // 字面量正则表达式在此编译
+            return new StringMatch(stringFunction, arguments);
+        }
+        AggregateFunction function = AggregateFunction.find(name);
+        List<Expression> arguments = parseArguments();
+        if (arguments.size() != 1) {
+            throw new KelpException("Function " + name + " expects 1 argument, but got " + arguments.size());
+        }
+        return new AggregateCall(function, arguments.get(0));
     }
 
     /**
      * 解析链式表达式
      *
-     * @param baseIdentifier 基础标识符
+     * @param base  基础表达式
+     * @param first 基础表达式的首个分词
      * @return 表达式
      */
-    private Expression parseChainableExpression(String baseIdentifier) throws KelpException {
-        Expression expr = new Variable(baseIdentifier);
-        while (currentTokenIndex < tokens.size()) {
-            Token token = currentToken();
-            if (token.getType() == TokenType.PERIOD) {
-                consumeToken(); // Consume '.'
-                
-                if (currentTokenIndex >= tokens.size()) {
-                    throw new KelpException("Expected an identifier after '.'");
-                }
-                
-                Token nextToken = currentToken();
+    private Expression parseChainableExpression(Expression base, Token first) throws KelpException {
+        Expression expr = base;
+        while (true) {
+            TokenType type = peek().getType();
+            if (type == TokenType.PERIOD) {
+                consume(); // Consume '.'
 
+                Token nextToken = peek();
                 if (nextToken.getType() != TokenType.IDENTIFIER) {
                     throw new KelpException("Expected an identifier after '.'");
                 }
-
                 String identifier = nextToken.getValue().toString();
-                consumeToken(); // Consume identifier
+                consume(); // Consume identifier
 
                 // 检查下一个token是否是左括号
-                if (currentTokenIndex < tokens.size() && currentToken().getType() == TokenType.LPAREN) {
-                    // 处理为方法调用
-                    expr = parseMethodCall(expr, identifier);
+                if (peek().getType() == TokenType.LPAREN) {
+                    // 处理为方法调用，集合运算符合并为管道
+                    expr = fusePath(expr);
+                    expr = span(toPipeline(expr, parseMethodCall(expr, identifier)), first);
                 } else {
                     // 处理为属性访问
-                    Expression keyExpr = new StringLiteral(identifier);
-                    expr = new ObjectKeyAccess(expr, keyExpr);
+                    Expression keyExpr = span(new StringLiteral(identifier), nextToken);
+                    expr = span(new ObjectKeyAccess(expr, keyExpr), first);
                 }
-            } else if (token.getType() == TokenType.LBRACKET) {
-                expr = parseArrayOrMapAccess(expr);
+            } else if (type == TokenType.LBRACKET) {
+                expr = span(parseArrayOrMapAccess(expr), first);
             } else {
                 break;
             }
         }
-        return expr;
+        return fusePath(expr);
+    }
+
+    /**
+     * 将末端连续的常量键/常量索引访问合并为一个PathAccess，少于两级时保持原样
+     * 
+     * @param expr 链式表达式
+     * @return 表达式
+     */
+    private Expression fusePath(Expression expr) {
+        List<Object> steps = new ArrayList<>();
+        Expression base = expr;
+        while (true) {
+            if (base instanceof ObjectKeyAccess && ((ObjectKeyAccess) base).getKeyExpression() instanceof StringLiteral) {
+                steps.add(((StringLiteral) ((ObjectKeyAccess) base).getKeyExpression()).getValue());
+                base = ((ObjectKeyAccess) base).getBaseExpression();
+            } else if (base instanceof ArrayAccess && ((ArrayAccess) base).getIndexExpression() instanceof IntegerLiteral) {
+                steps.add(((IntegerLiteral) ((ArrayAccess) base).getIndexExpression()).getValue());
+                base = ((ArrayAccess) base).getBaseExpression();
+            } else {
+                break;
+            }
+        }
+        if (steps.size() < 2) {
+            return expr;
+        }
+        Collections.reverse(steps);
+        PathAccess path = new PathAccess(base, steps.toArray());
+        path.setSpan(expr.getStart(), expr.getEnd());
+        return path;
     }
 
     /**
@@ -184,29 +515,97 @@ public class Parser {
      * @param methodName 方法名
      * @return 表达式
      */
-    private Expression parseMethodCall(Expression target, String methodName) throws KelpException {
+    private FunctionCall parseMethodCall(Expression target, String methodName) throws KelpException {
+        return new FunctionCall(target, methodName, parseArguments());
+    }
+
+    /**
+     * 解析括号内的参数列表
+     * 
+     * @return 参数列表
+     */
+    private List<Expression> parseArguments() throws KelpException {
         List<Expression> arguments = new ArrayList<>();
 
-        if (currentToken().getType() == TokenType.LPAREN) {
-            consumeToken(); // Consume '('
-            if (currentTokenIndex < tokens.size() && currentToken().getType() != TokenType.RPAREN) {
-                arguments.add(parseExpression());
-                while (currentTokenIndex < tokens.size() && currentToken().getType() == TokenType.COMMA) {
-                    consumeToken(); // Consume ','
-                    arguments.add(parseExpression());
+        if (peek().getType() == TokenType.LPAREN) {
+            consume(); // Consume '('
+            TokenType type = peek().getType();
+            if (type != TokenType.RPAREN && type != TokenType.EOF) {
+                arguments.add(parseArgument());
+                while (peek().getType() == TokenType.COMMA) {
+                    consume(); // Consume ','
+                    arguments.add(parseArgument());
                 }
             }
-            
-            if (currentTokenIndex >= tokens.size()) {
-                throw new KelpException("Expected ')'");
-            }
-            
-            if (consumeToken().getType() != TokenType.RPAREN) {
+
+            if (consume().getType() != TokenType.RPAREN) {
                 throw new KelpException("Expected ')'");
             }
         }
 
-        return new FunctionCall(target, methodName, arguments);
+        return arguments;
+    }
+
+    /**
+     * 解析方法参数，参数可以是lambda表达式 x -> body
+     * 
+     * @return 表达式
+     */
+    private Expression parseArgument() throws KelpException {
+        Token token = peek();
+        if (token.getType() != TokenType.IDENTIFIER) {
+            return parseExpression(null);
+        }
+        consume();
+        if (peek().getType() == TokenType.ARROW) {
+            consume(); // Consume '->'
+            return span(new Lambda(token.getValue().toString(), parseExpression(null)), token);
+        }
+        // 不是lambda，已消费的标识符作为表达式开头
+        return parseExpression(token);
+    }
+
+    /**
+     * 将集合运算符调用合并为管道：filter/map追加阶段，any/all以及管道上的count/sum结束管道
+     * 
+     * @param target 目标表达式
+     * @param call   方法调用
+     * @return 管道或原方法调用
+     */
+    private Expression toPipeline(Expression target, FunctionCall call) throws KelpException {
+        List<Expression> arguments = call.getArguments();
+        Lambda lambda = arguments.size() == 1 && arguments.get(0) instanceof Lambda ? (Lambda) arguments.get(0) : null;
+        boolean open = target instanceof Pipeline && ((Pipeline) target).isOpen();
+        String name = call.getName();
+
+        if (lambda != null) {
+            Pipeline pipeline = open ? (Pipeline) target : new Pipeline(target, pipelineParallelThreshold);
+            switch (name) {
+                case "filter":
+                    return pipeline.then(Pipeline.StageType.FILTER, lambda);
+                case "map":
+                    return pipeline.then(Pipeline.StageType.MAP, lambda);
+                case "any":
+                    return pipeline.end(Pipeline.Terminal.ANY, lambda);
+                case "all":
+                    return pipeline.end(Pipeline.Terminal.ALL, lambda);
+                default:
+                    throw new KelpException("Unsupported collection operator: " + name);
+            }
+        }
+        for (Expression argument : arguments) {
+            if (argument instanceof Lambda) {
+                throw new KelpException("Unsupported collection operator: " + name);
+            }
+        }
+        if (open && arguments.isEmpty()) {
+            if ("count".equals(name)) {
+                return ((Pipeline) target).end(Pipeline.Terminal.COUNT, null);
+            } else if ("sum".equals(name)) {
+                return ((Pipeline) target).end(Pipeline.Terminal.SUM, null);
+            }
+        }
+        return call;
     }
 
     /**
@@ -216,23 +615,19 @@ public class Parser {
      * @return 表达式
      */
     private Expression parseArrayOrMapAccess(Expression target) throws KelpException {
-        if (currentTokenIndex >= tokens.size()) {
-            throw new KelpException("Unexpected end of expression when parsing array access");
-        }
-        
-        consumeToken(); // Consume '['
-        
-        if (currentTokenIndex >= tokens.size()) {
+        consume(); // Consume '['
+
+        if (peek().getType() == TokenType.EOF) {
             throw new KelpException("Unexpected end of expression when parsing array access");
         }
-        
-        Expression keyExpression = parseExpression();
-        
-        if (currentTokenIndex >= tokens.size()) {
+
+        Expression keyExpression = parseExpression(null);
+
+        if (peek().getType() == TokenType.EOF) {
             throw new KelpException("Expected ']' but reached end of expression");
         }
-        
-        if (consumeToken().getType() != TokenType.RBRACKET) { // Consume ']'
+
+        if (consume().getType() != TokenType.RBRACKET) { // Consume ']'
             throw new KelpException("Expected ']'");
         }
 
@@ -244,48 +639,96 @@ public class Parser {
     }
 
     /**
-     * 判断是否是加减法运算符
+     * 获取二元运算符的优先级
      * 
-     * @param token Token
-     * @return 是否是加减法运算符
+     * @param type 分词类型
+     * @return 优先级，不是二元运算符时为0
      */
-    private boolean isAddSubOp(Token token) {
-        return token.getType() == TokenType.PLUS || token.getType() == TokenType.MINUS;
+    private static int precedence(TokenType type) {
+        switch (type) {
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+            case EQUAL:
+            case NOT_EQUAL:
+                return COMPARISON;
+            case PLUS:
+            case MINUS:
+                return ADDITIVE;
+            case MULTIPLY:
+            case DIVIDE:
+                return MULTIPLICATIVE;
+            default:
+                return 0;
+        }
+    }
+
+    private static Operator operator(TokenType type) {
+        switch (type) {
+            case PLUS:
+                return Operator.ADD;
+            case MINUS:
+                return Operator.SUBTRACT;
+            case MULTIPLY:
+                return Operator.MULTIPLY;
+            default:
+                return Operator.DIVIDE;
+        }
+    }
+
+    private static ComparisonOperator comparisonOperator(TokenType type) {
+        switch (type) {
+            case GREATER:
+                return ComparisonOperator.GREATER;
+            case GREATER_EQUAL:
+                return ComparisonOperator.GREATER_EQUAL;
+            case LESS:
+                return ComparisonOperator.LESS;
+            case LESS_EQUAL:
+                return ComparisonOperator.LESS_EQUAL;
+            case EQUAL:
+                return ComparisonOperator.EQUAL;
+            default:
+                return ComparisonOperator.NOT_EQUAL;
+        }
     }
 
     /**
-     * 判断是否是乘除法运算符
+     * 设置节点的起止偏移：从指定分词开始到最近消费的分词结束
      * 
-     * @param token Token
-     * @return 是否是乘除法运算符
+     * @param expr  表达式
+     * @param first 首个分词
+     * @return 表达式
      */
-    private boolean isMulDivOp(Token token) {
-        return token.getType() == TokenType.MULTIPLY || token.getType() == TokenType.DIVIDE;
+    private <T extends Expression> T span(T expr, Token first) {
+        expr.setSpan(first.getStart(), lastEnd);
+        return expr;
     }
 
     /**
-     * 获取下一个Token
+     * 消费当前分词，到达结尾后总是返回EOF
      * 
-     * @return Token
+     * @return 被消费的分词
      */
-    private Token consumeToken() throws KelpException {
-        if (currentTokenIndex >= tokens.size()) {
-            throw new KelpException("Unexpected end of tokens");
+    private Token consume() throws KelpException {
+        Token token = peek();
+        if (token.getType() != TokenType.EOF) {
+            current = null;
+            lastEnd = token.getEnd();
         }
-        Token token = currentToken();
-        currentTokenIndex++;
         return token;
     }
 
     /**
-     * 获取解析器当前正在处理的标记(token)
+     * 获取当前分词，不消费
      * 
-     * @return 当前正在处理的token
+     * @return 当前分词
      */
-    private Token currentToken() {
-        if (currentTokenIndex >= tokens.size()) {
-            return new Token(TokenType.EOF, null);
+    private Token peek() throws KelpException {
+        if (current == null) {
+            current = source.next();
         }
-        return tokens.get(currentTokenIndex);
+        return current;
     }
-}
\ No newline at end of file
+}
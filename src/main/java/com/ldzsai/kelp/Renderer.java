@@ -0,0 +1,18 @@
+package com.ldzsai.kelp;
+
+import com.ldzsai.kelp.expression.Environment;
+
+/**
+ * 模板执行后端
+ */
+public interface Renderer {
+
+    /**
+     * 执行模板并将结果写入输出
+     *
+     * @param env 执行环境
+     * @param out 输出
+     * @throws Exception 异常
+     */
+    void render(Environment env, Appendable out) throws Exception;
+}
@@ -0,0 +1,247 @@
+package com.ldzsai.kelp;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.ldzsai.kelp.token.Token;
+import com.ldzsai.kelp.token.TokenType;
+
+/**
+ * 流式词法分析器，按固定大小分块读取超大模板源
+ * <p>
+ * 字节缓冲（含内存映射文件）来源的静态文本以{@link TokenType#TEXT}区间输出，不复制内容；
+ * Reader来源无法回读，静态文本按分块大小切分为{@link TokenType#STRING}输出。
+ * 两种来源中仅${}内的表达式主体会被解码到堆上。
+ */
+public class StreamingLexer {
+    // 默认分块大小
+    public static final int DEFAULT_CHUNK_SIZE = 8192;
+
+    private final Reader reader;
+
+    private final ByteBuffer buffer;
+
+    private final int chunkSize;
+
+    public StreamingLexer(Reader reader) {
+        this(reader, DEFAULT_CHUNK_SIZE);
+    }
+
+    public StreamingLexer(Reader reader, int chunkSize) {
+        if (reader == null) {
+            throw new IllegalArgumentException("Reader cannot be null");
+        }
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.reader = reader;
+        this.buffer = null;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * 基于UTF-8编码的字节缓冲创建，分词范围为缓冲的position到limit
+     *
+     * @param buffer 字节缓冲
+     */
+    public StreamingLexer(ByteBuffer buffer) {
+        if (buffer == null) {
+            throw new IllegalArgumentException("Buffer cannot be null");
+        }
+        this.reader = null;
+        this.buffer = buffer.asReadOnlyBuffer();
+        this.chunkSize = DEFAULT_CHUNK_SIZE;
+    }
+
+    /**
+     * 以只读方式内存映射UTF-8模板文件
+     *
+     * @param path 文件路径
+     * @return 流式词法分析器
+     * @throws IOException 文件读取错误
+     */
+    public static StreamingLexer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new KelpException("Template file too large to map: " + path + " (" + size + " bytes)");
+            }
+            return new StreamingLexer(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * 源字节的哈希值，用于关联JFR事件；须在分词前调用
+     *
+     * @return 缓冲区剩余字节的哈希值，Reader来源为0
+     */
+    public int getSourceHash() {
+        return buffer != null ? buffer.hashCode() : 0;
+    }
+
+    /**
+     * 源字节数
+     *
+     * @return 缓冲区剩余字节数，Reader来源为-1
+     */
+    public long getSourceLength() {
+        return buffer != null ? buffer.remaining() : -1;
+    }
+
+    /**
+     * 分词
+     *
+     * @return 分词列表
+     */
+    public List<Token> tokenizer() throws KelpException {
+        try {
+            List<Token> tokens = new ArrayList<>();
+            if (buffer != null) {
+                tokenizeBuffer(tokens);
+            } else {
+                tokenizeReader(tokens);
+            }
+
+            // 添加结束标记
+            tokens.add(new Token(TokenType.EOF, null));
+            return tokens;
+        } catch (Exception e) {
+            if (e instanceof KelpException) {
+                throw (KelpException) e;
+            }
+            throw new KelpException("Error tokenizing input: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 扫描字节缓冲，静态文本以区间切片输出
+     *
+     * @param tokens 分词列表
+     */
+    private void tokenizeBuffer(List<Token> tokens) throws KelpException {
+        int limit = buffer.limit();
+        int base = buffer.position();
+        int textStart = base;
+        int i = textStart;
+        while (i < limit - 1) {
+            if (buffer.get(i) != '$' || buffer.get(i + 1) != '{') {
+                i++;
+                continue;
+            }
+            int close = indexOf((byte) '}', i + 2, limit);
+            // 之后不再有闭合的}，剩余内容均为静态文本
+            if (close < 0) {
+                break;
+            }
+            addText(tokens, textStart, i);
+            // 分词位置按字节偏移计
+            new Lexer(decode(i + 2, close), i + 2 - base).tokenizeExpression(tokens);
+            i = close + 1;
+            textStart = i;
+        }
+        addText(tokens, textStart, limit);
+    }
+
+    /**
+     * 按分块读取Reader，静态文本超过分块大小即切分输出
+     *
+     * @param tokens 分词列表
+     */
+    private void tokenizeReader(List<Token> tokens) throws IOException, KelpException {
+        char[] chunk = new char[chunkSize];
+        StringBuilder text = new StringBuilder();
+        // 非null表示当前处于${...}内部
+        StringBuilder body = null;
+        // 已读取的字符数及当前表达式主体的起始偏移
+        int offset = 0;
+        int bodyStart = 0;
+        int n;
+        while ((n = reader.read(chunk)) != -1) {
+            for (int k = 0; k < n; k++, offset++) {
+                char ch = chunk[k];
+                if (body != null) {
+                    if (ch == '}') {
+                        new Lexer(body.toString(), bodyStart).tokenizeExpression(tokens);
+                        body = null;
+                    } else {
+                        body.append(ch);
+                    }
+                    continue;
+                }
+
+                int last = text.length() - 1;
+                if (ch == '{' && last >= 0 && text.charAt(last) == '$') {
+                    text.setLength(last);
+                    addText(tokens, text);
+                    body = new StringBuilder();
+                    bodyStart = offset + 1;
+                    continue;
+                }
+
+                text.append(ch);
+                // 末尾的$可能与下一分块的{组成表达式起始，暂不切分
+                if (text.length() >= chunkSize && ch != '$') {
+                    addText(tokens, text);
+                }
+            }
+        }
+
+        // 未闭合的表达式按原样作为字符串
+        if (body != null) {
+            text.append("${").append(body);
+        }
+        addText(tokens, text);
+    }
+
+    /**
+     * 添加字节区间文本
+     */
+    private void addText(List<Token> tokens, int start, int end) {
+        if (start >= end) {
+            return;
+        }
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(end).position(start);
+        tokens.add(new Token(TokenType.TEXT, slice.slice()));
+    }
+
+    /**
+     * 添加并清空缓冲的字符串
+     */
+    private void addText(List<Token> tokens, StringBuilder text) {
+        if (text.length() > 0) {
+            tokens.add(new Token(TokenType.STRING, text.toString()));
+            text.setLength(0);
+        }
+    }
+
+    /**
+     * 查找字节首次出现的位置
+     */
+    private int indexOf(byte b, int from, int limit) {
+        for (int i = from; i < limit; i++) {
+            if (buffer.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 将字节区间解码为字符串
+     */
+    private String decode(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(start);
+        slice.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,185 @@
+package com.ldzsai.kelp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.ldzsai.kelp.expression.AggregateCall;
+import com.ldzsai.kelp.expression.ArrayAccess;
+import com.ldzsai.kelp.expression.BinaryOperation;
+import com.ldzsai.kelp.expression.Comparison;
+import com.ldzsai.kelp.expression.EachBlock;
+import com.ldzsai.kelp.expression.Expression;
+import com.ldzsai.kelp.expression.FormattedOutput;
+import com.ldzsai.kelp.expression.FunctionCall;
+import com.ldzsai.kelp.expression.IfBlock;
+import com.ldzsai.kelp.expression.Lambda;
+import com.ldzsai.kelp.expression.ObjectKeyAccess;
+import com.ldzsai.kelp.expression.PathAccess;
+import com.ldzsai.kelp.expression.Pipeline;
+import com.ldzsai.kelp.expression.StringMatch;
+import com.ldzsai.kelp.typed.NumericBinaryOperation;
+import com.ldzsai.kelp.typed.ResolvedMethodCall;
+import com.ldzsai.kelp.typed.TypedArrayAccess;
+import com.ldzsai.kelp.typed.TypedListAccess;
+import com.ldzsai.kelp.typed.TypedMapAccess;
+
+/**
+ * 模板的静态规模：节点数与嵌套深度
+ * <p>
+ * 除集合运算外每个节点在一次执行中至多求值一次，因此节点数即求值步数的上界；
+ * 集合运算的各阶段函数体和#each的循环体按元素计数，由Pipeline和EachBlock在遍历时累计。
+ */
+public class TemplateMetrics {
+    // 节点数
+    private final long nodeCount;
+
+    // 嵌套深度
+    private final int depth;
+
+    private TemplateMetrics(long nodeCount, int depth) {
+        this.nodeCount = nodeCount;
+        this.depth = depth;
+    }
+
+    /**
+     * 统计模板规模
+     *
+     * @param ast 抽象语法树
+     * @return 模板规模
+     */
+    public static TemplateMetrics of(List<Expression> ast) {
+        long nodeCount = 0;
+        int depth = 0;
+        for (Expression expression : ast) {
+            nodeCount += nodeCount(expression);
+            depth = Math.max(depth, depth(expression));
+        }
+        return new TemplateMetrics(nodeCount, depth);
+    }
+
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * 统计表达式的节点数，集合运算的阶段函数体和#each的循环体不计入
+     *
+     * @param expr 表达式
+     * @return 节点数
+     */
+    public static long nodeCount(Expression expr) {
+        long count = 1;
+        for (Expression child : children(expr)) {
+            count += nodeCount(child);
+        }
+        return count;
+    }
+
+    /**
+     * 计算表达式的嵌套深度
+     *
+     * @param expr 表达式
+     * @return 深度，单个节点为1
+     */
+    public static int depth(Expression expr) {
+        int depth = 0;
+        for (Expression child : children(expr)) {
+            depth = Math.max(depth, depth(child));
+        }
+        if (expr instanceof Pipeline) {
+            for (Lambda lambda : lambdas((Pipeline) expr)) {
+                depth = Math.max(depth, depth(lambda.getBody()));
+            }
+        } else if (expr instanceof EachBlock) {
+            for (Expression segment : ((EachBlock) expr).getBody()) {
+                depth = Math.max(depth, depth(segment));
+            }
+        }
+        return depth + 1;
+    }
+
+    /**
+     * 获取集合运算的全部函数：各阶段及any/all的条件
+     *
+     * @param pipeline 集合运算
+     * @return 函数列表
+     */
+    public static List<Lambda> lambdas(Pipeline pipeline) {
+        if (pipeline.getPredicate() == null) {
+            return pipeline.getStages();
+        }
+        Lambda[] lambdas = pipeline.getStages().toArray(new Lambda[pipeline.getStages().size() + 1]);
+        lambdas[lambdas.length - 1] = pipeline.getPredicate();
+        return Arrays.asList(lambdas);
+    }
+
+    /**
+     * 获取直接子节点，未知节点按叶子处理
+     */
+    static List<Expression> children(Expression expr) {
+        if (expr instanceof BinaryOperation) {
+            BinaryOperation operation = (BinaryOperation) expr;
+            return Arrays.asList(operation.getLeft(), operation.getRight());
+        } else if (expr instanceof Comparison) {
+            Comparison comparison = (Comparison) expr;
+            return Arrays.asList(comparison.getLeft(), comparison.getRight());
+        } else if (expr instanceof NumericBinaryOperation) {
+            NumericBinaryOperation operation = (NumericBinaryOperation) expr;
+            return Arrays.asList(operation.getLeft(), operation.getRight());
+        } else if (expr instanceof ArrayAccess) {
+            ArrayAccess access = (ArrayAccess) expr;
+            return Arrays.asList(access.getBaseExpression(), access.getIndexExpression());
+        } else if (expr instanceof ObjectKeyAccess) {
+            ObjectKeyAccess access = (ObjectKeyAccess) expr;
+            return Arrays.asList(access.getBaseExpression(), access.getKeyExpression());
+        } else if (expr instanceof TypedArrayAccess) {
+            TypedArrayAccess access = (TypedArrayAccess) expr;
+            return Arrays.asList(access.getBaseExpression(), access.getIndexExpression());
+        } else if (expr instanceof TypedListAccess) {
+            TypedListAccess access = (TypedListAccess) expr;
+            return Arrays.asList(access.getBaseExpression(), access.getIndexExpression());
+        } else if (expr instanceof TypedMapAccess) {
+            TypedMapAccess access = (TypedMapAccess) expr;
+            return Arrays.asList(access.getBaseExpression(), access.getKeyExpression());
+        } else if (expr instanceof PathAccess) {
+            return Collections.singletonList(((PathAccess) expr).getBase());
+        } else if (expr instanceof FunctionCall) {
+            FunctionCall call = (FunctionCall) expr;
+            Expression[] children = call.getArguments().toArray(new Expression[call.getArguments().size() + 1]);
+            children[children.length - 1] = call.getTarget();
+            return Arrays.asList(children);
+        } else if (expr instanceof ResolvedMethodCall) {
+            ResolvedMethodCall call = (ResolvedMethodCall) expr;
+            Expression[] arguments = call.getArguments();
+            Expression[] children = Arrays.copyOf(arguments, arguments.length + 1);
+            children[arguments.length] = call.getTarget();
+            return Arrays.asList(children);
+        } else if (expr instanceof Pipeline) {
+            return Collections.singletonList(((Pipeline) expr).getSource());
+        } else if (expr instanceof AggregateCall) {
+            return Collections.singletonList(((AggregateCall) expr).getArgument());
+        } else if (expr instanceof FormattedOutput) {
+            return Collections.singletonList(((FormattedOutput) expr).getExpression());
+        } else if (expr instanceof StringMatch) {
+            return ((StringMatch) expr).getArguments();
+        } else if (expr instanceof IfBlock) {
+            IfBlock block = (IfBlock) expr;
+            List<Expression> children = new ArrayList<>(block.getConditions());
+            for (List<Expression> branch : block.getBranches()) {
+                children.addAll(branch);
+            }
+            children.addAll(block.getOtherwise());
+            return children;
+        } else if (expr instanceof EachBlock) {
+            // 循环体按元素计入预算，不计入节点数
+            return Collections.singletonList(((EachBlock) expr).getSource());
+        }
+        return Collections.emptyList();
+    }
+}
@@ -0,0 +1,287 @@
+package com.ldzsai.kelp;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.ldzsai.kelp.expression.Constant;
+import com.ldzsai.kelp.expression.EachBlock;
+import com.ldzsai.kelp.expression.Environment;
+import com.ldzsai.kelp.expression.Expression;
+import com.ldzsai.kelp.expression.ExpressionRewriter;
+import com.ldzsai.kelp.expression.FloatLiteral;
+import com.ldzsai.kelp.expression.FormattedOutput;
+import com.ldzsai.kelp.expression.IfBlock;
+import com.ldzsai.kelp.expression.IntegerLiteral;
+import com.ldzsai.kelp.expression.Lambda;
+import com.ldzsai.kelp.expression.Pipeline;
+import com.ldzsai.kelp.expression.StringLiteral;
+import com.ldzsai.kelp.expression.TextSegment;
+import com.ldzsai.kelp.expression.Variable;
+
+/**
+ * 模板特化：按部分环境中的不可变变量预先求值，得到只依赖其余变量的剩余语法树
+ * <p>
+ * 只依赖不可变变量和字面量的子树替换为常量，结果已确定的片段直接写成文本并与相邻文本合并，
+ * 条件已确定的#if只保留被选中的分支。对已知值的方法调用视为无副作用；
+ * 预先求值出错的子树保持原样，错误在渲染时照常抛出。
+ */
+final class TemplateSpecializer {
+    // 部分环境
+    private final Environment constants;
+
+    // 被#each循环变量或lambda参数遮蔽的变量名
+    private final List<String> shadowed = new ArrayList<>();
+
+    TemplateSpecializer(Environment constants) {
+        this.constants = constants;
+    }
+
+    /**
+     * 特化片段序列
+     *
+     * @param segments 片段
+     * @return 剩余片段
+     */
+    List<Expression> segments(List<Expression> segments) {
+        List<Expression> residual = new ArrayList<>(segments.size());
+        for (Expression segment : segments) {
+            if (segment instanceof IfBlock) {
+                ifBlock((IfBlock) segment, residual);
+            } else if (segment instanceof EachBlock) {
+                residual.add(eachBlock((EachBlock) segment));
+            } else if (segment instanceof StringLiteral) {
+                addText(residual, ((StringLiteral) segment).getValue(), segment);
+            } else if (segment instanceof TextSegment) {
+                residual.add(segment);
+            } else {
+                Expression folded = fold(segment);
+                String text = render(folded);
+                if (text != null) {
+                    addText(residual, text, segment);
+                } else {
+                    residual.add(folded);
+                }
+            }
+        }
+        return residual;
+    }
+
+    /**
+     * 去掉条件已确定的分支，第一个成立的分支之后的分支不会执行
+     */
+    private void ifBlock(IfBlock block, List<Expression> residual) {
+        List<Expression> conditions = new ArrayList<>();
+        List<List<Expression>> branches = new ArrayList<>();
+        List<Expression> otherwise = null;
+        for (int i = 0; i < block.getConditions().size() && otherwise == null; i++) {
+            Expression condition = fold(block.getConditions().get(i));
+            Object value = isConstant(condition) ? value(condition) : null;
+            if (Boolean.FALSE.equals(value)) {
+                continue;
+            }
+            if (Boolean.TRUE.equals(value)) {
+                otherwise = segments(block.getBranches().get(i));
+            } else {
+                conditions.add(condition);
+                branches.add(segments(block.getBranches().get(i)));
+            }
+        }
+        if (otherwise == null) {
+            otherwise = segments(block.getOtherwise());
+        }
+        if (conditions.isEmpty()) {
+            for (Expression segment : otherwise) {
+                if (segment instanceof StringLiteral) {
+                    addText(residual, ((StringLiteral) segment).getValue(), segment);
+                } else {
+                    residual.add(segment);
+                }
+            }
+            return;
+        }
+        IfBlock rebuilt = new IfBlock(conditions, branches, otherwise);
+        rebuilt.setSpan(block.getStart(), block.getEnd());
+        residual.add(rebuilt);
+    }
+
+    /**
+     * 特化数据源和循环体，循环变量在循环体内遮蔽同名的不可变变量
+     */
+    private Expression eachBlock(EachBlock block) {
+        Expression source = fold(block.getSource());
+        int mark = shadowed.size();
+        shadowed.add(block.getVariable());
+        if (block.getIndexVariable() != null) {
+            shadowed.add(block.getIndexVariable());
+        }
+        List<Expression> body;
+        try {
+            body = segments(block.getBody());
+        } finally {
+            shadowed.subList(mark, shadowed.size()).clear();
+        }
+        EachBlock rebuilt = new EachBlock(block.getVariable(), block.getIndexVariable(), source, body);
+        rebuilt.setSpan(block.getStart(), block.getEnd());
+        return rebuilt;
+    }
+
+    /**
+     * 自底向上折叠表达式，子节点均为常量的节点预先求值
+     */
+    Expression fold(Expression expr) {
+        if (expr instanceof Variable) {
+            String name = ((Variable) expr).getName();
+            return isKnown(name) ? constant(constants.getVariable(name), expr) : expr;
+        }
+        Expression rebuilt = ExpressionRewriter.rebuild(expr instanceof Pipeline ? foldLambdas((Pipeline) expr) : expr,
+                this::fold);
+        if (rebuilt == expr || rebuilt instanceof FormattedOutput) {
+            // 叶子及无法识别的节点；格式化输出由所在片段整体写成文本
+            return rebuilt;
+        }
+        boolean foldable = rebuilt instanceof Pipeline ? isClosed((Pipeline) rebuilt) : true;
+        for (Expression child : TemplateMetrics.children(rebuilt)) {
+            foldable &= isConstant(child);
+        }
+        if (!foldable) {
+            return rebuilt;
+        }
+        try {
+            return constant(rebuilt.evaluate(constants), expr);
+        } catch (Exception e) {
+            // 留到渲染时抛出
+            return rebuilt;
+        }
+    }
+
+    /**
+     * 折叠集合运算的各函数体，参数在函数体内遮蔽同名的不可变变量
+     */
+    private Pipeline foldLambdas(Pipeline pipeline) {
+        Pipeline rebuilt = new Pipeline(pipeline.getSource(), pipeline.getParallelThreshold());
+        for (int i = 0; i < pipeline.getStages().size(); i++) {
+            rebuilt = rebuilt.then(pipeline.getStageTypes().get(i), foldLambda(pipeline.getStages().get(i)));
+        }
+        if (!pipeline.isOpen()) {
+            rebuilt = rebuilt.end(pipeline.getTerminal(),
+                    pipeline.getPredicate() != null ? foldLambda(pipeline.getPredicate()) : null);
+        }
+        rebuilt.setSpan(pipeline.getStart(), pipeline.getEnd());
+        return rebuilt;
+    }
+
+    private Lambda foldLambda(Lambda lambda) {
+        shadowed.add(lambda.getParameter());
+        try {
+            Lambda rebuilt = new Lambda(lambda.getParameter(), fold(lambda.getBody()));
+            rebuilt.setSpan(lambda.getStart(), lambda.getEnd());
+            return rebuilt;
+        } finally {
+            shadowed.remove(shadowed.size() - 1);
+        }
+    }
+
+    /**
+     * 片段的值已确定时按渲染结果写成文本，否则返回null
+     */
+    private String render(Expression expr) {
+        Expression value = expr instanceof FormattedOutput ? ((FormattedOutput) expr).getExpression() : expr;
+        if (!isConstant(value)) {
+            return null;
+        }
+        try {
+            StringBuilder out = new StringBuilder();
+            expr.appendTo(constants, out);
+            return out.toString();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 集合运算的各函数体是否只引用参数和不可变变量
+     */
+    private boolean isClosed(Pipeline pipeline) {
+        for (Lambda lambda : TemplateMetrics.lambdas(pipeline)) {
+            Set<String> bound = new HashSet<>();
+            bound.add(lambda.getParameter());
+            if (!isClosed(lambda.getBody(), bound)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isClosed(Expression expr, Set<String> bound) {
+        if (expr instanceof Variable) {
+            String name = ((Variable) expr).getName();
+            return bound.contains(name) || isKnown(name);
+        }
+        if (isConstant(expr)) {
+            return true;
+        }
+        List<Expression> children = TemplateMetrics.children(expr);
+        if (children.isEmpty()) {
+            // 无法识别的节点
+            return false;
+        }
+        for (Expression child : children) {
+            if (!isClosed(child, bound)) {
+                return false;
+            }
+        }
+        if (expr instanceof Pipeline) {
+            for (Lambda lambda : TemplateMetrics.lambdas((Pipeline) expr)) {
+                Set<String> nested = new HashSet<>(bound);
+                nested.add(lambda.getParameter());
+                if (!isClosed(lambda.getBody(), nested)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean isKnown(String name) {
+        return constants.isConstant(name) && !shadowed.contains(name);
+    }
+
+    private static boolean isConstant(Expression expr) {
+        return expr instanceof Constant || expr instanceof StringLiteral || expr instanceof IntegerLiteral
+                || expr instanceof FloatLiteral;
+    }
+
+    private Object value(Expression expr) {
+        try {
+            return expr.evaluate(constants);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static Expression constant(Object value, Expression original) {
+        Constant constant = new Constant(value);
+        constant.setSpan(original.getStart(), original.getEnd());
+        return constant;
+    }
+
+    /**
+     * 追加文本片段，与前一个文本片段合并
+     */
+    private static void addText(List<Expression> residual, String text, Expression original) {
+        int last = residual.size() - 1;
+        StringLiteral literal;
+        if (last >= 0 && residual.get(last) instanceof StringLiteral) {
+            StringLiteral previous = (StringLiteral) residual.get(last);
+            literal = new StringLiteral(previous.getValue() + text);
+            literal.setSpan(previous.getStart(), original.getEnd());
+            residual.set(last, literal);
+        } else if (!text.isEmpty()) {
+            literal = new StringLiteral(text);
+            literal.setSpan(original.getStart(), original.getEnd());
+            residual.add(literal);
+        }
+    }
+}
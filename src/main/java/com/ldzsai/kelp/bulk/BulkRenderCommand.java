@@ -0,0 +1,101 @@
+package com.ldzsai.kelp.bulk;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import com.ldzsai.kelp.CompiledTemplate;
+import com.ldzsai.kelp.ExpressionEngine;
+import com.ldzsai.kelp.expression.Environment;
+
+/**
+ * 批量渲染命令行入口
+ * <pre>
+ * java -cp kelp.jar com.ldzsai.kelp.bulk.BulkRenderCommand [options] &lt;template&gt; &lt;input&gt; &lt;output&gt;
+ * </pre>
+ */
+public final class BulkRenderCommand {
+    private static final String USAGE = "Usage: BulkRenderCommand [options] <template> <input> <output>\n"
+            + "  --format csv|tsv|ndjson  input format (default: by file extension)\n"
+            + "  --threads N              render threads (default: available processors)\n"
+            + "  --batch N                rows per batch (default: " + BulkRenderer.DEFAULT_BATCH_SIZE + ")\n"
+            + "  --unordered              write batches as they complete\n";
+
+    private BulkRenderCommand() {
+    }
+
+    public static void main(String[] args) {
+        try {
+            System.out.println(run(args));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(USAGE);
+            System.exit(2);
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * 解析参数并执行批量渲染
+     *
+     * @param args 命令行参数
+     * @return 统计结果
+     */
+    static BulkResult run(String[] args) throws Exception {
+        List<String> paths = new ArrayList<>();
+        RecordFormat format = null;
+        Integer threads = null;
+        Integer batchSize = null;
+        boolean ordered = true;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--format":
+                    format = RecordFormat.valueOf(value(args, ++i, arg).toUpperCase(Locale.ROOT));
+                    break;
+                case "--threads":
+                    threads = Integer.valueOf(value(args, ++i, arg));
+                    break;
+                case "--batch":
+                    batchSize = Integer.valueOf(value(args, ++i, arg));
+                    break;
+                case "--unordered":
+                    ordered = false;
+                    break;
+                default:
+                    if (arg.startsWith("--")) {
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                    }
+                    paths.add(arg);
+            }
+        }
+        if (paths.size() != 3) {
+            throw new IllegalArgumentException("Expected <template> <input> <output>");
+        }
+
+        ExpressionEngine engine = new ExpressionEngine(new Environment());
+        CompiledTemplate template = engine.compile(Paths.get(paths.get(0)));
+        BulkRenderer renderer = new BulkRenderer(template);
+        renderer.setFormat(format);
+        renderer.setOrdered(ordered);
+        if (threads != null) {
+            renderer.setThreads(threads);
+        }
+        if (batchSize != null) {
+            renderer.setBatchSize(batchSize);
+        }
+        Path input = Paths.get(paths.get(1));
+        return renderer.render(input, Paths.get(paths.get(2)));
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+}
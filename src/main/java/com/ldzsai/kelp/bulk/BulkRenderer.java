@@ -0,0 +1,391 @@
+package com.ldzsai.kelp.bulk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.ldzsai.kelp.CompiledTemplate;
+import com.ldzsai.kelp.KelpException;
+import com.ldzsai.kelp.expression.Environment;
+import com.ldzsai.kelp.resolver.VariableResolver;
+
+/**
+ * 批量渲染：对CSV/TSV/NDJSON文件的每一行渲染一次模板，结果依次写入输出文件
+ * <p>
+ * 读取线程通过内存映射切分记录批次，渲染线程在各自复用的Environment中解析字段并渲染，
+ * 写出线程（调用线程）经直接缓冲区写入文件。在途批次数有上限，渲染或写出跟不上时读取线程等待，
+ * 内存占用与输入文件大小无关。
+ * <pre>
+ * CompiledTemplate template = engine.compile(Paths.get("letter.tpl"));
+ * BulkResult result = new BulkRenderer(template).render(Paths.get("customers.csv"), Paths.get("letters.txt"));
+ * </pre>
+ */
+public class BulkRenderer {
+    // 默认每批行数
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+
+    // 默认输出缓冲区大小
+    public static final int DEFAULT_OUTPUT_BUFFER_SIZE = 4 << 20;
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final CompiledTemplate template;
+
+    // 输入格式，为null时按扩展名推断
+    private RecordFormat format;
+
+    // 渲染线程数
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    // 是否按输入顺序输出
+    private boolean ordered = true;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    // 在途批次上限，为0时取渲染线程数的4倍
+    private int maxInFlightBatches;
+
+    private int outputBufferSize = DEFAULT_OUTPUT_BUFFER_SIZE;
+
+    // 每行输出后追加的分隔符
+    private String recordSeparator = "\n";
+
+    // 所有行共享的变量，行内同名字段优先
+    private Environment globals;
+
+    private int windowSize = RecordReader.DEFAULT_WINDOW_SIZE;
+
+    public BulkRenderer(CompiledTemplate template) {
+        if (template == null) {
+            throw new IllegalArgumentException("Template cannot be null");
+        }
+        this.template = template;
+    }
+
+    /**
+     * 渲染输入文件的每一行
+     *
+     * @param input  输入文件
+     * @param output 输出文件，已存在时覆盖
+     * @return 统计结果
+     */
+    public BulkResult render(Path input, Path output) throws KelpException {
+        long startTime = System.nanoTime();
+        RecordFormat recordFormat = format != null ? format : RecordFormat.of(input);
+        int inFlightLimit = maxInFlightBatches > 0 ? maxInFlightBatches : threads * 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1, runnable -> {
+            Thread thread = new Thread(runnable, "kelp-bulk-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (RecordReader reader = new RecordReader(input, recordFormat, windowSize);
+                FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Stages stages = new Stages(inFlightLimit);
+            executor.execute(() -> read(reader, stages));
+            for (int i = 0; i < threads; i++) {
+                executor.execute(() -> work(reader.getHeader(), reader.getNumericColumns(), recordFormat, stages));
+            }
+            long[] totals = write(channel, stages);
+            Throwable failure = stages.failure.get();
+            if (failure != null) {
+                if (failure instanceof KelpException) {
+                    throw (KelpException) failure;
+                }
+                throw new KelpException("Error rendering " + input + ": " + failure.getMessage(), failure);
+            }
+            return new BulkResult(totals[0], totals[1], System.nanoTime() - startTime);
+        } catch (IOException e) {
+            throw new KelpException("Error rendering " + input + ": " + e.getMessage(), e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 读取线程：切分记录批次，在途批次达到上限时等待
+     */
+    private void read(RecordReader reader, Stages stages) {
+        try {
+            long sequence = 0;
+            long row = 1;
+            while (stages.failure.get() == null) {
+                stages.inFlight.acquire();
+                RecordBatch batch = reader.next(sequence, row, batchSize);
+                if (batch == null) {
+                    stages.inFlight.release();
+                    break;
+                }
+                sequence++;
+                row += batch.count;
+                stages.pending.add(batch);
+            }
+        } catch (Exception e) {
+            stages.fail(e);
+        } finally {
+            for (int i = 0; i < threads; i++) {
+                stages.pending.add(RecordBatch.END);
+            }
+        }
+    }
+
+    /**
+     * 渲染线程：逐行切换复用的解析器并渲染，整批编码后交给写出线程
+     */
+    private void work(String[] header, boolean[] numericColumns, RecordFormat recordFormat, Stages stages) {
+        try {
+            RowResolver row = new RowResolver(recordFormat, header, numericColumns);
+            Environment env = new Environment(globals == null ? row
+                    : VariableResolver.chain(row, globals::getVariable));
+            StringBuilder out = new StringBuilder(8192);
+            while (true) {
+                RecordBatch batch = stages.pending.take();
+                if (batch == RecordBatch.END) {
+                    return;
+                }
+                byte[] bytes = null;
+                if (stages.failure.get() == null) {
+                    int i = 0;
+                    try {
+                        for (; i < batch.count; i++) {
+                            row.set(batch.window, batch.bounds[i * 2], batch.bounds[i * 2 + 1]);
+                            template.render(env, out);
+                            out.append(recordSeparator);
+                        }
+                        bytes = out.toString().getBytes(StandardCharsets.UTF_8);
+                    } catch (Exception e) {
+                        stages.fail(new KelpException("Error rendering row " + (batch.firstRow + i) + ": "
+                                + e.getMessage(), e));
+                    }
+                    out.setLength(0);
+                }
+                stages.rendered.add(new RenderedBatch(batch.sequence, bytes, batch.count));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stages.rendered.add(RenderedBatch.END);
+        }
+    }
+
+    /**
+     * 写出线程：按序或按完成顺序写出，写出后释放在途批次
+     *
+     * @return 行数和字节数
+     */
+    private long[] write(FileChannel channel, Stages stages) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(outputBufferSize);
+        Map<Long, RenderedBatch> waiting = new HashMap<>();
+        long next = 0;
+        long rows = 0;
+        long bytes = 0;
+        int ended = 0;
+        try {
+            while (ended < threads) {
+                RenderedBatch batch = stages.rendered.take();
+                if (batch == RenderedBatch.END) {
+                    ended++;
+                    continue;
+                }
+                if (stages.failure.get() != null) {
+                    // 失败后丢弃剩余批次
+                    stages.inFlight.release(waiting.size() + 1);
+                    waiting.clear();
+                    continue;
+                }
+                if (!ordered) {
+                    write(channel, buffer, batch.bytes);
+                    rows += batch.rows;
+                    bytes += batch.bytes.length;
+                    stages.inFlight.release();
+                    continue;
+                }
+                waiting.put(batch.sequence, batch);
+                while ((batch = waiting.remove(next)) != null) {
+                    write(channel, buffer, batch.bytes);
+                    rows += batch.rows;
+                    bytes += batch.bytes.length;
+                    stages.inFlight.release();
+                    next++;
+                }
+            }
+            if (stages.failure.get() == null) {
+                flush(channel, buffer);
+            }
+        } catch (IOException e) {
+            stages.fail(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stages.fail(new KelpException("Bulk render interrupted"));
+        }
+        return new long[] { rows, bytes };
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer, byte[] bytes) throws IOException {
+        if (bytes.length > buffer.remaining()) {
+            flush(channel, buffer);
+        }
+        if (bytes.length > buffer.capacity()) {
+            ByteBuffer wrapped = ByteBuffer.wrap(bytes);
+            while (wrapped.hasRemaining()) {
+                channel.write(wrapped);
+            }
+            return;
+        }
+        buffer.put(bytes);
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    public RecordFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * 设置输入格式，为null时按扩展名推断
+     */
+    public void setFormat(RecordFormat format) {
+        this.format = format;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be positive");
+        }
+        this.threads = threads;
+    }
+
+    public boolean isOrdered() {
+        return ordered;
+    }
+
+    /**
+     * 设置是否按输入顺序输出，不要求顺序时先完成的批次先写出
+     */
+    public void setOrdered(boolean ordered) {
+        this.ordered = ordered;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.batchSize = batchSize;
+    }
+
+    public int getMaxInFlightBatches() {
+        return maxInFlightBatches;
+    }
+
+    /**
+     * 设置在途批次上限，为0时取渲染线程数的4倍
+     */
+    public void setMaxInFlightBatches(int maxInFlightBatches) {
+        if (maxInFlightBatches < 0) {
+            throw new IllegalArgumentException("Max in-flight batches cannot be negative");
+        }
+        this.maxInFlightBatches = maxInFlightBatches;
+    }
+
+    public int getOutputBufferSize() {
+        return outputBufferSize;
+    }
+
+    public void setOutputBufferSize(int outputBufferSize) {
+        if (outputBufferSize < 1) {
+            throw new IllegalArgumentException("Output buffer size must be positive");
+        }
+        this.outputBufferSize = outputBufferSize;
+    }
+
+    public String getRecordSeparator() {
+        return recordSeparator;
+    }
+
+    public void setRecordSeparator(String recordSeparator) {
+        this.recordSeparator = recordSeparator != null ? recordSeparator : "";
+    }
+
+    public Environment getGlobals() {
+        return globals;
+    }
+
+    /**
+     * 设置所有行共享的变量，行内同名字段优先
+     */
+    public void setGlobals(Environment globals) {
+        this.globals = globals;
+    }
+
+    void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * 三个阶段之间的队列与在途批次计数
+     */
+    private static final class Stages {
+        final BlockingQueue<RecordBatch> pending = new LinkedBlockingQueue<>();
+
+        final BlockingQueue<RenderedBatch> rendered = new LinkedBlockingQueue<>();
+
+        // 已读取但尚未写出的批次
+        final Semaphore inFlight;
+
+        // 首个错误
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Stages(int inFlightLimit) {
+            this.inFlight = new Semaphore(inFlightLimit);
+        }
+
+        void fail(Throwable e) {
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    /**
+     * 渲染完成的批次，渲染失败时bytes为null
+     */
+    private static final class RenderedBatch {
+        static final RenderedBatch END = new RenderedBatch(-1, null, 0);
+
+        final long sequence;
+
+        final byte[] bytes;
+
+        final int rows;
+
+        RenderedBatch(long sequence, byte[] bytes, int rows) {
+            this.sequence = sequence;
+            this.bytes = bytes;
+            this.rows = rows;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.ldzsai.kelp.bulk;
+
+/**
+ * 批量渲染的统计结果
+ */
+public class BulkResult {
+    private final long rows;
+
+    private final long bytes;
+
+    private final long elapsedNanos;
+
+    BulkResult(long rows, long bytes, long elapsedNanos) {
+        this.rows = rows;
+        this.bytes = bytes;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * 获取写出的字节数
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+
+    /**
+     * 获取每秒渲染的行数
+     */
+    public double getRowsPerSecond() {
+        return elapsedNanos > 0 ? rows * 1e9 / elapsedNanos : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d rows, %.1f MB in %d ms (%.0f rows/s)", rows, bytes / (1024.0 * 1024.0),
+                getElapsedMillis(), getRowsPerSecond());
+    }
+}
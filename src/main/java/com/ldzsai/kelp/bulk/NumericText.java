@@ -0,0 +1,70 @@
+package com.ldzsai.kelp.bulk;
+
+/**
+ * 形如数字的字段：输出时保持原文，参与运算或比较时才转换为数值
+ * <p>
+ * 超长的编号、账号及末尾带0的小数按原文写出，不经过double的往返转换。
+ */
+final class NumericText extends Number implements CharSequence {
+    private static final long serialVersionUID = 1L;
+
+    private final String text;
+
+    NumericText(String text) {
+        this.text = text;
+    }
+
+    @Override
+    public int intValue() {
+        return (int) longValue();
+    }
+
+    @Override
+    public long longValue() {
+        // 超过18位或带小数时按double截断
+        if (text.indexOf('.') < 0 && text.length() <= 18) {
+            return Long.parseLong(text);
+        }
+        return (long) doubleValue();
+    }
+
+    @Override
+    public float floatValue() {
+        return (float) doubleValue();
+    }
+
+    @Override
+    public double doubleValue() {
+        return Double.parseDouble(text);
+    }
+
+    @Override
+    public int length() {
+        return text.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return text.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return text.subSequence(start, end);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof NumericText && text.equals(((NumericText) obj).text);
+    }
+
+    @Override
+    public int hashCode() {
+        return text.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
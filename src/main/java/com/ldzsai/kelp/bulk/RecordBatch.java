@@ -0,0 +1,42 @@
+package com.ldzsai.kelp.bulk;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 一批记录：同一映射窗口内各记录的起止位置，字段在渲染线程中解析
+ */
+final class RecordBatch {
+    // 结束标记
+    static final RecordBatch END = new RecordBatch(-1, null, 0, 0);
+
+    // 批次序号，从0开始
+    final long sequence;
+
+    // 记录所在的映射窗口
+    final ByteBuffer window;
+
+    // 首条记录的行号（不含列名行），从1开始
+    final long firstRow;
+
+    // 每条记录的起止位置
+    final int[] bounds;
+
+    int count;
+
+    RecordBatch(long sequence, ByteBuffer window, long firstRow, int capacity) {
+        this.sequence = sequence;
+        this.window = window;
+        this.firstRow = firstRow;
+        this.bounds = new int[capacity * 2];
+    }
+
+    boolean isFull() {
+        return count * 2 == bounds.length;
+    }
+
+    void add(int start, int end) {
+        bounds[count * 2] = start;
+        bounds[count * 2 + 1] = end;
+        count++;
+    }
+}
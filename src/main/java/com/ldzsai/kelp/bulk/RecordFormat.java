@@ -0,0 +1,51 @@
+package com.ldzsai.kelp.bulk;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * 批量渲染的输入格式
+ */
+public enum RecordFormat {
+    /**
+     * 逗号分隔，首行为列名，字段可用双引号包裹，引号内允许逗号、换行及转义的双引号""
+     */
+    CSV((byte) ','),
+
+    /**
+     * 制表符分隔，首行为列名，不支持引号
+     */
+    TSV((byte) '\t'),
+
+    /**
+     * 每行一个JSON对象，对象的成员即变量
+     */
+    NDJSON((byte) 0);
+
+    private final byte delimiter;
+
+    RecordFormat(byte delimiter) {
+        this.delimiter = delimiter;
+    }
+
+    byte getDelimiter() {
+        return delimiter;
+    }
+
+    /**
+     * 按文件扩展名推断格式，无法识别时为CSV
+     *
+     * @param path 文件路径
+     * @return 格式
+     */
+    public static RecordFormat of(Path path) {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".tsv") || name.endsWith(".tab")) {
+            return TSV;
+        }
+        if (name.endsWith(".ndjson") || name.endsWith(".jsonl")) {
+            return NDJSON;
+        }
+        return CSV;
+    }
+}
@@ -0,0 +1,197 @@
+package com.ldzsai.kelp.bulk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 通过内存映射读取输入文件并按行切分记录，只定位记录边界，不解析字段
+ * <p>
+ * 文件按窗口映射，跨窗口的记录从记录起点重新映射；单条记录超过窗口时窗口加倍。
+ * 同一批记录总是来自同一个窗口。
+ */
+final class RecordReader implements Closeable {
+    // 默认映射窗口大小
+    static final int DEFAULT_WINDOW_SIZE = 64 << 20;
+
+    // 最大映射窗口大小
+    private static final int MAX_WINDOW_SIZE = Integer.MAX_VALUE - 8;
+
+    // 窗口内没有完整的记录，需要重新映射
+    private static final int NEED_MORE = -1;
+
+    // 没有更多记录
+    private static final int EXHAUSTED = -2;
+
+    private final FileChannel channel;
+
+    private final RecordFormat format;
+
+    private final long fileSize;
+
+    private final int windowSize;
+
+    private MappedByteBuffer window;
+
+    // 当前窗口在文件中的起点
+    private long windowStart;
+
+    // 窗口内的读取位置
+    private int position;
+
+    // 列名，NDJSON为null
+    private final String[] header;
+
+    // 各列是否为数字列，由首条数据记录确定
+    private boolean[] numericColumns = new boolean[0];
+
+    RecordReader(Path path, RecordFormat format, int windowSize) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            this.format = format;
+            this.fileSize = channel.size();
+            this.windowSize = windowSize;
+            map(0, (int) Math.min(fileSize, windowSize));
+            // 跳过UTF-8 BOM
+            if (window.limit() >= 3 && (window.get(0) & 0xFF) == 0xEF && (window.get(1) & 0xFF) == 0xBB
+                    && (window.get(2) & 0xFF) == 0xBF) {
+                position = 3;
+            }
+            this.header = format == RecordFormat.NDJSON ? null : readHeader();
+            if (header != null) {
+                readColumnTypes();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    String[] getHeader() {
+        return header;
+    }
+
+    boolean[] getNumericColumns() {
+        return numericColumns;
+    }
+
+    private String[] readHeader() throws IOException {
+        RecordBatch first = next(-1, 0, 1);
+        if (first == null) {
+            return new String[0];
+        }
+        RowResolver parser = new RowResolver(format, new String[0], new boolean[0]);
+        parser.set(first.window, first.bounds[0], first.bounds[1]);
+        return parser.strings();
+    }
+
+    /**
+     * 预读首条数据记录确定数字列，读取位置退回记录起点
+     */
+    private void readColumnTypes() throws IOException {
+        RecordBatch first = next(-1, 0, 1);
+        if (first == null) {
+            return;
+        }
+        RowResolver parser = new RowResolver(format, new String[0], new boolean[0]);
+        parser.set(first.window, first.bounds[0], first.bounds[1]);
+        numericColumns = parser.numericFields();
+        position = first.bounds[0];
+    }
+
+    /**
+     * 读取下一批记录，跳过空行
+     *
+     * @param sequence  批次序号
+     * @param firstRow  首条记录的行号
+     * @param batchSize 每批最多记录数
+     * @return 一批记录，没有更多记录时为null
+     */
+    RecordBatch next(long sequence, long firstRow, int batchSize) throws IOException {
+        RecordBatch batch = null;
+        while (true) {
+            int end = findRecordEnd();
+            if (end == EXHAUSTED) {
+                return batch;
+            }
+            if (end == NEED_MORE) {
+                // 一批记录不能跨窗口
+                if (batch != null) {
+                    return batch;
+                }
+                remap();
+                continue;
+            }
+            int start = position;
+            position = end < window.limit() ? end + 1 : end;
+            int recordEnd = end;
+            if (recordEnd > start && window.get(recordEnd - 1) == '\r') {
+                recordEnd--;
+            }
+            if (recordEnd == start) {
+                continue;
+            }
+            if (batch == null) {
+                batch = new RecordBatch(sequence, window, firstRow, batchSize);
+            }
+            batch.add(start, recordEnd);
+            if (batch.isFull()) {
+                return batch;
+            }
+        }
+    }
+
+    /**
+     * 从当前位置查找记录结尾的换行符，CSV引号内的换行不结束记录
+     *
+     * @return 换行符位置；文件最后一条记录没有换行时为窗口结尾
+     */
+    private int findRecordEnd() {
+        int limit = window.limit();
+        boolean quotes = format == RecordFormat.CSV;
+        boolean quoted = false;
+        for (int i = position; i < limit; i++) {
+            byte b = window.get(i);
+            if (b == '"' && quotes) {
+                quoted = !quoted;
+            } else if (b == '\n' && !quoted) {
+                return i;
+            }
+        }
+        if (windowStart + limit < fileSize) {
+            return NEED_MORE;
+        }
+        return position < limit ? limit : EXHAUSTED;
+    }
+
+    /**
+     * 从当前记录起点重新映射窗口
+     */
+    private void remap() throws IOException {
+        long start = windowStart + position;
+        long remaining = fileSize - start;
+        int size = windowSize;
+        if (position == 0) {
+            // 单条记录超过窗口
+            if (window.capacity() >= MAX_WINDOW_SIZE) {
+                throw new IOException("Record at offset " + start + " exceeds " + MAX_WINDOW_SIZE + " bytes");
+            }
+            size = (int) Math.min((long) window.capacity() * 2, MAX_WINDOW_SIZE);
+        }
+        map(start, (int) Math.min(remaining, size));
+    }
+
+    private void map(long start, int size) throws IOException {
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        windowStart = start;
+        position = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
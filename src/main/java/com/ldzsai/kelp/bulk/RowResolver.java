@@ -0,0 +1,239 @@
+package com.ldzsai.kelp.bulk;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.ldzsai.kelp.json.JsonDocument;
+import com.ldzsai.kelp.resolver.VariableResolver;
+
+/**
+ * 当前记录的变量解析器，每个渲染线程一个，逐条记录复用
+ * <p>
+ * 设置记录时只切分字段边界，字段在首次读取时解码。字段类型按列确定，不随行变化：
+ * 首条数据记录中不带引号、形如不带前导零的整数或小数的列为数字列，数字列中不带引号、形如数字
+ * （允许前导零）的字段解码为{@link NumericText}，输出时保持原文，参与运算时才转换为数值；
+ * 其他字段为字符串。数字列的字段没有字符串方法，需要时先调用toString()。
+ * NDJSON记录包装为JsonDocument，成员按需解码。
+ */
+final class RowResolver implements VariableResolver {
+    // 尚未解码的字段
+    private static final Object UNSET = new Object();
+
+    // 字段标记：包含转义的双引号
+    private static final int ESCAPED = 1;
+
+    // 字段标记：带引号
+    private static final int QUOTED = 2;
+
+    private final RecordFormat format;
+
+    // 列名到字段序号
+    private final Map<String, Integer> columns = new HashMap<>();
+
+    // 各列是否为数字列
+    private final boolean[] numericColumns;
+
+    private ByteBuffer window;
+
+    // 每个字段的起点、终点和标记
+    private int[] fields = new int[48];
+
+    private int fieldCount;
+
+    // 已解码的字段
+    private Object[] values = new Object[16];
+
+    // 解码缓冲
+    private byte[] scratch = new byte[256];
+
+    private JsonDocument document;
+
+    RowResolver(RecordFormat format, String[] header, boolean[] numericColumns) {
+        this.format = format;
+        this.numericColumns = numericColumns;
+        for (int i = 0; header != null && i < header.length; i++) {
+            columns.putIfAbsent(header[i], i);
+        }
+    }
+
+    /**
+     * 切换到新的记录
+     *
+     * @param window 记录所在的窗口
+     * @param start  起点
+     * @param end    终点
+     */
+    void set(ByteBuffer window, int start, int end) {
+        this.window = window;
+        if (format == RecordFormat.NDJSON) {
+            ByteBuffer record = window.duplicate();
+            record.limit(end).position(start);
+            document = JsonDocument.of(record);
+            return;
+        }
+        split(start, end);
+        if (values.length < fieldCount) {
+            values = new Object[Math.max(fieldCount, values.length * 2)];
+        }
+        Arrays.fill(values, 0, fieldCount, UNSET);
+    }
+
+    @Override
+    public Object resolve(String name) {
+        if (format == RecordFormat.NDJSON) {
+            return document.has(name) ? document.get(name) : null;
+        }
+        Integer index = columns.get(name);
+        if (index == null || index >= fieldCount) {
+            return null;
+        }
+        Object value = values[index];
+        if (value == UNSET) {
+            value = decode(index, index < numericColumns.length && numericColumns[index]);
+            values[index] = value;
+        }
+        return value;
+    }
+
+    /**
+     * 以字符串形式返回全部字段，用于读取列名
+     */
+    String[] strings() {
+        String[] strings = new String[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            strings[i] = (String) decode(i, false);
+        }
+        return strings;
+    }
+
+    /**
+     * 判断各字段是否不带引号且形如不带前导零的数字，用于由首条数据记录确定数字列
+     */
+    boolean[] numericFields() {
+        boolean[] numeric = new boolean[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            numeric[i] = fields[i * 3 + 2] == 0 && isNumber(fields[i * 3], fields[i * 3 + 1], false);
+        }
+        return numeric;
+    }
+
+    /**
+     * 切分字段边界
+     */
+    private void split(int start, int end) {
+        byte delimiter = format.getDelimiter();
+        boolean quotes = format == RecordFormat.CSV;
+        fieldCount = 0;
+        int i = start;
+        while (true) {
+            int fieldStart;
+            int fieldEnd;
+            int flags = 0;
+            if (quotes && i < end && window.get(i) == '"') {
+                flags = QUOTED;
+                fieldStart = i + 1;
+                int j = fieldStart;
+                while (j < end) {
+                    if (window.get(j) == '"') {
+                        if (j + 1 < end && window.get(j + 1) == '"') {
+                            flags |= ESCAPED;
+                            j += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    j++;
+                }
+                fieldEnd = j;
+                // 忽略右引号与分隔符之间的内容
+                i = j + 1;
+                while (i < end && window.get(i) != delimiter) {
+                    i++;
+                }
+            } else {
+                fieldStart = i;
+                while (i < end && window.get(i) != delimiter) {
+                    i++;
+                }
+                fieldEnd = i;
+            }
+            addField(fieldStart, fieldEnd, flags);
+            if (i >= end) {
+                return;
+            }
+            // 跳过分隔符
+            i++;
+        }
+    }
+
+    private void addField(int start, int end, int flags) {
+        int offset = fieldCount * 3;
+        if (offset + 3 > fields.length) {
+            fields = Arrays.copyOf(fields, fields.length * 2);
+        }
+        fields[offset] = start;
+        fields[offset + 1] = end;
+        fields[offset + 2] = flags;
+        fieldCount++;
+    }
+
+    /**
+     * 解码字段
+     *
+     * @param index   字段序号
+     * @param numbers 是否将形如数字的字段包装为NumericText（数字列）
+     */
+    private Object decode(int index, boolean numbers) {
+        int start = fields[index * 3];
+        int end = fields[index * 3 + 1];
+        int flags = fields[index * 3 + 2];
+        if (scratch.length < end - start) {
+            scratch = new byte[Math.max(end - start, scratch.length * 2)];
+        }
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            byte b = window.get(i);
+            scratch[length++] = b;
+            // 转义的双引号只保留一个
+            if (b == '"' && (flags & ESCAPED) != 0) {
+                i++;
+            }
+        }
+        String text = new String(scratch, 0, length, StandardCharsets.UTF_8);
+        return numbers && flags == 0 && isNumber(start, end, true) ? new NumericText(text) : text;
+    }
+
+    /**
+     * 判断字段是否为-?(0|[1-9][0-9]*)(\.[0-9]+)?，允许前导零时为-?[0-9]+(\.[0-9]+)?
+     */
+    private boolean isNumber(int start, int end, boolean leadingZeros) {
+        int i = start;
+        if (i < end && window.get(i) == '-') {
+            i++;
+        }
+        int digits = i;
+        while (i < end && isDigit(window.get(i))) {
+            i++;
+        }
+        if (i == digits || (!leadingZeros && window.get(digits) == '0' && i - digits > 1)) {
+            return false;
+        }
+        if (i < end && window.get(i) == '.') {
+            int fraction = ++i;
+            while (i < end && isDigit(window.get(i))) {
+                i++;
+            }
+            if (i == fraction) {
+                return false;
+            }
+        }
+        return i == end;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+}
@@ -0,0 +1,32 @@
+package com.ldzsai.kelp.expression;
+
+/**
+ * 内置聚合函数调用，如sum(values)
+ */
+public class AggregateCall extends Expression {
+    private final AggregateFunction function;
+    private final Expression argument;
+
+    public AggregateCall(AggregateFunction function, Expression argument) {
+        this.function = function;
+        this.argument = argument;
+    }
+
+    public AggregateFunction getFunction() {
+        return function;
+    }
+
+    public Expression getArgument() {
+        return argument;
+    }
+
+    @Override
+    public Object evaluate(Environment env) throws Exception {
+        return function.apply(argument.evaluate(env));
+    }
+
+    @Override
+    public String toString() {
+        return function.getName() + "(" + argument + ")";
+    }
+}
@@ -0,0 +1,309 @@
+package com.ldzsai.kelp.expression;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import com.ldzsai.kelp.KelpException;
+
+/**
+ * 内置聚合函数，基本类型数组按元素类型使用专门的循环，不装箱
+ * <p>
+ * 整数数组的sum为Long，浮点数组及集合的sum为Double；avg为Double；
+ * min/max保持元素类型；count为Integer。空数组或空集合的avg/min/max为null。
+ */
+public enum AggregateFunction {
+    SUM("sum"),
+    AVG("avg"),
+    MIN("min"),
+    MAX("max"),
+    COUNT("count");
+
+    private final String name;
+
+    AggregateFunction(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 按名称查找内置函数
+     *
+     * @param name 函数名
+     * @return 内置函数，不存在时为null
+     */
+    public static AggregateFunction find(String name) {
+        for (AggregateFunction function : values()) {
+            if (function.name.equals(name)) {
+                return function;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 对数组或集合求值
+     *
+     * @param values 基本类型数组、对象数组或集合
+     * @return 聚合结果
+     */
+    public Object apply(Object values) throws KelpException {
+        if (values instanceof int[]) {
+            return apply((int[]) values);
+        } else if (values instanceof long[]) {
+            return apply((long[]) values);
+        } else if (values instanceof double[]) {
+            return apply((double[]) values);
+        } else if (values instanceof float[]) {
+            return apply((float[]) values);
+        } else if (values instanceof short[]) {
+            return apply((short[]) values);
+        } else if (values instanceof byte[]) {
+            return apply((byte[]) values);
+        } else if (values instanceof Object[]) {
+            return apply(Arrays.asList((Object[]) values));
+        } else if (values instanceof Collection) {
+            return apply((Collection<?>) values);
+        }
+        throw new KelpException(name + "() expects an array or collection, but got: " +
+                (values != null ? values.getClass().getSimpleName() : "null"));
+    }
+
+    private Object apply(int[] values) {
+        if (this == COUNT) {
+            return values.length;
+        }
+        if (values.length == 0) {
+            return this == SUM ? (Object) 0L : null;
+        }
+        switch (this) {
+            case MIN: {
+                int min = values[0];
+                for (int value : values) {
+                    min = Math.min(min, value);
+                }
+                return min;
+            }
+            case MAX: {
+                int max = values[0];
+                for (int value : values) {
+                    max = Math.max(max, value);
+                }
+                return max;
+            }
+            default: {
+                long sum = 0;
+                for (int value : values) {
+                    sum += value;
+                }
+                return this == SUM ? (Object) sum : (Object) ((double) sum / values.length);
+            }
+        }
+    }
+
+    private Object apply(long[] values) {
+        if (this == COUNT) {
+            return values.length;
+        }
+        if (values.length == 0) {
+            return this == SUM ? (Object) 0L : null;
+        }
+        switch (this) {
+            case MIN: {
+                long min = values[0];
+                for (long value : values) {
+                    min = Math.min(min, value);
+                }
+                return min;
+            }
+            case MAX: {
+                long max = values[0];
+                for (long value : values) {
+                    max = Math.max(max, value);
+                }
+                return max;
+            }
+            case SUM: {
+                long sum = 0;
+                for (long value : values) {
+                    sum += value;
+                }
+                return sum;
+            }
+            default: {
+                // 以double累加，避免long求和溢出
+                double sum = 0;
+                for (long value : values) {
+                    sum += value;
+                }
+                return sum / values.length;
+            }
+        }
+    }
+
+    private Object apply(double[] values) {
+        if (this == COUNT) {
+            return values.length;
+        }
+        if (values.length == 0) {
+            return this == SUM ? (Object) 0.0 : null;
+        }
+        switch (this) {
+            case MIN: {
+                double min = values[0];
+                for (double value : values) {
+                    min = Math.min(min, value);
+                }
+                return min;
+            }
+            case MAX: {
+                double max = values[0];
+                for (double value : values) {
+                    max = Math.max(max, value);
+                }
+                return max;
+            }
+            default: {
+                double sum = 0;
+                for (double value : values) {
+                    sum += value;
+                }
+                return this == SUM ? sum : sum / values.length;
+            }
+        }
+    }
+
+    private Object apply(float[] values) {
+        if (this == COUNT) {
+            return values.length;
+        }
+        if (values.length == 0) {
+            return this == SUM ? (Object) 0.0 : null;
+        }
+        switch (this) {
+            case MIN: {
+                float min = values[0];
+                for (float value : values) {
+                    min = Math.min(min, value);
+                }
+                return min;
+            }
+            case MAX: {
+                float max = values[0];
+                for (float value : values) {
+                    max = Math.max(max, value);
+                }
+                return max;
+            }
+            default: {
+                double sum = 0;
+                for (float value : values) {
+                    sum += value;
+                }
+                return this == SUM ? sum : sum / values.length;
+            }
+        }
+    }
+
+    private Object apply(short[] values) {
+        if (this == COUNT) {
+            return values.length;
+        }
+        if (values.length == 0) {
+            return this == SUM ? (Object) 0L : null;
+        }
+        switch (this) {
+            case MIN: {
+                short min = values[0];
+                for (short value : values) {
+                    min = (short) Math.min(min, value);
+                }
+                return min;
+            }
+            case MAX: {
+                short max = values[0];
+                for (short value : values) {
+                    max = (short) Math.max(max, value);
+                }
+                return max;
+            }
+            default: {
+                long sum = 0;
+                for (short value : values) {
+                    sum += value;
+                }
+                return this == SUM ? (Object) sum : (Object) ((double) sum / values.length);
+            }
+        }
+    }
+
+    private Object apply(byte[] values) {
+        if (this == COUNT) {
+            return values.length;
+        }
+        if (values.length == 0) {
+            return this == SUM ? (Object) 0L : null;
+        }
+        switch (this) {
+            case MIN: {
+                byte min = values[0];
+                for (byte value : values) {
+                    min = (byte) Math.min(min, value);
+                }
+                return min;
+            }
+            case MAX: {
+                byte max = values[0];
+                for (byte value : values) {
+                    max = (byte) Math.max(max, value);
+                }
+                return max;
+            }
+            default: {
+                long sum = 0;
+                for (byte value : values) {
+                    sum += value;
+                }
+                return this == SUM ? (Object) sum : (Object) ((double) sum / values.length);
+            }
+        }
+    }
+
+    /**
+     * 数字集合，按double计算，min/max返回原元素
+     */
+    private Object apply(Collection<?> values) throws KelpException {
+        if (this == COUNT) {
+            return values.size();
+        }
+        if (values.isEmpty()) {
+            return this == SUM ? (Object) 0.0 : null;
+        }
+        Object extreme = null;
+        double extremeValue = 0;
+        double sum = 0;
+        for (Object element : values) {
+            if (!(element instanceof Number)) {
+                throw new KelpException(name + "() requires numbers, but got: " +
+                        (element != null ? element.getClass().getSimpleName() : "null"));
+            }
+            double value = ((Number) element).doubleValue();
+            if (extreme == null || (this == MIN ? value < extremeValue : value > extremeValue)) {
+                extreme = element;
+                extremeValue = value;
+            }
+            sum += value;
+        }
+        switch (this) {
+            case MIN:
+            case MAX:
+                return extreme;
+            case SUM:
+                return sum;
+            default:
+                return sum / values.size();
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package com.ldzsai.kelp.expression;
 
+import java.lang.reflect.Array;
 import java.util.List;
 
 import com.ldzsai.kelp.KelpException;
+import com.ldzsai.kelp.json.JsonValue;
 
 public class ArrayAccess extends Expression {
     private final Expression baseExpression;
@@ -13,11 +15,27 @@ public class ArrayAccess extends Expression {
         this.indexExpression = indexExpression;
     }
 
+    public Expression getBaseExpression() {
+        return baseExpression;
+    }
+
+    public Expression getIndexExpression() {
+        return indexExpression;
+    }
+
     @Override
     public Object evaluate(Environment env) throws Exception {
-        Object array = baseExpression.evaluate(env);
-        Object indexObj = indexExpression.evaluate(env);
+        return access(baseExpression.evaluate(env), indexExpression.evaluate(env));
+    }
 
+    /**
+     * 按索引访问已求值的数组或List
+     * 
+     * @param array    数组或List
+     * @param indexObj 索引
+     * @return 元素
+     */
+    public static Object access(Object array, Object indexObj) throws KelpException {
         // 检查索引是否为数字类型
         if (!(indexObj instanceof Number)) {
             throw new KelpException("Array index must be a number, but got: " + 
@@ -35,6 +53,19 @@ public class ArrayAccess extends Expression {
             }
             return list[idx];
         } 
+        // 处理基本类型数组，按元素类型分别取值
+        else if (array != null && array.getClass().isArray()) {
+            int length = Array.getLength(array);
+            if (idx < 0 || idx >= length) {
+                throw new KelpException("Array index out of bounds: " + idx + 
+                    " (array length: " + length + ")");
+            }
+            return element(array, idx);
+        }
+        // 处理JSON数组
+        else if (array instanceof JsonValue) {
+            return ((JsonValue) array).get(idx);
+        }
         // 处理List类型
         else if (array instanceof List) {
             List<Object> list = (List<Object>) array;
@@ -51,6 +82,28 @@ public class ArrayAccess extends Expression {
         }
     }
 
+    /**
+     * 读取基本类型数组的元素
+     */
+    private static Object element(Object array, int idx) {
+        if (array instanceof int[]) {
+            return ((int[]) array)[idx];
+        } else if (array instanceof long[]) {
+            return ((long[]) array)[idx];
+        } else if (array instanceof double[]) {
+            return ((double[]) array)[idx];
+        } else if (array instanceof float[]) {
+            return ((float[]) array)[idx];
+        } else if (array instanceof short[]) {
+            return ((short[]) array)[idx];
+        } else if (array instanceof byte[]) {
+            return ((byte[]) array)[idx];
+        } else if (array instanceof char[]) {
+            return ((char[]) array)[idx];
+        }
+        return ((boolean[]) array)[idx];
+    }
+
     @Override
     public String toString() {
         return baseExpression.getClass().getSimpleName() + "[" + indexExpression + "]";
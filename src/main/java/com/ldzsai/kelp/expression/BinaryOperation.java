@@ -14,23 +14,80 @@ public class BinaryOperation extends Expression {
         this.right = right;
     }
 
+    public Expression getLeft() {
+        return left;
+    }
+
+    public Operator getOperator() {
+        return operator;
+    }
+
+    public Expression getRight() {
+        return right;
+    }
+
     @Override
     public Object evaluate(Environment env) throws Exception {
+        return evaluateDouble(env);
+    }
+
+    @Override
+    public void appendTo(Environment env, StringBuilder out) throws Exception {
+        out.append(evaluateDouble(env));
+    }
+
+    /**
+     * 求值为double，嵌套的二元运算之间不装箱
+     * 
+     * @param env 执行环境
+     * @return 运算结果
+     */
+    public double evaluateDouble(Environment env) throws Exception {
+        // 与装箱求值保持一致：先求值两侧，再依次检查左右操作数类型
+        if (left instanceof BinaryOperation) {
+            double leftValue = ((BinaryOperation) left).evaluateDouble(env);
+            if (right instanceof BinaryOperation) {
+                return compute(operator, leftValue, ((BinaryOperation) right).evaluateDouble(env));
+            }
+            return compute(operator, leftValue, toDouble(right.evaluate(env), false));
+        }
         Object leftResult = left.evaluate(env);
+        if (right instanceof BinaryOperation) {
+            double rightValue = ((BinaryOperation) right).evaluateDouble(env);
+            return compute(operator, toDouble(leftResult, true), rightValue);
+        }
         Object rightResult = right.evaluate(env);
+        double leftValue = toDouble(leftResult, true);
+        return compute(operator, leftValue, toDouble(rightResult, false));
+    }
 
-        // 类型检查和转换
-        if (!(leftResult instanceof Number)) {
-            throw new KelpException("Left operand must be a number, but got: " + leftResult.getClass().getSimpleName());
-        }
-        
-        if (!(rightResult instanceof Number)) {
-            throw new KelpException("Right operand must be a number, but got: " + rightResult.getClass().getSimpleName());
+    /**
+     * 对已求值的操作数执行运算
+     * 
+     * @param operator    运算符
+     * @param leftResult  左操作数
+     * @param rightResult 右操作数
+     * @return 运算结果
+     */
+    public static Object apply(Operator operator, Object leftResult, Object rightResult) throws KelpException {
+        double leftValue = toDouble(leftResult, true);
+        return compute(operator, leftValue, toDouble(rightResult, false));
+    }
+
+    /**
+     * 操作数类型检查和转换
+     */
+    private static double toDouble(Object value, boolean left) throws KelpException {
+        if (!(value instanceof Number)) {
+            throw new KelpException((left ? "Left" : "Right") + " operand must be a number, but got: " + value.getClass().getSimpleName());
         }
+        return ((Number) value).doubleValue();
+    }
 
-        double leftValue = ((Number) leftResult).doubleValue();
-        double rightValue = ((Number) rightResult).doubleValue();
-        
+    /**
+     * 带除零检查的运算
+     */
+    private static double compute(Operator operator, double leftValue, double rightValue) throws KelpException {
         // 检查除零错误
         if (operator == Operator.DIVIDE && rightValue == 0) {
             throw new KelpException("Division by zero");
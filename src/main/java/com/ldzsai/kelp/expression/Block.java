@@ -0,0 +1,67 @@
+package com.ldzsai.kelp.expression;
+
+import java.util.List;
+
+/**
+ * 块指令：包含片段序列的节点，如${#if}、${#each}
+ * <p>
+ * 块指令直接将结果写入输出，循环体逐元素写出，不物化集合和整段输出；
+ * 作为表达式求值时才整体拼接为字符串。
+ */
+public abstract class Block extends Expression {
+
+    /**
+     * 执行块指令并将结果写入输出
+     *
+     * @param env 执行环境
+     * @param out 输出
+     * @throws Exception 异常
+     */
+    public abstract void render(Environment env, Appendable out) throws Exception;
+
+    @Override
+    public Object evaluate(Environment env) throws Exception {
+        StringBuilder out = new StringBuilder();
+        render(env, out);
+        return out.toString();
+    }
+
+    @Override
+    public void appendTo(Environment env, StringBuilder out) throws Exception {
+        render(env, out);
+    }
+
+    /**
+     * 依次执行片段并写入输出：静态文本分块写出，块指令直接写出，其余片段求值后写出
+     *
+     * @param segments 片段
+     * @param env      执行环境
+     * @param out      输出
+     * @throws Exception 异常
+     */
+    public static void render(List<Expression> segments, Environment env, Appendable out) throws Exception {
+        if (out instanceof StringBuilder) {
+            // 直接追加到StringBuilder，数字不经过装箱和中间字符串
+            StringBuilder builder = (StringBuilder) out;
+            for (int i = 0, size = segments.size(); i < size; i++) {
+                segments.get(i).appendTo(env, builder);
+            }
+            return;
+        }
+        for (int i = 0, size = segments.size(); i < size; i++) {
+            Expression expression = segments.get(i);
+            if (expression instanceof TextSegment) {
+                ((TextSegment) expression).writeTo(out);
+            } else if (expression instanceof Block) {
+                ((Block) expression).render(env, out);
+            } else if (expression instanceof FormattedOutput) {
+                ((FormattedOutput) expression).render(env, out);
+            } else {
+                Object value = expression.evaluate(env);
+                if (value != null) {
+                    out.append(String.valueOf(value));
+                }
+            }
+        }
+    }
+}
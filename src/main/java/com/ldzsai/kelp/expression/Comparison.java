@@ -0,0 +1,71 @@
+package com.ldzsai.kelp.expression;
+
+import java.util.Objects;
+
+import com.ldzsai.kelp.ComparisonOperator;
+import com.ldzsai.kelp.KelpException;
+
+/**
+ * 比较表达式，数字按double比较，其余同类型的Comparable按compareTo比较，==/!=适用于任意值
+ */
+public class Comparison extends Expression {
+    private final Expression left;
+    private final ComparisonOperator operator;
+    private final Expression right;
+
+    public Comparison(Expression left, ComparisonOperator operator, Expression right) {
+        this.left = left;
+        this.operator = operator;
+        this.right = right;
+    }
+
+    public Expression getLeft() {
+        return left;
+    }
+
+    public ComparisonOperator getOperator() {
+        return operator;
+    }
+
+    public Expression getRight() {
+        return right;
+    }
+
+    @Override
+    public Object evaluate(Environment env) throws Exception {
+        return compare(operator, left.evaluate(env), right.evaluate(env));
+    }
+
+    /**
+     * 比较已求值的操作数
+     * 
+     * @param operator    比较运算符
+     * @param leftResult  左操作数
+     * @param rightResult 右操作数
+     * @return 比较结果
+     */
+    public static Boolean compare(ComparisonOperator operator, Object leftResult, Object rightResult) throws KelpException {
+        if (leftResult instanceof Number && rightResult instanceof Number) {
+            return operator.test(((Number) leftResult).doubleValue(), ((Number) rightResult).doubleValue());
+        }
+        if (operator.isEquality()) {
+            return Objects.equals(leftResult, rightResult) == (operator == ComparisonOperator.EQUAL);
+        }
+        if (leftResult instanceof Comparable && rightResult != null && leftResult.getClass() == rightResult.getClass()) {
+            @SuppressWarnings("unchecked")
+            Comparable<Object> comparable = (Comparable<Object>) leftResult;
+            return operator.test(comparable.compareTo(rightResult));
+        }
+        throw new KelpException("Cannot compare " + describe(leftResult) + " with " + describe(rightResult)
+                + " using '" + operator.getSymbol() + "'");
+    }
+
+    private static String describe(Object value) {
+        return value != null ? value.getClass().getSimpleName() : "null";
+    }
+
+    @Override
+    public String toString() {
+        return "(" + left + " " + operator.getSymbol() + " " + right + ")";
+    }
+}
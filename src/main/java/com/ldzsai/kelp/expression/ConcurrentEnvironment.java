@@ -0,0 +1,202 @@
+package com.ldzsai.kelp.expression;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Supplier;
+
+import com.ldzsai.kelp.resolver.VariableResolver;
+
+/**
+ * 可在渲染期间并发修改的环境
+ * <p>
+ * 变量保存在不可变的{@link PersistentHashMap}中，写入以CAS发布新版本，读取不加锁；
+ * 每次渲染通过{@link #snapshot()}取得当时的版本，渲染过程中看到的变量彼此一致，不受并发写入影响。
+ * 写入只复制被改动的路径，快照为O(1)，多个写入者之间互相重试，不阻塞读取。
+ * 本类及其快照不使用基类的变量存储，取得快照只分配一个视图对象。
+ */
+public class ConcurrentEnvironment extends Environment {
+    private static final AtomicReferenceFieldUpdater<ConcurrentEnvironment, Version> VERSION =
+            AtomicReferenceFieldUpdater.newUpdater(ConcurrentEnvironment.class, Version.class, "version");
+
+    // 当前版本
+    private volatile Version version = Version.EMPTY;
+
+    public ConcurrentEnvironment() {
+        this(null);
+    }
+
+    public ConcurrentEnvironment(VariableResolver resolver) {
+        super(resolver, false);
+    }
+
+    @Override
+    public void setVariable(String name, Object value) {
+        publish(Collections.singletonMap(name, value), false);
+    }
+
+    /**
+     * 原子地设置多个变量，渲染要么看到全部新值，要么全部看不到
+     *
+     * @param values 变量名到值的映射
+     */
+    public void setVariables(Map<String, ?> values) {
+        publish(values, false);
+    }
+
+    @Override
+    public void setLazy(String name, Supplier<?> supplier) {
+        if (supplier == null) {
+            throw new IllegalArgumentException("Supplier cannot be null");
+        }
+        publish(Collections.singletonMap(name, new LazyValue(supplier)), false);
+    }
+
+    @Override
+    public void setConstant(String name, Object value) {
+        publish(Collections.singletonMap(name, value), true);
+    }
+
+    @Override
+    public boolean isConstant(String name) {
+        return version.constants.get(name) != null;
+    }
+
+    @Override
+    public int getConstantsVersion() {
+        return version.constantsVersion;
+    }
+
+    /**
+     * 以当前版本为基础写入并发布，期间有其他写入时重试；
+     * 不可变变量名与变量值在同一版本中发布，普通写入在所基于的版本上检查，不会覆盖并发设置的不可变变量
+     */
+    private void publish(Map<String, ?> values, boolean constant) {
+        while (true) {
+            Version current = version;
+            PersistentHashMap variables = current.variables;
+            PersistentHashMap constants = current.constants;
+            for (Map.Entry<String, ?> entry : values.entrySet()) {
+                String name = entry.getKey();
+                if (constant) {
+                    constants = constants.put(name, Boolean.TRUE);
+                } else if (constants.get(name) != null) {
+                    throw new IllegalArgumentException("Variable '" + name + "' is a constant, use setConstant to change it");
+                }
+                variables = variables.put(name, entry.getValue());
+            }
+            if (!constant && variables == current.variables) {
+                return;
+            }
+            Version updated = new Version(variables, constants,
+                    constant ? current.constantsVersion + 1 : current.constantsVersion);
+            if (VERSION.compareAndSet(this, current, updated)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    Object lookup(String name) {
+        return version.variables.get(name);
+    }
+
+    /**
+     * 获取当前版本的只读视图，之后的写入对视图不可见
+     */
+    @Override
+    public Environment snapshot() {
+        return new Snapshot(version.variables, getResolver());
+    }
+
+    @Override
+    public Map<String, LazyValue> getLazyVariables() {
+        return lazyVariables(version.variables);
+    }
+
+    /**
+     * 复制环境，与原环境共享当前版本的全部节点
+     */
+    @Override
+    public ConcurrentEnvironment clone() {
+        ConcurrentEnvironment clone = new ConcurrentEnvironment(getResolver());
+        clone.version = version;
+        return clone;
+    }
+
+    private static Map<String, LazyValue> lazyVariables(PersistentHashMap variables) {
+        Map<String, LazyValue> lazy = new LinkedHashMap<>();
+        variables.forEach((name, value) -> {
+            if (value instanceof LazyValue) {
+                lazy.put(name, (LazyValue) value);
+            }
+        });
+        return Collections.unmodifiableMap(lazy);
+    }
+
+    /**
+     * 变量与不可变变量名的一个版本，整体以CAS替换
+     */
+    private static final class Version {
+        static final Version EMPTY = new Version(PersistentHashMap.EMPTY, PersistentHashMap.EMPTY, 0);
+
+        final PersistentHashMap variables;
+
+        // 不可变变量名，值为Boolean.TRUE
+        final PersistentHashMap constants;
+
+        // 不可变变量的设置次数
+        final int constantsVersion;
+
+        Version(PersistentHashMap variables, PersistentHashMap constants, int constantsVersion) {
+            this.variables = variables;
+            this.constants = constants;
+            this.constantsVersion = constantsVersion;
+        }
+    }
+
+    /**
+     * 某一版本的只读视图
+     */
+    private static final class Snapshot extends Environment {
+        private final PersistentHashMap variables;
+
+        Snapshot(PersistentHashMap variables, VariableResolver resolver) {
+            super(resolver, false);
+            this.variables = variables;
+        }
+
+        @Override
+        Object lookup(String name) {
+            return variables.get(name);
+        }
+
+        @Override
+        public void setVariable(String name, Object value) {
+            throw new UnsupportedOperationException("Environment snapshot is read-only");
+        }
+
+        @Override
+        public void setLazy(String name, Supplier<?> supplier) {
+            throw new UnsupportedOperationException("Environment snapshot is read-only");
+        }
+
+        @Override
+        public void setConstant(String name, Object value) {
+            throw new UnsupportedOperationException("Environment snapshot is read-only");
+        }
+
+        @Override
+        public Map<String, LazyValue> getLazyVariables() {
+            return lazyVariables(variables);
+        }
+
+        @Override
+        public Environment clone() {
+            ConcurrentEnvironment clone = new ConcurrentEnvironment(getResolver());
+            clone.version = new Version(variables, PersistentHashMap.EMPTY, 0);
+            return clone;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.ldzsai.kelp.expression;
+
+/**
+ * 模板特化时预先求得的值
+ */
+public class Constant extends Expression {
+    private final Object value;
+
+    public Constant(Object value) {
+        this.value = value;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    @Override
+    public Object evaluate(Environment env) {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return value instanceof String ? "'" + value + "'" : String.valueOf(value);
+    }
+}
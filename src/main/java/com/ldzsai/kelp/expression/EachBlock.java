@@ -0,0 +1,133 @@
+package com.ldzsai.kelp.expression;
+
+import java.lang.reflect.Array;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.stream.BaseStream;
+
+import com.ldzsai.kelp.BudgetTracker;
+import com.ldzsai.kelp.KelpException;
+import com.ldzsai.kelp.TemplateMetrics;
+
+/**
+ * 循环块：${#each item in items}...${#end}，${#each item, i in items}同时绑定从0开始的序号
+ * <p>
+ * 数据源可以是List、数组、Iterable、Iterator、Stream或Map（遍历entrySet），为null时不输出。
+ * 循环体按元素依次写入输出，Iterator和Stream按需拉取，百万行数据也不会物化集合或整段输出；
+ * 循环变量在同一次遍历中重新绑定复用，不为元素分配作用域。
+ */
+public class EachBlock extends Block {
+    // 循环变量名
+    private final String variable;
+
+    // 序号变量名，为null时不绑定
+    private final String indexVariable;
+
+    // 数据源
+    private final Expression source;
+
+    // 循环体片段
+    private final List<Expression> body;
+
+    // 每个元素计入预算的步数：循环体的节点数
+    private final long elementCost;
+
+    public EachBlock(String variable, String indexVariable, Expression source, List<Expression> body) {
+        this.variable = variable;
+        this.indexVariable = indexVariable;
+        this.source = source;
+        this.body = body;
+        long cost = 0;
+        for (Expression expression : body) {
+            cost += TemplateMetrics.nodeCount(expression);
+        }
+        this.elementCost = Math.max(1, cost);
+    }
+
+    public String getVariable() {
+        return variable;
+    }
+
+    public String getIndexVariable() {
+        return indexVariable;
+    }
+
+    public Expression getSource() {
+        return source;
+    }
+
+    public List<Expression> getBody() {
+        return Collections.unmodifiableList(body);
+    }
+
+    @Override
+    public void render(Environment env, Appendable out) throws Exception {
+        Object value = source.evaluate(env);
+        if (value == null) {
+            return;
+        }
+        LambdaScope indexScope = indexVariable != null ? new LambdaScope(env) : null;
+        LambdaScope scope = new LambdaScope(indexScope != null ? indexScope : env);
+        BudgetTracker tracker = BudgetTracker.current();
+
+        if (value instanceof List && value instanceof RandomAccess) {
+            List<?> list = (List<?>) value;
+            for (int i = 0; i < list.size(); i++) {
+                renderElement(scope, indexScope, list.get(i), i, out, tracker);
+            }
+        } else if (value instanceof Object[]) {
+            Object[] array = (Object[]) value;
+            for (int i = 0; i < array.length; i++) {
+                renderElement(scope, indexScope, array[i], i, out, tracker);
+            }
+        } else if (value.getClass().isArray()) {
+            // 基本类型数组
+            for (int i = 0, length = Array.getLength(value); i < length; i++) {
+                renderElement(scope, indexScope, Array.get(value, i), i, out, tracker);
+            }
+        } else {
+            renderAll(iterator(value), scope, indexScope, out, tracker);
+        }
+    }
+
+    private void renderAll(Iterator<?> iterator, LambdaScope scope, LambdaScope indexScope, Appendable out,
+            BudgetTracker tracker) throws Exception {
+        for (int i = 0; iterator.hasNext(); i++) {
+            renderElement(scope, indexScope, iterator.next(), i, out, tracker);
+        }
+    }
+
+    private void renderElement(LambdaScope scope, LambdaScope indexScope, Object element, int index, Appendable out,
+            BudgetTracker tracker) throws Exception {
+        if (tracker != null) {
+            tracker.charge(elementCost);
+        }
+        if (indexScope != null) {
+            indexScope.bind(indexVariable, index);
+        }
+        scope.bind(variable, element);
+        render(body, scope, out);
+    }
+
+    private static Iterator<?> iterator(Object value) throws KelpException {
+        if (value instanceof Iterable) {
+            return ((Iterable<?>) value).iterator();
+        } else if (value instanceof Iterator) {
+            return (Iterator<?>) value;
+        } else if (value instanceof BaseStream) {
+            return ((BaseStream<?, ?>) value).iterator();
+        } else if (value instanceof Map) {
+            return ((Map<?, ?>) value).entrySet().iterator();
+        }
+        throw new KelpException("Cannot iterate over " + value.getClass().getSimpleName() + " in #each");
+    }
+
+    @Override
+    public String toString() {
+        return "#each " + variable + (indexVariable != null ? ", " + indexVariable : "") + " in " + source + " "
+                + body + " #end";
+    }
+}
@@ -1,23 +1,169 @@
 package com.ldzsai.kelp.expression;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import com.ldzsai.kelp.resolver.VariableResolver;
 
 public class Environment implements Cloneable {
-    private final Map<String, Object> variables = new HashMap<>();
+    // 变量存储，由子类自行保存变量时为null
+    private final Map<String, Object> variables;
+
+    // 标记为不可变的变量名，模板特化时视为已知；由子类自行保存变量时为null
+    private final Set<String> constants;
+
+    // 不可变变量的设置次数，特化结果据此判断是否过期
+    private volatile int constantsVersion;
+
+    // 本环境中找不到的变量委托给解析器，为null时不委托
+    private final VariableResolver resolver;
+
+    public Environment() {
+        this(null);
+    }
+
+    /**
+     * 创建委托给解析器的环境，变量直接从调用方的数据结构读取，不复制；setVariable设置的变量优先
+     *
+     * @param resolver 变量解析器
+     */
+    public Environment(VariableResolver resolver) {
+        this.resolver = resolver;
+        this.variables = new HashMap<>();
+        this.constants = new HashSet<>();
+    }
+
+    /**
+     * 供自行保存变量的子类使用，不分配本类的变量存储；
+     * 子类需覆盖读写变量的方法，未覆盖的写入方法抛出UnsupportedOperationException
+     *
+     * @param resolver 变量解析器
+     * @param storage  是否分配变量存储
+     */
+    protected Environment(VariableResolver resolver, boolean storage) {
+        this.resolver = resolver;
+        this.variables = storage ? new HashMap<>() : null;
+        this.constants = storage ? new HashSet<>() : null;
+    }
 
     public void setVariable(String name, Object value) {
-        variables.put(name, value);
+        checkNotConstant(name);
+        storage().put(name, value);
+    }
+
+    /**
+     * 设置不可变变量，特化模板时依赖它的子树被预先求值；重新设置会使已有的特化结果过期
+     *
+     * @param name  变量名
+     * @param value 变量值，应为不可变对象
+     * @see com.ldzsai.kelp.CompiledTemplate#specialize(Environment)
+     */
+    public void setConstant(String name, Object value) {
+        storage().put(name, value);
+        constants.add(name);
+        constantsVersion++;
+    }
+
+    public boolean isConstant(String name) {
+        return constants != null && constants.contains(name);
+    }
+
+    public int getConstantsVersion() {
+        return constantsVersion;
+    }
+
+    private Map<String, Object> storage() {
+        if (variables == null) {
+            throw new UnsupportedOperationException(getClass().getSimpleName() + " does not store variables");
+        }
+        return variables;
+    }
+
+    private void checkNotConstant(String name) {
+        if (isConstant(name)) {
+            throw new IllegalArgumentException("Variable '" + name + "' is a constant, use setConstant to change it");
+        }
+    }
+
+    /**
+     * 设置延迟计算的变量，提供者在首次读取时执行，结果在后续读取及并发求值的片段间共享
+     *
+     * @param name     变量名
+     * @param supplier 值提供者
+     */
+    public void setLazy(String name, Supplier<?> supplier) {
+        if (supplier == null) {
+            throw new IllegalArgumentException("Supplier cannot be null");
+        }
+        checkNotConstant(name);
+        storage().put(name, new LazyValue(supplier));
     }
 
     public Object getVariable(String name) {
-        return variables.get(name);
+        Object value = lookup(name);
+        if (value instanceof LazyValue) {
+            return ((LazyValue) value).get();
+        }
+        if (value == null && resolver != null) {
+            return resolver.resolve(name);
+        }
+        return value;
+    }
+
+    /**
+     * 读取本环境中保存的原始值，延迟变量为LazyValue
+     */
+    Object lookup(String name) {
+        return variables != null ? variables.get(name) : null;
+    }
+
+    /**
+     * 获取供一次渲染使用的一致视图；本环境只应在单线程中修改，直接返回自身
+     *
+     * @return 环境视图
+     * @see ConcurrentEnvironment
+     */
+    public Environment snapshot() {
+        return this;
+    }
+
+    /**
+     * 获取全部延迟变量，可用于统计哪些变量被模板实际读取
+     *
+     * @return 变量名到延迟值的只读映射
+     */
+    public Map<String, LazyValue> getLazyVariables() {
+        if (variables == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, LazyValue> lazy = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : variables.entrySet()) {
+            if (entry.getValue() instanceof LazyValue) {
+                lazy.put(entry.getKey(), (LazyValue) entry.getValue());
+            }
+        }
+        return Collections.unmodifiableMap(lazy);
+    }
+
+    public VariableResolver getResolver() {
+        return resolver;
     }
 
+    /**
+     * 复制环境，延迟变量与原环境共享计算结果，解析器与原环境共享，不可变变量仍为不可变
+     */
     @Override
     public Environment clone() {
-        Environment clone = new Environment();
-        clone.variables.putAll(variables);
+        Environment clone = new Environment(resolver);
+        if (variables != null) {
+            clone.variables.putAll(variables);
+            clone.constants.addAll(constants);
+        }
         return clone;
     }
-}
\ No newline at end of file
+}
@@ -1,14 +1,66 @@
 package com.ldzsai.kelp.expression;
 
 public abstract class Expression {
-    public abstract Object evaluate(Environment env) throws Exception;
-}
-
-
-
+    // 在模板中的起止偏移，由解析器设置，未知时为-1
+    private int start = -1;
+    private int end = -1;
 
+    public abstract Object evaluate(Environment env) throws Exception;
 
+    public int getStart() {
+        return start;
+    }
 
+    public int getEnd() {
+        return end;
+    }
 
+    /**
+     * 设置节点在模板中的起止偏移
+     *
+     * @param start 起始偏移
+     * @param end   结束偏移（不含）
+     */
+    public void setSpan(int start, int end) {
+        this.start = start;
+        this.end = end;
+    }
 
+    /**
+     * 求值并将结果追加到输出，null不输出
+     * <p>
+     * 数字节点覆盖此方法直接追加基本类型，省去装箱及中间字符串。
+     *
+     * @param env 执行环境
+     * @param out 输出
+     * @throws Exception 异常
+     */
+    public void appendTo(Environment env, StringBuilder out) throws Exception {
+        append(out, evaluate(env));
+    }
 
+    /**
+     * 将值追加到输出，结果与String.valueOf一致，常见类型不产生中间字符串
+     *
+     * @param out   输出
+     * @param value 值
+     */
+    public static void append(StringBuilder out, Object value) {
+        if (value == null) {
+            return;
+        }
+        if (value instanceof CharSequence) {
+            out.append((CharSequence) value);
+        } else if (value instanceof Integer) {
+            out.append(((Integer) value).intValue());
+        } else if (value instanceof Double) {
+            out.append(((Double) value).doubleValue());
+        } else if (value instanceof Long) {
+            out.append(((Long) value).longValue());
+        } else if (value instanceof Boolean) {
+            out.append(((Boolean) value).booleanValue());
+        } else {
+            out.append(String.valueOf(value));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.ldzsai.kelp.expression;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * 语法树重写工具
+ */
+public final class ExpressionRewriter {
+    private ExpressionRewriter() {
+    }
+
+    /**
+     * 以转换后的子节点重建节点，保留起止偏移
+     * <p>
+     * 字面量、变量等叶子节点及无法识别的节点原样返回；lambda依赖参数，其函数体不转换。
+     *
+     * @param expr     表达式
+     * @param children 子节点转换
+     * @return 新节点
+     */
+    public static Expression rebuild(Expression expr, UnaryOperator<Expression> children) {
+        Expression rebuilt;
+        if (expr instanceof BinaryOperation) {
+            BinaryOperation operation = (BinaryOperation) expr;
+            rebuilt = new BinaryOperation(children.apply(operation.getLeft()), operation.getOperator(),
+                    children.apply(operation.getRight()));
+        } else if (expr instanceof Comparison) {
+            Comparison comparison = (Comparison) expr;
+            rebuilt = new Comparison(children.apply(comparison.getLeft()), comparison.getOperator(),
+                    children.apply(comparison.getRight()));
+        } else if (expr instanceof ArrayAccess) {
+            ArrayAccess access = (ArrayAccess) expr;
+            rebuilt = new ArrayAccess(children.apply(access.getBaseExpression()),
+                    children.apply(access.getIndexExpression()));
+        } else if (expr instanceof ObjectKeyAccess) {
+            ObjectKeyAccess access = (ObjectKeyAccess) expr;
+            rebuilt = new ObjectKeyAccess(children.apply(access.getBaseExpression()),
+                    children.apply(access.getKeyExpression()));
+        } else if (expr instanceof PathAccess) {
+            PathAccess access = (PathAccess) expr;
+            rebuilt = new PathAccess(children.apply(access.getBase()), access.getSteps());
+        } else if (expr instanceof FunctionCall) {
+            FunctionCall call = (FunctionCall) expr;
+            List<Expression> arguments = new ArrayList<>(call.getArguments().size());
+            for (Expression argument : call.getArguments()) {
+                arguments.add(children.apply(argument));
+            }
+            rebuilt = new FunctionCall(children.apply(call.getTarget()), call.getName(), arguments);
+        } else if (expr instanceof AggregateCall) {
+            AggregateCall call = (AggregateCall) expr;
+            rebuilt = new AggregateCall(call.getFunction(), children.apply(call.getArgument()));
+        } else if (expr instanceof Pipeline) {
+            Pipeline pipeline = (Pipeline) expr;
+            Pipeline stages = new Pipeline(children.apply(pipeline.getSource()), pipeline.getParallelThreshold());
+            for (int i = 0; i < pipeline.getStages().size(); i++) {
+                stages = stages.then(pipeline.getStageTypes().get(i), pipeline.getStages().get(i));
+            }
+            rebuilt = pipeline.isOpen() ? stages : stages.end(pipeline.getTerminal(), pipeline.getPredicate());
+        } else if (expr instanceof FormattedOutput) {
+            FormattedOutput output = (FormattedOutput) expr;
+            rebuilt = new FormattedOutput(children.apply(output.getExpression()), output.getEncoder(),
+                    output.getNumberStyle());
+        } else if (expr instanceof StringMatch) {
+            StringMatch match = (StringMatch) expr;
+            rebuilt = match.withArguments(rebuild(match.getArguments(), children));
+        } else if (expr instanceof IfBlock) {
+            IfBlock block = (IfBlock) expr;
+            List<List<Expression>> branches = new ArrayList<>(block.getBranches().size());
+            for (List<Expression> branch : block.getBranches()) {
+                branches.add(rebuild(branch, children));
+            }
+            rebuilt = new IfBlock(rebuild(block.getConditions(), children), branches,
+                    rebuild(block.getOtherwise(), children));
+        } else if (expr instanceof EachBlock) {
+            EachBlock block = (EachBlock) expr;
+            rebuilt = new EachBlock(block.getVariable(), block.getIndexVariable(), children.apply(block.getSource()),
+                    rebuild(block.getBody(), children));
+        } else {
+            return expr;
+        }
+        rebuilt.setSpan(expr.getStart(), expr.getEnd());
+        return rebuilt;
+    }
+
+    private static List<Expression> rebuild(List<Expression> expressions, UnaryOperator<Expression> children) {
+        List<Expression> rebuilt = new ArrayList<>(expressions.size());
+        for (Expression expression : expressions) {
+            rebuilt.add(children.apply(expression));
+        }
+        return rebuilt;
+    }
+}
@@ -3,12 +3,25 @@ package com.ldzsai.kelp.expression;
 public class FloatLiteral extends Expression {
     private final double value;
 
+    // 缓存装箱后的值，求值时不再装箱
+    private final Double boxed;
+
     public FloatLiteral(double value) {
         this.value = value;
+        this.boxed = value;
+    }
+
+    public double getValue() {
+        return value;
     }
 
     @Override
     public Object evaluate(Environment env) {
-        return value;
+        return boxed;
+    }
+
+    @Override
+    public void appendTo(Environment env, StringBuilder out) {
+        out.append(value);
     }
 }
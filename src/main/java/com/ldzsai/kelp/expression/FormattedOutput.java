@@ -0,0 +1,158 @@
+package com.ldzsai.kelp.expression;
+
+import java.io.IOException;
+
+import com.ldzsai.kelp.format.NumberStyle;
+import com.ldzsai.kelp.format.OutputEncoder;
+
+/**
+ * 带输出编码和数字格式的顶层片段，如${name | html}
+ * <p>
+ * 字符串值经编码器转义后追加，数字按数字格式直接写出数位，二者均不产生中间字符串；
+ * 数字和布尔值无需转义，不经过编码器。
+ */
+public class FormattedOutput extends Expression {
+    // 每个线程复用的格式化缓冲，用于输出不是StringBuilder时
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(64));
+
+    // 缓冲保留的最大容量，超出时丢弃，避免长期持有大缓冲
+    private static final int MAX_BUFFER = 8192;
+
+    private final Expression expression;
+
+    private final OutputEncoder encoder;
+
+    // 数字格式，为null时与未格式化的输出一致
+    private final NumberStyle numberStyle;
+
+    public FormattedOutput(Expression expression, OutputEncoder encoder, NumberStyle numberStyle) {
+        this.expression = expression;
+        this.encoder = encoder;
+        this.numberStyle = numberStyle;
+    }
+
+    public Expression getExpression() {
+        return expression;
+    }
+
+    public OutputEncoder getEncoder() {
+        return encoder;
+    }
+
+    public NumberStyle getNumberStyle() {
+        return numberStyle;
+    }
+
+    /**
+     * 求值为格式化后的字符串，null仍为null
+     */
+    @Override
+    public Object evaluate(Environment env) throws Exception {
+        Object value = expression.evaluate(env);
+        if (value == null) {
+            return null;
+        }
+        StringBuilder buffer = acquire();
+        try {
+            format(buffer, value);
+            return buffer.toString();
+        } finally {
+            release(buffer);
+        }
+    }
+
+    @Override
+    public void appendTo(Environment env, StringBuilder out) throws Exception {
+        if (expression instanceof BinaryOperation) {
+            // 算术结果不装箱
+            if (numberStyle == null) {
+                expression.appendTo(env, out);
+            } else {
+                numberStyle.append(out, ((BinaryOperation) expression).evaluateDouble(env));
+            }
+            return;
+        }
+        format(out, expression.evaluate(env));
+    }
+
+    /**
+     * 将已求值的结果格式化后写入输出，供编译执行后端调用
+     *
+     * @param value 值
+     * @param out   输出
+     */
+    public void write(Object value, Appendable out) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (out instanceof StringBuilder) {
+            format((StringBuilder) out, value);
+            return;
+        }
+        StringBuilder buffer = acquire();
+        try {
+            format(buffer, value);
+            out.append(buffer);
+        } finally {
+            release(buffer);
+        }
+    }
+
+    /**
+     * 求值并将格式化后的结果写入输出，不产生中间字符串
+     *
+     * @param env 执行环境
+     * @param out 输出
+     */
+    public void render(Environment env, Appendable out) throws Exception {
+        write(expression.evaluate(env), out);
+    }
+
+    /**
+     * 获取当前线程的格式化缓冲；缓冲正在使用时（格式化时重入）返回新的缓冲
+     */
+    private static StringBuilder acquire() {
+        StringBuilder buffer = BUFFER.get();
+        return buffer.length() == 0 ? buffer : new StringBuilder();
+    }
+
+    private static void release(StringBuilder buffer) {
+        if (buffer.capacity() > MAX_BUFFER) {
+            if (BUFFER.get() == buffer) {
+                BUFFER.set(new StringBuilder(64));
+            }
+            return;
+        }
+        buffer.setLength(0);
+    }
+
+    /**
+     * 格式化值并追加到输出，null不输出
+     *
+     * @param out   输出
+     * @param value 值
+     */
+    public void format(StringBuilder out, Object value) {
+        if (value == null) {
+            return;
+        }
+        if (value instanceof CharSequence) {
+            encoder.encode((CharSequence) value, out);
+        } else if (value instanceof Number) {
+            if (numberStyle != null) {
+                numberStyle.append(out, (Number) value);
+            } else {
+                Expression.append(out, value);
+            }
+        } else if (value instanceof Boolean) {
+            out.append(((Boolean) value).booleanValue());
+        } else {
+            encoder.encode(String.valueOf(value), out);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(expression);
+    }
+}
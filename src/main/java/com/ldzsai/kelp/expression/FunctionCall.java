@@ -2,15 +2,22 @@ package com.ldzsai.kelp.expression;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import com.ldzsai.kelp.BudgetTracker;
 import com.ldzsai.kelp.KelpException;
+import com.ldzsai.kelp.jfr.KelpEvents;
+import com.ldzsai.kelp.jfr.MethodResolutionEvent;
+import com.ldzsai.kelp.jfr.SlowEvaluationEvent;
 
 /**
  * 函数调用表达式
  */
 public class FunctionCall extends Expression {
+    // 每个线程复用的参数数组
+    private static final ThreadLocal<ArgumentFrames> FRAMES = ThreadLocal.withInitial(ArgumentFrames::new);
+
     // 函数调用表达式的目标
     private final Expression target;
 
@@ -20,20 +27,98 @@ public class FunctionCall extends Expression {
     // 函数参数
     private final List<Expression> arguments;
 
+    // 单态内联缓存
+    private volatile CallProfile profile;
+
     public FunctionCall(Expression target, String name, List<Expression> arguments) {
         this.target = target;
         this.name = name;
         this.arguments = arguments;
     }
 
+    public Expression getTarget() {
+        return target;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<Expression> getArguments() {
+        return arguments;
+    }
+
+    /**
+     * 获取最近一次调用的解析结果，尚未调用时为null
+     */
+    public CallProfile getProfile() {
+        return profile;
+    }
+
     @Override
     public Object evaluate(Environment env) throws Exception {
-        // 解析参数
-        List<Object> args = buildArgs(env, arguments);
+        SlowEvaluationEvent event = KelpEvents.isTracking() ? new SlowEvaluationEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        ArgumentFrames frames = FRAMES.get();
+        Object[] args = frames.acquire(arguments.size());
+        try {
+            // 解析参数
+            for (int i = 0; i < args.length; i++) {
+                args[i] = arguments.get(i).evaluate(env);
+            }
 
-        // 获取目标对象或类
-        Object targetObject = target.evaluate(env);
-        
+            // 获取目标对象或类
+            Object targetObject = target.evaluate(env);
+
+            return invoke(this, name, targetObject, args);
+        } finally {
+            frames.release(args);
+            if (event != null) {
+                commit(event, name, getStart(), getEnd());
+            }
+        }
+    }
+
+    /**
+     * 在已求值的目标对象或类上按名称调用方法，供字节码虚拟机和分层编译代码的通用路径使用；
+     * 记录的方法调用事件只包含调用本身，没有源码位置
+     * 
+     * @param name         方法名
+     * @param targetObject 目标对象或类
+     * @param args         已求值的参数
+     * @return 调用结果
+     */
+    public static Object invoke(String name, Object targetObject, Object[] args) throws KelpException {
+        if (!KelpEvents.isTracking()) {
+            return invoke(null, name, targetObject, args);
+        }
+        SlowEvaluationEvent event = new SlowEvaluationEvent();
+        event.begin();
+        try {
+            return invoke(null, name, targetObject, args);
+        } finally {
+            commit(event, name, -1, -1);
+        }
+    }
+
+    private static void commit(SlowEvaluationEvent event, String name, int start, int end) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.setTemplateHash(KelpEvents.currentTemplateHash());
+            event.setKind("call");
+            event.setName(name);
+            event.setStart(start);
+            event.setEnd(end);
+            event.commit();
+        }
+    }
+
+    /**
+     * 调用方法，调用点不为null时优先复用并更新其单态内联缓存
+     */
+    private static Object invoke(FunctionCall site, String name, Object targetObject, Object[] args) throws KelpException {
         if (targetObject == null) {
             throw new KelpException("Target object is null for method: " + name);
         }
@@ -42,28 +127,57 @@ public class FunctionCall extends Expression {
             // 获取目标类
             Class<?> targetClass = targetObject instanceof Class<?> ? (Class<?>) targetObject : targetObject.getClass();
 
-            // 获取参数类型
-            Class<?>[] argTypes = args.stream().map(Object::getClass).toArray(Class<?>[]::new);
+            // 命中内联缓存时跳过方法查找
+            CallProfile cached = site != null ? site.profile : null;
+            Method method = cached != null && cached.matches(targetObject, targetClass, args) ? cached.method : null;
 
-            // 查找方法
-            Method method = findMethod(targetClass, name, argTypes);
-            
             if (method == null) {
-                throw new KelpException("Method not found: " + name + " with arguments of types: " + 
-                    String.join(", ", getSimpleNames(argTypes)));
-            }
+                // 获取参数类型
+                Class<?>[] argTypes = new Class<?>[args.length];
+                for (int i = 0; i < args.length; i++) {
+                    argTypes[i] = args[i].getClass();
+                }
 
-            // 设置方法可访问
-            method.setAccessible(true);
+                // 查找方法
+                MethodResolutionEvent resolution = new MethodResolutionEvent();
+                resolution.begin();
+                method = findMethod(targetClass, name, argTypes);
+                resolution.end();
+                if (resolution.shouldCommit()) {
+                    resolution.setTemplateHash(KelpEvents.currentTemplateHash());
+                    resolution.setMethodName(name);
+                    resolution.setTargetClass(targetClass);
+                    resolution.setArgumentTypes(String.join(", ", getSimpleNames(argTypes)));
+                    resolution.setResolved(method != null);
+                    resolution.setCacheReplaced(cached != null);
+                    resolution.setStart(site != null ? site.getStart() : -1);
+                    resolution.setEnd(site != null ? site.getEnd() : -1);
+                    resolution.commit();
+                }
+
+                if (method == null) {
+                    throw new KelpException("Method not found: " + name + " with arguments of types: " + 
+                        String.join(", ", getSimpleNames(argTypes)));
+                }
+
+                // 设置方法可访问
+                method.setAccessible(true);
+
+                if (site != null) {
+                    site.profile = new CallProfile(targetObject.getClass(), targetClass, argTypes, method);
+                }
+            }
 
             // 判断是否为静态方法
             boolean isStatic = Modifier.isStatic(method.getModifiers());
 
-            // 调用方法
-            return isStatic ? method.invoke(null, args.toArray()) : method.invoke(targetObject, args.toArray());
+            // 调用方法，返回后检查截止时间和取消标记
+            Object result = isStatic ? method.invoke(null, args) : method.invoke(targetObject, args);
+            BudgetTracker.checkpoint();
+            return result;
         } catch (Exception e) {
             if (e instanceof KelpException) {
-                throw e;
+                throw (KelpException) e;
             }
             throw new KelpException("Error invoking method " + name + ": " + e.getMessage());
         }
@@ -72,7 +186,7 @@ public class FunctionCall extends Expression {
     /**
      * 查找匹配的方法（包括参数类型转换）
      */
-    private Method findMethod(Class<?> targetClass, String name, Class<?>[] argTypes) {
+    public static Method findMethod(Class<?> targetClass, String name, Class<?>[] argTypes) {
         try {
             // 首先尝试精确匹配
             return targetClass.getMethod(name, argTypes);
@@ -90,7 +204,7 @@ public class FunctionCall extends Expression {
     /**
      * 检查参数类型是否兼容
      */
-    private boolean isCompatible(Class<?>[] methodParamTypes, Class<?>[] argTypes) {
+    private static boolean isCompatible(Class<?>[] methodParamTypes, Class<?>[] argTypes) {
         if (methodParamTypes.length != argTypes.length) {
             return false;
         }
@@ -106,7 +220,7 @@ public class FunctionCall extends Expression {
     /**
      * 检查类型是否可以赋值
      */
-    private boolean isAssignable(Class<?> paramType, Class<?> argType) {
+    private static boolean isAssignable(Class<?> paramType, Class<?> argType) {
         if (paramType.isAssignableFrom(argType)) {
             return true;
         }
@@ -138,7 +252,7 @@ public class FunctionCall extends Expression {
     /**
      * 获取类名列表
      */
-    private String[] getSimpleNames(Class<?>[] classes) {
+    private static String[] getSimpleNames(Class<?>[] classes) {
         String[] names = new String[classes.length];
         for (int i = 0; i < classes.length; i++) {
             names[i] = classes[i].getSimpleName();
@@ -147,18 +261,90 @@ public class FunctionCall extends Expression {
     }
 
     /**
-     * 解析参数列表
-     * 
-     * @param env  上下文
-     * @param args 参数表达式列表（参数支持exp、常量、字符串等）
-     * @return 参数列表
-     * @throws Exception 错误
+     * 线程内的参数数组栈，按调用深度和参数个数复用，嵌套调用及重入互不覆盖
      */
-    private List<Object> buildArgs(Environment env, List<Expression> args) throws Exception {
-        List<Object> result = new ArrayList<Object>();
-        for (Expression exp : args) {
-            result.add(exp.evaluate(env));
+    private static final class ArgumentFrames {
+        // [调用深度][参数个数]
+        private Object[][][] frames = new Object[8][][];
+
+        // 当前调用深度
+        private int depth;
+
+        Object[] acquire(int argc) {
+            if (depth == frames.length) {
+                frames = Arrays.copyOf(frames, depth * 2);
+            }
+            Object[][] byArity = frames[depth];
+            if (byArity == null || byArity.length <= argc) {
+                byArity = byArity == null ? new Object[argc + 1][] : Arrays.copyOf(byArity, argc + 1);
+                frames[depth] = byArity;
+            }
+            if (byArity[argc] == null) {
+                byArity[argc] = new Object[argc];
+            }
+            depth++;
+            return byArity[argc];
+        }
+
+        void release(Object[] args) {
+            // 清除引用，避免参数对象被线程长期持有
+            Arrays.fill(args, null);
+            depth--;
+        }
+    }
+
+    /**
+     * 调用点的解析结果：目标的运行时类型、参数类型及解析到的方法
+     */
+    public static final class CallProfile {
+        // 目标对象自身的类型，目标为Class对象时为Class.class
+        private final Class<?> receiverClass;
+
+        // 查找方法所用的类
+        private final Class<?> targetClass;
+
+        // 参数类型
+        private final Class<?>[] argTypes;
+
+        // 解析到的方法
+        private final Method method;
+
+        CallProfile(Class<?> receiverClass, Class<?> targetClass, Class<?>[] argTypes, Method method) {
+            this.receiverClass = receiverClass;
+            this.targetClass = targetClass;
+            this.argTypes = argTypes;
+            this.method = method;
+        }
+
+        public Class<?> getReceiverClass() {
+            return receiverClass;
+        }
+
+        public Class<?> getTargetClass() {
+            return targetClass;
+        }
+
+        public Class<?>[] getArgTypes() {
+            return argTypes.clone();
+        }
+
+        public Method getMethod() {
+            return method;
+        }
+
+        /**
+         * 判断本次调用的目标及参数类型是否与缓存一致
+         */
+        boolean matches(Object targetObject, Class<?> targetClass, Object[] args) {
+            if (this.targetClass != targetClass || receiverClass != targetObject.getClass() || argTypes.length != args.length) {
+                return false;
+            }
+            for (int i = 0; i < args.length; i++) {
+                if (args[i] == null || args[i].getClass() != argTypes[i]) {
+                    return false;
+                }
+            }
+            return true;
         }
-        return result;
     }
-}
\ No newline at end of file
+}
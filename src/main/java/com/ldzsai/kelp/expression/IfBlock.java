@@ -0,0 +1,75 @@
+package com.ldzsai.kelp.expression;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.ldzsai.kelp.KelpException;
+
+/**
+ * 条件块：${#if a}...${#elseif b}...${#else}...${#end}
+ * <p>
+ * 条件须为布尔值，依次判断，只执行第一个成立的分支；都不成立时执行else分支。
+ */
+public class IfBlock extends Block {
+    // 各分支的条件
+    private final List<Expression> conditions;
+
+    // 各分支的片段，与条件一一对应
+    private final List<List<Expression>> branches;
+
+    // else分支的片段，没有else时为空
+    private final List<Expression> otherwise;
+
+    public IfBlock(List<Expression> conditions, List<List<Expression>> branches, List<Expression> otherwise) {
+        if (conditions.isEmpty() || conditions.size() != branches.size()) {
+            throw new IllegalArgumentException("Each branch must have a condition");
+        }
+        this.conditions = conditions;
+        this.branches = branches;
+        this.otherwise = otherwise;
+    }
+
+    public List<Expression> getConditions() {
+        return Collections.unmodifiableList(conditions);
+    }
+
+    public List<List<Expression>> getBranches() {
+        return Collections.unmodifiableList(branches);
+    }
+
+    public List<Expression> getOtherwise() {
+        return Collections.unmodifiableList(otherwise);
+    }
+
+    @Override
+    public void render(Environment env, Appendable out) throws Exception {
+        for (int i = 0, size = conditions.size(); i < size; i++) {
+            if (test(conditions.get(i), env)) {
+                render(branches.get(i), env, out);
+                return;
+            }
+        }
+        render(otherwise, env, out);
+    }
+
+    private static boolean test(Expression condition, Environment env) throws Exception {
+        Object value = condition.evaluate(env);
+        if (!(value instanceof Boolean)) {
+            throw new KelpException("Condition of #if must be a boolean, but got: " +
+                    (value != null ? value.getClass().getSimpleName() : "null"));
+        }
+        return (Boolean) value;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < conditions.size(); i++) {
+            sb.append(i == 0 ? "#if " : " #elseif ").append(conditions.get(i)).append(" ").append(branches.get(i));
+        }
+        if (!otherwise.isEmpty()) {
+            sb.append(" #else ").append(otherwise);
+        }
+        return sb.append(" #end").toString();
+    }
+}
@@ -3,8 +3,12 @@ package com.ldzsai.kelp.expression;
 public class IntegerLiteral extends Expression {
     private final int value;
 
+    // 缓存装箱后的值，求值时不再装箱
+    private final Integer boxed;
+
     public IntegerLiteral(int value) {
         this.value = value;
+        this.boxed = value;
     }
 
     public int getValue() {
@@ -13,6 +17,11 @@ public class IntegerLiteral extends Expression {
 
     @Override
     public Object evaluate(Environment env) {
-        return value;
+        return boxed;
+    }
+
+    @Override
+    public void appendTo(Environment env, StringBuilder out) {
+        out.append(value);
     }
 }
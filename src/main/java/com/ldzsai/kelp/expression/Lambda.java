@@ -0,0 +1,49 @@
+package com.ldzsai.kelp.expression;
+
+import com.ldzsai.kelp.KelpException;
+
+/**
+ * 单参数lambda表达式，只能作为集合运算符的参数
+ */
+public class Lambda extends Expression {
+    // 参数名
+    private final String parameter;
+
+    // 函数体
+    private final Expression body;
+
+    public Lambda(String parameter, Expression body) {
+        this.parameter = parameter;
+        this.body = body;
+    }
+
+    public String getParameter() {
+        return parameter;
+    }
+
+    public Expression getBody() {
+        return body;
+    }
+
+    /**
+     * 在作用域中绑定参数并求值函数体
+     * 
+     * @param scope 作用域
+     * @param value 参数值
+     * @return 函数体的值
+     */
+    public Object apply(LambdaScope scope, Object value) throws Exception {
+        scope.bind(parameter, value);
+        return body.evaluate(scope);
+    }
+
+    @Override
+    public Object evaluate(Environment env) throws Exception {
+        throw new KelpException("Lambda expression can only be used as an argument of a collection operator");
+    }
+
+    @Override
+    public String toString() {
+        return parameter + " -> " + body;
+    }
+}
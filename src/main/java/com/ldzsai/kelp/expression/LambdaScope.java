@@ -0,0 +1,75 @@
+package com.ldzsai.kelp.expression;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * lambda作用域，绑定一个参数，其余变量从外层环境读取
+ * <p>
+ * 作用域在同一次遍历中对每个元素重新绑定复用，不为元素分配新对象；作用域本身不分配变量存储，
+ * 并行求值时每个元素一个作用域的开销只有一个对象。
+ */
+public class LambdaScope extends Environment {
+    // 外层环境
+    private final Environment parent;
+
+    // 参数名
+    private String name;
+
+    // 参数值
+    private Object value;
+
+    public LambdaScope(Environment parent) {
+        super(null, false);
+        this.parent = parent;
+    }
+
+    /**
+     * 绑定参数
+     * 
+     * @param name  参数名
+     * @param value 参数值
+     */
+    public void bind(String name, Object value) {
+        this.name = name;
+        this.value = value;
+    }
+
+    @Override
+    public void setVariable(String name, Object value) {
+        parent.setVariable(name, value);
+    }
+
+    @Override
+    public void setLazy(String name, Supplier<?> supplier) {
+        parent.setLazy(name, supplier);
+    }
+
+    @Override
+    public void setConstant(String name, Object value) {
+        parent.setConstant(name, value);
+    }
+
+    @Override
+    public boolean isConstant(String name) {
+        return !name.equals(this.name) && parent.isConstant(name);
+    }
+
+    @Override
+    public int getConstantsVersion() {
+        return parent.getConstantsVersion();
+    }
+
+    @Override
+    public Map<String, LazyValue> getLazyVariables() {
+        return parent.getLazyVariables();
+    }
+
+    @Override
+    public Object getVariable(String name) {
+        if (name.equals(this.name)) {
+            return value;
+        }
+        return parent.getVariable(name);
+    }
+}
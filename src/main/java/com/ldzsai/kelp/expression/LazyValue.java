@@ -0,0 +1,67 @@
+package com.ldzsai.kelp.expression;
+
+import java.util.function.Supplier;
+
+/**
+ * 延迟计算的变量值，首次读取时调用提供者并缓存结果
+ * <p>
+ * 提供者成功执行至多一次；并发读取时只有一个线程执行提供者，其余线程等待并读取同一结果。
+ * 提供者抛出异常时不缓存，下次读取重新执行。
+ */
+public final class LazyValue {
+    private final Supplier<?> supplier;
+
+    // 计算结果，computed为true后不再变化
+    private Object value;
+
+    // volatile写发布value
+    private volatile boolean computed;
+
+    // 读取次数，允许并发下少量计数丢失
+    private long accessCount;
+
+    // 提供者耗时
+    private long computeNanos;
+
+    LazyValue(Supplier<?> supplier) {
+        this.supplier = supplier;
+    }
+
+    /**
+     * 获取值，首次读取时计算
+     *
+     * @return 值
+     */
+    public Object get() {
+        accessCount++;
+        if (!computed) {
+            synchronized (this) {
+                if (!computed) {
+                    long start = System.nanoTime();
+                    value = supplier.get();
+                    computeNanos = System.nanoTime() - start;
+                    computed = true;
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * 是否已经计算
+     */
+    public boolean isComputed() {
+        return computed;
+    }
+
+    public long getAccessCount() {
+        return accessCount;
+    }
+
+    /**
+     * 获取提供者耗时（纳秒），未计算时为0
+     */
+    public long getComputeNanos() {
+        return computed ? computeNanos : 0;
+    }
+}
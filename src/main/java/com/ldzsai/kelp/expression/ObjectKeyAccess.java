@@ -3,6 +3,7 @@ package com.ldzsai.kelp.expression;
 import java.util.Map;
 
 import com.ldzsai.kelp.KelpException;
+import com.ldzsai.kelp.json.JsonValue;
 
 public class ObjectKeyAccess extends Expression {
     private final Expression baseExpression;
@@ -13,16 +14,41 @@ public class ObjectKeyAccess extends Expression {
         this.keyExpression = keyExpression;
     }
 
+    public Expression getBaseExpression() {
+        return baseExpression;
+    }
+
+    public Expression getKeyExpression() {
+        return keyExpression;
+    }
+
     @Override
     public Object evaluate(Environment env) throws Exception {
-        Object base = baseExpression.evaluate(env);
-        Object key = keyExpression.evaluate(env);
+        return access(baseExpression.evaluate(env), keyExpression.evaluate(env));
+    }
 
+    /**
+     * 按键访问已求值的对象
+     * 
+     * @param base 对象
+     * @param key  键
+     * @return 键对应的值
+     */
+    public static Object access(Object base, Object key) throws KelpException {
         // 处理字符串直接返回的情况
         if (base instanceof String) {
             return base;
         }
 
+        // JSON文档按需解码成员
+        if (base instanceof JsonValue) {
+            if (!(key instanceof String)) {
+                throw new KelpException("Expected a string key but got " + 
+                    (key != null ? key.getClass().getSimpleName() : "null"));
+            }
+            return ((JsonValue) base).get((String) key);
+        }
+
         // 检查基础对象是否为Map类型
         if (!(base instanceof Map)) {
             throw new KelpException("Expected an object (Map) but got " + 
@@ -0,0 +1,176 @@
+package com.ldzsai.kelp.expression;
+
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import com.ldzsai.kelp.KelpException;
+import com.ldzsai.kelp.json.JsonValue;
+
+/**
+ * 静态访问路径，如ctx.tenant.settings['locale'].items[0]，由连续的属性/常量键/常量索引访问合并而成
+ * <p>
+ * 一次循环逐级访问，Map每级只查找一次；每级缓存上次见到的容器类型，类型不变时跳过instanceof分派。
+ * 语义与逐级的ObjectKeyAccess/ArrayAccess一致。
+ */
+public class PathAccess extends Expression {
+    // 容器类型
+    private static final byte UNKNOWN = 0;
+    private static final byte MAP = 1;
+    private static final byte LIST = 2;
+    private static final byte ARRAY = 3;
+    private static final byte JSON = 4;
+    // 其他类型，使用逐级访问的通用逻辑
+    private static final byte OTHER = 5;
+
+    // 起始表达式
+    private final Expression base;
+
+    // 各级的键（String）或索引（Integer）
+    private final Object[] steps;
+
+    // 各级上次见到的容器类及其类型
+    private final LevelCache[] levels;
+
+    public PathAccess(Expression base, Object[] steps) {
+        for (Object step : steps) {
+            if (!(step instanceof String) && !(step instanceof Integer)) {
+                throw new IllegalArgumentException("Path step must be a String key or an Integer index");
+            }
+        }
+        this.base = base;
+        this.steps = steps.clone();
+        this.levels = new LevelCache[steps.length];
+    }
+
+    public Expression getBase() {
+        return base;
+    }
+
+    public Object[] getSteps() {
+        return steps.clone();
+    }
+
+    /**
+     * 展开为等价的逐级访问节点
+     *
+     * @return 嵌套的ObjectKeyAccess/ArrayAccess
+     */
+    public Expression expand() {
+        Expression expr = base;
+        for (Object step : steps) {
+            if (step instanceof Integer) {
+                expr = new ArrayAccess(expr, new IntegerLiteral((Integer) step));
+            } else {
+                expr = new ObjectKeyAccess(expr, new StringLiteral((String) step));
+            }
+        }
+        return expr;
+    }
+
+    @Override
+    public Object evaluate(Environment env) throws Exception {
+        Object current = base.evaluate(env);
+        for (int i = 0; i < steps.length; i++) {
+            Object step = steps[i];
+            byte kind = UNKNOWN;
+            if (current != null) {
+                LevelCache level = levels[i];
+                if (level != null && level.type == current.getClass()) {
+                    kind = level.kind;
+                } else {
+                    kind = classify(current, step instanceof Integer);
+                    levels[i] = new LevelCache(current.getClass(), kind);
+                }
+            }
+            current = step(current, step, kind);
+        }
+        return current;
+    }
+
+    /**
+     * 访问一级
+     */
+    @SuppressWarnings("unchecked")
+    private static Object step(Object container, Object step, byte kind) throws KelpException {
+        switch (kind) {
+            case MAP: {
+                Map<String, ?> map = (Map<String, ?>) container;
+                Object value = map.get(step);
+                if (value == null && !map.containsKey(step)) {
+                    throw new KelpException("Cannot find the key '" + step + "' in the object");
+                }
+                return value;
+            }
+            case LIST: {
+                List<Object> list = (List<Object>) container;
+                int idx = (Integer) step;
+                if (idx >= 0 && idx < list.size()) {
+                    return list.get(idx);
+                }
+                break;
+            }
+            case ARRAY: {
+                Object[] array = (Object[]) container;
+                int idx = (Integer) step;
+                if (idx >= 0 && idx < array.length) {
+                    return array[idx];
+                }
+                break;
+            }
+            case JSON:
+                return step instanceof Integer ? ((JsonValue) container).get((Integer) step)
+                        : ((JsonValue) container).get((String) step);
+            default:
+                break;
+        }
+        // 其他类型及越界：使用逐级访问的通用逻辑，保证结果和错误信息一致
+        return step instanceof Integer ? ArrayAccess.access(container, step) : ObjectKeyAccess.access(container, step);
+    }
+
+    /**
+     * 判断容器类型
+     */
+    private static byte classify(Object container, boolean indexStep) {
+        if (container instanceof JsonValue) {
+            return JSON;
+        }
+        if (indexStep) {
+            if (container instanceof Object[]) {
+                return ARRAY;
+            }
+            // 链表按索引访问较慢，仍走通用逻辑
+            if (container instanceof List && container instanceof RandomAccess) {
+                return LIST;
+            }
+            return OTHER;
+        }
+        return container instanceof Map ? MAP : OTHER;
+    }
+
+    /**
+     * 单级的类型缓存，类与类型一起替换，并发读取时不会错配
+     */
+    private static final class LevelCache {
+        private final Class<?> type;
+        private final byte kind;
+
+        LevelCache(Class<?> type, byte kind) {
+            this.type = type;
+            this.kind = kind;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(String.valueOf(base));
+        for (Object step : steps) {
+            if (step instanceof Integer) {
+                sb.append('[').append(step).append(']');
+            } else {
+                sb.append('.').append(step);
+            }
+        }
+        return sb.toString();
+    }
+}
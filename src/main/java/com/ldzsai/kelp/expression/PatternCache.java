@@ -0,0 +1,65 @@
+package com.ldzsai.kelp.expression;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import com.ldzsai.kelp.KelpException;
+
+/**
+ * 运行时才确定的正则表达式的共享缓存，所有模板共用
+ * <p>
+ * 缓存达到上限时整体清空，避免由数据拼出的表达式无限增长；字面量表达式在编译时预编译，不经过缓存。
+ */
+public final class PatternCache {
+    // 缓存的表达式数上限
+    public static final int MAX_SIZE = 512;
+
+    private static final Map<String, Pattern> PATTERNS = new ConcurrentHashMap<>();
+
+    private PatternCache() {
+    }
+
+    /**
+     * 获取编译后的正则表达式
+     *
+     * @param regex 正则表达式
+     * @return 编译结果
+     * @throws KelpException 表达式语法错误
+     */
+    public static Pattern get(String regex) throws KelpException {
+        Pattern pattern = PATTERNS.get(regex);
+        if (pattern == null) {
+            pattern = compile(regex);
+            if (PATTERNS.size() >= MAX_SIZE) {
+                PATTERNS.clear();
+            }
+            PATTERNS.put(regex, pattern);
+        }
+        return pattern;
+    }
+
+    /**
+     * 编译正则表达式，语法错误转换为KelpException
+     *
+     * @param regex 正则表达式
+     * @return 编译结果
+     * @throws KelpException 表达式语法错误
+     */
+    public static Pattern compile(String regex) throws KelpException {
+        try {
+            return Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            throw new KelpException("Invalid regular expression '" + regex + "': " + e.getDescription(), e);
+        }
+    }
+
+    public static int size() {
+        return PATTERNS.size();
+    }
+
+    public static void clear() {
+        PATTERNS.clear();
+    }
+}
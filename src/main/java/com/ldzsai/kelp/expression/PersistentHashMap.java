@@ -0,0 +1,219 @@
+package com.ldzsai.kelp.expression;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * 不可变的哈希数组映射字典树（HAMT），put返回新版本，与旧版本共享未改动的节点
+ * <p>
+ * 每层按哈希值的5位选择分支，节点只为存在的分支分配数组槽位；哈希值完全相同的键放在冲突节点中线性查找。
+ * 读取不加锁、不分配对象，一次写入只复制从根到叶子路径上的节点。
+ */
+final class PersistentHashMap {
+    static final PersistentHashMap EMPTY = new PersistentHashMap(BitmapNode.EMPTY, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * 获取键对应的值
+     *
+     * @param key 键
+     * @return 值，不存在时为null
+     */
+    Object get(String key) {
+        return root.get(key, hash(key), 0);
+    }
+
+    /**
+     * 设置键的值
+     *
+     * @param key   键
+     * @param value 值，可以为null
+     * @return 新版本，值未改变时返回自身
+     */
+    PersistentHashMap put(String key, Object value) {
+        boolean[] added = new boolean[1];
+        Node node = root.put(key, hash(key), 0, value, added);
+        return node == root ? this : new PersistentHashMap(node, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * 遍历全部键值对，顺序不确定
+     */
+    void forEach(BiConsumer<String, Object> action) {
+        root.forEach(action);
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & 31);
+    }
+
+    private interface Node {
+        Object get(String key, int hash, int shift);
+
+        Node put(String key, int hash, int shift, Object value, boolean[] added);
+
+        void forEach(BiConsumer<String, Object> action);
+    }
+
+    /**
+     * 按位图压缩的分支节点，array中依次存放键和值；键为null时值为下一层节点
+     */
+    private static final class BitmapNode implements Node {
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        private final int bitmap;
+        private final Object[] array;
+
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        @Override
+        public Object get(String key, int hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+            Object k = array[index];
+            Object v = array[index + 1];
+            if (k == null) {
+                return ((Node) v).get(key, hash, shift + 5);
+            }
+            return key.equals(k) ? v : null;
+        }
+
+        @Override
+        public Node put(String key, int hash, int shift, Object value, boolean[] added) {
+            int bit = bit(hash, shift);
+            int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+            if ((bitmap & bit) == 0) {
+                added[0] = true;
+                Object[] copy = new Object[array.length + 2];
+                System.arraycopy(array, 0, copy, 0, index);
+                copy[index] = key;
+                copy[index + 1] = value;
+                System.arraycopy(array, index, copy, index + 2, array.length - index);
+                return new BitmapNode(bitmap | bit, copy);
+            }
+            Object k = array[index];
+            Object v = array[index + 1];
+            if (k == null) {
+                Node child = ((Node) v).put(key, hash, shift + 5, value, added);
+                return child == v ? this : with(index + 1, child);
+            }
+            if (key.equals(k)) {
+                return v == value ? this : with(index + 1, value);
+            }
+            // 两个键落在同一分支，下移一层
+            added[0] = true;
+            Object[] copy = array.clone();
+            copy[index] = null;
+            copy[index + 1] = split(shift + 5, (String) k, v, hash, key, value);
+            return new BitmapNode(bitmap, copy);
+        }
+
+        private BitmapNode with(int index, Object value) {
+            Object[] copy = array.clone();
+            copy[index] = value;
+            return new BitmapNode(bitmap, copy);
+        }
+
+        @Override
+        public void forEach(BiConsumer<String, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i] == null) {
+                    ((Node) array[i + 1]).forEach(action);
+                } else {
+                    action.accept((String) array[i], array[i + 1]);
+                }
+            }
+        }
+    }
+
+    /**
+     * 创建包含两个键的节点，哈希值相同时为冲突节点
+     */
+    private static Node split(int shift, String key1, Object value1, int hash2, String key2, Object value2) {
+        int hash1 = hash(key1);
+        if (hash1 == hash2) {
+            return new CollisionNode(hash1, new Object[] { key1, value1, key2, value2 });
+        }
+        boolean[] added = new boolean[1];
+        return BitmapNode.EMPTY.put(key1, hash1, shift, value1, added).put(key2, hash2, shift, value2, added);
+    }
+
+    /**
+     * 哈希值完全相同的键值对
+     */
+    private static final class CollisionNode implements Node {
+        private final int hash;
+        private final Object[] array;
+
+        CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        @Override
+        public Object get(String key, int hash, int shift) {
+            if (hash != this.hash) {
+                return null;
+            }
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return array[i + 1];
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Node put(String key, int hash, int shift, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                // 放入分支节点后再插入新键
+                return new BitmapNode(bit(this.hash, shift), new Object[] { null, this })
+                        .put(key, hash, shift, value, added);
+            }
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    if (array[i + 1] == value) {
+                        return this;
+                    }
+                    Object[] copy = array.clone();
+                    copy[i + 1] = value;
+                    return new CollisionNode(hash, copy);
+                }
+            }
+            added[0] = true;
+            Object[] copy = Arrays.copyOf(array, array.length + 2);
+            copy[array.length] = key;
+            copy[array.length + 1] = value;
+            return new CollisionNode(hash, copy);
+        }
+
+        @Override
+        public void forEach(BiConsumer<String, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                action.accept((String) array[i], array[i + 1]);
+            }
+        }
+    }
+}
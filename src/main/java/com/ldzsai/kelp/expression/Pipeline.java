@@ -0,0 +1,357 @@
+package com.ldzsai.kelp.expression;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.ldzsai.kelp.BudgetTracker;
+import com.ldzsai.kelp.KelpException;
+import com.ldzsai.kelp.TemplateMetrics;
+
+/**
+ * 集合运算管道，如items.filter(i -> i.qty > 0).map(i -> i.price * i.qty).sum()
+ * <p>
+ * 连续的filter/map在解析时合并为一个节点，求值时对每个元素依次应用全部阶段并直接累积到终结操作，
+ * 不产生中间集合；any/all在结果确定后立即停止。元素数量达到并行阈值时按Spliterator拆分并行求值。
+ */
+public class Pipeline extends Expression {
+    // 默认并行阈值
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 10_000;
+
+    // 被filter过滤掉的元素
+    private static final Object FILTERED = new Object();
+
+    /**
+     * 中间操作
+     */
+    public enum StageType {
+        FILTER, MAP
+    }
+
+    /**
+     * 终结操作
+     */
+    public enum Terminal {
+        // 收集为List
+        LIST,
+        // 元素个数
+        COUNT,
+        // 数字之和
+        SUM,
+        // 任一元素满足条件
+        ANY,
+        // 全部元素满足条件
+        ALL
+    }
+
+    // 数据源
+    private final Expression source;
+
+    // 并行阈值
+    private final int parallelThreshold;
+
+    // 中间操作类型
+    private final List<StageType> stageTypes;
+
+    // 中间操作函数
+    private final List<Lambda> stages;
+
+    // 终结操作
+    private final Terminal terminal;
+
+    // any/all的条件
+    private final Lambda predicate;
+
+    // 每个元素的求值步数：各函数体的节点数之和，至少为1
+    private final long elementCost;
+
+    public Pipeline(Expression source) {
+        this(source, DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * 创建管道
+     *
+     * @param source            数据源
+     * @param parallelThreshold 并行阈值，元素数量达到阈值的集合并行求值
+     */
+    public Pipeline(Expression source, int parallelThreshold) {
+        this(source, Collections.emptyList(), Collections.emptyList(), Terminal.LIST, null, parallelThreshold);
+        if (parallelThreshold < 1) {
+            throw new IllegalArgumentException("Threshold must be positive");
+        }
+    }
+
+    private Pipeline(Expression source, List<StageType> stageTypes, List<Lambda> stages, Terminal terminal, Lambda predicate,
+            int parallelThreshold) {
+        this.source = source;
+        this.parallelThreshold = parallelThreshold;
+        this.stageTypes = stageTypes;
+        this.stages = stages;
+        this.terminal = terminal;
+        this.predicate = predicate;
+        long cost = 0;
+        for (Lambda lambda : TemplateMetrics.lambdas(this)) {
+            cost += TemplateMetrics.nodeCount(lambda.getBody());
+        }
+        this.elementCost = Math.max(1, cost);
+    }
+
+    public Expression getSource() {
+        return source;
+    }
+
+    public List<StageType> getStageTypes() {
+        return Collections.unmodifiableList(stageTypes);
+    }
+
+    public List<Lambda> getStages() {
+        return Collections.unmodifiableList(stages);
+    }
+
+    public Terminal getTerminal() {
+        return terminal;
+    }
+
+    public Lambda getPredicate() {
+        return predicate;
+    }
+
+    /**
+     * 是否还能追加操作（尚未指定终结操作）
+     */
+    public boolean isOpen() {
+        return terminal == Terminal.LIST;
+    }
+
+    /**
+     * 追加中间操作
+     * 
+     * @param type   操作类型
+     * @param lambda 操作函数
+     * @return 新的管道
+     */
+    public Pipeline then(StageType type, Lambda lambda) {
+        List<StageType> types = new ArrayList<>(stageTypes);
+        types.add(type);
+        List<Lambda> lambdas = new ArrayList<>(stages);
+        lambdas.add(lambda);
+        return new Pipeline(source, types, lambdas, terminal, predicate, parallelThreshold);
+    }
+
+    /**
+     * 指定终结操作
+     * 
+     * @param terminal  终结操作
+     * @param predicate any/all的条件，其余为null
+     * @return 新的管道
+     */
+    public Pipeline end(Terminal terminal, Lambda predicate) {
+        return new Pipeline(source, stageTypes, stages, terminal, predicate, parallelThreshold);
+    }
+
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    @Override
+    public Object evaluate(Environment env) throws Exception {
+        Object value = source.evaluate(env);
+        Iterable<?> elements;
+        if (value instanceof Iterable) {
+            elements = (Iterable<?>) value;
+        } else if (value instanceof Object[]) {
+            elements = Arrays.asList((Object[]) value);
+        } else {
+            throw new KelpException("Expected a collection or array but got " +
+                    (value != null ? value.getClass().getSimpleName() : "null"));
+        }
+
+        BudgetTracker tracker = BudgetTracker.current();
+        if (elements instanceof Collection && ((Collection<?>) elements).size() >= parallelThreshold) {
+            return evaluateParallel(env, elements.spliterator(), tracker);
+        }
+        return evaluateSequential(env, elements, tracker);
+    }
+
+    /**
+     * 单次遍历：依次应用各阶段并累积结果
+     */
+    private Object evaluateSequential(Environment env, Iterable<?> elements, BudgetTracker tracker) throws Exception {
+        LambdaScope scope = new LambdaScope(env);
+        List<Object> list = terminal == Terminal.LIST ? new ArrayList<>() : null;
+        int count = 0;
+        double sum = 0;
+        for (Object element : elements) {
+            if (tracker != null) {
+                tracker.charge(elementCost);
+            }
+            Object value = applyStages(scope, element);
+            if (value == FILTERED) {
+                continue;
+            }
+            switch (terminal) {
+                case LIST:
+                    list.add(value);
+                    break;
+                case COUNT:
+                    count++;
+                    break;
+                case SUM:
+                    sum += toDouble(value);
+                    break;
+                case ANY:
+                    if (test(predicate, scope, value)) {
+                        return Boolean.TRUE;
+                    }
+                    break;
+                default:
+                    if (!test(predicate, scope, value)) {
+                        return Boolean.FALSE;
+                    }
+                    break;
+            }
+        }
+        switch (terminal) {
+            case LIST:
+                return list;
+            case COUNT:
+                return count;
+            case SUM:
+                return sum;
+            case ANY:
+                return Boolean.FALSE;
+            default:
+                return Boolean.TRUE;
+        }
+    }
+
+    /**
+     * 并行求值，每个元素使用独立的作用域；求和的累加顺序与顺序求值不同。
+     * 预算计数绑定到执行lambda的线程，lambda中的方法调用同样检查截止时间和取消标记
+     */
+    private Object evaluateParallel(Environment env, Spliterator<?> spliterator, BudgetTracker tracker) throws Exception {
+        try {
+            Stream<Object> values = StreamSupport.stream(spliterator, true)
+                    .map(element -> unchecked(tracker, () -> {
+                        if (tracker != null) {
+                            tracker.charge(elementCost);
+                        }
+                        return applyStages(new LambdaScope(env), element);
+                    }))
+                    .filter(value -> value != FILTERED);
+            switch (terminal) {
+                case LIST:
+                    return values.collect(Collectors.toList());
+                case COUNT:
+                    return (int) values.count();
+                case SUM:
+                    return values.mapToDouble(value -> unchecked(null, () -> toDouble(value))).sum();
+                case ANY:
+                    return values.anyMatch(value -> unchecked(tracker, () -> test(predicate, new LambdaScope(env), value)));
+                default:
+                    return values.allMatch(value -> unchecked(tracker, () -> test(predicate, new LambdaScope(env), value)));
+            }
+        } catch (EvaluationFailure e) {
+            // 跨线程抛出时异常可能被重新包装一层
+            Throwable cause = e.getCause();
+            while (cause instanceof EvaluationFailure) {
+                cause = cause.getCause();
+            }
+            throw (Exception) cause;
+        }
+    }
+
+    /**
+     * 对单个元素依次应用中间操作
+     * 
+     * @return 操作结果，被过滤时返回FILTERED
+     */
+    private Object applyStages(LambdaScope scope, Object element) throws Exception {
+        Object value = element;
+        for (int i = 0, size = stages.size(); i < size; i++) {
+            Lambda lambda = stages.get(i);
+            if (stageTypes.get(i) == StageType.FILTER) {
+                if (!test(lambda, scope, value)) {
+                    return FILTERED;
+                }
+            } else {
+                value = lambda.apply(scope, value);
+            }
+        }
+        return value;
+    }
+
+    private static boolean test(Lambda lambda, LambdaScope scope, Object value) throws Exception {
+        Object result = lambda.apply(scope, value);
+        if (!(result instanceof Boolean)) {
+            throw new KelpException("Predicate must return a boolean, but got: " +
+                    (result != null ? result.getClass().getSimpleName() : "null"));
+        }
+        return (Boolean) result;
+    }
+
+    private static double toDouble(Object value) throws KelpException {
+        if (!(value instanceof Number)) {
+            throw new KelpException("sum() requires numbers, but got: " +
+                    (value != null ? value.getClass().getSimpleName() : "null"));
+        }
+        return ((Number) value).doubleValue();
+    }
+
+    /**
+     * 在流操作中执行可能抛出受检异常的求值，执行期间将预算计数绑定到当前线程
+     */
+    private static <T> T unchecked(BudgetTracker tracker, Evaluation<T> evaluation) {
+        BudgetTracker previous = tracker != null ? BudgetTracker.enter(tracker) : null;
+        try {
+            return evaluation.run();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new EvaluationFailure(e);
+        } finally {
+            if (tracker != null) {
+                BudgetTracker.exit(previous);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface Evaluation<T> {
+        T run() throws Exception;
+    }
+
+    /**
+     * 包装并行求值中抛出的受检异常
+     */
+    private static class EvaluationFailure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        EvaluationFailure(Exception cause) {
+            super(cause);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(String.valueOf(source));
+        for (int i = 0; i < stages.size(); i++) {
+            sb.append('.').append(stageTypes.get(i).name().toLowerCase()).append('(').append(stages.get(i)).append(')');
+        }
+        if (terminal != Terminal.LIST) {
+            sb.append('.').append(terminal.name().toLowerCase()).append('(');
+            if (predicate != null) {
+                sb.append(predicate);
+            }
+            sb.append(')');
+        }
+        return sb.toString();
+    }
+}
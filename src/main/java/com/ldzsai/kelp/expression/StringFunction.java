@@ -0,0 +1,65 @@
+package com.ldzsai.kelp.expression;
+
+/**
+ * 内置字符串匹配函数
+ * <p>
+ * matches、find、replace的第二个参数为正则表达式，startsWith、contains按字面文本比较。
+ */
+public enum StringFunction {
+    // matches(text, regex)：整个文本是否匹配
+    MATCHES("matches", true, 2, 2),
+    // find(text, regex[, group])：第一个匹配的文本或分组，没有匹配时为null
+    FIND("find", true, 2, 3),
+    // replace(text, regex, replacement)：替换全部匹配，replacement中可用$1引用分组
+    REPLACE("replace", true, 3, 3),
+    // startsWith(text, prefix)
+    STARTS_WITH("startsWith", false, 2, 2),
+    // contains(text, part)
+    CONTAINS("contains", false, 2, 2);
+
+    private final String name;
+    private final boolean regex;
+    private final int minArguments;
+    private final int maxArguments;
+
+    StringFunction(String name, boolean regex, int minArguments, int maxArguments) {
+        this.name = name;
+        this.regex = regex;
+        this.minArguments = minArguments;
+        this.maxArguments = maxArguments;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 第二个参数是否为正则表达式
+     */
+    public boolean isRegex() {
+        return regex;
+    }
+
+    public int getMinArguments() {
+        return minArguments;
+    }
+
+    public int getMaxArguments() {
+        return maxArguments;
+    }
+
+    /**
+     * 按名称查找内置函数
+     *
+     * @param name 函数名
+     * @return 内置函数，不存在时为null
+     */
+    public static StringFunction find(String name) {
+        for (StringFunction function : values()) {
+            if (function.name.equals(name)) {
+                return function;
+            }
+        }
+        return null;
+    }
+}
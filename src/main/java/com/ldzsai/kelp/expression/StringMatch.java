@@ -0,0 +1,142 @@
+package com.ldzsai.kelp.expression;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.ldzsai.kelp.KelpException;
+
+/**
+ * 内置字符串匹配函数调用，如matches(path, '/api/.*')
+ * <p>
+ * 正则表达式为字面量时在构造时编译一次，否则经{@link PatternCache}取得；
+ * 每个调用点为每个线程保留一个Matcher，表达式不变时reset复用，不为每次匹配分配Matcher。
+ * 文本为null时matches、startsWith、contains为false，find、replace为null。
+ */
+public class StringMatch extends Expression {
+    private final StringFunction function;
+    private final List<Expression> arguments;
+
+    // 预编译的字面量正则表达式，动态表达式为null
+    private final Pattern pattern;
+
+    // 本调用点各线程最近使用的Matcher
+    private final ThreadLocal<Matcher> matchers = new ThreadLocal<>();
+
+    public StringMatch(StringFunction function, List<Expression> arguments) throws KelpException {
+        this(function, arguments, function.isRegex() && arguments.size() > 1
+                && arguments.get(1) instanceof StringLiteral
+                ? PatternCache.compile(((StringLiteral) arguments.get(1)).getValue()) : null);
+    }
+
+    private StringMatch(StringFunction function, List<Expression> arguments, Pattern pattern) {
+        if (arguments.size() < function.getMinArguments() || arguments.size() > function.getMaxArguments()) {
+            throw new IllegalArgumentException("Function " + function.getName() + " cannot take "
+                    + arguments.size() + " arguments");
+        }
+        this.function = function;
+        this.arguments = arguments;
+        this.pattern = pattern;
+    }
+
+    public StringFunction getFunction() {
+        return function;
+    }
+
+    public List<Expression> getArguments() {
+        return arguments;
+    }
+
+    /**
+     * 获取预编译的正则表达式，动态表达式为null
+     */
+    public Pattern getPattern() {
+        return pattern;
+    }
+
+    /**
+     * 以新的参数创建调用，正则表达式仍为字面量时沿用预编译结果
+     *
+     * @param arguments 参数
+     * @return 新节点
+     */
+    public StringMatch withArguments(List<Expression> arguments) {
+        return new StringMatch(function, arguments,
+                arguments.size() > 1 && arguments.get(1) instanceof StringLiteral ? pattern : null);
+    }
+
+    @Override
+    public Object evaluate(Environment env) throws Exception {
+        Object subject = arguments.get(0).evaluate(env);
+        CharSequence text = subject == null || subject instanceof CharSequence
+                ? (CharSequence) subject : subject.toString();
+        if (!function.isRegex()) {
+            String part = string(arguments.get(1).evaluate(env));
+            if (text == null) {
+                return false;
+            }
+            return function == StringFunction.STARTS_WITH ? text.toString().startsWith(part)
+                    : text.toString().contains(part);
+        }
+
+        Pattern regex = pattern != null ? pattern : PatternCache.get(string(arguments.get(1).evaluate(env)));
+        String replacement = function == StringFunction.REPLACE ? string(arguments.get(2).evaluate(env)) : null;
+        int group = arguments.size() > 2 && function == StringFunction.FIND ? group(arguments.get(2).evaluate(env)) : 0;
+        if (text == null) {
+            return function == StringFunction.MATCHES ? (Object) false : null;
+        }
+
+        // 取得Matcher后不再求值子表达式，同一调用点的重入不会覆盖正在使用的Matcher
+        Matcher matcher = matcher(regex, text);
+        try {
+            switch (function) {
+                case MATCHES:
+                    return matcher.matches();
+                case FIND:
+                    if (group > matcher.groupCount()) {
+                        throw new KelpException("find() group " + group + " is out of range, the pattern has "
+                                + matcher.groupCount() + " groups");
+                    }
+                    return matcher.find() ? matcher.group(group) : null;
+                default:
+                    return matcher.replaceAll(replacement);
+            }
+        } finally {
+            // 不让线程持有匹配过的文本
+            matcher.reset("");
+        }
+    }
+
+    private Matcher matcher(Pattern regex, CharSequence text) {
+        Matcher matcher = matchers.get();
+        if (matcher == null || matcher.pattern() != regex) {
+            matcher = regex.matcher(text);
+            matchers.set(matcher);
+            return matcher;
+        }
+        return matcher.reset(text);
+    }
+
+    private String string(Object value) throws KelpException {
+        if (value == null) {
+            throw new KelpException(function.getName() + "() expects a string argument, but got: null");
+        }
+        return value.toString();
+    }
+
+    private int group(Object value) throws KelpException {
+        if (!(value instanceof Integer) || (Integer) value < 0) {
+            throw new KelpException("find() expects a non-negative integer group, but got: " + value);
+        }
+        return (Integer) value;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(function.getName()).append('(');
+        for (int i = 0; i < arguments.size(); i++) {
+            sb.append(i > 0 ? ", " : "").append(arguments.get(i));
+        }
+        return sb.append(')').toString();
+    }
+}
@@ -0,0 +1,91 @@
+package com.ldzsai.kelp.expression;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * 静态文本片段，引用模板源（通常为内存映射文件）中的一段字节区间，渲染时分块解码写出，不在堆上复制文本
+ */
+public class TextSegment extends Expression {
+    // 分块解码时使用的字符缓冲大小
+    private static final int DECODE_CHUNK_SIZE = 8192;
+
+    // 只读字节区间
+    private final ByteBuffer bytes;
+
+    // 源字符集
+    private final Charset charset;
+
+    public TextSegment(ByteBuffer bytes, Charset charset) {
+        this.bytes = bytes;
+        this.charset = charset;
+    }
+
+    /**
+     * 获取字节长度
+     *
+     * @return 字节长度
+     */
+    public int byteLength() {
+        return bytes.remaining();
+    }
+
+    /**
+     * 解码为字符串（会在堆上复制整段文本，大文本请使用writeTo）
+     */
+    @Override
+    public Object evaluate(Environment env) throws Exception {
+        return charset.decode(bytes.duplicate()).toString();
+    }
+
+    @Override
+    public void appendTo(Environment env, StringBuilder out) throws IOException {
+        writeTo(out);
+    }
+
+    /**
+     * 分块解码并写入输出
+     *
+     * @param out 输出
+     * @throws IOException 写出错误
+     */
+    public void writeTo(Appendable out) throws IOException {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer in = bytes.duplicate();
+        CharBuffer chunk = CharBuffer.allocate(Math.min(DECODE_CHUNK_SIZE, Math.max(in.remaining(), 16)));
+        while (decoder.decode(in, chunk, true).isOverflow()) {
+            flush(chunk, out);
+        }
+        while (decoder.flush(chunk).isOverflow()) {
+            flush(chunk, out);
+        }
+        flush(chunk, out);
+    }
+
+    /**
+     * 将已解码的字符写入输出并清空缓冲
+     */
+    private void flush(CharBuffer chunk, Appendable out) throws IOException {
+        chunk.flip();
+        if (chunk.hasRemaining()) {
+            if (out instanceof Writer) {
+                ((Writer) out).write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+            } else {
+                out.append(chunk);
+            }
+        }
+        chunk.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "Text[" + bytes.remaining() + " bytes]";
+    }
+}
@@ -7,6 +7,10 @@ public class Variable extends Expression {
         this.name = name;
     }
 
+    public String getName() {
+        return name;
+    }
+
     @Override
     public Object evaluate(Environment env) {
         return env.getVariable(name);
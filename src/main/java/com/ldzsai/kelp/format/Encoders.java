@@ -0,0 +1,214 @@
+package com.ldzsai.kelp.format;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 内置输出编码器及按名称查找的注册表，模板中以${expr | html}指定
+ */
+public final class Encoders {
+    // 须先于编码表初始化
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * 不转义
+     */
+    public static final OutputEncoder RAW = (value, out) -> out.append(value);
+
+    /**
+     * HTML文本及属性值：转义{@code & < > " '}
+     */
+    public static final OutputEncoder HTML = new TableEncoder(table(
+            '&', "&amp;", '<', "&lt;", '>', "&gt;", '"', "&quot;", '\'', "&#39;"));
+
+    /**
+     * JSON字符串字面量的内容（不含两侧引号），&lt;、&gt;、&amp;和U+2028/U+2029同样转义为Unicode转义序列，可嵌入script
+     */
+    public static final OutputEncoder JSON = new TableEncoder(jsonTable()) {
+        @Override
+        String replace(char c) {
+            if (c == '\u2028') {
+                return "\\u2028";
+            }
+            return c == '\u2029' ? "\\u2029" : null;
+        }
+    };
+
+    /**
+     * URL查询参数：非保留字符以外的字符按UTF-8百分号编码，空格为%20
+     */
+    public static final OutputEncoder URL = Encoders::encodeUrl;
+
+    /**
+     * CSV字段：包含逗号、双引号或换行时整体加引号，双引号写为两个
+     */
+    public static final OutputEncoder CSV = Encoders::encodeCsv;
+
+    // URL中无需编码的ASCII字符
+    private static final boolean[] URL_SAFE = new boolean[128];
+
+    private static final Map<String, OutputEncoder> REGISTRY = new ConcurrentHashMap<>();
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            URL_SAFE[c] = true;
+            URL_SAFE[c - 'a' + 'A'] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            URL_SAFE[c] = true;
+        }
+        URL_SAFE['-'] = URL_SAFE['.'] = URL_SAFE['_'] = URL_SAFE['~'] = true;
+
+        REGISTRY.put("raw", RAW);
+        REGISTRY.put("html", HTML);
+        REGISTRY.put("json", JSON);
+        REGISTRY.put("url", URL);
+        REGISTRY.put("csv", CSV);
+    }
+
+    private Encoders() {
+    }
+
+    /**
+     * 按名称查找编码器，不区分大小写
+     *
+     * @param name 名称
+     * @return 编码器，不存在时为null
+     */
+    public static OutputEncoder get(String name) {
+        return REGISTRY.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * 注册自定义编码器，已编译的模板不受影响
+     *
+     * @param name    名称
+     * @param encoder 编码器
+     */
+    public static void register(String name, OutputEncoder encoder) {
+        if (encoder == null) {
+            throw new IllegalArgumentException("Encoder cannot be null");
+        }
+        REGISTRY.put(name.toLowerCase(Locale.ROOT), encoder);
+    }
+
+    private static String[] table(Object... pairs) {
+        String[] table = new String[128];
+        for (int i = 0; i < pairs.length; i += 2) {
+            table[(Character) pairs[i]] = (String) pairs[i + 1];
+        }
+        return table;
+    }
+
+    private static String[] jsonTable() {
+        String[] table = table('"', "\\\"", '\\', "\\\\", '\n', "\\n", '\r', "\\r", '\t', "\\t", '\b', "\\b",
+                '\f', "\\f", '<', "\\u003c", '>', "\\u003e", '&', "\\u0026");
+        for (char c = 0; c < 0x20; c++) {
+            if (table[c] == null) {
+                table[c] = "\\u00" + HEX[c >> 4] + HEX[c & 0xF];
+            }
+        }
+        return table;
+    }
+
+    private static void encodeUrl(CharSequence value, StringBuilder out) {
+        int length = value.length();
+        int last = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 128 && URL_SAFE[c]) {
+                continue;
+            }
+            out.append(value, last, i);
+            int codePoint = c;
+            if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                codePoint = Character.toCodePoint(c, value.charAt(++i));
+            }
+            if (codePoint < 0x80) {
+                percent(out, codePoint);
+            } else if (codePoint < 0x800) {
+                percent(out, 0xC0 | (codePoint >> 6));
+                percent(out, 0x80 | (codePoint & 0x3F));
+            } else if (codePoint < 0x10000) {
+                percent(out, 0xE0 | (codePoint >> 12));
+                percent(out, 0x80 | ((codePoint >> 6) & 0x3F));
+                percent(out, 0x80 | (codePoint & 0x3F));
+            } else {
+                percent(out, 0xF0 | (codePoint >> 18));
+                percent(out, 0x80 | ((codePoint >> 12) & 0x3F));
+                percent(out, 0x80 | ((codePoint >> 6) & 0x3F));
+                percent(out, 0x80 | (codePoint & 0x3F));
+            }
+            last = i + 1;
+        }
+        appendRest(value, out, last);
+    }
+
+    private static void percent(StringBuilder out, int b) {
+        out.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+    }
+
+    private static void encodeCsv(CharSequence value, StringBuilder out) {
+        int length = value.length();
+        boolean quote = false;
+        for (int i = 0; i < length && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.append(value);
+            return;
+        }
+        out.append('"');
+        int last = 0;
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) == '"') {
+                out.append(value, last, i + 1).append('"');
+                last = i + 1;
+            }
+        }
+        out.append(value, last, length).append('"');
+    }
+
+    /**
+     * 追加最后一个转义字符之后的内容，没有转义时直接追加原值
+     */
+    static void appendRest(CharSequence value, StringBuilder out, int last) {
+        if (last == 0) {
+            out.append(value);
+        } else {
+            out.append(value, last, value.length());
+        }
+    }
+
+    /**
+     * 查表转义：ASCII字符查表，其他字符由replace决定
+     */
+    static class TableEncoder implements OutputEncoder {
+        private final String[] table;
+
+        TableEncoder(String[] table) {
+            this.table = table;
+        }
+
+        @Override
+        public void encode(CharSequence value, StringBuilder out) {
+            int length = value.length();
+            int last = 0;
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                String replacement = c < 128 ? table[c] : replace(c);
+                if (replacement != null) {
+                    out.append(value, last, i).append(replacement);
+                    last = i + 1;
+                }
+            }
+            appendRest(value, out, last);
+        }
+
+        String replace(char c) {
+            return null;
+        }
+    }
+}
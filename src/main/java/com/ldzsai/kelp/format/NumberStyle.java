@@ -0,0 +1,123 @@
+package com.ldzsai.kelp.format;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * 数字输出格式，直接将数位写入输出，不经过Double.toString及中间字符串
+ * <pre>
+ * NumberStyle style = new NumberStyle();
+ * style.setScale(2);                // 3.14159 -&gt; 3.14，2.5 -&gt; 2.50
+ * style.setIntegralAsInteger(true); // 3.0 -&gt; 3
+ * engine.setNumberStyle(style);
+ * </pre>
+ */
+public class NumberStyle {
+    // long可精确表示的10的幂
+    private static final long[] POW10 = new long[19];
+
+    // 按定点写出的上限，超出时回退到BigDecimal
+    private static final double FAST_LIMIT = 1e15;
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    // 小数位数，-1表示与Double.toString一致
+    private int scale = -1;
+
+    // 整数值的浮点数按整数输出
+    private boolean integralAsInteger;
+
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * 设置固定小数位数，按四舍五入截取并补零，-1表示不固定
+     */
+    public void setScale(int scale) {
+        if (scale < -1 || scale > 18) {
+            throw new IllegalArgumentException("Scale must be between -1 and 18");
+        }
+        this.scale = scale;
+    }
+
+    public boolean isIntegralAsInteger() {
+        return integralAsInteger;
+    }
+
+    /**
+     * 设置是否将整数值的浮点数（如3.0）输出为整数，优先于固定小数位数
+     */
+    public void setIntegralAsInteger(boolean integralAsInteger) {
+        this.integralAsInteger = integralAsInteger;
+    }
+
+    /**
+     * 按格式追加数字，整数类型直接追加
+     *
+     * @param out    输出
+     * @param number 数字
+     */
+    public void append(StringBuilder out, Number number) {
+        if (number instanceof Double || number instanceof Float) {
+            append(out, number.doubleValue());
+        } else if (number instanceof Integer || number instanceof Long || number instanceof Short
+                || number instanceof Byte) {
+            out.append(number.longValue());
+        } else if (number instanceof BigDecimal && scale >= 0) {
+            out.append(((BigDecimal) number).setScale(scale, RoundingMode.HALF_UP).toPlainString());
+        } else {
+            out.append(number);
+        }
+    }
+
+    /**
+     * 按格式追加浮点数
+     *
+     * @param out   输出
+     * @param value 值
+     */
+    public void append(StringBuilder out, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            out.append(value);
+            return;
+        }
+        double abs = Math.abs(value);
+        if (integralAsInteger && abs < FAST_LIMIT && value == Math.rint(value)) {
+            // -0.0同样输出为0
+            out.append((long) value);
+            return;
+        }
+        if (scale < 0) {
+            out.append(value);
+            return;
+        }
+        long factor = POW10[scale];
+        double product = abs * factor;
+        // 二进制乘积接近舍入边界时按最短十进制表示舍入（1.005 -> 1.01），与BigDecimal.valueOf一致
+        if (product >= FAST_LIMIT || Math.abs(product - Math.floor(product) - 0.5) <= 4 * Math.ulp(product)) {
+            out.append(BigDecimal.valueOf(value).setScale(scale, RoundingMode.HALF_UP).toPlainString());
+            return;
+        }
+        long scaled = Math.round(product);
+        if (value < 0 && scaled != 0) {
+            out.append('-');
+        }
+        out.append(scaled / factor);
+        if (scale == 0) {
+            return;
+        }
+        out.append('.');
+        long fraction = scaled % factor;
+        // 小数部分补前导零
+        for (long bound = factor / 10; bound > 1 && fraction < bound; bound /= 10) {
+            out.append('0');
+        }
+        out.append(fraction);
+    }
+}
@@ -0,0 +1,29 @@
+package com.ldzsai.kelp.format;
+
+/**
+ * 输出编码器，片段的字符串值写入输出时转义
+ * <p>
+ * 实现应在值无需转义时直接追加原值，不产生中间字符串；数字和布尔值不经过编码器。
+ */
+@FunctionalInterface
+public interface OutputEncoder {
+    /**
+     * 转义并追加到输出
+     *
+     * @param value 值
+     * @param out   输出
+     */
+    void encode(CharSequence value, StringBuilder out);
+
+    /**
+     * 转义为字符串
+     *
+     * @param value 值
+     * @return 转义结果
+     */
+    default String encode(CharSequence value) {
+        StringBuilder out = new StringBuilder(value.length() + 16);
+        encode(value, out);
+        return out.toString();
+    }
+}
@@ -0,0 +1,39 @@
+package com.ldzsai.kelp.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 模板缓存淘汰事件，每个被移出缓存的模板一条
+ */
+@Name("com.ldzsai.kelp.CacheEviction")
+@Label("Template Cache Eviction")
+@Category({ "Kelp", "Cache" })
+@Description("A compiled template removed from the engine cache")
+@StackTrace(false)
+public final class CacheEvictionEvent extends jdk.jfr.Event {
+    @Label("Template Hash")
+    private int templateHash;
+
+    @Label("Template Length")
+    private long templateLength;
+
+    @Label("Reason")
+    @Description("Engine operation that cleared the cache")
+    private String reason;
+
+    public void setTemplateHash(int templateHash) {
+        this.templateHash = templateHash;
+    }
+
+    public void setTemplateLength(long templateLength) {
+        this.templateLength = templateLength;
+    }
+
+    public void setReason(String reason) {
+        this.reason = reason;
+    }
+}
@@ -0,0 +1,95 @@
+package com.ldzsai.kelp.jfr;
+
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Recording;
+
+/**
+ * 求值事件的开关和模板上下文：渲染期间把模板哈希绑定到当前线程，供其中发生的方法查找和方法调用事件引用
+ * <p>
+ * 有录制启用了慢求值或方法查找事件时才创建求值事件并绑定上下文，开关在录制开始或停止时更新；
+ * 关闭时渲染和方法调用只多读取一个volatile字段，不分配事件对象。
+ * <p>
+ * 树遍历后端的方法调用事件包含参数求值时间并带有源码位置。字节码虚拟机和分层编译后的模板经由
+ * {@link com.ldzsai.kelp.expression.FunctionCall#invoke(String, Object, Object[])}记录事件，
+ * 只包含方法查找和调用本身，位置为-1；分层编译的代码在记录期间不走直接调用，改走反射调用的通用路径。
+ */
+public final class KelpEvents {
+    // enter未绑定时的返回值
+    private static final long NONE = Long.MIN_VALUE;
+
+    private static final ThreadLocal<int[]> TEMPLATE_HASH = ThreadLocal.withInitial(() -> new int[1]);
+
+    // 是否记录求值事件
+    private static volatile boolean tracking;
+
+    static {
+        FlightRecorder.addListener(new FlightRecorderListener() {
+            @Override
+            public void recorderInitialized(FlightRecorder recorder) {
+                update();
+            }
+
+            @Override
+            public void recordingStateChanged(Recording recording) {
+                update();
+            }
+        });
+    }
+
+    private KelpEvents() {
+    }
+
+    private static void update() {
+        // 未初始化时不触发JFR初始化
+        tracking = FlightRecorder.isInitialized()
+                && (EventType.getEventType(SlowEvaluationEvent.class).isEnabled()
+                        || EventType.getEventType(MethodResolutionEvent.class).isEnabled());
+    }
+
+    /**
+     * 是否记录求值事件，为false时调用方不应创建慢求值事件
+     *
+     * @return 有录制启用了慢求值或方法查找事件时返回true
+     */
+    public static boolean isTracking() {
+        return tracking;
+    }
+
+    /**
+     * 将模板哈希绑定到当前线程
+     *
+     * @param templateHash 模板哈希
+     * @return 之前的绑定，传给{@link #exit(long)}恢复
+     */
+    public static long enter(int templateHash) {
+        if (!tracking) {
+            return NONE;
+        }
+        int[] current = TEMPLATE_HASH.get();
+        int previous = current[0];
+        current[0] = templateHash;
+        return previous;
+    }
+
+    /**
+     * 恢复之前的绑定
+     *
+     * @param previous {@link #enter(int)}的返回值
+     */
+    public static void exit(long previous) {
+        if (previous != NONE) {
+            TEMPLATE_HASH.get()[0] = (int) previous;
+        }
+    }
+
+    /**
+     * 获取当前线程正在渲染的模板哈希，只应在提交事件时调用
+     *
+     * @return 模板哈希，未绑定时为0
+     */
+    public static int currentTemplateHash() {
+        return TEMPLATE_HASH.get()[0];
+    }
+}
@@ -0,0 +1,76 @@
+package com.ldzsai.kelp.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * 反射方法查找事件，调用点内联缓存未命中时记录
+ */
+@Name("com.ldzsai.kelp.MethodResolution")
+@Label("Method Resolution")
+@Category({ "Kelp", "Evaluation" })
+@Description("Reflective method lookup after an inline cache miss")
+@Threshold("20 us")
+public final class MethodResolutionEvent extends jdk.jfr.Event {
+    @Label("Template Hash")
+    @Description("Hash of the template being rendered, 0 when unknown")
+    private int templateHash;
+
+    @Label("Method Name")
+    private String methodName;
+
+    @Label("Target Class")
+    private Class<?> targetClass;
+
+    @Label("Argument Types")
+    private String argumentTypes;
+
+    @Label("Resolved")
+    private boolean resolved;
+
+    @Label("Cache Replaced")
+    @Description("Whether the call site already cached a different method")
+    private boolean cacheReplaced;
+
+    @Label("Start Position")
+    @Description("Source offset of the call, -1 for calls without a call site")
+    private int start;
+
+    @Label("End Position")
+    private int end;
+
+    public void setTemplateHash(int templateHash) {
+        this.templateHash = templateHash;
+    }
+
+    public void setMethodName(String methodName) {
+        this.methodName = methodName;
+    }
+
+    public void setTargetClass(Class<?> targetClass) {
+        this.targetClass = targetClass;
+    }
+
+    public void setArgumentTypes(String argumentTypes) {
+        this.argumentTypes = argumentTypes;
+    }
+
+    public void setResolved(boolean resolved) {
+        this.resolved = resolved;
+    }
+
+    public void setCacheReplaced(boolean cacheReplaced) {
+        this.cacheReplaced = cacheReplaced;
+    }
+
+    public void setStart(int start) {
+        this.start = start;
+    }
+
+    public void setEnd(int end) {
+        this.end = end;
+    }
+}
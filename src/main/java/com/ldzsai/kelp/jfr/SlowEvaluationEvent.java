@@ -0,0 +1,55 @@
+package com.ldzsai.kelp.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * 慢求值事件，模板渲染或方法调用超过阈值时记录，阈值默认20毫秒，可在JFR设置中调整
+ */
+@Name("com.ldzsai.kelp.SlowEvaluation")
+@Label("Slow Evaluation")
+@Category({ "Kelp", "Evaluation" })
+@Description("Template render or method call that took longer than the threshold")
+@Threshold("20 ms")
+public final class SlowEvaluationEvent extends jdk.jfr.Event {
+    @Label("Template Hash")
+    private int templateHash;
+
+    @Label("Kind")
+    @Description("template or call")
+    private String kind;
+
+    @Label("Name")
+    @Description("Method name for calls")
+    private String name;
+
+    @Label("Start Position")
+    @Description("Source offset of the evaluated node, -1 for whole templates and for calls from bytecode or JIT-compiled templates")
+    private int start;
+
+    @Label("End Position")
+    private int end;
+
+    public void setTemplateHash(int templateHash) {
+        this.templateHash = templateHash;
+    }
+
+    public void setKind(String kind) {
+        this.kind = kind;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public void setStart(int start) {
+        this.start = start;
+    }
+
+    public void setEnd(int end) {
+        this.end = end;
+    }
+}
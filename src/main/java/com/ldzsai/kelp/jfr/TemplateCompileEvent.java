@@ -0,0 +1,57 @@
+package com.ldzsai.kelp.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * 模板编译事件，持续时间包含词法分析、语法分析和后端编译
+ */
+@Name("com.ldzsai.kelp.TemplateCompile")
+@Label("Template Compile")
+@Category({ "Kelp", "Compilation" })
+@Description("Lexing, parsing and backend compilation of a template")
+@StackTrace(false)
+public final class TemplateCompileEvent extends jdk.jfr.Event {
+    @Label("Template Hash")
+    @Description("Hash code of the template source, of the source bytes for buffer and file templates, 0 for Reader templates")
+    private int templateHash;
+
+    @Label("Template Length")
+    @Description("Characters in the template source, bytes for buffer and file templates, -1 for Reader templates")
+    private long templateLength;
+
+    @Label("Lex Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    private long lexDuration;
+
+    @Label("Parse Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    private long parseDuration;
+
+    @Label("Backend")
+    private String backend;
+
+    public void setTemplateHash(int templateHash) {
+        this.templateHash = templateHash;
+    }
+
+    public void setTemplateLength(long templateLength) {
+        this.templateLength = templateLength;
+    }
+
+    public void setLexDuration(long lexDuration) {
+        this.lexDuration = lexDuration;
+    }
+
+    public void setParseDuration(long parseDuration) {
+        this.parseDuration = parseDuration;
+    }
+
+    public void setBackend(String backend) {
+        this.backend = backend;
+    }
+}
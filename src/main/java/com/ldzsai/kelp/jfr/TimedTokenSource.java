@@ -0,0 +1,33 @@
+package com.ldzsai.kelp.jfr;
+
+import com.ldzsai.kelp.KelpException;
+import com.ldzsai.kelp.token.Token;
+import com.ldzsai.kelp.token.TokenSource;
+
+/**
+ * 累计拉取分词耗时的分词来源，用于在交错进行的词法分析和语法分析中分出词法分析时间
+ */
+public final class TimedTokenSource implements TokenSource {
+    private final TokenSource source;
+
+    // 累计耗时（纳秒）
+    private long elapsed;
+
+    public TimedTokenSource(TokenSource source) {
+        this.source = source;
+    }
+
+    @Override
+    public Token next() throws KelpException {
+        long start = System.nanoTime();
+        try {
+            return source.next();
+        } finally {
+            elapsed += System.nanoTime() - start;
+        }
+    }
+
+    public long getElapsed() {
+        return elapsed;
+    }
+}
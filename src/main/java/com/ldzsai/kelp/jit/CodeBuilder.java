@@ -0,0 +1,399 @@
+package com.ldzsai.kelp.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 方法体字节码构建器，负责跳转回填、操作数栈深度统计、局部变量分配以及StackMapTable帧
+ * <p>
+ * 约定所有已分配的局部变量按分配顺序连续赋值，因此任一跳转目标处的局部变量
+ * 都可以用"当前已赋值的前缀"描述，帧统一以full_frame写出。
+ */
+final class CodeBuilder {
+    // 指令
+    static final int ACONST_NULL = 0x01;
+    static final int ICONST_0 = 0x03;
+    static final int ICONST_1 = 0x04;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int LDC2_W = 0x14;
+    static final int ALOAD = 0x19;
+    static final int DLOAD = 0x18;
+    static final int ASTORE = 0x3A;
+    static final int DSTORE = 0x39;
+    static final int AALOAD = 0x32;
+    static final int AASTORE = 0x53;
+    static final int POP = 0x57;
+    static final int DUP = 0x59;
+    static final int DADD = 0x63;
+    static final int DSUB = 0x67;
+    static final int DMUL = 0x6B;
+    static final int IFNE = 0x9A;
+    static final int IF_ACMPNE = 0xA6;
+    static final int GOTO = 0xA7;
+    static final int RETURN = 0xB1;
+    static final int GETFIELD = 0xB4;
+    static final int PUTFIELD = 0xB5;
+    static final int INVOKEVIRTUAL = 0xB6;
+    static final int INVOKESPECIAL = 0xB7;
+    static final int INVOKESTATIC = 0xB8;
+    static final int INVOKEINTERFACE = 0xB9;
+    static final int ANEWARRAY = 0xBD;
+    static final int ATHROW = 0xBF;
+    static final int CHECKCAST = 0xC0;
+    static final int IFNULL = 0xC6;
+
+    // 验证类型标记
+    private static final int ITEM_DOUBLE = 3;
+    private static final int ITEM_OBJECT = 7;
+
+    private final ConstantPool pool;
+
+    private byte[] code = new byte[256];
+    private int length;
+
+    // 当前及最大栈深度
+    private int stack;
+    private int maxStack;
+
+    // 下一个可用的局部变量槽位
+    private int nextSlot;
+
+    // 已赋值局部变量的验证类型（按分配顺序，double占一个条目）
+    private final List<int[]> locals = new ArrayList<>();
+
+    // 跳转目标的帧：偏移、局部变量、栈
+    private final List<Object[]> frames = new ArrayList<>();
+
+    // 已绑定的标签
+    private final List<Label> labels = new ArrayList<>();
+
+    // 异常表：起始、结束、处理器、捕获类型
+    private final List<int[]> exceptionTable = new ArrayList<>();
+
+    CodeBuilder(ConstantPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * 跳转标签
+     */
+    static final class Label {
+        private int position = -1;
+        private final List<Integer> references = new ArrayList<>();
+    }
+
+    /**
+     * 声明参数或this占用的局部变量
+     */
+    void parameter(String internalName) {
+        locals.add(new int[] { ITEM_OBJECT, pool.classRef(internalName) });
+        nextSlot++;
+    }
+
+    /**
+     * 预留一个对象局部变量，赋值后需调用assigned登记
+     */
+    int reserveObject() {
+        return nextSlot++;
+    }
+
+    /**
+     * 登记预留的对象局部变量已赋值
+     */
+    void assigned(int slot) {
+        locals.add(new int[] { ITEM_OBJECT, pool.classRef("java/lang/Object") });
+    }
+
+    /**
+     * 将栈顶对象存入新的局部变量
+     */
+    int storeObject() {
+        int slot = reserveObject();
+        varInsn(ASTORE, slot, -1);
+        assigned(slot);
+        return slot;
+    }
+
+    /**
+     * 将栈顶对象存入预留的局部变量
+     */
+    void storeObject(int slot) {
+        varInsn(ASTORE, slot, -1);
+    }
+
+    /**
+     * 将栈顶double存入新的局部变量
+     */
+    int storeDouble() {
+        int slot = nextSlot;
+        nextSlot += 2;
+        varInsn(DSTORE, slot, -2);
+        locals.add(new int[] { ITEM_DOUBLE, 0 });
+        return slot;
+    }
+
+    void loadObject(int slot) {
+        varInsn(ALOAD, slot, 1);
+    }
+
+    void loadDouble(int slot) {
+        varInsn(DLOAD, slot, 2);
+    }
+
+    void insn(int opcode, int stackDelta) {
+        ensure(1);
+        code[length++] = (byte) opcode;
+        adjust(stackDelta);
+    }
+
+    void intInsn(int value) {
+        if (value >= -128 && value <= 127) {
+            ensure(2);
+            code[length++] = (byte) BIPUSH;
+            code[length++] = (byte) value;
+            adjust(1);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            ensure(3);
+            code[length++] = (byte) SIPUSH;
+            writeShort(value);
+            adjust(1);
+        } else {
+            ldc(pool.integer(value), 1);
+        }
+    }
+
+    void ldcString(String value) {
+        ldc(pool.string(value), 1);
+    }
+
+    void ldcClass(String internalName) {
+        ldc(pool.classRef(internalName), 1);
+    }
+
+    void ldcDouble(double value) {
+        typeInsn(LDC2_W, pool.doubleValue(value), 2);
+    }
+
+    private void ldc(int index, int stackDelta) {
+        typeInsn(LDC_W, index, stackDelta);
+    }
+
+    /**
+     * 带两字节常量池索引的指令
+     */
+    void typeInsn(int opcode, int index, int stackDelta) {
+        ensure(3);
+        code[length++] = (byte) opcode;
+        writeShort(index);
+        adjust(stackDelta);
+    }
+
+    void checkcast(String internalName) {
+        typeInsn(CHECKCAST, pool.classRef(internalName), 0);
+    }
+
+    void field(int opcode, String owner, String name, String descriptor, int stackDelta) {
+        typeInsn(opcode, pool.fieldRef(owner, name, descriptor), stackDelta);
+    }
+
+    /**
+     * 方法调用，栈深度变化由描述符推导
+     */
+    void invoke(int opcode, String owner, String name, String descriptor) {
+        int delta = returnSize(descriptor) - argumentSize(descriptor) - (opcode == INVOKESTATIC ? 0 : 1);
+        if (opcode == INVOKEINTERFACE) {
+            ensure(5);
+            code[length++] = (byte) opcode;
+            writeShort(pool.interfaceMethodRef(owner, name, descriptor));
+            code[length++] = (byte) (argumentSize(descriptor) + 1);
+            code[length++] = 0;
+            adjust(delta);
+        } else {
+            typeInsn(opcode, pool.methodRef(owner, name, descriptor), delta);
+        }
+    }
+
+    void jump(int opcode, Label label, int stackDelta) {
+        ensure(3);
+        label.references.add(length);
+        code[length++] = (byte) opcode;
+        writeShort(0);
+        adjust(stackDelta);
+        if (opcode == GOTO) {
+            stack = 0;
+        }
+    }
+
+    /**
+     * 绑定标签并记录帧，栈为空
+     */
+    void mark(Label label) {
+        mark(label, new int[0][]);
+    }
+
+    /**
+     * 绑定异常处理器标签，栈上为捕获的异常
+     */
+    void markHandler(Label label, int start, int end) {
+        mark(label, new int[][] { { ITEM_OBJECT, pool.classRef("java/lang/Throwable") } });
+        exceptionTable.add(new int[] { start, end, label.position, 0 });
+    }
+
+    private void mark(Label label, int[][] stackTypes) {
+        label.position = length;
+        labels.add(label);
+        frames.add(new Object[] { length, locals.toArray(new int[0][]), stackTypes });
+        stack = stackTypes.length;
+    }
+
+    int position() {
+        return length;
+    }
+
+    /**
+     * athrow之后的代码不可达，栈深度归零
+     */
+    void athrow() {
+        insn(ATHROW, -1);
+        stack = 0;
+    }
+
+    /**
+     * 写出Code属性（不含属性名索引）
+     */
+    void writeCodeAttribute(DataOutputStream out, int stackMapTableName) throws IOException {
+        for (Label label : labels) {
+            patch(label);
+        }
+
+        ByteArrayOutputStream stackMap = new ByteArrayOutputStream();
+        DataOutputStream map = new DataOutputStream(stackMap);
+        int written = 0;
+        int previous = -1;
+        for (Object[] frame : frames) {
+            int offset = (Integer) frame[0];
+            if (offset == previous) {
+                continue;
+            }
+            map.writeByte(255);
+            map.writeShort(previous < 0 ? offset : offset - previous - 1);
+            writeTypes(map, (int[][]) frame[1]);
+            writeTypes(map, (int[][]) frame[2]);
+            previous = offset;
+            written++;
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream attr = new DataOutputStream(body);
+        attr.writeShort(maxStack);
+        attr.writeShort(nextSlot);
+        attr.writeInt(length);
+        attr.write(code, 0, length);
+        attr.writeShort(exceptionTable.size());
+        for (int[] entry : exceptionTable) {
+            for (int value : entry) {
+                attr.writeShort(value);
+            }
+        }
+        if (written > 0) {
+            attr.writeShort(1);
+            attr.writeShort(stackMapTableName);
+            attr.writeInt(2 + stackMap.size());
+            attr.writeShort(written);
+            stackMap.writeTo(attr);
+        } else {
+            attr.writeShort(0);
+        }
+
+        out.writeInt(body.size());
+        body.writeTo(out);
+    }
+
+    /**
+     * 回填跳转偏移
+     */
+    private void patch(Label label) {
+        for (int reference : label.references) {
+            int offset = label.position - reference;
+            code[reference + 1] = (byte) (offset >> 8);
+            code[reference + 2] = (byte) offset;
+        }
+    }
+
+    private void writeTypes(DataOutputStream out, int[][] types) throws IOException {
+        out.writeShort(types.length);
+        for (int[] type : types) {
+            out.writeByte(type[0]);
+            if (type[0] == ITEM_OBJECT) {
+                out.writeShort(type[1]);
+            }
+        }
+    }
+
+    private void varInsn(int opcode, int slot, int stackDelta) {
+        if (slot > 255) {
+            // wide前缀
+            ensure(4);
+            code[length++] = (byte) 0xC4;
+            code[length++] = (byte) opcode;
+            writeShort(slot);
+        } else {
+            ensure(2);
+            code[length++] = (byte) opcode;
+            code[length++] = (byte) slot;
+        }
+        adjust(stackDelta);
+    }
+
+    private void adjust(int delta) {
+        stack += delta;
+        maxStack = Math.max(maxStack, stack);
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > code.length) {
+            code = Arrays.copyOf(code, Math.max(code.length * 2, length + extra));
+        }
+    }
+
+    private void writeShort(int value) {
+        code[length++] = (byte) (value >> 8);
+        code[length++] = (byte) value;
+    }
+
+    /**
+     * 方法描述符中参数占用的槽位数
+     */
+    static int argumentSize(String descriptor) {
+        int size = 0;
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            char ch = descriptor.charAt(i);
+            if (ch == 'J' || ch == 'D') {
+                size += 2;
+                i++;
+            } else {
+                size++;
+                while (descriptor.charAt(i) == '[') {
+                    i++;
+                }
+                i = descriptor.charAt(i) == 'L' ? descriptor.indexOf(';', i) + 1 : i + 1;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 方法描述符中返回值占用的槽位数
+     */
+    static int returnSize(String descriptor) {
+        char ch = descriptor.charAt(descriptor.indexOf(')') + 1);
+        return ch == 'V' ? 0 : ch == 'J' || ch == 'D' ? 2 : 1;
+    }
+}
@@ -0,0 +1,177 @@
+package com.ldzsai.kelp.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * class文件常量池
+ */
+final class ConstantPool {
+    private static final int UTF8 = 1;
+    private static final int INTEGER = 3;
+    private static final int DOUBLE = 6;
+    private static final int CLASS = 7;
+    private static final int STRING = 8;
+    private static final int FIELD_REF = 9;
+    private static final int METHOD_REF = 10;
+    private static final int INTERFACE_METHOD_REF = 11;
+    private static final int NAME_AND_TYPE = 12;
+
+    // modified UTF-8编码的最大字节数
+    static final int MAX_UTF8_LENGTH = 65535;
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(bytes);
+    private final Map<String, Integer> index = new HashMap<>();
+
+    // 下一个常量的索引，索引从1开始
+    private int count = 1;
+
+    int utf8(String value) {
+        Integer existing = index.get("U" + value);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            out.writeByte(UTF8);
+            out.writeUTF(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return register("U" + value, 1);
+    }
+
+    int integer(int value) {
+        Integer existing = index.get("I" + value);
+        if (existing != null) {
+            return existing;
+        }
+        write(INTEGER);
+        writeInt(value);
+        return register("I" + value, 1);
+    }
+
+    int doubleValue(double value) {
+        String key = "D" + Double.doubleToRawLongBits(value);
+        Integer existing = index.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        write(DOUBLE);
+        long bits = Double.doubleToRawLongBits(value);
+        writeInt((int) (bits >>> 32));
+        writeInt((int) bits);
+        // double常量占用两个索引
+        return register(key, 2);
+    }
+
+    int classRef(String internalName) {
+        Integer existing = index.get("C" + internalName);
+        if (existing != null) {
+            return existing;
+        }
+        int name = utf8(internalName);
+        write(CLASS);
+        writeShort(name);
+        return register("C" + internalName, 1);
+    }
+
+    int string(String value) {
+        Integer existing = index.get("S" + value);
+        if (existing != null) {
+            return existing;
+        }
+        int utf8 = utf8(value);
+        write(STRING);
+        writeShort(utf8);
+        return register("S" + value, 1);
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(FIELD_REF, owner, name, descriptor);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(METHOD_REF, owner, name, descriptor);
+    }
+
+    int interfaceMethodRef(String owner, String name, String descriptor) {
+        return memberRef(INTERFACE_METHOD_REF, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        String key = tag + owner + "." + name + descriptor;
+        Integer existing = index.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        int classIndex = classRef(owner);
+        int nameAndType = nameAndType(name, descriptor);
+        write(tag);
+        writeShort(classIndex);
+        writeShort(nameAndType);
+        return register(key, 1);
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        String key = "N" + name + ":" + descriptor;
+        Integer existing = index.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        write(NAME_AND_TYPE);
+        writeShort(nameIndex);
+        writeShort(descriptorIndex);
+        return register(key, 1);
+    }
+
+    /**
+     * 写出constant_pool_count及全部常量
+     */
+    void writeTo(DataOutputStream target) throws IOException {
+        target.writeShort(count);
+        bytes.writeTo(target);
+    }
+
+    /**
+     * 计算字符串的modified UTF-8编码长度
+     */
+    static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            length += ch >= 0x0001 && ch <= 0x007F ? 1 : ch <= 0x07FF ? 2 : 3;
+        }
+        return length;
+    }
+
+    private int register(String key, int slots) {
+        int result = count;
+        index.put(key, result);
+        count += slots;
+        if (count > 0xFFFF) {
+            throw new IllegalStateException("Constant pool overflow");
+        }
+        return result;
+    }
+
+    private void write(int b) {
+        bytes.write(b);
+    }
+
+    private void writeShort(int value) {
+        bytes.write(value >>> 8);
+        bytes.write(value);
+    }
+
+    private void writeInt(int value) {
+        writeShort(value >>> 16);
+        writeShort(value & 0xFFFF);
+    }
+}
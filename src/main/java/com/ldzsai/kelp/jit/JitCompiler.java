@@ -0,0 +1,543 @@
+package com.ldzsai.kelp.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.ldzsai.kelp.KelpException;
+import com.ldzsai.kelp.Renderer;
+import com.ldzsai.kelp.expression.ArrayAccess;
+import com.ldzsai.kelp.expression.BinaryOperation;
+import com.ldzsai.kelp.expression.Block;
+import com.ldzsai.kelp.expression.Expression;
+import com.ldzsai.kelp.expression.FloatLiteral;
+import com.ldzsai.kelp.expression.FormattedOutput;
+import com.ldzsai.kelp.expression.FunctionCall;
+import com.ldzsai.kelp.expression.IntegerLiteral;
+import com.ldzsai.kelp.expression.ObjectKeyAccess;
+import com.ldzsai.kelp.expression.PathAccess;
+import com.ldzsai.kelp.expression.StringLiteral;
+import com.ldzsai.kelp.expression.TextSegment;
+import com.ldzsai.kelp.expression.Variable;
+
+/**
+ * 即时编译器，将模板的抽象语法树编译为实现{@link Renderer}的JVM类
+ * <p>
+ * 变量访问、算术运算直接生成字节码；方法调用按解释执行期间记录的内联缓存生成
+ * 带类型守卫的直接调用，守卫不满足时走反射调用；其余节点回退到节点自身的evaluate。
+ * 生成的类通过{@link MethodHandles.Lookup#defineClass}定义在本包中，随类加载器存活，
+ * 因此只应编译少量热点模板。
+ */
+public final class JitCompiler {
+    private static final String PACKAGE = JitCompiler.class.getPackage().getName().replace('.', '/') + "/";
+
+    private static final String OBJECT = "java/lang/Object";
+    private static final String ENVIRONMENT = "com/ldzsai/kelp/expression/Environment";
+    private static final String EXPRESSION = "com/ldzsai/kelp/expression/Expression";
+    private static final String TEXT_SEGMENT = "com/ldzsai/kelp/expression/TextSegment";
+    private static final String FORMATTED_OUTPUT = "com/ldzsai/kelp/expression/FormattedOutput";
+    private static final String BLOCK = "com/ldzsai/kelp/expression/Block";
+    private static final String APPENDABLE = "java/lang/Appendable";
+    private static final String SUPPORT = PACKAGE + "JitSupport";
+    private static final String CONSTANTS_FIELD = "k";
+    private static final String CONSTANTS_DESCRIPTOR = "[Ljava/lang/Object;";
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+    private final String className;
+    private final ConstantPool pool = new ConstantPool();
+    private final List<Object> constants = new ArrayList<>();
+    private CodeBuilder code;
+
+    private JitCompiler(String className) {
+        this.className = className;
+    }
+
+    /**
+     * 编译模板
+     *
+     * @param ast 抽象语法树
+     * @return 编译生成的执行后端
+     */
+    public static Renderer compile(List<Expression> ast) throws KelpException {
+        try {
+            JitCompiler compiler = new JitCompiler(PACKAGE + "GeneratedTemplate" + SEQUENCE.incrementAndGet());
+            byte[] bytes = compiler.generate(ast);
+            Class<?> generated = LOOKUP.defineClass(bytes);
+            return (Renderer) generated.getDeclaredConstructor(Object[].class).newInstance((Object) compiler.constants.toArray());
+        } catch (KelpException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new KelpException("Error generating bytecode: " + e, e);
+        }
+    }
+
+    /**
+     * 生成class文件
+     */
+    private byte[] generate(List<Expression> ast) throws IOException {
+        int thisClass = pool.classRef(className);
+        int superClass = pool.classRef(OBJECT);
+        int rendererInterface = pool.classRef("com/ldzsai/kelp/Renderer");
+        int codeName = pool.utf8("Code");
+        int stackMapTableName = pool.utf8("StackMapTable");
+        int fieldName = pool.utf8(CONSTANTS_FIELD);
+        int fieldDescriptor = pool.utf8(CONSTANTS_DESCRIPTOR);
+
+        // 构造方法：保存常量数组
+        CodeBuilder init = new CodeBuilder(pool);
+        init.parameter(className);
+        init.parameter(OBJECT);
+        init.loadObject(0);
+        init.invoke(CodeBuilder.INVOKESPECIAL, OBJECT, "<init>", "()V");
+        init.loadObject(0);
+        init.loadObject(1);
+        init.field(CodeBuilder.PUTFIELD, className, CONSTANTS_FIELD, CONSTANTS_DESCRIPTOR, -2);
+        init.insn(CodeBuilder.RETURN, 0);
+
+        // render方法
+        code = new CodeBuilder(pool);
+        code.parameter(className);
+        code.parameter(ENVIRONMENT);
+        code.parameter(APPENDABLE);
+        for (Expression expression : ast) {
+            segment(expression);
+        }
+        code.insn(CodeBuilder.RETURN, 0);
+
+        int initName = pool.utf8("<init>");
+        int initDescriptor = pool.utf8("(" + CONSTANTS_DESCRIPTOR + ")V");
+        int renderName = pool.utf8("render");
+        int renderDescriptor = pool.utf8("(L" + ENVIRONMENT + ";L" + APPENDABLE + ";)V");
+
+        ByteArrayOutputStream methods = new ByteArrayOutputStream();
+        DataOutputStream methodOut = new DataOutputStream(methods);
+        writeMethod(methodOut, 0x0001, initName, initDescriptor, codeName, init, stackMapTableName);
+        writeMethod(methodOut, 0x0001, renderName, renderDescriptor, codeName, code, stackMapTableName);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        // Java 11
+        out.writeShort(55);
+        pool.writeTo(out);
+        // public final super
+        out.writeShort(0x0001 | 0x0010 | 0x0020);
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(1);
+        out.writeShort(rendererInterface);
+        // private final Object[] k
+        out.writeShort(1);
+        out.writeShort(0x0002 | 0x0010);
+        out.writeShort(fieldName);
+        out.writeShort(fieldDescriptor);
+        out.writeShort(0);
+        out.writeShort(2);
+        methods.writeTo(out);
+        out.writeShort(0);
+        return bytes.toByteArray();
+    }
+
+    private void writeMethod(DataOutputStream out, int access, int name, int descriptor, int codeName,
+            CodeBuilder body, int stackMapTableName) throws IOException {
+        out.writeShort(access);
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        body.writeCodeAttribute(out, stackMapTableName);
+    }
+
+    /**
+     * 编译顶层片段并写入输出
+     */
+    private void segment(Expression expression) {
+        if (expression instanceof StringLiteral && ldcAble(((StringLiteral) expression).getValue())) {
+            code.loadObject(2);
+            code.ldcString(((StringLiteral) expression).getValue());
+            code.invoke(CodeBuilder.INVOKEINTERFACE, APPENDABLE, "append", "(Ljava/lang/CharSequence;)L" + APPENDABLE + ";");
+            code.insn(CodeBuilder.POP, -1);
+        } else if (expression instanceof TextSegment) {
+            loadConstant(expression, TEXT_SEGMENT);
+            code.loadObject(2);
+            code.invoke(CodeBuilder.INVOKEVIRTUAL, TEXT_SEGMENT, "writeTo", "(L" + APPENDABLE + ";)V");
+        } else if (expression instanceof FormattedOutput) {
+            int value = value(((FormattedOutput) expression).getExpression());
+            loadConstant(expression, FORMATTED_OUTPUT);
+            code.loadObject(value);
+            code.loadObject(2);
+            code.invoke(CodeBuilder.INVOKEVIRTUAL, FORMATTED_OUTPUT, "write",
+                    "(Ljava/lang/Object;L" + APPENDABLE + ";)V");
+        } else if (expression instanceof Block) {
+            loadConstant(expression, BLOCK);
+            code.loadObject(1);
+            code.loadObject(2);
+            code.invoke(CodeBuilder.INVOKEVIRTUAL, BLOCK, "render", "(L" + ENVIRONMENT + ";L" + APPENDABLE + ";)V");
+        } else {
+            int value = value(expression);
+            code.loadObject(2);
+            code.loadObject(value);
+            code.invoke(CodeBuilder.INVOKESTATIC, SUPPORT, "append", "(L" + APPENDABLE + ";Ljava/lang/Object;)V");
+        }
+    }
+
+    /**
+     * 编译表达式，结果存入新的对象局部变量
+     *
+     * @return 局部变量槽位
+     */
+    private int value(Expression expr) {
+        if (expr instanceof IntegerLiteral) {
+            code.intInsn(((IntegerLiteral) expr).getValue());
+            code.invoke(CodeBuilder.INVOKESTATIC, "java/lang/Integer", "valueOf", "(I)Ljava/lang/Integer;");
+        } else if (expr instanceof FloatLiteral) {
+            code.ldcDouble(((FloatLiteral) expr).getValue());
+            code.invoke(CodeBuilder.INVOKESTATIC, "java/lang/Double", "valueOf", "(D)Ljava/lang/Double;");
+        } else if (expr instanceof StringLiteral && ldcAble(((StringLiteral) expr).getValue())) {
+            code.ldcString(((StringLiteral) expr).getValue());
+        } else if (expr instanceof Variable) {
+            code.loadObject(1);
+            code.ldcString(((Variable) expr).getName());
+            code.invoke(CodeBuilder.INVOKEVIRTUAL, ENVIRONMENT, "getVariable", "(Ljava/lang/String;)Ljava/lang/Object;");
+        } else if (expr instanceof BinaryOperation && arithmeticSupported((BinaryOperation) expr)) {
+            code.loadDouble(arithmetic((BinaryOperation) expr));
+            code.invoke(CodeBuilder.INVOKESTATIC, "java/lang/Double", "valueOf", "(D)Ljava/lang/Double;");
+        } else if (expr instanceof ArrayAccess) {
+            ArrayAccess access = (ArrayAccess) expr;
+            int base = value(access.getBaseExpression());
+            int index = value(access.getIndexExpression());
+            code.loadObject(base);
+            code.loadObject(index);
+            code.invoke(CodeBuilder.INVOKESTATIC, "com/ldzsai/kelp/expression/ArrayAccess", "access",
+                    "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;");
+        } else if (expr instanceof ObjectKeyAccess) {
+            ObjectKeyAccess access = (ObjectKeyAccess) expr;
+            int base = value(access.getBaseExpression());
+            int key = value(access.getKeyExpression());
+            code.loadObject(base);
+            code.loadObject(key);
+            code.invoke(CodeBuilder.INVOKESTATIC, "com/ldzsai/kelp/expression/ObjectKeyAccess", "access",
+                    "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;");
+        } else if (expr instanceof PathAccess) {
+            // 合并的访问路径展开为逐级的静态访问调用
+            return value(((PathAccess) expr).expand());
+        } else if (expr instanceof FunctionCall) {
+            return call((FunctionCall) expr);
+        } else {
+            // 回退到节点自身的树遍历求值
+            loadConstant(expr, EXPRESSION);
+            code.loadObject(1);
+            code.invoke(CodeBuilder.INVOKEVIRTUAL, EXPRESSION, "evaluate", "(L" + ENVIRONMENT + ";)Ljava/lang/Object;");
+        }
+        return code.storeObject();
+    }
+
+    /**
+     * 编译算术运算，结果存入新的double局部变量；嵌套的算术运算之间不装箱
+     *
+     * @return 局部变量槽位
+     */
+    private int arithmetic(BinaryOperation operation) {
+        // 与树遍历保持一致：先求值两侧，再依次检查左右操作数类型
+        boolean leftNested = isNestedArithmetic(operation.getLeft());
+        int left = leftNested ? arithmetic((BinaryOperation) operation.getLeft()) : value(operation.getLeft());
+        boolean rightNested = isNestedArithmetic(operation.getRight());
+        int right = rightNested ? arithmetic((BinaryOperation) operation.getRight()) : value(operation.getRight());
+
+        loadOperand(left, leftNested, true);
+        loadOperand(right, rightNested, false);
+        switch (operation.getOperator()) {
+            case ADD:
+                code.insn(CodeBuilder.DADD, -2);
+                break;
+            case SUBTRACT:
+                code.insn(CodeBuilder.DSUB, -2);
+                break;
+            case MULTIPLY:
+                code.insn(CodeBuilder.DMUL, -2);
+                break;
+            default:
+                code.invoke(CodeBuilder.INVOKESTATIC, SUPPORT, "divide", "(DD)D");
+                break;
+        }
+        return code.storeDouble();
+    }
+
+    private void loadOperand(int slot, boolean isDouble, boolean left) {
+        if (isDouble) {
+            code.loadDouble(slot);
+        } else {
+            code.loadObject(slot);
+            code.insn(left ? CodeBuilder.ICONST_1 : CodeBuilder.ICONST_0, 1);
+            code.invoke(CodeBuilder.INVOKESTATIC, SUPPORT, "toDouble", "(Ljava/lang/Object;Z)D");
+        }
+    }
+
+    private boolean isNestedArithmetic(Expression expr) {
+        return expr instanceof BinaryOperation && arithmeticSupported((BinaryOperation) expr);
+    }
+
+    private boolean arithmeticSupported(BinaryOperation operation) {
+        switch (operation.getOperator()) {
+            case ADD:
+            case SUBTRACT:
+            case MULTIPLY:
+            case DIVIDE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 编译方法调用，结果存入新的对象局部变量
+     *
+     * @return 局部变量槽位
+     */
+    private int call(FunctionCall call) {
+        // 与树遍历保持一致：先求值参数，再求值目标
+        List<Expression> arguments = call.getArguments();
+        int[] args = new int[arguments.size()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = value(arguments.get(i));
+        }
+        int target = value(call.getTarget());
+
+        FunctionCall.CallProfile profile = call.getProfile();
+        boolean direct = profile != null && directlyInvocable(profile, args.length);
+        int result = code.reserveObject();
+        CodeBuilder.Label slow = new CodeBuilder.Label();
+        CodeBuilder.Label end = new CodeBuilder.Label();
+
+        if (direct) {
+            Method method = profile.getMethod();
+            boolean isStatic = Modifier.isStatic(method.getModifiers());
+
+            // 录制求值事件期间走通用路径，由反射调用记录方法查找和方法调用事件
+            code.invoke(CodeBuilder.INVOKESTATIC, "com/ldzsai/kelp/jfr/KelpEvents", "isTracking", "()Z");
+            code.jump(CodeBuilder.IFNE, slow, -1);
+
+            // 目标守卫：静态调用要求目标为同一个Class对象，实例调用要求目标类型完全一致
+            if (profile.getReceiverClass() == Class.class) {
+                code.loadObject(target);
+                code.ldcClass(internalName(profile.getTargetClass()));
+                code.jump(CodeBuilder.IF_ACMPNE, slow, -2);
+            } else {
+                guardClass(target, profile.getReceiverClass(), slow);
+            }
+
+            // 参数守卫：类型与解析时一致才能复用同一个重载
+            Class<?>[] argTypes = profile.getArgTypes();
+            for (int i = 0; i < args.length; i++) {
+                guardClass(args[i], argTypes[i], slow);
+            }
+
+            String owner = internalName(method.getDeclaringClass());
+            if (!isStatic) {
+                code.loadObject(target);
+                code.checkcast(owner);
+            }
+            Class<?>[] paramTypes = method.getParameterTypes();
+            for (int i = 0; i < args.length; i++) {
+                code.loadObject(args[i]);
+                adaptArgument(paramTypes[i], argTypes[i]);
+            }
+            int start = code.position();
+            String descriptor = descriptor(method);
+            if (isStatic) {
+                code.invoke(CodeBuilder.INVOKESTATIC, owner, method.getName(), descriptor);
+            } else if (method.getDeclaringClass().isInterface()) {
+                code.invoke(CodeBuilder.INVOKEINTERFACE, owner, method.getName(), descriptor);
+            } else {
+                code.invoke(CodeBuilder.INVOKEVIRTUAL, owner, method.getName(), descriptor);
+            }
+            int endOfCall = code.position();
+            boxReturn(method.getReturnType());
+            code.storeObject(result);
+            code.invoke(CodeBuilder.INVOKESTATIC, "com/ldzsai/kelp/BudgetTracker", "checkpoint", "()V");
+            code.jump(CodeBuilder.GOTO, end, 0);
+
+            // 直接调用抛出的异常与反射调用一样包装为KelpException
+            CodeBuilder.Label handler = new CodeBuilder.Label();
+            code.markHandler(handler, start, endOfCall);
+            code.ldcString(call.getName());
+            code.invoke(CodeBuilder.INVOKESTATIC, SUPPORT, "invocationFailed",
+                    "(Ljava/lang/Throwable;Ljava/lang/String;)Lcom/ldzsai/kelp/KelpException;");
+            code.athrow();
+
+            code.mark(slow);
+        }
+
+        // 通用路径：反射调用
+        code.ldcString(call.getName());
+        code.loadObject(target);
+        code.intInsn(args.length);
+        code.typeInsn(CodeBuilder.ANEWARRAY, pool.classRef(OBJECT), 0);
+        for (int i = 0; i < args.length; i++) {
+            code.insn(CodeBuilder.DUP, 1);
+            code.intInsn(i);
+            code.loadObject(args[i]);
+            code.insn(CodeBuilder.AASTORE, -3);
+        }
+        code.invoke(CodeBuilder.INVOKESTATIC, "com/ldzsai/kelp/expression/FunctionCall", "invoke",
+                "(Ljava/lang/String;Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;");
+        code.storeObject(result);
+        code.assigned(result);
+        if (direct) {
+            code.mark(end);
+        }
+        return result;
+    }
+
+    /**
+     * 守卫：局部变量非null且运行时类型与期望完全一致，否则跳转
+     */
+    private void guardClass(int slot, Class<?> expected, CodeBuilder.Label otherwise) {
+        code.loadObject(slot);
+        code.jump(CodeBuilder.IFNULL, otherwise, -1);
+        code.loadObject(slot);
+        code.invoke(CodeBuilder.INVOKEVIRTUAL, OBJECT, "getClass", "()Ljava/lang/Class;");
+        code.ldcClass(internalName(expected));
+        code.jump(CodeBuilder.IF_ACMPNE, otherwise, -2);
+    }
+
+    /**
+     * 将栈顶参数转换为方法参数类型
+     */
+    private void adaptArgument(Class<?> paramType, Class<?> argType) {
+        if (paramType.isPrimitive()) {
+            String wrapper = internalName(argType);
+            code.checkcast(wrapper);
+            code.invoke(CodeBuilder.INVOKEVIRTUAL, wrapper, paramType.getName() + "Value", "()" + descriptor(paramType));
+        } else if (paramType != Object.class) {
+            code.checkcast(internalName(paramType));
+        }
+    }
+
+    /**
+     * 基本类型返回值装箱，void返回null
+     */
+    private void boxReturn(Class<?> returnType) {
+        if (returnType == void.class) {
+            code.insn(CodeBuilder.ACONST_NULL, 1);
+        } else if (returnType.isPrimitive()) {
+            String wrapper = internalName(wrapperOf(returnType));
+            code.invoke(CodeBuilder.INVOKESTATIC, wrapper, "valueOf", "(" + descriptor(returnType) + ")L" + wrapper + ";");
+        }
+    }
+
+    /**
+     * 判断内联缓存中的方法能否由生成的类直接调用：
+     * 涉及的类均为公开类且能从本类加载器按名称解析到同一个类
+     */
+    private boolean directlyInvocable(FunctionCall.CallProfile profile, int argc) {
+        Method method = profile.getMethod();
+        int modifiers = method.getModifiers();
+        if (!Modifier.isPublic(modifiers) || method.getParameterCount() != argc || method.isVarArgs()) {
+            return false;
+        }
+        boolean isStatic = Modifier.isStatic(modifiers);
+        if (profile.getReceiverClass() == Class.class) {
+            // 以Class为目标只支持静态方法
+            if (!isStatic || !accessible(profile.getTargetClass())) {
+                return false;
+            }
+        } else if (!accessible(profile.getReceiverClass())) {
+            return false;
+        }
+        if (!accessible(method.getDeclaringClass()) || (isStatic && method.getDeclaringClass().isInterface())) {
+            return false;
+        }
+        for (Class<?> argType : profile.getArgTypes()) {
+            if (!accessible(argType)) {
+                return false;
+            }
+        }
+        for (Class<?> paramType : method.getParameterTypes()) {
+            if (!paramType.isPrimitive() && !accessible(paramType)) {
+                return false;
+            }
+        }
+        return method.getReturnType().isPrimitive() || accessible(method.getReturnType());
+    }
+
+    private boolean accessible(Class<?> type) {
+        Class<?> element = type;
+        while (element.isArray()) {
+            element = element.getComponentType();
+        }
+        if (element.isPrimitive()) {
+            return true;
+        }
+        if (!Modifier.isPublic(element.getModifiers())) {
+            return false;
+        }
+        try {
+            return Class.forName(type.getName(), false, JitCompiler.class.getClassLoader()) == type;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * 加载常量数组中的对象并转换类型
+     */
+    private void loadConstant(Object value, String type) {
+        constants.add(value);
+        code.loadObject(0);
+        code.field(CodeBuilder.GETFIELD, className, CONSTANTS_FIELD, CONSTANTS_DESCRIPTOR, 0);
+        code.intInsn(constants.size() - 1);
+        code.insn(CodeBuilder.AALOAD, -1);
+        code.checkcast(type);
+    }
+
+    private boolean ldcAble(String value) {
+        return ConstantPool.utf8Length(value) <= ConstantPool.MAX_UTF8_LENGTH;
+    }
+
+    private static Class<?> wrapperOf(Class<?> primitive) {
+        if (primitive == int.class) return Integer.class;
+        if (primitive == long.class) return Long.class;
+        if (primitive == double.class) return Double.class;
+        if (primitive == float.class) return Float.class;
+        if (primitive == boolean.class) return Boolean.class;
+        if (primitive == byte.class) return Byte.class;
+        if (primitive == char.class) return Character.class;
+        return Short.class;
+    }
+
+    private static String internalName(Class<?> type) {
+        return type.isArray() ? descriptor(type) : type.getName().replace('.', '/');
+    }
+
+    private static String descriptor(Method method) {
+        StringBuilder sb = new StringBuilder("(");
+        for (Class<?> param : method.getParameterTypes()) {
+            sb.append(descriptor(param));
+        }
+        return sb.append(')').append(descriptor(method.getReturnType())).toString();
+    }
+
+    private static String descriptor(Class<?> type) {
+        if (type == void.class) return "V";
+        if (type == int.class) return "I";
+        if (type == long.class) return "J";
+        if (type == double.class) return "D";
+        if (type == float.class) return "F";
+        if (type == boolean.class) return "Z";
+        if (type == byte.class) return "B";
+        if (type == char.class) return "C";
+        if (type == short.class) return "S";
+        if (type.isArray()) return type.getName().replace('.', '/');
+        return "L" + type.getName().replace('.', '/') + ";";
+    }
+}
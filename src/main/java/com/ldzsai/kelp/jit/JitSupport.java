@@ -0,0 +1,57 @@
+package com.ldzsai.kelp.jit;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+
+import com.ldzsai.kelp.KelpException;
+import com.ldzsai.kelp.expression.Expression;
+
+/**
+ * 生成代码调用的运行时辅助方法，语义与树遍历节点保持一致
+ */
+final class JitSupport {
+
+    private JitSupport() {
+    }
+
+    /**
+     * 非null值写入输出
+     */
+    static void append(Appendable out, Object value) throws IOException {
+        if (out instanceof StringBuilder) {
+            Expression.append((StringBuilder) out, value);
+        } else if (value != null) {
+            out.append(String.valueOf(value));
+        }
+    }
+
+    /**
+     * 二元运算操作数转换为double
+     *
+     * @param value 操作数
+     * @param left  是否为左操作数
+     */
+    static double toDouble(Object value, boolean left) throws KelpException {
+        if (!(value instanceof Number)) {
+            throw new KelpException((left ? "Left" : "Right") + " operand must be a number, but got: " + value.getClass().getSimpleName());
+        }
+        return ((Number) value).doubleValue();
+    }
+
+    /**
+     * 带除零检查的除法
+     */
+    static double divide(double left, double right) throws KelpException {
+        if (right == 0) {
+            throw new KelpException("Division by zero");
+        }
+        return left / right;
+    }
+
+    /**
+     * 直接调用抛出的异常，按反射调用的方式包装
+     */
+    static KelpException invocationFailed(Throwable cause, String name) {
+        return new KelpException("Error invoking method " + name + ": " + new InvocationTargetException(cause).getMessage());
+    }
+}
@@ -0,0 +1,126 @@
+package com.ldzsai.kelp.jit;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ldzsai.kelp.CompiledTemplate;
+import com.ldzsai.kelp.Renderer;
+import com.ldzsai.kelp.expression.Expression;
+
+/**
+ * 分层编译：模板先由树遍历解释执行，执行次数达到阈值后在后台线程编译为JVM类，
+ * 编译完成后原子替换模板的执行后端；编译失败时继续解释执行
+ * <p>
+ * 未指定执行器时使用自有的单个后台线程，不再使用时应调用{@link #close()}结束该线程；
+ * 调用方提供的执行器由调用方负责关闭。
+ */
+public class TieredCompiler implements AutoCloseable {
+    // 默认编译阈值
+    public static final int DEFAULT_THRESHOLD = 1000;
+
+    // 编译阈值
+    private final int threshold;
+
+    // 后台编译执行器
+    private final Executor executor;
+
+    // 自有的执行器，使用调用方提供的执行器时为null
+    private final ExecutorService ownedExecutor;
+
+    // 编译成功/失败次数
+    private final AtomicLong compiled = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public TieredCompiler() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    public TieredCompiler(int threshold) {
+        this(threshold, defaultExecutor(), true);
+    }
+
+    public TieredCompiler(int threshold, Executor executor) {
+        this(threshold, executor, false);
+    }
+
+    private TieredCompiler(int threshold, Executor executor, boolean owned) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("Threshold must be positive");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor cannot be null");
+        }
+        this.threshold = threshold;
+        this.executor = executor;
+        this.ownedExecutor = owned ? (ExecutorService) executor : null;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * 获取编译成功的模板数量
+     */
+    public long getCompiledCount() {
+        return compiled.get();
+    }
+
+    /**
+     * 获取编译失败的模板数量
+     */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * 提交模板到后台编译，由模板在执行次数达到阈值时调用一次
+     *
+     * @param template 已编译模板
+     * @param ast      抽象语法树
+     * @param current  当前执行后端，编译完成时仅在后端未被替换的情况下替换
+     */
+    public void submit(CompiledTemplate template, List<Expression> ast, Renderer current) {
+        try {
+            executor.execute(() -> {
+                try {
+                    Renderer renderer = JitCompiler.compile(ast);
+                    if (template.swapRenderer(current, renderer)) {
+                        compiled.incrementAndGet();
+                    }
+                } catch (Exception | LinkageError e) {
+                    // 编译失败（含生成的类无法加载或校验）不影响解释执行
+                    failed.incrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            failed.incrementAndGet();
+        }
+    }
+
+    /**
+     * 关闭自有的后台线程，已提交的编译继续完成；之后提交的模板计为编译失败并继续解释执行。
+     * 使用调用方提供的执行器时不做任何事
+     */
+    @Override
+    public void close() {
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    /**
+     * 单个守护线程的默认执行器
+     */
+    private static ExecutorService defaultExecutor() {
+        return Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kelp-jit");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
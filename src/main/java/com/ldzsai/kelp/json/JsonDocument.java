@@ -0,0 +1,339 @@
+package com.ldzsai.kelp.json;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.ldzsai.kelp.KelpException;
+
+/**
+ * 基于原始UTF-8字节的JSON文档，可直接放入Environment
+ * <p>
+ * 首次访问时建立结构索引并缓存，同一文档上的多条访问路径共享该索引；
+ * 值只在被访问时解码，解码结果同样缓存。文档建立后只读，可在多线程间共享。
+ *
+ * <pre>
+ * env.setVariable("doc", JsonDocument.of(bytes));
+ * engine.execute("${doc.order.items[3].sku}");
+ * </pre>
+ */
+public class JsonDocument extends JsonValue {
+    // 元素较多的数组按需建立元素位置表
+    private static final int ELEMENT_TABLE_THRESHOLD = 32;
+
+    private final ByteBuffer bytes;
+
+    // 结构索引，首次访问时建立
+    private volatile JsonIndex index;
+
+    // 已解码的值，按条目缓存
+    private Object[] values;
+
+    // 数组元素的条目表
+    private final Map<Integer, int[]> elementTables = new ConcurrentHashMap<>();
+
+    private JsonDocument(ByteBuffer bytes) {
+        super(null, 0);
+        this.bytes = bytes;
+    }
+
+    /**
+     * 包装JSON字节，不复制
+     *
+     * @param bytes UTF-8编码的JSON
+     * @return JSON文档
+     */
+    public static JsonDocument of(byte[] bytes) {
+        return new JsonDocument(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * 包装JSON字节区间（如内存映射文件），读取position到limit之间的内容，不修改原缓冲
+     *
+     * @param bytes UTF-8编码的JSON
+     * @return JSON文档
+     */
+    public static JsonDocument of(ByteBuffer bytes) {
+        return new JsonDocument(bytes.duplicate());
+    }
+
+    /**
+     * 获取结构索引，首次调用时建立
+     */
+    private JsonIndex index() throws KelpException {
+        JsonIndex current = index;
+        if (current == null) {
+            synchronized (this) {
+                current = index;
+                if (current == null) {
+                    current = JsonIndex.build(bytes);
+                    values = new Object[current.size];
+                    index = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 获取根值：对象和数组为JsonValue，标量为解码后的值
+     */
+    public Object root() throws KelpException {
+        return valueAt(0);
+    }
+
+    byte type(int entry) {
+        return index().type(entry);
+    }
+
+    int count(int entry) {
+        return index().counts[entry];
+    }
+
+    int next(int entry) {
+        return index().next[entry];
+    }
+
+    String typeName(int entry) {
+        switch (type(entry)) {
+            case JsonIndex.OBJECT:
+                return "object";
+            case JsonIndex.ARRAY:
+                return "array";
+            case JsonIndex.STRING:
+                return "string";
+            case JsonIndex.NUMBER:
+                return "number";
+            case JsonIndex.NULL:
+                return "null";
+            default:
+                return "boolean";
+        }
+    }
+
+    /**
+     * 按键查找对象成员的条目
+     *
+     * @return 成员值的条目，不存在时为-1
+     */
+    int member(int object, String key) {
+        JsonIndex idx = index();
+        int child = object + 1;
+        for (int i = idx.counts[object]; i > 0; i--) {
+            // 键是字符串，值紧随其后
+            if (keyEquals(idx, child, key)) {
+                return child + 1;
+            }
+            child = idx.next[child + 1];
+        }
+        return -1;
+    }
+
+    /**
+     * 查找数组元素的条目，元素较多的数组使用缓存的条目表
+     */
+    int element(int array, int position) {
+        JsonIndex idx = index();
+        int length = idx.counts[array];
+        if (length >= ELEMENT_TABLE_THRESHOLD) {
+            int[] table = elementTables.computeIfAbsent(array, key -> {
+                int[] entries = new int[length];
+                int child = key + 1;
+                for (int i = 0; i < length; i++) {
+                    entries[i] = child;
+                    child = idx.next[child];
+                }
+                return entries;
+            });
+            return table[position];
+        }
+        int child = array + 1;
+        for (int i = 0; i < position; i++) {
+            child = idx.next[child];
+        }
+        return child;
+    }
+
+    /**
+     * 获取条目的值，标量按需解码并缓存
+     */
+    Object valueAt(int entry) throws KelpException {
+        JsonIndex idx = index();
+        Object value = values[entry];
+        if (value != null) {
+            return value;
+        }
+        switch (idx.type(entry)) {
+            case JsonIndex.OBJECT:
+            case JsonIndex.ARRAY:
+                value = entry == 0 ? this : new JsonValue(this, entry);
+                break;
+            case JsonIndex.STRING:
+                value = string(idx, entry);
+                break;
+            case JsonIndex.NUMBER:
+                value = number(idx, entry);
+                break;
+            case JsonIndex.TRUE:
+                return Boolean.TRUE;
+            case JsonIndex.FALSE:
+                return Boolean.FALSE;
+            default:
+                return null;
+        }
+        // 解码结果不可变，并发下重复解码无害
+        values[entry] = value;
+        return value;
+    }
+
+    /**
+     * 原始JSON文本
+     */
+    String text(int entry) {
+        JsonIndex idx = index();
+        return decode(idx.starts[entry], idx.ends[entry]);
+    }
+
+    /**
+     * 比较未转义的键与给定字符串，ASCII键直接逐字节比较
+     */
+    private boolean keyEquals(JsonIndex idx, int entry, String key) {
+        int start = idx.starts[entry] + 1;
+        int end = idx.ends[entry] - 1;
+        if (!idx.escaped(entry)) {
+            if (end - start != key.length()) {
+                // 字节数与字符数不同时仍可能是非ASCII的相同键
+                return hasNonAscii(key) && string(idx, entry).equals(key);
+            }
+            for (int i = 0; i < key.length(); i++) {
+                char ch = key.charAt(i);
+                if (ch >= 0x80) {
+                    return string(idx, entry).equals(key);
+                }
+                if (bytes.get(start + i) != ch) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return string(idx, entry).equals(key);
+    }
+
+    private static boolean hasNonAscii(String key) {
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) >= 0x80) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String string(JsonIndex idx, int entry) throws KelpException {
+        int start = idx.starts[entry] + 1;
+        int end = idx.ends[entry] - 1;
+        String raw = decode(start, end);
+        return idx.escaped(entry) ? unescape(raw, start) : raw;
+    }
+
+    private Object number(JsonIndex idx, int entry) throws KelpException {
+        int start = idx.starts[entry];
+        int end = idx.ends[entry];
+        boolean integral = true;
+        long value = 0;
+        boolean negative = bytes.get(start) == '-';
+        int digits = 0;
+        for (int i = negative ? start + 1 : start; i < end; i++) {
+            byte b = bytes.get(i);
+            if (b < '0' || b > '9') {
+                integral = false;
+                break;
+            }
+            value = value * 10 + (b - '0');
+            digits++;
+        }
+        try {
+            if (integral && digits > 0 && digits <= 18) {
+                long result = negative ? -value : value;
+                if (result >= Integer.MIN_VALUE && result <= Integer.MAX_VALUE) {
+                    return (int) result;
+                }
+                return result;
+            }
+            String text = decode(start, end);
+            if (integral) {
+                try {
+                    return Long.parseLong(text);
+                } catch (NumberFormatException e) {
+                    // 超出long范围的整数按double解析
+                }
+            }
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw new KelpException("Invalid JSON at offset " + start + ": invalid number", e);
+        }
+    }
+
+    private String decode(int start, int end) {
+        ByteBuffer slice = bytes.duplicate();
+        slice.limit(end).position(start);
+        if (slice.hasArray()) {
+            return new String(slice.array(), slice.arrayOffset() + start, end - start, StandardCharsets.UTF_8);
+        }
+        return StandardCharsets.UTF_8.decode(slice).toString();
+    }
+
+    /**
+     * 处理转义字符
+     */
+    private static String unescape(String raw, int offset) throws KelpException {
+        StringBuilder sb = new StringBuilder(raw.length());
+        for (int i = 0; i < raw.length(); i++) {
+            char ch = raw.charAt(i);
+            if (ch != '\\') {
+                sb.append(ch);
+                continue;
+            }
+            if (++i >= raw.length()) {
+                throw new KelpException("Invalid JSON at offset " + offset + ": invalid escape");
+            }
+            char escaped = raw.charAt(i);
+            switch (escaped) {
+                case '"':
+                case '\\':
+                case '/':
+                    sb.append(escaped);
+                    break;
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    if (i + 4 >= raw.length()) {
+                        throw new KelpException("Invalid JSON at offset " + offset + ": invalid unicode escape");
+                    }
+                    try {
+                        sb.append((char) Integer.parseInt(raw.substring(i + 1, i + 5), 16));
+                    } catch (NumberFormatException e) {
+                        throw new KelpException("Invalid JSON at offset " + offset + ": invalid unicode escape", e);
+                    }
+                    i += 4;
+                    break;
+                default:
+                    throw new KelpException("Invalid JSON at offset " + offset + ": invalid escape");
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,228 @@
+package com.ldzsai.kelp.json;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.ldzsai.kelp.KelpException;
+
+/**
+ * JSON结构索引：一次扫描原始字节，按先序记录每个值（包括对象的键）的类型、字节区间、
+ * 子树结束位置及成员个数，不解码任何值
+ * <p>
+ * 对象的成员按"键、值"交替排列在对象条目之后，通过next可以跳过整棵子树。
+ */
+final class JsonIndex {
+    static final byte OBJECT = 1;
+    static final byte ARRAY = 2;
+    static final byte STRING = 3;
+    static final byte NUMBER = 4;
+    static final byte TRUE = 5;
+    static final byte FALSE = 6;
+    static final byte NULL = 7;
+
+    // 字符串包含转义字符
+    static final byte ESCAPED = 0x10;
+
+    // 最大嵌套深度
+    private static final int MAX_DEPTH = 512;
+
+    private final ByteBuffer bytes;
+    private final int limit;
+
+    byte[] types;
+    int[] starts;
+    int[] ends;
+    int[] next;
+    int[] counts;
+    int size;
+
+    private JsonIndex(ByteBuffer bytes) {
+        this.bytes = bytes;
+        this.limit = bytes.limit();
+        int capacity = Math.max(16, bytes.remaining() / 8);
+        this.types = new byte[capacity];
+        this.starts = new int[capacity];
+        this.ends = new int[capacity];
+        this.next = new int[capacity];
+        this.counts = new int[capacity];
+    }
+
+    /**
+     * 建立索引
+     *
+     * @param bytes JSON字节，使用绝对位置读取，不修改其position
+     * @return 结构索引
+     */
+    static JsonIndex build(ByteBuffer bytes) throws KelpException {
+        JsonIndex index = new JsonIndex(bytes);
+        int pos = index.value(index.skipWhitespace(bytes.position()), 0);
+        if (index.skipWhitespace(pos) != index.limit) {
+            throw index.error(pos, "unexpected trailing content");
+        }
+        return index;
+    }
+
+    /**
+     * 解析一个值并记录条目
+     *
+     * @return 值之后的位置
+     */
+    private int value(int pos, int depth) throws KelpException {
+        if (pos >= limit) {
+            throw error(pos, "unexpected end of input");
+        }
+        byte b = bytes.get(pos);
+        switch (b) {
+            case '{':
+                return container(pos, depth, OBJECT, '}');
+            case '[':
+                return container(pos, depth, ARRAY, ']');
+            case '"': {
+                int entry = add(STRING, pos);
+                int end = string(pos, entry);
+                close(entry, end);
+                return end;
+            }
+            case 't':
+                return literal(pos, TRUE, "true");
+            case 'f':
+                return literal(pos, FALSE, "false");
+            case 'n':
+                return literal(pos, NULL, "null");
+            default:
+                if (b == '-' || (b >= '0' && b <= '9')) {
+                    int entry = add(NUMBER, pos);
+                    int end = pos + 1;
+                    while (end < limit && isNumberByte(bytes.get(end))) {
+                        end++;
+                    }
+                    close(entry, end);
+                    return end;
+                }
+                throw error(pos, "unexpected character '" + (char) b + "'");
+        }
+    }
+
+    private int container(int pos, int depth, byte type, char closing) throws KelpException {
+        if (depth >= MAX_DEPTH) {
+            throw error(pos, "nesting too deep");
+        }
+        int entry = add(type, pos);
+        int count = 0;
+        int cursor = skipWhitespace(pos + 1);
+        if (cursor < limit && bytes.get(cursor) == closing) {
+            close(entry, cursor + 1);
+            return cursor + 1;
+        }
+        while (true) {
+            if (type == OBJECT) {
+                if (cursor >= limit || bytes.get(cursor) != '"') {
+                    throw error(cursor, "expected a string key");
+                }
+                cursor = skipWhitespace(value(cursor, depth + 1));
+                if (cursor >= limit || bytes.get(cursor) != ':') {
+                    throw error(cursor, "expected ':'");
+                }
+                cursor = skipWhitespace(cursor + 1);
+            }
+            cursor = skipWhitespace(value(cursor, depth + 1));
+            count++;
+            if (cursor >= limit) {
+                throw error(cursor, "unexpected end of input");
+            }
+            byte b = bytes.get(cursor);
+            if (b == closing) {
+                counts[entry] = count;
+                close(entry, cursor + 1);
+                return cursor + 1;
+            }
+            if (b != ',') {
+                throw error(cursor, "expected ',' or '" + closing + "'");
+            }
+            cursor = skipWhitespace(cursor + 1);
+        }
+    }
+
+    /**
+     * 扫描字符串到结束引号，记录是否包含转义
+     */
+    private int string(int pos, int entry) throws KelpException {
+        int cursor = pos + 1;
+        while (cursor < limit) {
+            byte b = bytes.get(cursor);
+            if (b == '"') {
+                return cursor + 1;
+            }
+            if (b == '\\') {
+                types[entry] |= ESCAPED;
+                cursor += 2;
+            } else {
+                cursor++;
+            }
+        }
+        throw error(pos, "unterminated string");
+    }
+
+    private int literal(int pos, byte type, String text) throws KelpException {
+        if (pos + text.length() > limit) {
+            throw error(pos, "unexpected end of input");
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (bytes.get(pos + i) != text.charAt(i)) {
+                throw error(pos, "invalid literal");
+            }
+        }
+        int entry = add(type, pos);
+        close(entry, pos + text.length());
+        return pos + text.length();
+    }
+
+    private int add(byte type, int start) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            next = Arrays.copyOf(next, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        types[size] = type;
+        starts[size] = start;
+        return size++;
+    }
+
+    /**
+     * 值解析完成：记录结束位置，子树之后的下一个条目即当前条目总数
+     */
+    private void close(int entry, int end) {
+        ends[entry] = end;
+        next[entry] = size;
+    }
+
+    private int skipWhitespace(int pos) {
+        while (pos < limit) {
+            byte b = bytes.get(pos);
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                break;
+            }
+            pos++;
+        }
+        return pos;
+    }
+
+    private static boolean isNumberByte(byte b) {
+        return (b >= '0' && b <= '9') || b == '.' || b == 'e' || b == 'E' || b == '+' || b == '-';
+    }
+
+    private KelpException error(int pos, String message) {
+        return new KelpException("Invalid JSON at offset " + pos + ": " + message);
+    }
+
+    byte type(int entry) {
+        return (byte) (types[entry] & 0x0F);
+    }
+
+    boolean escaped(int entry) {
+        return (types[entry] & ESCAPED) != 0;
+    }
+}
@@ -0,0 +1,135 @@
+package com.ldzsai.kelp.json;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.ldzsai.kelp.KelpException;
+
+/**
+ * JSON文档中的对象或数组视图，成员按需从原始字节解码
+ * <p>
+ * 标量成员解码为String、Integer、Long、Double、Boolean或null，对象和数组成员仍为JsonValue，
+ * 因此${doc.order.items[3].sku}只解码最终访问到的值。数组可直接用于集合运算。
+ */
+public class JsonValue implements Iterable<Object> {
+    // 所属文档，根值为文档自身时为null
+    private final JsonDocument document;
+
+    // 结构索引中的条目
+    final int entry;
+
+    JsonValue(JsonDocument document, int entry) {
+        this.document = document;
+        this.entry = entry;
+    }
+
+    JsonDocument document() {
+        return document != null ? document : (JsonDocument) this;
+    }
+
+    public boolean isObject() {
+        return document().type(entry) == JsonIndex.OBJECT;
+    }
+
+    public boolean isArray() {
+        return document().type(entry) == JsonIndex.ARRAY;
+    }
+
+    /**
+     * 获取对象的成员数或数组的元素数
+     */
+    public int size() throws KelpException {
+        JsonDocument doc = document();
+        if (doc.type(entry) != JsonIndex.OBJECT && doc.type(entry) != JsonIndex.ARRAY) {
+            throw new KelpException("Expected a JSON object or array but got " + doc.typeName(entry));
+        }
+        return doc.count(entry);
+    }
+
+    /**
+     * 判断对象是否包含键
+     */
+    public boolean has(String key) throws KelpException {
+        return document().member(checkObject(), key) >= 0;
+    }
+
+    /**
+     * 获取对象成员
+     *
+     * @param key 键
+     * @return 成员值
+     */
+    public Object get(String key) throws KelpException {
+        JsonDocument doc = document();
+        int member = doc.member(checkObject(), key);
+        if (member < 0) {
+            throw new KelpException("Cannot find the key '" + key + "' in the object");
+        }
+        return doc.valueAt(member);
+    }
+
+    /**
+     * 获取数组元素
+     *
+     * @param index 索引
+     * @return 元素值
+     */
+    public Object get(int index) throws KelpException {
+        JsonDocument doc = document();
+        if (doc.type(entry) != JsonIndex.ARRAY) {
+            throw new KelpException("Expected an array or list but got JSON " + doc.typeName(entry));
+        }
+        int length = doc.count(entry);
+        if (index < 0 || index >= length) {
+            throw new KelpException("Array index out of bounds: " + index + " (array length: " + length + ")");
+        }
+        return doc.valueAt(doc.element(entry, index));
+    }
+
+    /**
+     * 遍历数组元素
+     */
+    @Override
+    public Iterator<Object> iterator() {
+        JsonDocument doc = document();
+        if (doc.type(entry) != JsonIndex.ARRAY) {
+            throw new KelpException("Expected an array or list but got JSON " + doc.typeName(entry));
+        }
+        return new Iterator<Object>() {
+            private int remaining = doc.count(entry);
+            private int child = entry + 1;
+
+            @Override
+            public boolean hasNext() {
+                return remaining > 0;
+            }
+
+            @Override
+            public Object next() {
+                if (remaining == 0) {
+                    throw new NoSuchElementException();
+                }
+                Object value = doc.valueAt(child);
+                child = doc.next(child);
+                remaining--;
+                return value;
+            }
+        };
+    }
+
+    private int checkObject() throws KelpException {
+        JsonDocument doc = document();
+        if (doc.type(entry) != JsonIndex.OBJECT) {
+            throw new KelpException("Expected an object (Map) but got JSON " + doc.typeName(entry));
+        }
+        return entry;
+    }
+
+    /**
+     * 原始JSON文本
+     */
+    @Override
+    public String toString() {
+        return document().text(entry);
+    }
+}
@@ -0,0 +1,20 @@
+package com.ldzsai.kelp.load;
+
+import com.ldzsai.kelp.expression.Environment;
+
+/**
+ * 负载测试的环境生成器，为每次请求生成变量，由多个压测线程并发调用
+ * <p>
+ * 命令行使用时须提供公共无参构造方法。
+ */
+@FunctionalInterface
+public interface EnvironmentGenerator {
+    /**
+     * 生成一次请求的环境
+     *
+     * @param template 本次请求的模板名
+     * @param sequence 请求序号，全局递增
+     * @return 环境
+     */
+    Environment next(String template, long sequence);
+}
@@ -0,0 +1,114 @@
+package com.ldzsai.kelp.load;
+
+/**
+ * 延迟直方图：小于128纳秒的值各占一个桶，之后按2的幂分段、每段线性细分为64个桶，相对误差不超过1/64
+ * <p>
+ * 记录时不分配内存，非线程安全，每个压测线程使用各自的实例，结束后合并。
+ */
+public class LatencyHistogram {
+    private static final int LINEAR_BITS = 7;
+
+    // 逐值计数的范围
+    private static final int LINEAR = 1 << LINEAR_BITS;
+
+    // 每段的桶数
+    private static final int SUB_BUCKETS = LINEAR / 2;
+
+    // 覆盖到Long.MAX_VALUE
+    private static final int SEGMENTS = 63 - LINEAR_BITS;
+
+    private final long[] counts = new long[LINEAR + SEGMENTS * SUB_BUCKETS];
+
+    private long count;
+
+    private long sum;
+
+    private long max;
+
+    /**
+     * 记录一次延迟
+     *
+     * @param nanos 纳秒，负数按0记录
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts[index(value)]++;
+        count++;
+        sum += value;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * 合并另一个直方图
+     */
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * 获取平均延迟（纳秒）
+     */
+    public double getMean() {
+        return count > 0 ? (double) sum / count : 0;
+    }
+
+    /**
+     * 获取百分位延迟（纳秒），返回所在桶的上界，不超过最大值
+     *
+     * @param percentile 百分位，0到100
+     * @return 延迟，没有记录时为0
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100");
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * 值所在的桶：第n段的值位宽为LINEAR_BITS+n，取最高的LINEAR_BITS位定位段内的桶
+     */
+    private static int index(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int segment = 64 - Long.numberOfLeadingZeros(value) - LINEAR_BITS;
+        int sub = (int) (value >>> segment) - SUB_BUCKETS;
+        return LINEAR + (segment - 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int segment = (index - LINEAR) / SUB_BUCKETS + 1;
+        int sub = (index - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((long) (sub + 1) << segment) - 1;
+    }
+}
@@ -0,0 +1,158 @@
+package com.ldzsai.kelp.load;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.ldzsai.kelp.Backend;
+import com.ldzsai.kelp.ExpressionEngine;
+import com.ldzsai.kelp.expression.Environment;
+
+/**
+ * 负载测试命令行入口，对每组线程数和目标速率的组合各运行一次，每个组合使用新的引擎
+ * <pre>
+ * java -cp kelp.jar:generators.jar com.ldzsai.kelp.load.LoadCommand [options] &lt;corpus-dir&gt; &lt;generator-class&gt;
+ * </pre>
+ */
+public final class LoadCommand {
+    private static final String USAGE = "Usage: LoadCommand [options] <corpus-dir> <generator-class>\n"
+            + "  --threads N[,N...]     thread counts (default: available processors)\n"
+            + "  --rate R[,R...]        target rates in ops/s, 0 for closed model (default: 0)\n"
+            + "  --warmup SECONDS       warmup per configuration (default: "
+            + LoadGenerator.DEFAULT_WARMUP_MILLIS / 1000 + ")\n"
+            + "  --duration SECONDS     measurement per configuration (default: "
+            + LoadGenerator.DEFAULT_DURATION_MILLIS / 1000 + ")\n"
+            + "  --miss-ratio R         fraction of requests that miss the cache (default: 0)\n"
+            + "  --suffix EXT           only load corpus files ending with EXT\n"
+            + "  --backend tree|bytecode\n";
+
+    private LoadCommand() {
+    }
+
+    public static void main(String[] args) {
+        try {
+            run(args, result -> {
+                System.out.println(result);
+                if (result.getFirstError() != null) {
+                    System.out.println("  first error: " + result.getFirstError());
+                }
+            });
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(USAGE);
+            System.exit(2);
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * 解析参数并依次运行各个配置
+     *
+     * @param args     命令行参数
+     * @param progress 每个配置完成时回调
+     * @return 各配置的结果
+     */
+    static List<LoadResult> run(String[] args, Consumer<LoadResult> progress) throws Exception {
+        List<String> positional = new ArrayList<>();
+        List<Integer> threadCounts = new ArrayList<>();
+        List<Double> rates = new ArrayList<>();
+        long warmupMillis = LoadGenerator.DEFAULT_WARMUP_MILLIS;
+        long durationMillis = LoadGenerator.DEFAULT_DURATION_MILLIS;
+        double missRatio = 0;
+        String suffix = null;
+        Backend backend = Backend.TREE;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--threads":
+                    for (String value : value(args, ++i, arg).split(",")) {
+                        threadCounts.add(Integer.valueOf(value.trim()));
+                    }
+                    break;
+                case "--rate":
+                    for (String value : value(args, ++i, arg).split(",")) {
+                        rates.add(Double.valueOf(value.trim()));
+                    }
+                    break;
+                case "--warmup":
+                    warmupMillis = (long) (Double.parseDouble(value(args, ++i, arg)) * 1000);
+                    break;
+                case "--duration":
+                    durationMillis = (long) (Double.parseDouble(value(args, ++i, arg)) * 1000);
+                    break;
+                case "--miss-ratio":
+                    missRatio = Double.parseDouble(value(args, ++i, arg));
+                    break;
+                case "--suffix":
+                    suffix = value(args, ++i, arg);
+                    break;
+                case "--backend":
+                    backend = Backend.valueOf(value(args, ++i, arg).toUpperCase(Locale.ROOT));
+                    break;
+                default:
+                    if (arg.startsWith("--")) {
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                    }
+                    positional.add(arg);
+            }
+        }
+        if (positional.size() != 2) {
+            throw new IllegalArgumentException("Expected <corpus-dir> <generator-class>");
+        }
+        if (threadCounts.isEmpty()) {
+            threadCounts.add(Runtime.getRuntime().availableProcessors());
+        }
+        if (rates.isEmpty()) {
+            rates.add(0.0);
+        }
+
+        Map<String, String> corpus = LoadGenerator.loadCorpus(Paths.get(positional.get(0)), suffix);
+        if (corpus.isEmpty()) {
+            throw new IllegalArgumentException("No templates found in " + positional.get(0));
+        }
+        EnvironmentGenerator generator = newGenerator(positional.get(1));
+
+        List<LoadResult> results = new ArrayList<>();
+        for (int threads : threadCounts) {
+            for (double rate : rates) {
+                ExpressionEngine engine = new ExpressionEngine(new Environment());
+                engine.setBackend(backend);
+                LoadGenerator load = new LoadGenerator(engine, corpus, generator);
+                load.setThreads(threads);
+                load.setTargetRate(rate);
+                load.setWarmupMillis(warmupMillis);
+                load.setDurationMillis(durationMillis);
+                load.setMissRatio(missRatio);
+                LoadResult result = load.run();
+                progress.accept(result);
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
+    private static EnvironmentGenerator newGenerator(String className) throws Exception {
+        Class<?> type;
+        try {
+            type = Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Generator class not found: " + className);
+        }
+        if (!EnvironmentGenerator.class.isAssignableFrom(type)) {
+            throw new IllegalArgumentException(className + " does not implement " + EnvironmentGenerator.class.getName());
+        }
+        return (EnvironmentGenerator) type.getDeclaredConstructor().newInstance();
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+}
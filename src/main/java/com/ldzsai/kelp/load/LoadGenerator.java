@@ -0,0 +1,379 @@
+package com.ldzsai.kelp.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.ldzsai.kelp.ExpressionEngine;
+import com.ldzsai.kelp.KelpException;
+import com.ldzsai.kelp.expression.Environment;
+
+/**
+ * 多线程负载生成器：以固定线程数驱动{@link ExpressionEngine#execute(String, Environment, StringBuilder)}，
+ * 模板从语料中随机选取，按比例混入缓存未命中的请求
+ * <p>
+ * 目标速率为0时为闭环模型，每个线程完成一次请求后立即发起下一次；大于0时为开环模型，请求按固定间隔排定，
+ * 延迟从计划开始时间起算，引擎变慢时排队等待的时间同样计入，避免协调遗漏。
+ * 分配速率按压测线程统计，包含环境生成器的分配。
+ * <pre>
+ * LoadGenerator load = new LoadGenerator(engine, LoadGenerator.loadCorpus(Paths.get("templates"), ".tpl"), generator);
+ * load.setThreads(8);
+ * load.setTargetRate(50_000);
+ * System.out.println(load.run());
+ * </pre>
+ */
+public class LoadGenerator {
+    public static final long DEFAULT_WARMUP_MILLIS = 2_000;
+
+    public static final long DEFAULT_DURATION_MILLIS = 10_000;
+
+    // 默认缓存上限，未命中的请求使缓存超出上限时清空缓存
+    public static final int DEFAULT_MAX_CACHE_SIZE = 10_000;
+
+    // 开环模型下计划开始前自旋等待的时间
+    private static final long SPIN_NANOS = 100_000;
+
+    private final ExpressionEngine engine;
+
+    private final String[] names;
+
+    private final String[] sources;
+
+    private final EnvironmentGenerator generator;
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    // 目标速率（次/秒），0表示闭环模型
+    private double targetRate;
+
+    private long warmupMillis = DEFAULT_WARMUP_MILLIS;
+
+    private long durationMillis = DEFAULT_DURATION_MILLIS;
+
+    // 缓存未命中请求的比例
+    private double missRatio;
+
+    private int maxCacheSize = DEFAULT_MAX_CACHE_SIZE;
+
+    public LoadGenerator(ExpressionEngine engine, Map<String, String> corpus, EnvironmentGenerator generator) {
+        if (engine == null) {
+            throw new IllegalArgumentException("Engine cannot be null");
+        }
+        if (corpus == null || corpus.isEmpty()) {
+            throw new IllegalArgumentException("Corpus cannot be empty");
+        }
+        if (generator == null) {
+            throw new IllegalArgumentException("Generator cannot be null");
+        }
+        this.engine = engine;
+        this.names = corpus.keySet().toArray(new String[0]);
+        this.sources = corpus.values().toArray(new String[0]);
+        this.generator = generator;
+    }
+
+    /**
+     * 加载目录中的模板作为语料，模板名为以/分隔的相对路径
+     *
+     * @param directory 目录
+     * @param suffix    文件后缀，为null时加载全部文件
+     * @return 模板名到模板源码
+     * @throws IOException 读取错误
+     */
+    public static Map<String, String> loadCorpus(Path directory, String suffix) throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(directory)) {
+            files = stream.filter(Files::isRegularFile)
+                    .filter(file -> suffix == null || file.getFileName().toString().endsWith(suffix))
+                    .collect(Collectors.toList());
+        }
+        Map<String, String> corpus = new TreeMap<>();
+        for (Path file : files) {
+            String name = directory.relativize(file).toString().replace(File.separatorChar, '/');
+            corpus.put(name, new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        }
+        return corpus;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be positive");
+        }
+        this.threads = threads;
+    }
+
+    public double getTargetRate() {
+        return targetRate;
+    }
+
+    /**
+     * 设置全部线程合计的目标速率（次/秒），0表示闭环模型
+     */
+    public void setTargetRate(double targetRate) {
+        if (targetRate < 0) {
+            throw new IllegalArgumentException("Target rate cannot be negative");
+        }
+        this.targetRate = targetRate;
+    }
+
+    public long getWarmupMillis() {
+        return warmupMillis;
+    }
+
+    public void setWarmupMillis(long warmupMillis) {
+        if (warmupMillis < 0) {
+            throw new IllegalArgumentException("Warmup cannot be negative");
+        }
+        this.warmupMillis = warmupMillis;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public void setDurationMillis(long durationMillis) {
+        if (durationMillis <= 0) {
+            throw new IllegalArgumentException("Duration must be positive");
+        }
+        this.durationMillis = durationMillis;
+    }
+
+    public double getMissRatio() {
+        return missRatio;
+    }
+
+    /**
+     * 设置缓存未命中请求的比例：这部分请求在模板末尾追加唯一的序号，每次都需要解析
+     */
+    public void setMissRatio(double missRatio) {
+        if (missRatio < 0 || missRatio > 1) {
+            throw new IllegalArgumentException("Miss ratio must be between 0 and 1");
+        }
+        this.missRatio = missRatio;
+    }
+
+    public int getMaxCacheSize() {
+        return maxCacheSize;
+    }
+
+    /**
+     * 设置缓存上限，引擎的缓存没有淘汰策略，未命中的请求使缓存超出上限时清空缓存
+     */
+    public void setMaxCacheSize(int maxCacheSize) {
+        if (maxCacheSize < 1) {
+            throw new IllegalArgumentException("Max cache size must be positive");
+        }
+        this.maxCacheSize = maxCacheSize;
+    }
+
+    /**
+     * 预热后测量一个配置
+     *
+     * @return 测量结果
+     * @throws KelpException 压测线程被中断
+     */
+    public LoadResult run() throws KelpException {
+        long start = System.nanoTime();
+        long measureStart = start + warmupMillis * 1_000_000;
+        long end = measureStart + durationMillis * 1_000_000;
+        // 每个线程的请求间隔，各线程错开排定
+        long interval = targetRate > 0 ? Math.max(1, (long) (threads * 1e9 / targetRate)) : 0;
+
+        AtomicLong sequence = new AtomicLong();
+        AtomicReference<String> firstError = new AtomicReference<>();
+        Worker[] workers = new Worker[threads];
+        Thread[] workerThreads = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(start + interval * i / threads, interval, measureStart, end, sequence, firstError);
+            workerThreads[i] = new Thread(workers[i], "kelp-load-" + i);
+            workerThreads[i].setDaemon(true);
+            workerThreads[i].start();
+        }
+
+        try {
+            sleepUntil(measureStart);
+            long hits = engine.getCacheHits();
+            long misses = engine.getCacheMisses();
+            for (Thread thread : workerThreads) {
+                thread.join();
+            }
+
+            LatencyHistogram latency = new LatencyHistogram();
+            long operations = 0;
+            long errors = 0;
+            long allocated = 0;
+            for (Worker worker : workers) {
+                latency.merge(worker.latency);
+                operations += worker.operations;
+                errors += worker.errors;
+                allocated = allocated < 0 || worker.allocated < 0 ? -1 : allocated + worker.allocated;
+            }
+            return new LoadResult(threads, targetRate, operations, errors, end - measureStart, latency, allocated,
+                    engine.getCacheHits() - hits, engine.getCacheMisses() - misses, engine.getCacheSize(),
+                    firstError.get());
+        } catch (InterruptedException e) {
+            for (Thread thread : workerThreads) {
+                thread.interrupt();
+            }
+            Thread.currentThread().interrupt();
+            throw new KelpException("Load run interrupted", e);
+        }
+    }
+
+    private static void sleepUntil(long deadline) throws InterruptedException {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    /**
+     * 获取支持线程分配统计的ThreadMXBean，不支持时为null
+     */
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 压测线程，统计只由本线程写入，结束后由调用线程读取
+     */
+    private class Worker implements Runnable {
+        private final long first;
+        private final long interval;
+        private final long measureStart;
+        private final long end;
+        private final AtomicLong sequence;
+        private final AtomicReference<String> firstError;
+
+        // 线程数不少于处理器数时自旋会抢占其他压测线程，只park
+        private final long spinNanos = threads < Runtime.getRuntime().availableProcessors() ? SPIN_NANOS : 0;
+
+        final LatencyHistogram latency = new LatencyHistogram();
+        long operations;
+        long errors;
+        long allocated = -1;
+
+        Worker(long first, long interval, long measureStart, long end, AtomicLong sequence,
+                AtomicReference<String> firstError) {
+            this.first = first;
+            this.interval = interval;
+            this.measureStart = measureStart;
+            this.end = end;
+            this.sequence = sequence;
+            this.firstError = firstError;
+        }
+
+        @Override
+        public void run() {
+            com.sun.management.ThreadMXBean bean = allocationBean();
+            long threadId = Thread.currentThread().getId();
+            long allocatedBefore = -1;
+            StringBuilder out = new StringBuilder(1024);
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long scheduled = first;
+            while (!Thread.currentThread().isInterrupted()) {
+                long seq = sequence.getAndIncrement();
+                int index = random.nextInt(names.length);
+                String exp = sources[index];
+                if (missRatio > 0 && random.nextDouble() < missRatio) {
+                    exp = exp + "#" + seq;
+                    if (engine.getCacheSize() >= maxCacheSize) {
+                        engine.clearCache();
+                    }
+                }
+
+                long intended;
+                Environment env;
+                try {
+                    env = generator.next(names[index], seq);
+                    if (env == null) {
+                        firstError.compareAndSet(null, names[index] + ": generator returned null");
+                    }
+                } catch (RuntimeException e) {
+                    env = null;
+                    firstError.compareAndSet(null, names[index] + ": generator failed: " + e);
+                }
+                if (interval > 0) {
+                    intended = scheduled;
+                    scheduled += interval;
+                    if (intended >= end) {
+                        break;
+                    }
+                    waitUntil(intended);
+                } else {
+                    intended = System.nanoTime();
+                    if (intended >= end) {
+                        break;
+                    }
+                }
+                boolean measured = intended >= measureStart;
+                if (measured && allocatedBefore < 0 && bean != null) {
+                    allocatedBefore = bean.getThreadAllocatedBytes(threadId);
+                }
+
+                boolean failed = env == null;
+                if (!failed) {
+                    try {
+                        out.setLength(0);
+                        engine.execute(exp, env, out);
+                    } catch (Exception e) {
+                        failed = true;
+                        firstError.compareAndSet(null, names[index] + ": " + e.getMessage());
+                    }
+                }
+                long done = System.nanoTime();
+                if (measured) {
+                    latency.record(done - intended);
+                    operations++;
+                    if (failed) {
+                        errors++;
+                    }
+                }
+            }
+            if (allocatedBefore >= 0) {
+                allocated = bean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+            } else if (bean != null) {
+                allocated = 0;
+            }
+        }
+
+        /**
+         * 等待到计划开始时间：park的唤醒误差通常有数十微秒，处理器有空闲时最后一段自旋等待，避免误差计入延迟
+         */
+        private void waitUntil(long deadline) {
+            long remaining;
+            while ((remaining = deadline - System.nanoTime()) > 0 && !Thread.currentThread().isInterrupted()) {
+                if (remaining > spinNanos) {
+                    LockSupport.parkNanos(remaining - spinNanos);
+                } else {
+                    Thread.onSpinWait();
+                }
+            }
+        }
+    }
+}
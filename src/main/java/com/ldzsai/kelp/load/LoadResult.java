@@ -0,0 +1,148 @@
+package com.ldzsai.kelp.load;
+
+/**
+ * 一个负载配置的测量结果，只统计预热之后的测量区间
+ */
+public class LoadResult {
+    private final int threads;
+
+    private final double targetRate;
+
+    private final long operations;
+
+    private final long errors;
+
+    private final long elapsedNanos;
+
+    private final LatencyHistogram latency;
+
+    private final long allocatedBytes;
+
+    private final long cacheHits;
+
+    private final long cacheMisses;
+
+    private final int cacheSize;
+
+    private final String firstError;
+
+    LoadResult(int threads, double targetRate, long operations, long errors, long elapsedNanos,
+            LatencyHistogram latency, long allocatedBytes, long cacheHits, long cacheMisses, int cacheSize,
+            String firstError) {
+        this.threads = threads;
+        this.targetRate = targetRate;
+        this.operations = operations;
+        this.errors = errors;
+        this.elapsedNanos = elapsedNanos;
+        this.latency = latency;
+        this.allocatedBytes = allocatedBytes;
+        this.cacheHits = cacheHits;
+        this.cacheMisses = cacheMisses;
+        this.cacheSize = cacheSize;
+        this.firstError = firstError;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * 获取目标速率（次/秒），0表示闭环模型
+     */
+    public double getTargetRate() {
+        return targetRate;
+    }
+
+    /**
+     * 获取完成的请求数，含失败的请求
+     */
+    public long getOperations() {
+        return operations;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * 获取第一个失败请求的错误信息，没有失败时为null
+     */
+    public String getFirstError() {
+        return firstError;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+
+    /**
+     * 获取每秒完成的请求数
+     */
+    public double getThroughput() {
+        return elapsedNanos > 0 ? operations * 1e9 / elapsedNanos : 0;
+    }
+
+    /**
+     * 获取延迟直方图，开环模型下从计划开始时间起算
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * 获取压测线程的堆分配字节数，JVM不支持时为-1
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * 获取每秒分配的字节数，JVM不支持时为-1
+     */
+    public double getAllocationRate() {
+        if (allocatedBytes < 0) {
+            return -1;
+        }
+        return elapsedNanos > 0 ? allocatedBytes * 1e9 / elapsedNanos : 0;
+    }
+
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses;
+    }
+
+    /**
+     * 获取缓存命中率，没有请求时为0
+     */
+    public double getCacheHitRatio() {
+        long total = cacheHits + cacheMisses;
+        return total > 0 ? (double) cacheHits / total : 0;
+    }
+
+    /**
+     * 获取测量结束时的缓存大小
+     */
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("threads=%d rate=%s ops=%d errors=%d throughput=%.0f ops/s", threads,
+                targetRate > 0 ? String.format("%.0f", targetRate) : "max", operations, errors, getThroughput()));
+        sb.append(String.format(" latency(us) p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f",
+                latency.getPercentile(50) / 1e3, latency.getPercentile(90) / 1e3, latency.getPercentile(99) / 1e3,
+                latency.getPercentile(99.9) / 1e3, latency.getMax() / 1e3));
+        if (allocatedBytes >= 0) {
+            sb.append(String.format(" alloc=%.1f MB/s (%.0f B/op)", getAllocationRate() / (1024.0 * 1024.0),
+                    operations > 0 ? (double) allocatedBytes / operations : 0));
+        }
+        sb.append(String.format(" cache hits=%d misses=%d (%.1f%%) size=%d", cacheHits, cacheMisses,
+                getCacheHitRatio() * 100, cacheSize));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,70 @@
+package com.ldzsai.kelp.profile;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个语法树节点的采样统计
+ * <p>
+ * 包含时间为节点求值的总耗时，独占时间扣除了被统计的子节点耗时。
+ */
+public class NodeProfile {
+    // 所属模板
+    private final String template;
+
+    // 源码位置，如3:14，位置未知时为"?"
+    private final String location;
+
+    // 源码片段
+    private final String expression;
+
+    private final LongAdder invocations = new LongAdder();
+    private final LongAdder inclusiveNanos = new LongAdder();
+    private final LongAdder exclusiveNanos = new LongAdder();
+
+    NodeProfile(String template, String location, String expression) {
+        this.template = template;
+        this.location = location;
+        this.expression = expression;
+    }
+
+    void record(long inclusive, long exclusive) {
+        invocations.increment();
+        inclusiveNanos.add(inclusive);
+        exclusiveNanos.add(exclusive);
+    }
+
+    void reset() {
+        invocations.reset();
+        inclusiveNanos.reset();
+        exclusiveNanos.reset();
+    }
+
+    public String getTemplate() {
+        return template;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    public long getInvocations() {
+        return invocations.sum();
+    }
+
+    public long getInclusiveNanos() {
+        return inclusiveNanos.sum();
+    }
+
+    public long getExclusiveNanos() {
+        return exclusiveNanos.sum();
+    }
+
+    @Override
+    public String toString() {
+        return template + " " + location + " " + expression;
+    }
+}
@@ -0,0 +1,40 @@
+package com.ldzsai.kelp.profile;
+
+import com.ldzsai.kelp.expression.Block;
+import com.ldzsai.kelp.expression.Environment;
+
+/**
+ * 块指令的计时包装节点，对流式写出计时，不把块的输出拼接为字符串
+ */
+final class ProfiledBlock extends Block {
+    private final Block delegate;
+
+    private final NodeProfile profile;
+
+    ProfiledBlock(Block delegate, NodeProfile profile) {
+        this.delegate = delegate;
+        this.profile = profile;
+        setSpan(delegate.getStart(), delegate.getEnd());
+    }
+
+    @Override
+    public void render(Environment env, Appendable out) throws Exception {
+        long[] children = ProfiledExpression.CHILD_NANOS.get();
+        long outer = children[0];
+        children[0] = 0;
+        long start = System.nanoTime();
+        try {
+            delegate.render(env, out);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            profile.record(elapsed, elapsed - children[0]);
+            // 向外层节点报告本节点的耗时
+            children[0] = outer + elapsed;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(delegate);
+    }
+}
@@ -0,0 +1,47 @@
+package com.ldzsai.kelp.profile;
+
+import com.ldzsai.kelp.expression.Environment;
+import com.ldzsai.kelp.expression.Expression;
+
+/**
+ * 计时包装节点，只出现在采样执行使用的语法树副本中
+ */
+final class ProfiledExpression extends Expression {
+    // 每个线程当前节点内已统计的子节点耗时
+    static final ThreadLocal<long[]> CHILD_NANOS = ThreadLocal.withInitial(() -> new long[1]);
+
+    private final Expression delegate;
+
+    private final NodeProfile profile;
+
+    ProfiledExpression(Expression delegate, NodeProfile profile) {
+        this.delegate = delegate;
+        this.profile = profile;
+        setSpan(delegate.getStart(), delegate.getEnd());
+    }
+
+    Expression getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public Object evaluate(Environment env) throws Exception {
+        long[] children = CHILD_NANOS.get();
+        long outer = children[0];
+        children[0] = 0;
+        long start = System.nanoTime();
+        try {
+            return delegate.evaluate(env);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            profile.record(elapsed, elapsed - children[0]);
+            // 向外层节点报告本节点的耗时
+            children[0] = outer + elapsed;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(delegate);
+    }
+}
@@ -0,0 +1,41 @@
+package com.ldzsai.kelp.profile;
+
+import java.util.List;
+
+import com.ldzsai.kelp.AstRenderer;
+import com.ldzsai.kelp.expression.Environment;
+import com.ldzsai.kelp.expression.Expression;
+
+/**
+ * 采样执行后端：每N次执行使用带计时节点的语法树副本，其余执行使用原语法树，不产生额外开销
+ */
+public class ProfilingRenderer extends AstRenderer {
+    // 带计时节点的语法树
+    private final AstRenderer instrumented;
+
+    // 本模板的节点统计，分析器只持有弱引用
+    private final List<NodeProfile> profiles;
+
+    private final TemplateProfiler profiler;
+
+    // 执行次数，允许并发下少量计数丢失
+    private long invocationCount;
+
+    ProfilingRenderer(List<Expression> ast, List<Expression> instrumented, List<NodeProfile> profiles,
+            TemplateProfiler profiler) {
+        super(ast);
+        this.instrumented = new AstRenderer(instrumented);
+        this.profiles = profiles;
+        this.profiler = profiler;
+    }
+
+    @Override
+    public void render(Environment env, Appendable out) throws Exception {
+        if (++invocationCount % profiler.getSampleInterval() != 0) {
+            super.render(env, out);
+            return;
+        }
+        profiler.sampled();
+        instrumented.render(env, out);
+    }
+}
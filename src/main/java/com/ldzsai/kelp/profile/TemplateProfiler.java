@@ -0,0 +1,216 @@
+package com.ldzsai.kelp.profile;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.ldzsai.kelp.expression.Block;
+import com.ldzsai.kelp.expression.Expression;
+import com.ldzsai.kelp.expression.ExpressionRewriter;
+
+/**
+ * 采样分析器：每N次执行统计一次各节点的调用次数、包含时间和独占时间，按源码位置汇总热点
+ * <p>
+ * 未采样的执行使用原语法树，采样执行使用带计时节点的副本，可以常驻生产环境。
+ * 各模板的节点统计随其执行后端保存，分析器只持有弱引用：模板被重新编译、移出缓存或被模板仓库替换后，
+ * 其统计在回收后不再出现在报告中。
+ * <pre>
+ * TemplateProfiler profiler = new TemplateProfiler(100);
+ * engine.setProfiling(profiler);
+ * ...
+ * System.out.println(profiler.report(20));
+ * </pre>
+ */
+public class TemplateProfiler {
+    // 默认采样间隔
+    public static final int DEFAULT_SAMPLE_INTERVAL = 100;
+
+    // 报告中源码片段的最大长度
+    private static final int MAX_EXCERPT = 60;
+
+    // 采样间隔
+    private final int sampleInterval;
+
+    // 各模板的节点统计，由对应的执行后端强引用
+    private final Set<Reference<List<NodeProfile>>> templates = ConcurrentHashMap.newKeySet();
+
+    // 已回收模板的统计
+    private final ReferenceQueue<List<NodeProfile>> collected = new ReferenceQueue<>();
+
+    // 采样执行次数
+    private final LongAdder sampledCount = new LongAdder();
+
+    public TemplateProfiler() {
+        this(DEFAULT_SAMPLE_INTERVAL);
+    }
+
+    public TemplateProfiler(int sampleInterval) {
+        if (sampleInterval < 1) {
+            throw new IllegalArgumentException("Sample interval must be positive");
+        }
+        this.sampleInterval = sampleInterval;
+    }
+
+    public int getSampleInterval() {
+        return sampleInterval;
+    }
+
+    /**
+     * 获取采样执行次数
+     */
+    public long getSampledCount() {
+        return sampledCount.sum();
+    }
+
+    void sampled() {
+        sampledCount.increment();
+    }
+
+    /**
+     * 创建采样执行后端
+     *
+     * @param ast    抽象语法树
+     * @param source 模板源码，用于计算行列号和截取片段，流式编译时为null
+     * @return 执行后端
+     */
+    public ProfilingRenderer instrument(List<Expression> ast, String source) {
+        expunge();
+        String template = source != null ? excerpt(source) : "template";
+        List<NodeProfile> profiles = new ArrayList<>();
+        List<Expression> instrumented = new ArrayList<>(ast.size());
+        for (Expression expression : ast) {
+            instrumented.add(wrap(expression, template, source, profiles));
+        }
+        templates.add(new WeakReference<>(profiles, collected));
+        return new ProfilingRenderer(ast, instrumented, profiles, this);
+    }
+
+    /**
+     * 移除已回收模板的统计
+     */
+    private void expunge() {
+        for (Reference<? extends List<NodeProfile>> ref; (ref = collected.poll()) != null;) {
+            templates.remove(ref);
+        }
+    }
+
+    /**
+     * 仍在使用的模板的全部节点统计
+     */
+    private List<NodeProfile> profiles() {
+        expunge();
+        List<NodeProfile> all = new ArrayList<>();
+        for (Reference<List<NodeProfile>> ref : templates) {
+            List<NodeProfile> profiles = ref.get();
+            if (profiles != null) {
+                all.addAll(profiles);
+            }
+        }
+        return all;
+    }
+
+    /**
+     * 获取仍在使用的已编译模板数
+     */
+    public int getTemplateCount() {
+        expunge();
+        return templates.size();
+    }
+
+    /**
+     * 为有子节点的节点包上计时节点，字面量、变量及lambda函数体保持不变
+     */
+    private Expression wrap(Expression expr, String template, String source, List<NodeProfile> profiles) {
+        Expression rebuilt = ExpressionRewriter.rebuild(expr, child -> wrap(child, template, source, profiles));
+        if (rebuilt == expr) {
+            return expr;
+        }
+        NodeProfile profile = new NodeProfile(template, location(source, expr.getStart()),
+                source != null && expr.getStart() >= 0 && expr.getEnd() <= source.length()
+                        ? excerpt(source.substring(expr.getStart(), expr.getEnd())) : String.valueOf(expr));
+        profiles.add(profile);
+        // 块指令保持流式写出
+        return rebuilt instanceof Block ? new ProfiledBlock((Block) rebuilt, profile) : new ProfiledExpression(rebuilt, profile);
+    }
+
+    /**
+     * 获取热点节点
+     *
+     * @param limit 最多返回的节点数
+     * @return 按独占时间从高到低排列的节点统计
+     */
+    public List<NodeProfile> getHotNodes(int limit) {
+        List<NodeProfile> nodes = new ArrayList<>();
+        for (NodeProfile profile : profiles()) {
+            if (profile.getInvocations() > 0) {
+                nodes.add(profile);
+            }
+        }
+        nodes.sort(Comparator.comparingLong(NodeProfile::getExclusiveNanos).reversed());
+        return nodes.size() > limit ? new ArrayList<>(nodes.subList(0, limit)) : nodes;
+    }
+
+    /**
+     * 生成热点报告
+     *
+     * @param limit 最多列出的节点数
+     * @return 文本报告
+     */
+    public String report(int limit) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Sampled executions: ").append(getSampledCount())
+                .append(" (1 in ").append(sampleInterval).append(")\n");
+        sb.append(String.format("%10s %10s %10s  %-8s %s%n", "self(ms)", "total(ms)", "calls", "location", "expression"));
+        for (NodeProfile node : getHotNodes(limit)) {
+            sb.append(String.format("%10.3f %10.3f %10d  %-8s %s  [%s]%n", node.getExclusiveNanos() / 1e6,
+                    node.getInclusiveNanos() / 1e6, node.getInvocations(), node.getLocation(),
+                    node.getExpression(), node.getTemplate()));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 清空统计，已编译的模板继续采样
+     */
+    public void reset() {
+        for (NodeProfile profile : profiles()) {
+            profile.reset();
+        }
+        sampledCount.reset();
+    }
+
+    /**
+     * 偏移转换为从1开始的行列号
+     */
+    private static String location(String source, int offset) {
+        if (offset < 0) {
+            return "?";
+        }
+        if (source == null || offset > source.length()) {
+            return "@" + offset;
+        }
+        int line = 1;
+        int lineStart = 0;
+        for (int i = 0; i < offset; i++) {
+            if (source.charAt(i) == '\n') {
+                line++;
+                lineStart = i + 1;
+            }
+        }
+        return line + ":" + (offset - lineStart + 1);
+    }
+
+    /**
+     * 合并空白并截断
+     */
+    private static String excerpt(String text) {
+        String compact = text.replaceAll("\\s+", " ").trim();
+        return compact.length() > MAX_EXCERPT ? compact.substring(0, MAX_EXCERPT - 3) + "..." : compact;
+    }
+}
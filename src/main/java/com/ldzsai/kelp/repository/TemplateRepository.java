@@ -0,0 +1,369 @@
+package com.ldzsai.kelp.repository;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.ldzsai.kelp.CompiledTemplate;
+import com.ldzsai.kelp.ExpressionEngine;
+import com.ldzsai.kelp.KelpException;
+
+/**
+ * 模板仓库：从目录加载全部模板，并通过WatchService监视目录（含子目录）
+ * <p>
+ * 文件变更后在后台线程重新编译，编译成功时原子替换为新的已编译模板，失败时保留上一个可用版本；
+ * 请求线程通过{@link #get(String)}只读取已编译模板，不会触发解析。
+ * 模板名为相对于根目录、以/分隔的路径，如mail/welcome.tpl。
+ * <pre>
+ * TemplateRepository repository = new TemplateRepository(engine, Paths.get("templates"));
+ * repository.setSuffix(".tpl");
+ * repository.start();
+ * ...
+ * engine.render(repository.get("mail/welcome.tpl"), out);
+ * </pre>
+ */
+public class TemplateRepository implements Closeable {
+    // 默认静默时间，毫秒
+    public static final long DEFAULT_SETTLE_DELAY = 100;
+
+    private final ExpressionEngine engine;
+
+    private final Path directory;
+
+    // 模板名到已编译模板
+    private final Map<String, CompiledTemplate> templates = new ConcurrentHashMap<>();
+
+    // 最近一次编译失败的模板及原因，编译成功或文件删除后清除
+    private final Map<String, KelpException> errors = new ConcurrentHashMap<>();
+
+    // 重新编译成功/失败次数
+    private final AtomicLong reloaded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    // 监视键到目录，启动后仅由监视线程访问
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+
+    // 模板文件后缀，为null时加载全部文件
+    private String suffix;
+
+    private long settleDelay = DEFAULT_SETTLE_DELAY;
+
+    private WatchService watcher;
+
+    private Thread thread;
+
+    private volatile boolean running;
+
+    public TemplateRepository(ExpressionEngine engine, Path directory) {
+        if (engine == null) {
+            throw new IllegalArgumentException("Engine cannot be null");
+        }
+        if (directory == null) {
+            throw new IllegalArgumentException("Directory cannot be null");
+        }
+        this.engine = engine;
+        this.directory = directory.toAbsolutePath().normalize();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public String getSuffix() {
+        return suffix;
+    }
+
+    /**
+     * 设置模板文件后缀，如.tpl，其他文件（编辑器临时文件等）被忽略；须在启动前设置
+     */
+    public void setSuffix(String suffix) {
+        this.suffix = suffix;
+    }
+
+    public long getSettleDelay() {
+        return settleDelay;
+    }
+
+    /**
+     * 设置静默时间：最后一次变更事件之后等待的时间，期间的多次写入只编译一次
+     */
+    public void setSettleDelay(long settleDelay) {
+        if (settleDelay < 0) {
+            throw new IllegalArgumentException("Settle delay cannot be negative");
+        }
+        this.settleDelay = settleDelay;
+    }
+
+    /**
+     * 在调用线程编译目录中的全部模板，然后启动后台监视线程
+     *
+     * @throws KelpException 目录无法读取或模板编译失败
+     */
+    public synchronized void start() throws KelpException {
+        if (running) {
+            throw new IllegalStateException("Repository already started");
+        }
+        try {
+            watcher = directory.getFileSystem().newWatchService();
+            // 先注册再加载，加载期间的变更不会丢失
+            for (Path file : register(directory)) {
+                String name = name(file);
+                templates.put(name, compile(file));
+            }
+        } catch (Exception e) {
+            closeWatcher();
+            keys.clear();
+            if (e instanceof KelpException) {
+                throw (KelpException) e;
+            }
+            throw new KelpException("Error loading templates from " + directory + ": " + e.getMessage(), e);
+        }
+        running = true;
+        thread = new Thread(this::watch, "kelp-template-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 获取已编译模板，只读取当前版本，不会解析
+     *
+     * @param name 模板名
+     * @return 已编译模板
+     * @throws KelpException 模板不存在
+     */
+    public CompiledTemplate get(String name) throws KelpException {
+        CompiledTemplate template = templates.get(name);
+        if (template == null) {
+            throw new KelpException("Template not found: " + name);
+        }
+        return template;
+    }
+
+    /**
+     * 模板是否存在
+     */
+    public boolean contains(String name) {
+        return templates.containsKey(name);
+    }
+
+    /**
+     * 获取全部模板名，按名称排序
+     */
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(new TreeSet<>(templates.keySet()));
+    }
+
+    /**
+     * 获取模板最近一次编译失败的原因，当前版本可用时为null
+     */
+    public KelpException getLastError(String name) {
+        return errors.get(name);
+    }
+
+    /**
+     * 获取后台重新编译成功的次数
+     */
+    public long getReloadCount() {
+        return reloaded.get();
+    }
+
+    /**
+     * 获取后台重新编译失败的次数
+     */
+    public long getFailureCount() {
+        return failed.get();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 停止监视线程，已加载的模板仍可读取
+     */
+    @Override
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        closeWatcher();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 监视线程：收集变更事件，静默时间内没有新事件后统一重新编译
+     */
+    private void watch() {
+        Set<Path> pending = new LinkedHashSet<>();
+        try {
+            while (running) {
+                WatchKey key = pending.isEmpty() ? watcher.take() : watcher.poll(settleDelay, TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    for (Path file : pending) {
+                        try {
+                            reload(file);
+                        } catch (RuntimeException e) {
+                            // 单个文件的意外错误不影响其他文件和后续监视
+                            errors.put(name(file), new KelpException("Error reloading template " + name(file)
+                                    + ": " + e.getMessage(), e));
+                            failed.incrementAndGet();
+                        }
+                    }
+                    pending.clear();
+                    continue;
+                }
+                try {
+                    collect(key, pending);
+                } catch (ClosedWatchServiceException e) {
+                    throw e;
+                } catch (IOException | RuntimeException e) {
+                    // 新目录无法注册或重新扫描时文件被删除（UncheckedIOException），等待下一次事件
+                    failed.incrementAndGet();
+                }
+                if (!key.reset()) {
+                    keys.remove(key);
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // 已关闭
+        } finally {
+            running = false;
+        }
+    }
+
+    /**
+     * 将监视键上的事件加入待编译文件
+     */
+    private void collect(WatchKey key, Set<Path> pending) throws IOException {
+        Path dir = keys.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // 事件丢失，重新扫描全部文件
+                pending.addAll(templateFiles(directory));
+                for (String name : templates.keySet()) {
+                    pending.add(directory.resolve(name));
+                }
+                continue;
+            }
+            if (dir == null) {
+                continue;
+            }
+            Path file = dir.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(file)) {
+                pending.addAll(register(file));
+            } else {
+                pending.add(file);
+            }
+        }
+    }
+
+    /**
+     * 重新编译单个文件，失败时保留当前版本
+     */
+    private void reload(Path file) {
+        String name = name(file);
+        if (Files.notExists(file)) {
+            // 删除或移出目录时只有目录本身的事件，目录下的模板一并移除
+            String prefix = name + "/";
+            templates.keySet().removeIf(key -> key.startsWith(prefix));
+            errors.keySet().removeIf(key -> key.startsWith(prefix));
+        }
+        if (!accept(file)) {
+            return;
+        }
+        if (!Files.isRegularFile(file)) {
+            templates.remove(name);
+            errors.remove(name);
+            return;
+        }
+        try {
+            templates.put(name, compile(file));
+            errors.remove(name);
+            reloaded.incrementAndGet();
+        } catch (KelpException e) {
+            errors.put(name, e);
+            failed.incrementAndGet();
+        }
+    }
+
+    /**
+     * 读入堆内存后编译；不使用内存映射，文件被截断改写时不影响正在使用的旧版本
+     */
+    private CompiledTemplate compile(Path file) throws KelpException {
+        try {
+            return engine.compile(ByteBuffer.wrap(Files.readAllBytes(file)));
+        } catch (IOException e) {
+            throw new KelpException("Error reading template " + name(file) + ": " + e.getMessage(), e);
+        } catch (KelpException e) {
+            throw new KelpException("Error compiling template " + name(file) + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 注册目录及其子目录
+     *
+     * @return 目录中的模板文件
+     */
+    private List<Path> register(Path root) throws IOException {
+        List<Path> dirs;
+        try (Stream<Path> stream = Files.walk(root)) {
+            dirs = stream.filter(Files::isDirectory).collect(Collectors.toList());
+        }
+        for (Path dir : dirs) {
+            WatchKey key = dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            keys.put(key, dir);
+        }
+        return templateFiles(root);
+    }
+
+    private List<Path> templateFiles(Path root) throws IOException {
+        try (Stream<Path> stream = Files.walk(root)) {
+            return stream.filter(Files::isRegularFile).filter(this::accept).collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+
+    private boolean accept(Path file) {
+        return suffix == null || file.getFileName().toString().endsWith(suffix);
+    }
+
+    private String name(Path file) {
+        return directory.relativize(file).toString().replace(File.separatorChar, '/');
+    }
+
+    private void closeWatcher() {
+        try {
+            if (watcher != null) {
+                watcher.close();
+            }
+        } catch (IOException e) {
+            // 忽略
+        }
+    }
+}
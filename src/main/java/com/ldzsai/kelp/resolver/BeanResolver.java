@@ -0,0 +1,85 @@
+package com.ldzsai.kelp.resolver;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.ldzsai.kelp.KelpException;
+
+/**
+ * 读取对象公有属性的解析器
+ * <p>
+ * 变量name依次查找getName()、isName()、name()及公有字段name，查找结果按类缓存，
+ * 同一类型的不同对象共享访问器。
+ */
+public class BeanResolver implements VariableResolver {
+    // 每个类的属性访问器
+    private static final ClassValue<Map<String, Accessor>> ACCESSORS = new ClassValue<Map<String, Accessor>>() {
+        @Override
+        protected Map<String, Accessor> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    // 属性不存在
+    private static final Accessor MISSING = target -> null;
+
+    private final Object root;
+
+    private final Map<String, Accessor> accessors;
+
+    public BeanResolver(Object root) {
+        if (root == null) {
+            throw new IllegalArgumentException("Root object cannot be null");
+        }
+        this.root = root;
+        this.accessors = ACCESSORS.get(root.getClass());
+    }
+
+    @Override
+    public Object resolve(String name) {
+        Accessor accessor = accessors.computeIfAbsent(name, key -> find(root.getClass(), key));
+        try {
+            return accessor.get(root);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof KelpException) {
+                throw (KelpException) cause;
+            }
+            throw new KelpException("Error reading property " + name + ": " + cause.getMessage(), cause);
+        } catch (IllegalAccessException e) {
+            throw new KelpException("Error reading property " + name + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 查找属性访问器
+     */
+    private static Accessor find(Class<?> type, String name) {
+        String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        for (String candidate : new String[] { "get" + suffix, "is" + suffix, name }) {
+            for (Method method : type.getMethods()) {
+                if (method.getName().equals(candidate) && method.getParameterCount() == 0
+                        && !Modifier.isStatic(method.getModifiers()) && method.getReturnType() != void.class) {
+                    method.trySetAccessible();
+                    return target -> method.invoke(target);
+                }
+            }
+        }
+        for (Field field : type.getFields()) {
+            if (field.getName().equals(name) && !Modifier.isStatic(field.getModifiers())) {
+                field.trySetAccessible();
+                return field::get;
+            }
+        }
+        return MISSING;
+    }
+
+    @FunctionalInterface
+    private interface Accessor {
+        Object get(Object target) throws IllegalAccessException, InvocationTargetException;
+    }
+}
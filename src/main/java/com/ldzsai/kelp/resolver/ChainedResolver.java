@@ -0,0 +1,31 @@
+package com.ldzsai.kelp.resolver;
+
+/**
+ * 组合多个解析器，按顺序查找，前面的解析器优先
+ */
+public class ChainedResolver implements VariableResolver {
+    private final VariableResolver[] resolvers;
+
+    public ChainedResolver(VariableResolver... resolvers) {
+        if (resolvers == null) {
+            throw new IllegalArgumentException("Resolvers cannot be null");
+        }
+        for (VariableResolver resolver : resolvers) {
+            if (resolver == null) {
+                throw new IllegalArgumentException("Resolver cannot be null");
+            }
+        }
+        this.resolvers = resolvers.clone();
+    }
+
+    @Override
+    public Object resolve(String name) {
+        for (VariableResolver resolver : resolvers) {
+            Object value = resolver.resolve(name);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+}
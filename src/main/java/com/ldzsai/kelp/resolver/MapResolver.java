@@ -0,0 +1,22 @@
+package com.ldzsai.kelp.resolver;
+
+import java.util.Map;
+
+/**
+ * 直接读取调用方Map的解析器，Map的后续修改对求值可见
+ */
+public class MapResolver implements VariableResolver {
+    private final Map<String, ?> variables;
+
+    public MapResolver(Map<String, ?> variables) {
+        if (variables == null) {
+            throw new IllegalArgumentException("Variables cannot be null");
+        }
+        this.variables = variables;
+    }
+
+    @Override
+    public Object resolve(String name) {
+        return variables.get(name);
+    }
+}
@@ -0,0 +1,54 @@
+package com.ldzsai.kelp.resolver;
+
+import java.util.Map;
+
+/**
+ * 变量解析器，Environment中找不到的变量委托给解析器，直接在调用方已有的数据结构中查找而不复制
+ * <p>
+ * 解析器在求值期间可能被多个线程同时调用，实现应保证读取是线程安全的。
+ *
+ * <pre>
+ * Environment env = new Environment(VariableResolver.chain(
+ *         VariableResolver.of(requestContext), VariableResolver.bean(session)));
+ * </pre>
+ */
+@FunctionalInterface
+public interface VariableResolver {
+    /**
+     * 解析变量
+     *
+     * @param name 变量名
+     * @return 变量值，不存在时为null
+     */
+    Object resolve(String name);
+
+    /**
+     * 以Map为变量来源
+     *
+     * @param variables 变量表
+     * @return 解析器
+     */
+    static VariableResolver of(Map<String, ?> variables) {
+        return new MapResolver(variables);
+    }
+
+    /**
+     * 以对象的公有属性为变量来源
+     *
+     * @param root 根对象
+     * @return 解析器
+     */
+    static VariableResolver bean(Object root) {
+        return new BeanResolver(root);
+    }
+
+    /**
+     * 按顺序查找，返回第一个非null的结果
+     *
+     * @param resolvers 解析器
+     * @return 解析器
+     */
+    static VariableResolver chain(VariableResolver... resolvers) {
+        return new ChainedResolver(resolvers);
+    }
+}
@@ -0,0 +1,129 @@
+package com.ldzsai.kelp.rules;
+
+import com.ldzsai.kelp.KelpException;
+
+/**
+ * 规则集的求值结果，按规则顺序排列
+ * <p>
+ * 算术规则的结果以double保存，读取时不装箱；单条规则失败不影响其他规则，错误在读取该规则时抛出。
+ * 可以传给RuleSet.evaluate重复使用，不是线程安全的，每个线程使用各自的实例。
+ */
+public class RuleResults {
+    private static final byte VALUE = 0;
+    private static final byte NUMBER = 1;
+    private static final byte FAILED = 2;
+
+    // 结果类型
+    private final byte[] states;
+
+    // 非算术规则的结果，失败规则的异常
+    private final Object[] values;
+
+    // 算术规则的结果
+    private final double[] numbers;
+
+    // 求值帧
+    final SlotFrame frame;
+
+    RuleResults(int ruleCount, int slotCount) {
+        this.states = new byte[ruleCount];
+        this.values = new Object[ruleCount];
+        this.numbers = new double[ruleCount];
+        this.frame = new SlotFrame(slotCount);
+    }
+
+    void setValue(int index, Object value) {
+        states[index] = VALUE;
+        values[index] = value;
+    }
+
+    void setNumber(int index, double value) {
+        states[index] = NUMBER;
+        values[index] = null;
+        numbers[index] = value;
+    }
+
+    void setError(int index, KelpException error) {
+        states[index] = FAILED;
+        values[index] = error;
+    }
+
+    /**
+     * 获取规则数
+     */
+    public int size() {
+        return states.length;
+    }
+
+    /**
+     * 获取规则结果
+     *
+     * @param index 规则序号
+     * @return 结果，算术规则返回Double
+     * @throws KelpException 该规则求值失败
+     */
+    public Object get(int index) throws KelpException {
+        switch (states[index]) {
+            case NUMBER:
+                return numbers[index];
+            case FAILED:
+                throw (KelpException) values[index];
+            default:
+                return values[index];
+        }
+    }
+
+    /**
+     * 获取数字结果，算术规则不装箱
+     *
+     * @param index 规则序号
+     * @return 结果
+     * @throws KelpException 该规则求值失败或结果不是数字
+     */
+    public double getDouble(int index) throws KelpException {
+        if (states[index] == NUMBER) {
+            return numbers[index];
+        }
+        Object value = get(index);
+        if (!(value instanceof Number)) {
+            throw new KelpException("Rule " + index + " is not a number, but got: " + typeName(value));
+        }
+        return ((Number) value).doubleValue();
+    }
+
+    /**
+     * 获取布尔结果
+     *
+     * @param index 规则序号
+     * @return 结果
+     * @throws KelpException 该规则求值失败或结果不是布尔值
+     */
+    public boolean getBoolean(int index) throws KelpException {
+        Object value = get(index);
+        if (!(value instanceof Boolean)) {
+            throw new KelpException("Rule " + index + " is not a boolean, but got: " + typeName(value));
+        }
+        return (Boolean) value;
+    }
+
+    /**
+     * 判断规则是否求值失败
+     */
+    public boolean isFailed(int index) {
+        return states[index] == FAILED;
+    }
+
+    /**
+     * 获取规则求值失败的原因
+     *
+     * @param index 规则序号
+     * @return 异常，未失败时为null
+     */
+    public KelpException getError(int index) {
+        return states[index] == FAILED ? (KelpException) values[index] : null;
+    }
+
+    private static String typeName(Object value) {
+        return value != null ? value.getClass().getSimpleName() : "null";
+    }
+}
@@ -0,0 +1,297 @@
+package com.ldzsai.kelp.rules;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.ldzsai.kelp.KelpException;
+import com.ldzsai.kelp.Lexer;
+import com.ldzsai.kelp.Parser;
+import com.ldzsai.kelp.expression.AggregateCall;
+import com.ldzsai.kelp.expression.ArrayAccess;
+import com.ldzsai.kelp.expression.BinaryOperation;
+import com.ldzsai.kelp.expression.Block;
+import com.ldzsai.kelp.expression.Comparison;
+import com.ldzsai.kelp.expression.Environment;
+import com.ldzsai.kelp.expression.Expression;
+import com.ldzsai.kelp.expression.ExpressionRewriter;
+import com.ldzsai.kelp.expression.FloatLiteral;
+import com.ldzsai.kelp.expression.FormattedOutput;
+import com.ldzsai.kelp.expression.FunctionCall;
+import com.ldzsai.kelp.expression.IntegerLiteral;
+import com.ldzsai.kelp.expression.ObjectKeyAccess;
+import com.ldzsai.kelp.expression.PathAccess;
+import com.ldzsai.kelp.expression.Pipeline;
+import com.ldzsai.kelp.expression.StringLiteral;
+import com.ldzsai.kelp.expression.StringMatch;
+import com.ldzsai.kelp.expression.TextSegment;
+import com.ldzsai.kelp.expression.Variable;
+
+/**
+ * 规则集：一起编译多条表达式，跨规则识别结构相同的子表达式，每次求值只计算一次
+ * <p>
+ * 编译时对语法树做哈希合并，合并后被两处及以上引用的非平凡子树（字面量和变量除外）替换为共享槽位；
+ * 求值时按规则顺序计算，共享子表达式在首次使用时存入槽位。lambda函数体依赖参数，不参与合并。
+ * 编译后不可变，可以被多个线程同时使用。
+ * <pre>
+ * RuleSet rules = RuleSet.compile(Arrays.asList(
+ *         "${order.total * fx.rate(order.currency) > 100}",
+ *         "${order.total * fx.rate(order.currency) * 0.05}"));
+ * RuleResults results = rules.evaluate(env);
+ * </pre>
+ */
+public class RuleSet {
+    // 各规则的根表达式
+    private final Expression[] rules;
+
+    // 共享槽位数
+    private final int slotCount;
+
+    private RuleSet(Expression[] rules, int slotCount) {
+        this.rules = rules;
+        this.slotCount = slotCount;
+    }
+
+    /**
+     * 编译规则集，每条规则必须是单个${...}表达式
+     *
+     * @param expressions 规则表达式
+     * @return 规则集
+     */
+    public static RuleSet compile(List<String> expressions) throws KelpException {
+        if (expressions == null) {
+            throw new KelpException("Rules cannot be null");
+        }
+        List<Expression> roots = new ArrayList<>(expressions.size());
+        for (int i = 0; i < expressions.size(); i++) {
+            roots.add(parse(i, expressions.get(i)));
+        }
+
+        Interner interner = new Interner();
+        for (Expression root : roots) {
+            interner.use(interner.intern(root));
+        }
+        Expression[] rules = new Expression[roots.size()];
+        for (int i = 0; i < rules.length; i++) {
+            rules[i] = interner.rewrite(roots.get(i));
+        }
+        return new RuleSet(rules, interner.slots);
+    }
+
+    private static Expression parse(int index, String expression) throws KelpException {
+        if (expression == null) {
+            throw new KelpException("Rule " + index + " cannot be null");
+        }
+        try {
+            List<Expression> ast = new Parser(new Lexer(expression)).buildAst();
+            if (ast.size() != 1 || ast.get(0) instanceof TextSegment || ast.get(0) instanceof Block) {
+                throw new KelpException("Rule " + index + " must be a single expression: " + expression);
+            }
+            return ast.get(0);
+        } catch (Exception e) {
+            if (e instanceof KelpException) {
+                throw (KelpException) e;
+            }
+            throw new KelpException("Error compiling rule " + index + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 获取规则数
+     */
+    public int getRuleCount() {
+        return rules.length;
+    }
+
+    /**
+     * 获取共享子表达式的个数
+     */
+    public int getSharedCount() {
+        return slotCount;
+    }
+
+    /**
+     * 求值全部规则
+     *
+     * @param env 执行环境
+     * @return 结果
+     */
+    public RuleResults evaluate(Environment env) {
+        RuleResults results = new RuleResults(rules.length, slotCount);
+        evaluate(env, results);
+        return results;
+    }
+
+    /**
+     * 求值全部规则并写入已有的结果，重复使用时不分配槽位和结果数组
+     *
+     * @param env     执行环境
+     * @param results 由本规则集创建的结果
+     */
+    public void evaluate(Environment env, RuleResults results) {
+        if (results.size() != rules.length || results.frame.slots.length != slotCount) {
+            throw new IllegalArgumentException("Results were not created by this rule set");
+        }
+        SlotFrame frame = results.frame;
+        frame.reset(env);
+        for (int i = 0; i < rules.length; i++) {
+            Expression rule = rules[i];
+            try {
+                if (rule instanceof BinaryOperation) {
+                    results.setNumber(i, ((BinaryOperation) rule).evaluateDouble(frame));
+                } else {
+                    results.setValue(i, rule.evaluate(frame));
+                }
+            } catch (Exception e) {
+                results.setError(i, e instanceof KelpException ? (KelpException) e
+                        : new KelpException("Error evaluating rule " + i + ": " + e.getMessage(), e));
+            }
+        }
+        // 不持有事件数据
+        frame.reset(null);
+    }
+
+    /**
+     * 子树哈希合并：结构相同的子树得到相同编号，再把出现多次的子树替换为共享槽位
+     */
+    private static final class Interner {
+        // 结构签名到编号
+        private final Map<String, Integer> ids = new HashMap<>();
+
+        // 合并后各编号被引用的次数：作为规则根节点的次数加上在不同父结构中出现的次数
+        private final List<Integer> counts = new ArrayList<>();
+
+        // 各编号是否可以共享
+        private final List<Boolean> shareable = new ArrayList<>();
+
+        // 节点到编号
+        private final Map<Expression, Integer> nodes = new IdentityHashMap<>();
+
+        // 已创建的共享子表达式
+        private final Map<Integer, SharedExpression> shared = new HashMap<>();
+
+        // 已分配的槽位数
+        private int slots;
+
+        /**
+         * 计算节点编号；首次出现的结构累计其子结构的引用次数，
+         * 只在某个共享子树内部出现的子树合并后只被引用一次，不单独占用槽位
+         */
+        int intern(Expression expr) {
+            List<Integer> children = new ArrayList<>();
+            String signature = signature(expr, children);
+            Integer id = signature != null ? ids.get(signature) : null;
+            if (id == null) {
+                id = counts.size();
+                counts.add(0);
+                // 字面量和变量读取比槽位更便宜，无法识别的节点不合并
+                shareable.add(signature != null && !(expr instanceof IntegerLiteral || expr instanceof FloatLiteral
+                        || expr instanceof StringLiteral || expr instanceof Variable));
+                if (signature != null) {
+                    ids.put(signature, id);
+                }
+                for (int child : children) {
+                    use(child);
+                }
+            }
+            nodes.put(expr, id);
+            return id;
+        }
+
+        void use(int id) {
+            counts.set(id, counts.get(id) + 1);
+        }
+
+        /**
+         * 结构签名，子节点以编号表示并记录到children；无法识别的节点返回null
+         */
+        private String signature(Expression expr, List<Integer> children) {
+            if (expr instanceof IntegerLiteral) {
+                return "I" + ((IntegerLiteral) expr).getValue();
+            } else if (expr instanceof FloatLiteral) {
+                return "F" + Double.doubleToLongBits(((FloatLiteral) expr).getValue());
+            } else if (expr instanceof StringLiteral) {
+                return "S" + ((StringLiteral) expr).getValue();
+            } else if (expr instanceof Variable) {
+                return "V" + ((Variable) expr).getName();
+            } else if (expr instanceof BinaryOperation) {
+                BinaryOperation operation = (BinaryOperation) expr;
+                return "B" + operation.getOperator().name() + "(" + child(children, operation.getLeft()) + ","
+                        + child(children, operation.getRight()) + ")";
+            } else if (expr instanceof Comparison) {
+                Comparison comparison = (Comparison) expr;
+                return "C" + comparison.getOperator().name() + "(" + child(children, comparison.getLeft()) + ","
+                        + child(children, comparison.getRight()) + ")";
+            } else if (expr instanceof ArrayAccess) {
+                ArrayAccess access = (ArrayAccess) expr;
+                return "A(" + child(children, access.getBaseExpression()) + "," + child(children, access.getIndexExpression()) + ")";
+            } else if (expr instanceof ObjectKeyAccess) {
+                ObjectKeyAccess access = (ObjectKeyAccess) expr;
+                return "O(" + child(children, access.getBaseExpression()) + "," + child(children, access.getKeyExpression()) + ")";
+            } else if (expr instanceof PathAccess) {
+                PathAccess access = (PathAccess) expr;
+                StringBuilder sb = new StringBuilder("P(").append(child(children, access.getBase()));
+                for (Object step : access.getSteps()) {
+                    // 键带长度前缀，避免不同路径拼接后相同
+                    String text = step.toString();
+                    sb.append(step instanceof Integer ? ",i" : ",s").append(text.length()).append(':').append(text);
+                }
+                return sb.append(')').toString();
+            } else if (expr instanceof FunctionCall) {
+                FunctionCall call = (FunctionCall) expr;
+                StringBuilder sb = new StringBuilder("M").append(call.getName()).append('(')
+                        .append(child(children, call.getTarget()));
+                for (Expression argument : call.getArguments()) {
+                    sb.append(',').append(child(children, argument));
+                }
+                return sb.append(')').toString();
+            } else if (expr instanceof AggregateCall) {
+                AggregateCall call = (AggregateCall) expr;
+                return "G" + call.getFunction().name() + "(" + child(children, call.getArgument()) + ")";
+            } else if (expr instanceof StringMatch) {
+                StringMatch match = (StringMatch) expr;
+                StringBuilder sb = new StringBuilder("R").append(match.getFunction().name()).append('(');
+                for (int i = 0; i < match.getArguments().size(); i++) {
+                    sb.append(i > 0 ? "," : "").append(child(children, match.getArguments().get(i)));
+                }
+                return sb.append(')').toString();
+            } else if (expr instanceof Pipeline) {
+                // 管道本身不合并，数据源仍可合并
+                child(children, ((Pipeline) expr).getSource());
+            } else if (expr instanceof FormattedOutput) {
+                // 输出格式不参与合并，被格式化的表达式仍可合并
+                child(children, ((FormattedOutput) expr).getExpression());
+            }
+            return null;
+        }
+
+        private int child(List<Integer> children, Expression expr) {
+            int id = intern(expr);
+            children.add(id);
+            return id;
+        }
+
+        /**
+         * 重建语法树，出现多次的子树替换为同一个共享子表达式
+         */
+        Expression rewrite(Expression expr) {
+            // 未编号的节点（如lambda体内的节点）不合并
+            Integer id = nodes.get(expr);
+            if (id == null || !shareable.get(id) || counts.get(id) < 2) {
+                return rebuild(expr);
+            }
+            SharedExpression expression = shared.get(id);
+            if (expression == null) {
+                expression = new SharedExpression(slots++, rebuild(expr));
+                shared.put(id, expression);
+            }
+            return expression;
+        }
+
+        private Expression rebuild(Expression expr) {
+            return ExpressionRewriter.rebuild(expr, this::rewrite);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.ldzsai.kelp.rules;
+
+import com.ldzsai.kelp.expression.Environment;
+import com.ldzsai.kelp.expression.Expression;
+
+/**
+ * 多条规则共用的子表达式：每次求值在首次使用时计算并存入槽位，之后直接读取
+ * <p>
+ * 首次使用时才计算，未被任何成功路径用到的子表达式不会提前求值，错误仍归属于首个使用它的规则。
+ */
+final class SharedExpression extends Expression {
+    // 槽位
+    private final int slot;
+
+    // 子表达式，内部的共享子表达式已替换
+    private final Expression expression;
+
+    SharedExpression(int slot, Expression expression) {
+        this.slot = slot;
+        this.expression = expression;
+    }
+
+    int getSlot() {
+        return slot;
+    }
+
+    Expression getExpression() {
+        return expression;
+    }
+
+    @Override
+    public Object evaluate(Environment env) throws Exception {
+        if (!(env instanceof SlotFrame)) {
+            return expression.evaluate(env);
+        }
+        Object[] slots = ((SlotFrame) env).slots;
+        Object value = slots[slot];
+        if (value == SlotFrame.UNSET) {
+            value = expression.evaluate(env);
+            slots[slot] = value;
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "$" + slot + "{" + expression + "}";
+    }
+}
@@ -0,0 +1,58 @@
+package com.ldzsai.kelp.rules;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import com.ldzsai.kelp.expression.Environment;
+import com.ldzsai.kelp.expression.LazyValue;
+
+/**
+ * 规则集单次求值的环境：变量从外层环境读取，并保存共享子表达式的结果
+ * <p>
+ * 同一个RuleResults的多次求值复用同一个帧，不为每个事件分配新的槽位数组。
+ */
+final class SlotFrame extends Environment {
+    // 尚未求值的槽位
+    static final Object UNSET = new Object();
+
+    // 外层环境
+    private Environment parent;
+
+    // 共享子表达式的结果
+    final Object[] slots;
+
+    SlotFrame(int slotCount) {
+        this.slots = new Object[slotCount];
+    }
+
+    /**
+     * 绑定外层环境并清空槽位
+     *
+     * @param parent 外层环境
+     */
+    void reset(Environment parent) {
+        this.parent = parent;
+        Arrays.fill(slots, UNSET);
+    }
+
+    @Override
+    public void setVariable(String name, Object value) {
+        parent.setVariable(name, value);
+    }
+
+    @Override
+    public void setLazy(String name, Supplier<?> supplier) {
+        parent.setLazy(name, supplier);
+    }
+
+    @Override
+    public Map<String, LazyValue> getLazyVariables() {
+        return parent.getLazyVariables();
+    }
+
+    @Override
+    public Object getVariable(String name) {
+        return parent.getVariable(name);
+    }
+}
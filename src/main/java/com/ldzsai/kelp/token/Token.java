@@ -1,12 +1,25 @@
 package com.ldzsai.kelp.token;
 
 public class Token {
+    // 结束标记，无位置信息，全局共享
+    public static final Token EOF = new Token(TokenType.EOF, null);
+
     private final TokenType type;
     private final Object value;
 
+    // 在模板中的起止偏移，未知时为-1
+    private final int start;
+    private final int end;
+
     public Token(TokenType type, Object value) {
+        this(type, value, -1, -1);
+    }
+
+    public Token(TokenType type, Object value, int start, int end) {
         this.type = type;
         this.value = value;
+        this.start = start;
+        this.end = end;
     }
 
     public TokenType getType() {
@@ -16,4 +29,12 @@ public class Token {
     public Object getValue() {
         return value;
     }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,17 @@
+package com.ldzsai.kelp.token;
+
+import com.ldzsai.kelp.KelpException;
+
+/**
+ * 分词来源，解析器按需逐个拉取
+ */
+public interface TokenSource {
+
+    /**
+     * 获取下一个分词
+     *
+     * @return 分词，结束后总是返回Token.EOF
+     * @throws KelpException 词法错误
+     */
+    Token next() throws KelpException;
+}
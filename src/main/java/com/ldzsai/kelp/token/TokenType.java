@@ -3,6 +3,8 @@ package com.ldzsai.kelp.token;
 public enum TokenType {
    // 字符串
    STRING("String"),
+   // 静态文本区间（指向模板源的字节区间，不复制内容）
+   TEXT("Text"),
    // 整数
    INTEGER("Integer"),
    // 浮点数
@@ -33,6 +35,24 @@ public enum TokenType {
    COMMA(","),
    // 双\单引号 "
    QUOTE("\"、'"),
+   // 大于
+   GREATER(">"),
+   // 大于等于
+   GREATER_EQUAL(">="),
+   // 小于
+   LESS("<"),
+   // 小于等于
+   LESS_EQUAL("<="),
+   // 等于
+   EQUAL("=="),
+   // 不等于
+   NOT_EQUAL("!="),
+   // lambda箭头 ->
+   ARROW("->"),
+   // 输出编码 |
+   PIPE("|"),
+   // 块指令 #if、#elseif、#else、#each、#end，值为指令名
+   DIRECTIVE("#"),
    // 结束标记
    EOF("EOF");
 
@@ -0,0 +1,65 @@
+package com.ldzsai.kelp.typed;
+
+import com.ldzsai.kelp.KelpException;
+import com.ldzsai.kelp.Operator;
+import com.ldzsai.kelp.expression.Environment;
+import com.ldzsai.kelp.expression.Expression;
+
+/**
+ * 两侧操作数在编译期已确认为数字的二元运算，省去运行时类型检查
+ */
+public class NumericBinaryOperation extends Expression {
+    private final Expression left;
+    private final Operator operator;
+    private final Expression right;
+
+    public NumericBinaryOperation(Expression left, Operator operator, Expression right) {
+        this.left = left;
+        this.operator = operator;
+        this.right = right;
+    }
+
+    public Expression getLeft() {
+        return left;
+    }
+
+    public Operator getOperator() {
+        return operator;
+    }
+
+    public Expression getRight() {
+        return right;
+    }
+
+    @Override
+    public Object evaluate(Environment env) throws Exception {
+        return evaluateDouble(env);
+    }
+
+    @Override
+    public void appendTo(Environment env, StringBuilder out) throws Exception {
+        out.append(evaluateDouble(env));
+    }
+
+    /**
+     * 求值为double，嵌套的数值运算之间不装箱
+     */
+    public double evaluateDouble(Environment env) throws Exception {
+        double leftValue = valueOf(left, env);
+        double rightValue = valueOf(right, env);
+
+        // 检查除零错误
+        if (operator == Operator.DIVIDE && rightValue == 0) {
+            throw new KelpException("Division by zero");
+        }
+
+        return operator.apply(leftValue, rightValue);
+    }
+
+    private static double valueOf(Expression operand, Environment env) throws Exception {
+        if (operand instanceof NumericBinaryOperation) {
+            return ((NumericBinaryOperation) operand).evaluateDouble(env);
+        }
+        return ((Number) operand.evaluate(env)).doubleValue();
+    }
+}
@@ -0,0 +1,75 @@
+package com.ldzsai.kelp.typed;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+
+import com.ldzsai.kelp.KelpException;
+import com.ldzsai.kelp.expression.Environment;
+import com.ldzsai.kelp.expression.Expression;
+
+/**
+ * 编译期已解析目标方法的调用，运行时不再查找方法和推导参数类型
+ */
+public class ResolvedMethodCall extends Expression {
+    // 调用目标
+    private final Expression target;
+
+    // 已解析的方法
+    private final Method method;
+
+    // 函数参数
+    private final Expression[] arguments;
+
+    // 是否为静态方法
+    private final boolean isStatic;
+
+    public ResolvedMethodCall(Expression target, Method method, List<Expression> arguments) {
+        this.target = target;
+        this.method = method;
+        this.arguments = arguments.toArray(new Expression[0]);
+        this.isStatic = Modifier.isStatic(method.getModifiers());
+        try {
+            method.setAccessible(true);
+        } catch (RuntimeException e) {
+            // 无法打开访问权限时保持原状，公开方法仍可调用
+        }
+    }
+
+    public Expression getTarget() {
+        return target;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public Expression[] getArguments() {
+        return arguments;
+    }
+
+    @Override
+    public Object evaluate(Environment env) throws Exception {
+        Object targetObject = null;
+        if (!isStatic) {
+            targetObject = target.evaluate(env);
+            if (targetObject == null) {
+                throw new KelpException("Target object is null for method: " + method.getName());
+            }
+        }
+
+        Object[] args = new Object[arguments.length];
+        for (int i = 0; i < arguments.length; i++) {
+            args[i] = arguments[i].evaluate(env);
+        }
+
+        try {
+            return method.invoke(targetObject, args);
+        } catch (InvocationTargetException e) {
+            throw new KelpException("Error invoking method " + method.getName() + ": " + e.getCause(), e.getCause());
+        } catch (Exception e) {
+            throw new KelpException("Error invoking method " + method.getName() + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.ldzsai.kelp.typed;
+
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 编译期静态类型，记录原始类型以及List/数组元素、Map值的类型
+ */
+public final class StaticType {
+    // 未知类型，运行时再做检查
+    public static final StaticType DYNAMIC = new StaticType(Object.class, null, false);
+
+    // 原始类型
+    private final Class<?> rawType;
+
+    // List/数组的元素类型或Map的值类型
+    private final StaticType elementType;
+
+    // 变量的值是Class对象本身，用于静态方法调用
+    private final boolean classReference;
+
+    private StaticType(Class<?> rawType, StaticType elementType, boolean classReference) {
+        this.rawType = rawType;
+        this.elementType = elementType;
+        this.classReference = classReference;
+    }
+
+    /**
+     * 由Class创建，数组类型自动推导元素类型
+     *
+     * @param type 类型
+     * @return 静态类型
+     */
+    public static StaticType of(Class<?> type) {
+        if (type == null || type == Object.class) {
+            return DYNAMIC;
+        }
+        if (type.isArray()) {
+            return new StaticType(type, of(type.getComponentType()), false);
+        }
+        return new StaticType(type, null, false);
+    }
+
+    /**
+     * 由反射类型创建，支持List&lt;E&gt;、Map&lt;K, V&gt;等参数化类型
+     *
+     * @param type 反射类型
+     * @return 静态类型
+     */
+    public static StaticType of(Type type) {
+        if (type instanceof Class) {
+            return of((Class<?>) type);
+        }
+        if (type instanceof ParameterizedType) {
+            ParameterizedType parameterized = (ParameterizedType) type;
+            Class<?> raw = (Class<?>) parameterized.getRawType();
+            Type[] args = parameterized.getActualTypeArguments();
+            if (List.class.isAssignableFrom(raw) && args.length == 1) {
+                return new StaticType(raw, of(args[0]), false);
+            }
+            if (Map.class.isAssignableFrom(raw) && args.length == 2) {
+                return new StaticType(raw, of(args[1]), false);
+            }
+            return of(raw);
+        }
+        if (type instanceof GenericArrayType) {
+            StaticType component = of(((GenericArrayType) type).getGenericComponentType());
+            return new StaticType(Object[].class, component, false);
+        }
+        if (type instanceof WildcardType) {
+            return of(((WildcardType) type).getUpperBounds()[0]);
+        }
+        if (type instanceof TypeVariable) {
+            return of(((TypeVariable<?>) type).getBounds()[0]);
+        }
+        return DYNAMIC;
+    }
+
+    /**
+     * 元素类型为elementType的List
+     */
+    public static StaticType listOf(Class<?> elementType) {
+        return listOf(of(elementType));
+    }
+
+    /**
+     * 元素类型为elementType的List
+     */
+    public static StaticType listOf(StaticType elementType) {
+        return new StaticType(List.class, elementType, false);
+    }
+
+    /**
+     * 键为字符串、值类型为valueType的Map
+     */
+    public static StaticType mapOf(Class<?> valueType) {
+        return mapOf(of(valueType));
+    }
+
+    /**
+     * 键为字符串、值类型为valueType的Map
+     */
+    public static StaticType mapOf(StaticType valueType) {
+        return new StaticType(Map.class, valueType, false);
+    }
+
+    /**
+     * 值为Class对象本身的变量，例如env.setVariable("Math", Math.class)
+     */
+    public static StaticType classRef(Class<?> type) {
+        return new StaticType(type, null, true);
+    }
+
+    public Class<?> getRawType() {
+        return rawType;
+    }
+
+    /**
+     * 获取List/数组的元素类型或Map的值类型，未声明时为动态类型
+     */
+    public StaticType getElementType() {
+        return elementType != null ? elementType : DYNAMIC;
+    }
+
+    public boolean isClassReference() {
+        return classReference;
+    }
+
+    public boolean isDynamic() {
+        return this == DYNAMIC || (!classReference && rawType == Object.class);
+    }
+
+    public boolean isNumeric() {
+        if (classReference) {
+            return false;
+        }
+        if (rawType.isPrimitive()) {
+            return rawType != boolean.class && rawType != char.class && rawType != void.class;
+        }
+        return Number.class.isAssignableFrom(rawType);
+    }
+
+    public boolean isString() {
+        return !classReference && rawType == String.class;
+    }
+
+    public boolean isArray() {
+        return !classReference && rawType.isArray();
+    }
+
+    public boolean isList() {
+        return !classReference && List.class.isAssignableFrom(rawType);
+    }
+
+    public boolean isMap() {
+        return !classReference && Map.class.isAssignableFrom(rawType);
+    }
+
+    /**
+     * 运行时值的类型，基本类型取其包装类型
+     */
+    public Class<?> boxedType() {
+        if (classReference) {
+            return Class.class;
+        }
+        if (rawType == int.class) return Integer.class;
+        if (rawType == long.class) return Long.class;
+        if (rawType == double.class) return Double.class;
+        if (rawType == float.class) return Float.class;
+        if (rawType == boolean.class) return Boolean.class;
+        if (rawType == byte.class) return Byte.class;
+        if (rawType == char.class) return Character.class;
+        if (rawType == short.class) return Short.class;
+        return rawType;
+    }
+
+    @Override
+    public String toString() {
+        if (classReference) {
+            return "Class<" + rawType.getSimpleName() + ">";
+        }
+        if (elementType != null && !rawType.isArray()) {
+            return rawType.getSimpleName() + "<" + elementType + ">";
+        }
+        return rawType.getSimpleName();
+    }
+}
@@ -0,0 +1,387 @@
+package com.ldzsai.kelp.typed;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.ldzsai.kelp.ComparisonOperator;
+import com.ldzsai.kelp.KelpException;
+import com.ldzsai.kelp.expression.AggregateCall;
+import com.ldzsai.kelp.expression.AggregateFunction;
+import com.ldzsai.kelp.expression.ArrayAccess;
+import com.ldzsai.kelp.expression.BinaryOperation;
+import com.ldzsai.kelp.expression.Comparison;
+import com.ldzsai.kelp.expression.EachBlock;
+import com.ldzsai.kelp.expression.Expression;
+import com.ldzsai.kelp.expression.FloatLiteral;
+import com.ldzsai.kelp.expression.FormattedOutput;
+import com.ldzsai.kelp.expression.FunctionCall;
+import com.ldzsai.kelp.expression.IfBlock;
+import com.ldzsai.kelp.expression.IntegerLiteral;
+import com.ldzsai.kelp.expression.Lambda;
+import com.ldzsai.kelp.expression.ObjectKeyAccess;
+import com.ldzsai.kelp.expression.PathAccess;
+import com.ldzsai.kelp.expression.Pipeline;
+import com.ldzsai.kelp.expression.StringFunction;
+import com.ldzsai.kelp.expression.StringLiteral;
+import com.ldzsai.kelp.expression.StringMatch;
+import com.ldzsai.kelp.expression.TextSegment;
+import com.ldzsai.kelp.expression.Variable;
+
+/**
+ * 强类型检查器，按类型声明自底向上推导抽象语法树中每个节点的类型，
+ * 并将类型已确定的节点替换为省去运行时检查的特化节点
+ * <p>
+ * 类型错误在编译期以KelpException抛出；类型无法确定（动态类型）的节点保持原样，在运行时检查。
+ */
+public class TypeChecker {
+    private final TypeSchema schema;
+
+    // 块内绑定的变量（循环变量等），优先于类型声明
+    private final Map<String, StaticType> bound;
+
+    public TypeChecker(TypeSchema schema) {
+        this(schema, Collections.emptyMap());
+    }
+
+    private TypeChecker(TypeSchema schema, Map<String, StaticType> bound) {
+        if (schema == null) {
+            throw new IllegalArgumentException("Schema cannot be null");
+        }
+        this.schema = schema;
+        this.bound = bound;
+    }
+
+    /**
+     * 创建绑定了块内变量的检查器，变量名为null时返回自身
+     */
+    private TypeChecker bind(String name, StaticType type) {
+        if (name == null) {
+            return this;
+        }
+        Map<String, StaticType> scope = new HashMap<>(bound);
+        scope.put(name, type);
+        return new TypeChecker(schema, scope);
+    }
+
+    /**
+     * 检查并特化抽象语法树
+     *
+     * @param ast 表达式列表
+     * @return 特化后的表达式列表
+     */
+    public List<Expression> check(List<Expression> ast) throws KelpException {
+        List<Expression> result = new ArrayList<>(ast.size());
+        for (Expression expression : ast) {
+            result.add(infer(expression).expression);
+        }
+        return result;
+    }
+
+    /**
+     * 推导单个表达式的类型
+     *
+     * @param expression 表达式
+     * @return 推导出的静态类型
+     */
+    public StaticType typeOf(Expression expression) throws KelpException {
+        return infer(expression).type;
+    }
+
+    /**
+     * 自底向上推导类型并特化节点
+     */
+    private Typed infer(Expression expr) throws KelpException {
+        if (expr instanceof IntegerLiteral) {
+            return new Typed(expr, StaticType.of(int.class));
+        } else if (expr instanceof FloatLiteral) {
+            return new Typed(expr, StaticType.of(double.class));
+        } else if (expr instanceof StringLiteral || expr instanceof TextSegment) {
+            return new Typed(expr, StaticType.of(String.class));
+        } else if (expr instanceof Variable) {
+            String name = ((Variable) expr).getName();
+            StaticType type = bound.containsKey(name) ? bound.get(name) : schema.getType(name);
+            if (type == null) {
+                throw new KelpException("Type error: undeclared variable '" + name + "'");
+            }
+            return new Typed(expr, type);
+        } else if (expr instanceof BinaryOperation) {
+            return inferBinary((BinaryOperation) expr);
+        } else if (expr instanceof ArrayAccess) {
+            ArrayAccess access = (ArrayAccess) expr;
+            return inferIndex(access.getBaseExpression(), access.getIndexExpression());
+        } else if (expr instanceof ObjectKeyAccess) {
+            ObjectKeyAccess access = (ObjectKeyAccess) expr;
+            return inferKey(access.getBaseExpression(), access.getKeyExpression());
+        } else if (expr instanceof FunctionCall) {
+            return inferCall((FunctionCall) expr);
+        } else if (expr instanceof PathAccess) {
+            // 展开为逐级访问，以便逐级特化
+            return infer(((PathAccess) expr).expand());
+        } else if (expr instanceof FormattedOutput) {
+            // 特化被格式化的表达式，输出为字符串
+            FormattedOutput output = (FormattedOutput) expr;
+            Typed inner = infer(output.getExpression());
+            return new Typed(new FormattedOutput(inner.expression, output.getEncoder(), output.getNumberStyle()),
+                    StaticType.of(String.class));
+        } else if (expr instanceof StringMatch) {
+            StringMatch match = (StringMatch) expr;
+            List<Expression> arguments = new ArrayList<>(match.getArguments().size());
+            for (Expression argument : match.getArguments()) {
+                arguments.add(infer(argument).expression);
+            }
+            StringFunction function = match.getFunction();
+            boolean text = function == StringFunction.FIND || function == StringFunction.REPLACE;
+            return new Typed(match.withArguments(arguments), StaticType.of(text ? String.class : Boolean.class));
+        } else if (expr instanceof Comparison) {
+            return inferComparison((Comparison) expr);
+        } else if (expr instanceof Pipeline) {
+            return inferPipeline((Pipeline) expr);
+        } else if (expr instanceof AggregateCall) {
+            // 聚合结果随元素类型变化且可能为null，只有count的类型确定
+            AggregateCall call = (AggregateCall) expr;
+            Typed argument = infer(call.getArgument());
+            if (argument.type.isNumeric() || argument.type.isString()) {
+                throw new KelpException("Type error: " + call.getFunction().getName()
+                        + " expects an array or collection, but got " + argument.type);
+            }
+            StaticType type = call.getFunction() == AggregateFunction.COUNT ? StaticType.of(int.class) : StaticType.DYNAMIC;
+            return new Typed(new AggregateCall(call.getFunction(), argument.expression), type);
+        } else if (expr instanceof IfBlock) {
+            return inferIf((IfBlock) expr);
+        } else if (expr instanceof EachBlock) {
+            return inferEach((EachBlock) expr);
+        }
+        // 未知节点按动态类型处理
+        return new Typed(expr, StaticType.DYNAMIC);
+    }
+
+    /**
+     * 比较：相等比较接受任意类型；大小比较要求两侧均为数字，或为同一种可比较类型
+     */
+    private Typed inferComparison(Comparison comparison) throws KelpException {
+        Typed left = infer(comparison.getLeft());
+        Typed right = infer(comparison.getRight());
+        ComparisonOperator operator = comparison.getOperator();
+        if (!operator.isEquality() && !left.type.isDynamic() && !right.type.isDynamic()
+                && !(left.type.isNumeric() && right.type.isNumeric())
+                && !(left.type.boxedType() == right.type.boxedType() && Comparable.class.isAssignableFrom(left.type.boxedType()))) {
+            throw new KelpException("Type error: cannot compare " + left.type + " with " + right.type
+                    + " using '" + operator.getSymbol() + "'");
+        }
+        return new Typed(new Comparison(left.expression, operator, right.expression), StaticType.of(Boolean.class));
+    }
+
+    /**
+     * 集合管道：检查数据源，lambda体在参数按动态类型绑定后检查，过滤及any/all条件须为布尔值
+     */
+    private Typed inferPipeline(Pipeline pipeline) throws KelpException {
+        Typed source = infer(pipeline.getSource());
+        if (source.type.isNumeric() || source.type.isString()) {
+            throw new KelpException("Type error: expected a collection or array but got " + source.type);
+        }
+        Pipeline checked = new Pipeline(source.expression, pipeline.getParallelThreshold());
+        for (int i = 0; i < pipeline.getStages().size(); i++) {
+            Pipeline.StageType type = pipeline.getStageTypes().get(i);
+            checked = checked.then(type, inferLambda(pipeline.getStages().get(i), type == Pipeline.StageType.FILTER));
+        }
+        Pipeline.Terminal terminal = pipeline.getTerminal();
+        if (!pipeline.isOpen()) {
+            Lambda predicate = pipeline.getPredicate() != null ? inferLambda(pipeline.getPredicate(), true) : null;
+            checked = checked.end(terminal, predicate);
+        }
+        StaticType type;
+        switch (terminal) {
+            case COUNT:
+                type = StaticType.of(int.class);
+                break;
+            case SUM:
+                type = StaticType.of(double.class);
+                break;
+            case ANY:
+            case ALL:
+                type = StaticType.of(Boolean.class);
+                break;
+            default:
+                type = StaticType.DYNAMIC;
+                break;
+        }
+        return new Typed(checked, type);
+    }
+
+    private Lambda inferLambda(Lambda lambda, boolean predicate) throws KelpException {
+        Typed body = bind(lambda.getParameter(), StaticType.DYNAMIC).infer(lambda.getBody());
+        if (predicate && !body.type.isDynamic() && body.type.boxedType() != Boolean.class) {
+            throw new KelpException("Type error: predicate must return a boolean, but got " + body.type);
+        }
+        return new Lambda(lambda.getParameter(), body.expression);
+    }
+
+    /**
+     * 条件块：条件须为布尔值，各分支按片段检查
+     */
+    private Typed inferIf(IfBlock block) throws KelpException {
+        List<Expression> conditions = new ArrayList<>(block.getConditions().size());
+        for (Expression condition : block.getConditions()) {
+            Typed typed = infer(condition);
+            if (!typed.type.isDynamic() && typed.type.boxedType() != Boolean.class) {
+                throw new KelpException("Type error: condition of #if must be a boolean, but got " + typed.type);
+            }
+            conditions.add(typed.expression);
+        }
+        List<List<Expression>> branches = new ArrayList<>(block.getBranches().size());
+        for (List<Expression> branch : block.getBranches()) {
+            branches.add(check(branch));
+        }
+        IfBlock checked = new IfBlock(conditions, branches, check(block.getOtherwise()));
+        checked.setSpan(block.getStart(), block.getEnd());
+        return new Typed(checked, StaticType.of(String.class));
+    }
+
+    /**
+     * 循环块：数据源为数组或List时循环变量取元素类型，否则为动态类型；序号变量为int
+     */
+    private Typed inferEach(EachBlock block) throws KelpException {
+        Typed source = infer(block.getSource());
+        if (source.type.isNumeric() || source.type.isString()) {
+            throw new KelpException("Type error: cannot iterate over " + source.type + " in #each");
+        }
+        StaticType element = source.type.isArray() || source.type.isList() ? source.type.getElementType() : StaticType.DYNAMIC;
+        TypeChecker body = bind(block.getVariable(), element).bind(block.getIndexVariable(), StaticType.of(int.class));
+        EachBlock checked = new EachBlock(block.getVariable(), block.getIndexVariable(), source.expression,
+                body.check(block.getBody()));
+        checked.setSpan(block.getStart(), block.getEnd());
+        return new Typed(checked, StaticType.of(String.class));
+    }
+
+    /**
+     * 二元运算：两侧均为数字时特化，已知非数字时报错
+     */
+    private Typed inferBinary(BinaryOperation operation) throws KelpException {
+        Typed left = infer(operation.getLeft());
+        Typed right = infer(operation.getRight());
+        String symbol = operation.getOperator().getSymbol();
+
+        if (!left.type.isDynamic() && !left.type.isNumeric()) {
+            throw new KelpException("Type error: left operand of '" + symbol + "' must be a number, but got " + left.type);
+        }
+        if (!right.type.isDynamic() && !right.type.isNumeric()) {
+            throw new KelpException("Type error: right operand of '" + symbol + "' must be a number, but got " + right.type);
+        }
+
+        StaticType resultType = StaticType.of(double.class);
+        if (left.type.isNumeric() && right.type.isNumeric()) {
+            return new Typed(new NumericBinaryOperation(left.expression, operation.getOperator(), right.expression), resultType);
+        }
+        return new Typed(new BinaryOperation(left.expression, operation.getOperator(), right.expression), resultType);
+    }
+
+    /**
+     * 数组/List索引访问
+     */
+    private Typed inferIndex(Expression baseExpression, Expression indexExpression) throws KelpException {
+        Typed base = infer(baseExpression);
+        Typed index = infer(indexExpression);
+
+        if (!index.type.isDynamic() && !index.type.isNumeric()) {
+            throw new KelpException("Type error: array index must be a number, but got " + index.type);
+        }
+
+        if (index.type.isNumeric()) {
+            if (base.type.isArray() && !base.type.getRawType().getComponentType().isPrimitive()) {
+                return new Typed(new TypedArrayAccess(base.expression, index.expression), base.type.getElementType());
+            }
+            if (base.type.isList()) {
+                return new Typed(new TypedListAccess(base.expression, index.expression), base.type.getElementType());
+            }
+        }
+        if (!base.type.isDynamic() && !base.type.isArray() && !base.type.isList()) {
+            throw new KelpException("Type error: expected an array or list but got " + base.type);
+        }
+        return new Typed(new ArrayAccess(base.expression, index.expression), base.type.getElementType());
+    }
+
+    /**
+     * Map键访问
+     */
+    private Typed inferKey(Expression baseExpression, Expression keyExpression) throws KelpException {
+        Typed base = infer(baseExpression);
+        Typed key = infer(keyExpression);
+
+        // 字符串上的键访问返回字符串本身
+        if (base.type.isString()) {
+            return new Typed(new ObjectKeyAccess(base.expression, key.expression), base.type);
+        }
+        if (!base.type.isDynamic() && !base.type.isMap()) {
+            throw new KelpException("Type error: expected an object (Map) but got " + base.type);
+        }
+        if (!key.type.isDynamic() && !key.type.isString()) {
+            throw new KelpException("Type error: expected a string key but got " + key.type);
+        }
+
+        if (base.type.isMap() && key.type.isString()) {
+            return new Typed(new TypedMapAccess(base.expression, key.expression), base.type.getElementType());
+        }
+        return new Typed(new ObjectKeyAccess(base.expression, key.expression), base.type.getElementType());
+    }
+
+    /**
+     * 方法调用：目标与全部参数类型已知时在编译期解析方法
+     */
+    private Typed inferCall(FunctionCall call) throws KelpException {
+        Typed target = infer(call.getTarget());
+        List<Expression> arguments = new ArrayList<>();
+        Class<?>[] argTypes = new Class<?>[call.getArguments().size()];
+        boolean resolvable = !target.type.isDynamic();
+        for (int i = 0; i < argTypes.length; i++) {
+            Typed arg = infer(call.getArguments().get(i));
+            arguments.add(arg.expression);
+            argTypes[i] = arg.type.boxedType();
+            resolvable &= !arg.type.isDynamic();
+        }
+
+        if (!resolvable) {
+            return new Typed(new FunctionCall(target.expression, call.getName(), arguments), StaticType.DYNAMIC);
+        }
+
+        Class<?> targetClass = target.type.getRawType();
+        Method method = FunctionCall.findMethod(targetClass, call.getName(), argTypes);
+        if (method == null) {
+            throw new KelpException("Type error: method not found: " + targetClass.getSimpleName() + "." + call.getName()
+                    + " with arguments of types: " + describe(argTypes));
+        }
+        if (target.type.isClassReference() && !Modifier.isStatic(method.getModifiers())) {
+            throw new KelpException("Type error: method " + targetClass.getSimpleName() + "." + call.getName() + " is not static");
+        }
+        return new Typed(new ResolvedMethodCall(target.expression, method, arguments),
+                StaticType.of(method.getGenericReturnType()));
+    }
+
+    private String describe(Class<?>[] types) {
+        StringBuilder names = new StringBuilder();
+        for (Class<?> type : types) {
+            if (names.length() > 0) {
+                names.append(", ");
+            }
+            names.append(type.getSimpleName());
+        }
+        return names.toString();
+    }
+
+    /**
+     * 已推导类型的表达式
+     */
+    private static class Typed {
+        private final Expression expression;
+        private final StaticType type;
+
+        Typed(Expression expression, StaticType type) {
+            this.expression = expression;
+            this.type = type;
+        }
+    }
+}
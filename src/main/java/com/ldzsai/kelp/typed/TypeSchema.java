@@ -0,0 +1,29 @@
+package com.ldzsai.kelp.typed;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 变量类型声明，用于强类型编译
+ */
+public class TypeSchema {
+    private final Map<String, StaticType> variables = new HashMap<>();
+
+    public void define(String name, Class<?> type) {
+        variables.put(name, StaticType.of(type));
+    }
+
+    public void define(String name, StaticType type) {
+        variables.put(name, type);
+    }
+
+    /**
+     * 获取变量的声明类型
+     *
+     * @param name 变量名
+     * @return 声明类型，未声明时返回null
+     */
+    public StaticType getType(String name) {
+        return variables.get(name);
+    }
+}
@@ -0,0 +1,37 @@
+package com.ldzsai.kelp.typed;
+
+import com.ldzsai.kelp.KelpException;
+import com.ldzsai.kelp.expression.Environment;
+import com.ldzsai.kelp.expression.Expression;
+
+/**
+ * 编译期已确认为对象数组及数字索引的访问
+ */
+public class TypedArrayAccess extends Expression {
+    private final Expression baseExpression;
+    private final Expression indexExpression;
+
+    public TypedArrayAccess(Expression baseExpression, Expression indexExpression) {
+        this.baseExpression = baseExpression;
+        this.indexExpression = indexExpression;
+    }
+
+    public Expression getBaseExpression() {
+        return baseExpression;
+    }
+
+    public Expression getIndexExpression() {
+        return indexExpression;
+    }
+
+    @Override
+    public Object evaluate(Environment env) throws Exception {
+        Object[] array = (Object[]) baseExpression.evaluate(env);
+        int idx = ((Number) indexExpression.evaluate(env)).intValue();
+        if (idx < 0 || idx >= array.length) {
+            throw new KelpException("Array index out of bounds: " + idx + 
+                " (array length: " + array.length + ")");
+        }
+        return array[idx];
+    }
+}
@@ -0,0 +1,39 @@
+package com.ldzsai.kelp.typed;
+
+import java.util.List;
+
+import com.ldzsai.kelp.KelpException;
+import com.ldzsai.kelp.expression.Environment;
+import com.ldzsai.kelp.expression.Expression;
+
+/**
+ * 编译期已确认为List及数字索引的访问
+ */
+public class TypedListAccess extends Expression {
+    private final Expression baseExpression;
+    private final Expression indexExpression;
+
+    public TypedListAccess(Expression baseExpression, Expression indexExpression) {
+        this.baseExpression = baseExpression;
+        this.indexExpression = indexExpression;
+    }
+
+    public Expression getBaseExpression() {
+        return baseExpression;
+    }
+
+    public Expression getIndexExpression() {
+        return indexExpression;
+    }
+
+    @Override
+    public Object evaluate(Environment env) throws Exception {
+        List<?> list = (List<?>) baseExpression.evaluate(env);
+        int idx = ((Number) indexExpression.evaluate(env)).intValue();
+        if (idx < 0 || idx >= list.size()) {
+            throw new KelpException("List index out of bounds: " + idx + 
+                " (list size: " + list.size() + ")");
+        }
+        return list.get(idx);
+    }
+}
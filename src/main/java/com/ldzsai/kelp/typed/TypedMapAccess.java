@@ -0,0 +1,41 @@
+package com.ldzsai.kelp.typed;
+
+import java.util.Map;
+
+import com.ldzsai.kelp.KelpException;
+import com.ldzsai.kelp.expression.Environment;
+import com.ldzsai.kelp.expression.Expression;
+
+/**
+ * 编译期已确认为Map及字符串键的访问，命中时只做一次查找
+ */
+public class TypedMapAccess extends Expression {
+    private final Expression baseExpression;
+    private final Expression keyExpression;
+
+    public TypedMapAccess(Expression baseExpression, Expression keyExpression) {
+        this.baseExpression = baseExpression;
+        this.keyExpression = keyExpression;
+    }
+
+    public Expression getBaseExpression() {
+        return baseExpression;
+    }
+
+    public Expression getKeyExpression() {
+        return keyExpression;
+    }
+
+    @Override
+    public Object evaluate(Environment env) throws Exception {
+        Map<?, ?> map = (Map<?, ?>) baseExpression.evaluate(env);
+        Object key = keyExpression.evaluate(env);
+        Object value = map.get(key);
+
+        // 仅在取到null时区分键不存在与值为null
+        if (value == null && !map.containsKey(key)) {
+            throw new KelpException("Cannot find the key '" + key + "' in the object");
+        }
+        return value;
+    }
+}
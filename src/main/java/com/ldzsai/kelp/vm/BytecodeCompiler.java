@@ -0,0 +1,168 @@
+package com.ldzsai.kelp.vm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.ldzsai.kelp.KelpException;
+import com.ldzsai.kelp.expression.ArrayAccess;
+import com.ldzsai.kelp.expression.BinaryOperation;
+import com.ldzsai.kelp.expression.Block;
+import com.ldzsai.kelp.expression.Expression;
+import com.ldzsai.kelp.expression.FloatLiteral;
+import com.ldzsai.kelp.expression.FormattedOutput;
+import com.ldzsai.kelp.expression.FunctionCall;
+import com.ldzsai.kelp.expression.IntegerLiteral;
+import com.ldzsai.kelp.expression.ObjectKeyAccess;
+import com.ldzsai.kelp.expression.PathAccess;
+import com.ldzsai.kelp.expression.StringLiteral;
+import com.ldzsai.kelp.expression.TextSegment;
+import com.ldzsai.kelp.expression.Variable;
+
+/**
+ * 字节码编译器，将抽象语法树降级为扁平指令流
+ * <p>
+ * 未识别的节点编译为EVAL指令，回退到该节点自身的树遍历求值。
+ */
+public class BytecodeCompiler {
+    // 指令缓冲
+    private int[] code = new int[64];
+    private int length;
+
+    // 常量池及去重索引
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndex = new HashMap<>();
+
+    // 当前及最大栈深度
+    private int stackDepth;
+    private int maxStack;
+
+    /**
+     * 编译模板
+     *
+     * @param ast 抽象语法树
+     * @return 字节码程序
+     */
+    public static Program compile(List<Expression> ast) throws KelpException {
+        BytecodeCompiler compiler = new BytecodeCompiler();
+        for (Expression expression : ast) {
+            compiler.compileSegment(expression);
+        }
+        return new Program(Arrays.copyOf(compiler.code, compiler.length), compiler.constants.toArray(), compiler.maxStack);
+    }
+
+    /**
+     * 编译顶层片段
+     */
+    private void compileSegment(Expression expression) throws KelpException {
+        if (expression instanceof StringLiteral) {
+            emit(Opcode.TEXT, constant(((StringLiteral) expression).getValue()));
+        } else if (expression instanceof TextSegment) {
+            emit(Opcode.WRITE, identityConstant(expression));
+        } else if (expression instanceof FormattedOutput) {
+            compileExpression(((FormattedOutput) expression).getExpression());
+            emit(Opcode.FORMAT, identityConstant(expression));
+            pop(1);
+        } else if (expression instanceof Block) {
+            // 块体按树遍历逐元素写出
+            emit(Opcode.BLOCK, identityConstant(expression));
+        } else {
+            compileExpression(expression);
+            emit(Opcode.EMIT);
+            pop(1);
+        }
+    }
+
+    /**
+     * 编译表达式，执行后栈顶为表达式的值
+     */
+    private void compileExpression(Expression expr) throws KelpException {
+        if (expr instanceof IntegerLiteral) {
+            emit(Opcode.CONST, constant(((IntegerLiteral) expr).getValue()));
+            push();
+        } else if (expr instanceof FloatLiteral) {
+            emit(Opcode.CONST, constant(((FloatLiteral) expr).getValue()));
+            push();
+        } else if (expr instanceof StringLiteral) {
+            emit(Opcode.CONST, constant(((StringLiteral) expr).getValue()));
+            push();
+        } else if (expr instanceof Variable) {
+            emit(Opcode.LOAD, constant(((Variable) expr).getName()));
+            push();
+        } else if (expr instanceof BinaryOperation) {
+            BinaryOperation operation = (BinaryOperation) expr;
+            compileExpression(operation.getLeft());
+            compileExpression(operation.getRight());
+            emit(Opcode.ARITH, operation.getOperator().ordinal());
+            pop(1);
+        } else if (expr instanceof ArrayAccess) {
+            ArrayAccess access = (ArrayAccess) expr;
+            compileExpression(access.getBaseExpression());
+            compileExpression(access.getIndexExpression());
+            emit(Opcode.INDEX);
+            pop(1);
+        } else if (expr instanceof ObjectKeyAccess) {
+            ObjectKeyAccess access = (ObjectKeyAccess) expr;
+            compileExpression(access.getBaseExpression());
+            compileExpression(access.getKeyExpression());
+            emit(Opcode.KEY);
+            pop(1);
+        } else if (expr instanceof PathAccess) {
+            // 合并的访问路径展开为逐级的KEY/INDEX指令
+            compileExpression(((PathAccess) expr).expand());
+        } else if (expr instanceof FunctionCall) {
+            // 与树遍历保持一致：先求值参数，再求值目标
+            FunctionCall call = (FunctionCall) expr;
+            List<Expression> arguments = call.getArguments();
+            for (Expression argument : arguments) {
+                compileExpression(argument);
+            }
+            compileExpression(call.getTarget());
+            emit(Opcode.INVOKE, constant(call.getName()), arguments.size());
+            pop(arguments.size());
+        } else {
+            emit(Opcode.EVAL, identityConstant(expr));
+            push();
+        }
+    }
+
+    /**
+     * 按值去重的常量
+     */
+    private int constant(Object value) {
+        Integer index = constantIndex.get(value);
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            constantIndex.put(value, index);
+        }
+        return index;
+    }
+
+    /**
+     * 不去重的常量（节点对象）
+     */
+    private int identityConstant(Object value) {
+        constants.add(value);
+        return constants.size() - 1;
+    }
+
+    private void emit(int... instruction) {
+        if (length + instruction.length > code.length) {
+            code = Arrays.copyOf(code, Math.max(code.length * 2, length + instruction.length));
+        }
+        System.arraycopy(instruction, 0, code, length, instruction.length);
+        length += instruction.length;
+    }
+
+    private void push() {
+        stackDepth++;
+        maxStack = Math.max(maxStack, stackDepth);
+    }
+
+    private void pop(int count) {
+        stackDepth -= count;
+    }
+}
@@ -0,0 +1,68 @@
+package com.ldzsai.kelp.vm;
+
+/**
+ * 虚拟机指令，每条指令占一个int，其后紧跟固定数量的操作数
+ */
+public final class Opcode {
+    // 压入常量：CONST 常量索引
+    public static final int CONST = 0;
+    // 压入变量值：LOAD 变量名常量索引
+    public static final int LOAD = 1;
+    // 算术运算：ARITH 运算符序号，弹出右、左操作数，压入结果
+    public static final int ARITH = 2;
+    // 数组/List索引访问：弹出索引、目标，压入元素
+    public static final int INDEX = 3;
+    // Map键访问：弹出键、目标，压入值
+    public static final int KEY = 4;
+    // 方法调用：INVOKE 方法名常量索引 参数个数，弹出目标及参数，压入结果
+    public static final int INVOKE = 5;
+    // 回退到树遍历求值：EVAL 表达式常量索引
+    public static final int EVAL = 6;
+    // 弹出栈顶，非null时写入输出
+    public static final int EMIT = 7;
+    // 直接写入字符串常量：TEXT 常量索引
+    public static final int TEXT = 8;
+    // 分块写出静态文本片段：WRITE 常量索引
+    public static final int WRITE = 9;
+    // 弹出栈顶，按片段的输出编码和数字格式写入输出：FORMAT 片段常量索引
+    public static final int FORMAT = 10;
+    // 执行块指令，结果直接写入输出：BLOCK 块常量索引
+    public static final int BLOCK = 11;
+
+    // 指令名称，下标为指令值
+    private static final String[] NAMES = {
+        "CONST", "LOAD", "ARITH", "INDEX", "KEY", "INVOKE", "EVAL", "EMIT", "TEXT", "WRITE", "FORMAT", "BLOCK"
+    };
+
+    private Opcode() {
+    }
+
+    /**
+     * 指令名称
+     *
+     * @param opcode 指令
+     * @return 名称
+     */
+    public static String name(int opcode) {
+        return opcode >= 0 && opcode < NAMES.length ? NAMES[opcode] : "UNKNOWN(" + opcode + ")";
+    }
+
+    /**
+     * 指令的操作数个数
+     *
+     * @param opcode 指令
+     * @return 操作数个数
+     */
+    public static int operandCount(int opcode) {
+        switch (opcode) {
+            case INDEX:
+            case KEY:
+            case EMIT:
+                return 0;
+            case INVOKE:
+                return 2;
+            default:
+                return 1;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.ldzsai.kelp.vm;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.ldzsai.kelp.KelpException;
+import com.ldzsai.kelp.Renderer;
+import com.ldzsai.kelp.expression.Environment;
+
+/**
+ * 字节码程序：扁平的int指令流加常量池
+ */
+public class Program implements Renderer {
+    // 序列化格式版本
+    private static final int FORMAT_VERSION = 1;
+
+    // 常量类型标记
+    private static final byte TAG_STRING = 1;
+    private static final byte TAG_INTEGER = 2;
+    private static final byte TAG_DOUBLE = 3;
+
+    // 指令流
+    private final int[] code;
+
+    // 常量池
+    private final Object[] constants;
+
+    // 操作数栈最大深度
+    private final int maxStack;
+
+    public Program(int[] code, Object[] constants, int maxStack) {
+        this.code = code;
+        this.constants = constants;
+        this.maxStack = maxStack;
+    }
+
+    public int[] getCode() {
+        return code;
+    }
+
+    public Object[] getConstants() {
+        return constants;
+    }
+
+    public int getMaxStack() {
+        return maxStack;
+    }
+
+    @Override
+    public void render(Environment env, Appendable out) throws Exception {
+        VirtualMachine.current().execute(this, env, out);
+    }
+
+    /**
+     * 写出紧凑的二进制格式，常量池仅支持字符串和数字
+     *
+     * @param out 输出
+     * @throws IOException 写出错误
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(maxStack);
+        out.writeInt(code.length);
+        for (int instruction : code) {
+            out.writeInt(instruction);
+        }
+        out.writeInt(constants.length);
+        for (Object constant : constants) {
+            if (constant instanceof String) {
+                byte[] bytes = ((String) constant).getBytes(StandardCharsets.UTF_8);
+                out.writeByte(TAG_STRING);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            } else if (constant instanceof Integer) {
+                out.writeByte(TAG_INTEGER);
+                out.writeInt((Integer) constant);
+            } else if (constant instanceof Double) {
+                out.writeByte(TAG_DOUBLE);
+                out.writeDouble((Double) constant);
+            } else {
+                throw new KelpException("Cannot serialize constant of type: " + 
+                    (constant != null ? constant.getClass().getSimpleName() : "null"));
+            }
+        }
+    }
+
+    /**
+     * 读取writeTo写出的程序
+     *
+     * @param in 输入
+     * @return 字节码程序
+     * @throws IOException 读取错误
+     */
+    public static Program readFrom(DataInput in) throws IOException {
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new KelpException("Unsupported program format version: " + version);
+        }
+        int maxStack = in.readInt();
+        int[] code = new int[in.readInt()];
+        for (int i = 0; i < code.length; i++) {
+            code[i] = in.readInt();
+        }
+        Object[] constants = new Object[in.readInt()];
+        for (int i = 0; i < constants.length; i++) {
+            byte tag = in.readByte();
+            switch (tag) {
+                case TAG_STRING:
+                    byte[] bytes = new byte[in.readInt()];
+                    in.readFully(bytes);
+                    constants[i] = new String(bytes, StandardCharsets.UTF_8);
+                    break;
+                case TAG_INTEGER:
+                    constants[i] = in.readInt();
+                    break;
+                case TAG_DOUBLE:
+                    constants[i] = in.readDouble();
+                    break;
+                default:
+                    throw new KelpException("Unknown constant tag: " + tag);
+            }
+        }
+        return new Program(code, constants, maxStack);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int pc = 0; pc < code.length; ) {
+            int opcode = code[pc];
+            int operands = Opcode.operandCount(opcode);
+            sb.append(pc).append(": ").append(Opcode.name(opcode))
+                .append(Arrays.toString(Arrays.copyOfRange(code, pc + 1, pc + 1 + operands))).append('\n');
+            pc += 1 + operands;
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,138 @@
+package com.ldzsai.kelp.vm;
+
+import java.util.Arrays;
+
+import com.ldzsai.kelp.KelpException;
+import com.ldzsai.kelp.Operator;
+import com.ldzsai.kelp.expression.ArrayAccess;
+import com.ldzsai.kelp.expression.BinaryOperation;
+import com.ldzsai.kelp.expression.Block;
+import com.ldzsai.kelp.expression.Environment;
+import com.ldzsai.kelp.expression.Expression;
+import com.ldzsai.kelp.expression.FormattedOutput;
+import com.ldzsai.kelp.expression.FunctionCall;
+import com.ldzsai.kelp.expression.ObjectKeyAccess;
+import com.ldzsai.kelp.expression.TextSegment;
+
+/**
+ * 栈式虚拟机，每个线程复用一个操作数栈
+ * <p>
+ * 方法调用中可能重入执行其他模板，重入的程序在当前栈顶之上继续使用同一个栈。
+ */
+public class VirtualMachine {
+    private static final ThreadLocal<VirtualMachine> CURRENT = ThreadLocal.withInitial(VirtualMachine::new);
+
+    // 运算符，下标为序号
+    private static final Operator[] OPERATORS = Operator.values();
+
+    // 操作数栈
+    private Object[] stack = new Object[32];
+
+    // 栈顶位置
+    private int sp;
+
+    /**
+     * 获取当前线程的虚拟机
+     *
+     * @return 虚拟机
+     */
+    public static VirtualMachine current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 执行程序
+     *
+     * @param program 字节码程序
+     * @param env     执行环境
+     * @param out     输出
+     * @throws Exception 异常
+     */
+    public void execute(Program program, Environment env, Appendable out) throws Exception {
+        int base = sp;
+        if (base + program.getMaxStack() > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(stack.length * 2, base + program.getMaxStack()));
+        }
+
+        int[] code = program.getCode();
+        Object[] constants = program.getConstants();
+        Object[] stack = this.stack;
+        int sp = base;
+        int pc = 0;
+        try {
+            while (pc < code.length) {
+                switch (code[pc++]) {
+                    case Opcode.CONST:
+                        stack[sp++] = constants[code[pc++]];
+                        break;
+                    case Opcode.LOAD:
+                        stack[sp++] = env.getVariable((String) constants[code[pc++]]);
+                        break;
+                    case Opcode.ARITH: {
+                        Object right = stack[--sp];
+                        stack[sp - 1] = BinaryOperation.apply(OPERATORS[code[pc++]], stack[sp - 1], right);
+                        break;
+                    }
+                    case Opcode.INDEX: {
+                        Object index = stack[--sp];
+                        stack[sp - 1] = ArrayAccess.access(stack[sp - 1], index);
+                        break;
+                    }
+                    case Opcode.KEY: {
+                        Object key = stack[--sp];
+                        stack[sp - 1] = ObjectKeyAccess.access(stack[sp - 1], key);
+                        break;
+                    }
+                    case Opcode.INVOKE: {
+                        String name = (String) constants[code[pc++]];
+                        int argc = code[pc++];
+                        Object target = stack[--sp];
+                        Object[] args = new Object[argc];
+                        sp -= argc;
+                        System.arraycopy(stack, sp, args, 0, argc);
+                        // 方法内可能重入虚拟机，先同步栈顶
+                        this.sp = sp;
+                        stack[sp++] = FunctionCall.invoke(name, target, args);
+                        break;
+                    }
+                    case Opcode.EVAL:
+                        this.sp = sp;
+                        stack[sp] = ((Expression) constants[code[pc++]]).evaluate(env);
+                        sp++;
+                        break;
+                    case Opcode.EMIT: {
+                        Object value = stack[--sp];
+                        // toString可能重入虚拟机，先同步栈顶
+                        this.sp = sp;
+                        if (value != null) {
+                            out.append(String.valueOf(value));
+                        }
+                        break;
+                    }
+                    case Opcode.TEXT:
+                        out.append((String) constants[code[pc++]]);
+                        break;
+                    case Opcode.WRITE:
+                        ((TextSegment) constants[code[pc++]]).writeTo(out);
+                        break;
+                    case Opcode.FORMAT: {
+                        Object value = stack[--sp];
+                        this.sp = sp;
+                        ((FormattedOutput) constants[code[pc++]]).write(value, out);
+                        break;
+                    }
+                    case Opcode.BLOCK:
+                        this.sp = sp;
+                        ((Block) constants[code[pc++]]).render(env, out);
+                        break;
+                    default:
+                        throw new KelpException("Unknown opcode " + code[pc - 1] + " at " + (pc - 1));
+                }
+            }
+        } finally {
+            // 清理引用，避免栈持有已执行完的值
+            Arrays.fill(this.stack, base, Math.min(this.stack.length, base + program.getMaxStack()), null);
+            this.sp = base;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.ldzsai.kelp;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.ldzsai.kelp.expression.Environment;
+
+/**
+ * 稳态执行的堆分配测试
+ */
+public class AllocationTest {
+    private static final int WARMUP = 20_000;
+    private static final int ITERATIONS = 10_000;
+
+    @Test
+    void testSteadyStateAllocatesNothing() throws Exception {
+        com.sun.management.ThreadMXBean threads = threadMXBean();
+        if (threads == null) {
+            return;
+        }
+
+        Map<String, Object> user = new HashMap<>();
+        user.put("name", "kangert");
+
+        Environment env = new Environment();
+        env.setVariable("price", 2.5);
+        env.setVariable("qty", 1000);
+        env.setVariable("user", user);
+        env.setVariable("items", Arrays.asList("apple", "banana"));
+        env.setVariable("codes", new String[] { "A", "B" });
+
+        ExpressionEngine engine = new ExpressionEngine(env);
+        String exp = "total ${price * qty + 0.5} for ${user['name'].trim()}: ${items[1]}${codes[0]} x${qty} ${1024} ${3.25}";
+        StringBuilder out = new StringBuilder(256);
+
+        for (int i = 0; i < WARMUP; i++) {
+            out.setLength(0);
+            engine.execute(exp, out);
+        }
+        assertEquals("total 2500.5 for kangert: bananaA x1000 1024 3.25", out.toString());
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            out.setLength(0);
+            engine.execute(exp, out);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        // 允许测量本身的少量分配
+        assertTrue(allocated / ITERATIONS < 8, "allocated " + allocated + " bytes in " + ITERATIONS + " calls");
+    }
+
+    private com.sun.management.ThreadMXBean threadMXBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+}
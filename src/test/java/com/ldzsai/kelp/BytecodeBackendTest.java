@@ -0,0 +1,63 @@
+package com.ldzsai.kelp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.ldzsai.kelp.expression.Environment;
+import com.ldzsai.kelp.vm.Program;
+
+/**
+ * 以字节码后端运行ExpressionEngineTest的全部用例
+ */
+public class BytecodeBackendTest extends ExpressionEngineTest {
+
+    @Override
+    protected ExpressionEngine createEngine(Environment env) {
+        ExpressionEngine engine = new ExpressionEngine(env);
+        engine.setBackend(Backend.BYTECODE);
+        return engine;
+    }
+
+    @Test
+    void testProgramSerialization() throws Exception {
+        Environment env = new Environment();
+        env.setVariable("a", 10);
+
+        ExpressionEngine engine = createEngine(env);
+        CompiledTemplate template = engine.compile(new StringReader("a=${a * 2 + 1}!"));
+        Program program = (Program) template.getRenderer();
+        assertNull(template.getAst());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        program.writeTo(new DataOutputStream(bytes));
+        Program restored = Program.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals("a=21.0!", new CompiledTemplate(restored).execute(env));
+    }
+
+    @Test
+    void testPathSerialization() throws Exception {
+        Map<String, Object> tenant = new HashMap<>();
+        tenant.put("codes", Arrays.asList("x", "y"));
+        Environment env = new Environment();
+        env.setVariable("ctx", Collections.singletonMap("tenant", tenant));
+
+        // 合并的访问路径编译为逐级的KEY/INDEX指令，可以序列化
+        CompiledTemplate template = createEngine(env).compile(new StringReader("${ctx.tenant['codes'][1]}"));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ((Program) template.getRenderer()).writeTo(new DataOutputStream(bytes));
+        Program restored = Program.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals("y", new CompiledTemplate(restored).execute(env));
+    }
+}
@@ -1,12 +1,38 @@
 package com.ldzsai.kelp;
 
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 
 import com.ldzsai.kelp.expression.Environment;
+import com.ldzsai.kelp.expression.LazyValue;
+import com.ldzsai.kelp.expression.PatternCache;
+import com.ldzsai.kelp.expression.Pipeline;
+import com.ldzsai.kelp.expression.StringMatch;
+import com.ldzsai.kelp.format.Encoders;
+import com.ldzsai.kelp.format.NumberStyle;
 import com.ldzsai.kelp.ExpressionEngine;
 
 public class ExpressionEngineTest {
@@ -17,17 +43,51 @@ public class ExpressionEngineTest {
         }
     }
 
+    /**
+     * 创建被测引擎，子类可覆盖以切换执行后端
+     */
+    protected ExpressionEngine createEngine(Environment env) {
+        return new ExpressionEngine(env);
+    }
+
     @Test
     void testSimpleArithmetic() throws Exception {
         Environment env = new Environment();
         String input = "${1+1+1*2}";
         
-        ExpressionEngine engine = new ExpressionEngine(env);
+        ExpressionEngine engine = createEngine(env);
         Object result = engine.execute(input);
         
         assertEquals("4.0", result);
     }
 
+    @Test
+    void testParenthesizedSegmentAfterVariable() throws Exception {
+        Environment env = new Environment();
+        env.setVariable("a", 1);
+        env.setVariable("b", 2);
+
+        // 变量后紧跟以左括号开头的片段，不是函数调用
+        ExpressionEngine engine = createEngine(env);
+        assertEquals("12", engine.execute("${a}${(b)}"));
+        assertEquals("13.0", engine.execute("${a}${(b) + 1}"));
+    }
+
+    @Test
+    void testOperatorPrecedence() throws Exception {
+        Environment env = new Environment();
+        env.setVariable("a", 6);
+        env.setVariable("b", 2);
+
+        ExpressionEngine engine = createEngine(env);
+        assertEquals("9.0|1.0|16.0|true|false", engine.execute(
+                "${ a - b + 3 * b - 1 }|${a / b / 3}|${(a + b) * b}|${a - b * 2 >= b}|${ a * b < a + b }"));
+        assertEquals("", engine.execute("${}"));
+
+        KelpException e = assertThrows(KelpException.class, () -> engine.execute("${a +}"));
+        assertEquals("Unexpected end of expression", e.getMessage());
+    }
+
     @Test
     void testObjectAccess() throws Exception {
         Environment env = new Environment();
@@ -37,7 +97,7 @@ public class ExpressionEngineTest {
         
         String input = "${obj.a}";
         
-        ExpressionEngine engine = new ExpressionEngine(env);
+        ExpressionEngine engine = createEngine(env);
         Object result = engine.execute(input);
         
         assertEquals("kangert", result);
@@ -53,7 +113,7 @@ public class ExpressionEngineTest {
         
         String input = "${str.subString(obj.a, 0, 5)}rt";
         
-        ExpressionEngine engine = new ExpressionEngine(env);
+        ExpressionEngine engine = createEngine(env);
         Object result = engine.execute(input);
         
         assertEquals("kangert", result);
@@ -70,7 +130,7 @@ public class ExpressionEngineTest {
         
         String input = "${test[1]['a']}";
         
-        ExpressionEngine engine = new ExpressionEngine(env);
+        ExpressionEngine engine = createEngine(env);
         Object result = engine.execute(input);
         
         assertEquals("kangert", result);
@@ -88,9 +148,481 @@ public class ExpressionEngineTest {
         
         String input = "${str.subString(test[1]['a'], 0, 3)}";
         
-        ExpressionEngine engine = new ExpressionEngine(env);
+        ExpressionEngine engine = createEngine(env);
         Object result = engine.execute(input);
         
         assertEquals("kan", result);
     }
-}
\ No newline at end of file
+
+    @Test
+    void testCollectionPipeline() throws Exception {
+        Environment env = new Environment();
+        env.setVariable("items", lineItems(4));
+
+        String input = "${items.filter(i -> i.qty > 0).map(i -> i.price * i.qty).sum()}|"
+                + "${items.filter(i -> i.qty > 0).count()}|${items.any(i -> i.name == 'item3')}|"
+                + "${items.map(i -> i.qty).all(q -> q >= 0)}|${items.filter(i -> i.qty >= 2).map(i -> i.name)}";
+
+        ExpressionEngine engine = createEngine(env);
+        assertEquals("12.0|3|true|true|[item2, item3]", engine.execute(input));
+
+        // 超过阈值时并行求值，结果与顺序求值一致；阈值只作用于设置它的引擎
+        engine.setPipelineParallelThreshold(2);
+        assertEquals("12.0|3|true|true|[item2, item3]", engine.execute(input));
+        assertEquals(Pipeline.DEFAULT_PARALLEL_THRESHOLD, createEngine(env).getPipelineParallelThreshold());
+        assertThrows(IllegalArgumentException.class, () -> engine.setPipelineParallelThreshold(0));
+    }
+
+    @Test
+    void testPrimitiveArraysAndAggregates() throws Exception {
+        Environment env = new Environment();
+        env.setVariable("ints", new int[] { 3, 1, 4, 1, 5 });
+        env.setVariable("longs", new long[] { 10000000000L, 2L });
+        env.setVariable("doubles", new double[] { 1.5, 2.5 });
+        env.setVariable("bytes", new byte[] { 7 });
+        env.setVariable("list", Arrays.asList(2, 8, 5));
+
+        String input = "${ints[2]}|${longs[0]}|${doubles[1] * 2}|${bytes[0]}|"
+                + "${sum(ints)}|${avg(ints)}|${min(ints)}|${max(longs)}|${count(doubles)}|"
+                + "${sum(doubles)}|${max(list)}|${avg(list)}|${sum(ints) + 1}";
+
+        ExpressionEngine engine = createEngine(env);
+        assertEquals("4|10000000000|5.0|7|14|2.8|1|10000000000|2|4.0|8|5.0|15.0", engine.execute(input));
+
+        KelpException e = assertThrows(KelpException.class, () -> engine.execute("${ints[5]}"));
+        assertEquals("Array index out of bounds: 5 (array length: 5)", e.getMessage());
+        // 非内置函数名是变量，其后的括号是下一个表达式
+        env.setVariable("median", "m");
+        assertEquals("m2", engine.execute("${median(2)}"));
+    }
+
+    @Test
+    void testPathAccess() throws Exception {
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("locale", "zh-CN");
+        settings.put("currency", null);
+        Map<String, Object> tenant = new HashMap<>();
+        tenant.put("settings", settings);
+        tenant.put("tags", Arrays.asList("a", "b"));
+        Map<String, Object> ctx = new HashMap<>();
+        ctx.put("tenant", tenant);
+        ctx.put("items", lineItems(3));
+
+        Environment env = new Environment();
+        env.setVariable("ctx", ctx);
+
+        String input = "${ctx.tenant.settings.locale}|${ctx.tenant['settings'].currency}|${ctx.items[2].name}|"
+                + "${ctx.tenant.tags[1].toUpperCase()}|${ctx.items[1]['qty'] + 1}";
+
+        ExpressionEngine engine = createEngine(env);
+        assertEquals("zh-CN||item2|B|2.0", engine.execute(input));
+
+        // 同一位置的容器类型变化后结果仍然正确
+        tenant.put("tags", new Object[] { "x", "y" });
+        assertEquals("Y", engine.execute("${ctx.tenant.tags[1].toUpperCase()}"));
+
+        KelpException e = assertThrows(KelpException.class, () -> engine.execute("${ctx.tenant.settings.zone}"));
+        assertEquals("Cannot find the key 'zone' in the object", e.getMessage());
+    }
+
+    @Test
+    void testLazyVariables() throws Exception {
+        AtomicInteger totals = new AtomicInteger();
+        AtomicInteger permissions = new AtomicInteger();
+        Environment env = new Environment();
+        env.setVariable("items", lineItems(4));
+        env.setLazy("total", () -> {
+            totals.incrementAndGet();
+            return 12;
+        });
+        env.setLazy("permissions", () -> {
+            permissions.incrementAndGet();
+            return Arrays.asList("read", "write");
+        });
+
+        ExpressionEngine engine = createEngine(env);
+        assertEquals("12|24.0|[item1, item2, item3]", engine.execute(
+                "${total}|${total * 2}|${items.filter(i -> i.qty * total > 0).map(i -> i.name)}"));
+        assertEquals("13.0", engine.execute("${total + 1}"));
+        assertEquals(1, totals.get());
+        assertEquals(0, permissions.get());
+
+        Map<String, LazyValue> lazy = env.getLazyVariables();
+        assertEquals(2, lazy.size());
+        assertTrue(lazy.get("total").isComputed());
+        assertTrue(lazy.get("total").getAccessCount() >= 4);
+        assertFalse(lazy.get("permissions").isComputed());
+        assertEquals(0, lazy.get("permissions").getAccessCount());
+
+        // 重新赋值覆盖延迟变量
+        env.setVariable("total", 1);
+        assertEquals("1", engine.execute("${total}"));
+        assertEquals(1, env.getLazyVariables().size());
+    }
+
+    @Test
+    void testOutputEncoders() throws Exception {
+        Environment env = new Environment();
+        env.setVariable("name", "<a href=\"x\">Tom & 'Jerry'</a>");
+        env.setVariable("text", "line1\n\"q\"\u2028");
+        env.setVariable("query", "a b&c=中");
+        env.setVariable("cell", "x,\"y\"");
+        env.setVariable("price", 2.5);
+        env.setVariable("qty", 3);
+
+        ExpressionEngine engine = createEngine(env);
+        assertEquals("&lt;a href=&quot;x&quot;&gt;Tom &amp; &#39;Jerry&#39;&lt;/a&gt;", engine.execute("${name | html}"));
+        assertEquals("line1\\n\\\"q\\\"\\u2028", engine.execute("${text|json}"));
+        assertEquals("\\u003ca href=\\\"x\\\"\\u003eTom \\u0026 'Jerry'\\u003c/a\\u003e",
+                engine.execute("${name | json}"));
+        assertEquals("a%20b%26c%3D%E4%B8%AD", engine.execute("${query | url}"));
+        assertEquals("\"x,\"\"y\"\"\",plain", engine.execute("${cell | csv},${'plain' | csv}"));
+        assertEquals("<b>7.5</b>", engine.execute("<b>${price * qty | html}</b>"));
+
+        KelpException e = assertThrows(KelpException.class, () -> engine.execute("${name | xml}"));
+        assertTrue(e.getMessage().contains("Unknown encoder: xml"), e.getMessage());
+        e = assertThrows(KelpException.class, () -> engine.execute("${name | 1}"));
+        assertTrue(e.getMessage().contains("Expected an encoder name after '|'"), e.getMessage());
+
+        // 默认编码只作用于表达式片段，静态文本不转义
+        engine.setOutputEncoder(Encoders.HTML);
+        assertEquals("<p>&lt;a href=&quot;x&quot;&gt;Tom &amp; &#39;Jerry&#39;&lt;/a&gt;|<a href=\"x\">Tom & 'Jerry'</a></p>",
+                engine.execute("<p>${name}|${name | raw}</p>"));
+    }
+
+    @Test
+    void testNumberStyle() throws Exception {
+        Environment env = new Environment();
+        env.setVariable("pi", 3.14159);
+        env.setVariable("small", -0.004);
+        env.setVariable("big", 1e20);
+        env.setVariable("count", 42);
+
+        NumberStyle style = new NumberStyle();
+        style.setScale(2);
+        ExpressionEngine engine = createEngine(env);
+        engine.setNumberStyle(style);
+        assertEquals("3.14|0.00|100000000000000000000.00|42|6.28|2.50|0.05",
+                engine.execute("${pi}|${small}|${big}|${count}|${pi * 2}|${5 / 2}|${0.045 + 0.0001}"));
+
+        style = new NumberStyle();
+        style.setIntegralAsInteger(true);
+        engine.setNumberStyle(style);
+        assertEquals("2|3.14159|42|-0.004", engine.execute("${4 / 2}|${pi}|${count}|${small}"));
+
+        assertThrows(IllegalArgumentException.class, () -> new NumberStyle().setScale(19));
+    }
+
+    @Test
+    void testNumberStyleRoundingBoundary() {
+        NumberStyle style = new NumberStyle();
+        style.setScale(2);
+        // 二进制值略小于x.xx5，按十进制表示四舍五入
+        double[] ties = { 1.005, 1.015, 2.675, -1.005, 0.125, 1.0049999, 1234567.895 };
+        String[] expected = { "1.01", "1.02", "2.68", "-1.01", "0.13", "1.00", "1234567.90" };
+        for (int i = 0; i < ties.length; i++) {
+            StringBuilder out = new StringBuilder();
+            style.append(out, ties[i]);
+            assertEquals(expected[i], out.toString());
+        }
+
+        // 定点写出与BigDecimal回退路径一致
+        Random random = new Random(42);
+        for (int scale = 0; scale <= 4; scale++) {
+            style.setScale(scale);
+            for (int i = 0; i < 20_000; i++) {
+                double value = Math.round(random.nextDouble() * 1e6) / 1e4 + (random.nextBoolean() ? 5e-5 : 0);
+                StringBuilder out = new StringBuilder();
+                style.append(out, value);
+                assertEquals(BigDecimal.valueOf(value).setScale(scale, RoundingMode.HALF_UP)
+                        .toPlainString(), out.toString(), "value " + value);
+            }
+        }
+    }
+
+    @Test
+    void testBlockDirectives() throws Exception {
+        Environment env = new Environment();
+        env.setVariable("items", lineItems(4));
+        env.setVariable("matrix", new int[][] { { 1, 2 }, { 3 } });
+        env.setVariable("names", Arrays.asList("<a>", "b").iterator());
+        env.setVariable("empty", new ArrayList<>());
+        env.setVariable("qty", 3);
+
+        ExpressionEngine engine = createEngine(env);
+        String branches = "${#if qty > 5}many${#elseif qty > 2}some${#else}few${#end}";
+        assertEquals("some", engine.execute(branches));
+        env.setVariable("qty", 1);
+        assertEquals("few", engine.execute(branches));
+        assertEquals("[]", engine.execute("[${#if qty > 5}many${#end}]"));
+
+        assertEquals("0:item0=0.0;1:item1=2.0;2:item2=4.0;3:item3=6.0;",
+                engine.execute("${#each item, i in items}${i}:${item.name}=${item.qty * item.price};${#end}"));
+        assertEquals("(1 2)(3)", engine.execute(
+                "${#each row in matrix}(${#each cell, j in row}${#if j > 0} ${#end}${cell}${#end})${#end}"));
+        assertEquals("&lt;a&gt;,b,", engine.execute("${#each name in names}${name | html},${#end}"));
+        assertEquals("-", engine.execute("${#each item in empty}x${#end}-${#each item in missing}x${#end}"));
+        assertEquals("item1 item2 ", engine.execute(
+                "${#each item in items.filter(i -> i.qty > 0)}${#if item.qty < 3}${item.name} ${#end}${#end}"));
+
+        KelpException e = assertThrows(KelpException.class, () -> engine.execute("${#if qty}x${#end}"));
+        assertTrue(e.getMessage().contains("Condition of #if must be a boolean, but got: Integer"), e.getMessage());
+        e = assertThrows(KelpException.class, () -> engine.execute("${#each x in qty}x${#end}"));
+        assertTrue(e.getMessage().contains("Cannot iterate over Integer in #each"), e.getMessage());
+        e = assertThrows(KelpException.class, () -> engine.execute("${#each x in items}x"));
+        assertTrue(e.getMessage().contains("Unclosed #each at position 2: expected #end"), e.getMessage());
+        e = assertThrows(KelpException.class, () -> engine.execute("a${#end}"));
+        assertTrue(e.getMessage().contains("Unexpected #end at position 3"), e.getMessage());
+        e = assertThrows(KelpException.class, () -> engine.execute("${#if true}${#else}${#elseif true}${#end}"));
+        assertTrue(e.getMessage().contains("Unexpected #elseif after #else"), e.getMessage());
+        e = assertThrows(KelpException.class, () -> engine.execute("${#each x of items}${#end}"));
+        assertTrue(e.getMessage().contains("Expected 'in' after the loop variable"), e.getMessage());
+        e = assertThrows(KelpException.class, () -> engine.execute("${#while true}${#end}"));
+        assertTrue(e.getMessage().contains("Unknown directive #while"), e.getMessage());
+    }
+
+    @Test
+    void testStreamingEach() throws Exception {
+        int rows = 1_000_000;
+        AtomicInteger produced = new AtomicInteger();
+        Iterator<Integer> source = new Iterator<Integer>() {
+            @Override
+            public boolean hasNext() {
+                return produced.get() < rows;
+            }
+
+            @Override
+            public Integer next() {
+                return produced.getAndIncrement();
+            }
+        };
+        Environment env = new Environment();
+        env.setVariable("rows", source);
+
+        // 逐行写出：写入输出时数据源只比输出多拉取一行
+        long[] written = new long[2];
+        Writer out = new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) {
+                if (buffer[offset + length - 1] == '\n') {
+                    assertEquals(written[1] + 1, (long) produced.get());
+                    written[1]++;
+                }
+                written[0] += length;
+            }
+
+            @Override
+            public void write(String text) {
+                write(text.toCharArray(), 0, text.length());
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        ExpressionEngine engine = createEngine(env);
+        engine.render(engine.compile(new StringReader("${#each row in rows}${row}\n${#end}")), out);
+        assertEquals((long) rows, written[1]);
+        assertEquals(6_888_890L, written[0]);
+    }
+
+    @Test
+    void testStringMatching() throws Exception {
+        Environment env = new Environment();
+        env.setVariable("path", "/users/42/orders");
+        env.setVariable("word", "[a-z]+");
+
+        ExpressionEngine engine = createEngine(env);
+        assertEquals("true|false|42|/users/#/orders|42/orders|true|true|false",
+                engine.execute("${matches(path, '/users/[0-9]+/orders')}|${matches(path, '[0-9]+')}|"
+                        + "${find(path, '/users/([0-9]+)', 1)}|${replace(path, '[0-9]+', '#')}|"
+                        + "${replace(path, '/users/([0-9]+)/', '$1/')}|${startsWith(path, '/users')}|"
+                        + "${contains(path, '42')}|${matches(missing, 'a')}"));
+        assertEquals("user", engine.execute("${#if matches(path, '/users/.*')}user${#else}other${#end}"));
+
+        // 动态表达式经共享缓存编译一次
+        PatternCache.clear();
+        assertEquals("users", engine.execute("${find(path, word)}"));
+        env.setVariable("path", "/orders");
+        assertEquals("orders", engine.execute("${find(path, word)}"));
+        assertEquals(1, PatternCache.size());
+        assertEquals("", engine.execute("${find(path, '[0-9]+')}"));
+        assertEquals(1, PatternCache.size());
+
+        KelpException e = assertThrows(KelpException.class, () -> engine.execute("${matches(path, '(')}"));
+        assertTrue(e.getMessage().contains("Invalid regular expression '('"), e.getMessage());
+        e = assertThrows(KelpException.class, () -> engine.execute("${find(path)}"));
+        assertTrue(e.getMessage().contains("Function find expects 2 to 3 arguments, but got 1"), e.getMessage());
+        e = assertThrows(KelpException.class, () -> engine.execute("${find(path, 'o', 1)}"));
+        assertTrue(e.getMessage().contains("find() group 1 is out of range"), e.getMessage());
+    }
+
+    @Test
+    void testStringMatchingAcrossThreads() throws Exception {
+        // 字面量正则表达式在编译时编译，各线程使用各自的Matcher
+        StringMatch match = (StringMatch) new Parser(new Lexer("${find(id, '([a-z]+)-([0-9]+)', 2)}")).buildAst().get(0);
+        assertNotNull(match.getPattern());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    Environment env = new Environment();
+                    for (int i = 0; i < 2_000; i++) {
+                        env.setVariable("id", "t" + thread + "x-" + i);
+                        if (!String.valueOf(i).equals(match.evaluate(env))) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> future : futures) {
+                assertTrue(future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testEvaluationBudget() throws Exception {
+        Environment env = new Environment();
+        env.setVariable("items", lineItems(100));
+        env.setVariable("slow", new SlowService());
+
+        ExpressionEngine engine = createEngine(env);
+        EvaluationBudget budget = new EvaluationBudget();
+        budget.setMaxSteps(600);
+        engine.setBudget(budget);
+        assertEquals("3", engine.execute("${items.filter(i -> i.qty > 96).count()}"));
+        BudgetExceededException e = assertThrows(BudgetExceededException.class,
+                () -> engine.execute("${items.map(i -> i.price * i.qty).sum()}"));
+        assertEquals("Evaluation step limit exceeded: 600", e.getMessage());
+
+        budget.setMaxDepth(2);
+        assertThrows(BudgetExceededException.class, () -> engine.execute("${1 + 2 * 3}"));
+
+        budget.setMaxOutputLength(5);
+        e = assertThrows(BudgetExceededException.class, () -> engine.execute("hello ${1}"));
+        assertEquals("Output limit exceeded: 5 characters", e.getMessage());
+
+        // 慢方法返回后立即失败，不再执行第二次调用
+        EvaluationBudget timeout = new EvaluationBudget();
+        timeout.setTimeoutMillis(10);
+        engine.setBudget(timeout);
+        assertThrows(BudgetExceededException.class, () -> engine.execute("${slow.call()}${slow.call()}"));
+
+        engine.setBudget(null);
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        StringBuilder out = new StringBuilder();
+        e = assertThrows(BudgetExceededException.class,
+                () -> engine.render(engine.compile(new StringReader("${1}")), out, token));
+        assertEquals("Evaluation cancelled", e.getMessage());
+        assertEquals("", out.toString());
+
+        StringBuilder nested = new StringBuilder("${");
+        for (int i = 0; i < Parser.MAX_NESTING_DEPTH; i++) {
+            nested.append('(');
+        }
+        nested.append('1');
+        for (int i = 0; i < Parser.MAX_NESTING_DEPTH; i++) {
+            nested.append(')');
+        }
+        KelpException error = assertThrows(KelpException.class, () -> engine.execute(nested.append('}').toString()));
+        assertEquals("Expression nesting exceeds the maximum depth of " + Parser.MAX_NESTING_DEPTH, error.getMessage());
+    }
+
+    @Test
+    void testBudgetInParallelLambdas() throws Exception {
+        Environment env = new Environment();
+        env.setVariable("items", lineItems(64));
+
+        ExpressionEngine engine = createEngine(env);
+        engine.setPipelineParallelThreshold(2);
+        EvaluationBudget budget = new EvaluationBudget();
+        budget.setMaxSteps(1_000_000);
+        engine.setBudget(budget);
+        // 并行lambda所在的线程都能看到调用线程的预算计数；在独立的池中执行，单核机器上也有多个工作线程
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            BudgetProbe probe = new BudgetProbe();
+            env.setVariable("probe", probe);
+            assertEquals("64", pool.submit(() -> engine.execute(
+                    "${items.filter(i -> probe.bound()).count()}")).get());
+            assertTrue(probe.threads.size() > 1);
+        } finally {
+            pool.shutdown();
+        }
+
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        engine.setBudget(null);
+        BudgetExceededException e = assertThrows(BudgetExceededException.class, () -> engine.render(
+                engine.compile(new StringReader("${items.map(i -> probe.bound()).count()}")), new StringBuilder(), token));
+        assertEquals("Evaluation cancelled", e.getMessage());
+        assertNull(BudgetTracker.current());
+    }
+
+    public static class BudgetProbe {
+        private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+        public boolean bound() throws InterruptedException {
+            threads.add(Thread.currentThread());
+            Thread.sleep(1);
+            return BudgetTracker.current() != null;
+        }
+    }
+
+    public static class SlowService {
+        public String call() throws InterruptedException {
+            Thread.sleep(30);
+            return "done";
+        }
+    }
+
+    /**
+     * 第n项的数量为n、单价为2
+     */
+    private List<Map<String, Object>> lineItems(int size) {
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (int n = 0; n < size; n++) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("name", "item" + n);
+            item.put("qty", n);
+            item.put("price", 2.0);
+            items.add(item);
+        }
+        return items;
+    }
+
+    @Test
+    void testStreamingCompile() throws Exception {
+        Environment env = new Environment();
+        env.setVariable("name", "kangert");
+
+        String input = "hello ${name}, ${1+1}$";
+
+        ExpressionEngine engine = createEngine(env);
+        StringBuilder fromReader = new StringBuilder();
+        engine.render(engine.compile(new StringReader(input)), fromReader);
+
+        Path file = Files.createTempFile("kelp", ".tpl");
+        try {
+            Files.write(file, input.getBytes(StandardCharsets.UTF_8));
+            StringWriter fromFile = new StringWriter();
+            engine.render(engine.compile(file), fromFile);
+
+            assertEquals(engine.execute(input), fromReader.toString());
+            assertEquals("hello kangert, 2.0$", fromFile.toString());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
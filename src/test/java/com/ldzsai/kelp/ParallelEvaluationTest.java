@@ -0,0 +1,71 @@
+package com.ldzsai.kelp;
+
+import java.io.StringReader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.ldzsai.kelp.expression.Environment;
+
+/**
+ * 以并行求值运行ExpressionEngineTest的全部用例，阈值为1使所有非常量片段都并发求值
+ */
+public class ParallelEvaluationTest extends ExpressionEngineTest {
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(4, runnable -> {
+        Thread thread = new Thread(runnable, "kelp-test");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Override
+    protected ExpressionEngine createEngine(Environment env) {
+        ExpressionEngine engine = new ExpressionEngine(env);
+        engine.setParallelExecution(EXECUTOR);
+        engine.setParallelCostThreshold(1);
+        return engine;
+    }
+
+    @Test
+    void testSegmentsStitchedInOrder() throws Exception {
+        Environment env = new Environment();
+        env.setVariable("name", "kangert");
+
+        ExpressionEngine engine = new ExpressionEngine(env);
+        engine.setParallelExecution(EXECUTOR);
+
+        StringBuilder exp = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            exp.append('[').append(i).append("]${name.substring(").append(i % 7).append(")}");
+            expected.append('[').append(i).append(']').append("kangert".substring(i % 7));
+        }
+        assertEquals(expected.toString(), engine.execute(exp.toString()));
+    }
+
+    @Test
+    void testCheapSegmentsStayInline() throws Exception {
+        ParallelRenderer renderer = (ParallelRenderer) createTemplate("${a} ${a + 1} ${b.trim()} ${b.trim().length()}").getRenderer();
+        assertEquals(2, renderer.getParallelCount());
+    }
+
+    @Test
+    void testSegmentErrorPropagates() throws Exception {
+        Environment env = new Environment();
+        env.setVariable("name", "kangert");
+
+        ExpressionEngine engine = new ExpressionEngine(env);
+        engine.setParallelExecution(EXECUTOR);
+
+        KelpException e = assertThrows(KelpException.class,
+                () -> engine.execute("${name.trim()} ${name.charAt(100)}"));
+        assertTrue(e.getMessage().startsWith("Error invoking method charAt"));
+    }
+
+    private CompiledTemplate createTemplate(String exp) throws Exception {
+        ExpressionEngine engine = new ExpressionEngine(new Environment());
+        engine.setParallelExecution(EXECUTOR);
+        return engine.compile(new StringReader(exp));
+    }
+}
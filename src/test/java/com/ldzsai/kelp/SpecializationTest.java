@@ -0,0 +1,121 @@
+package com.ldzsai.kelp;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.ldzsai.kelp.expression.Environment;
+import com.ldzsai.kelp.expression.Expression;
+import com.ldzsai.kelp.expression.IfBlock;
+import com.ldzsai.kelp.expression.StringLiteral;
+import com.ldzsai.kelp.profile.ProfilingRenderer;
+import com.ldzsai.kelp.profile.TemplateProfiler;
+
+public class SpecializationTest {
+
+    private static Map<String, Object> tenant(String name, boolean vip) {
+        Map<String, Object> tenant = new HashMap<>();
+        tenant.put("name", name);
+        tenant.put("vip", vip);
+        tenant.put("rate", 0.2);
+        tenant.put("min", 1);
+        return tenant;
+    }
+
+    @Test
+    void testSpecialize() throws Exception {
+        Environment tenantEnv = new Environment();
+        tenantEnv.setConstant("tenant", tenant("Acme", true));
+        tenantEnv.setVariable("user", "ignored");
+
+        ExpressionEngine engine = new ExpressionEngine(new Environment());
+        CompiledTemplate template = engine.compile(new StringReader("${tenant.name.toUpperCase()} <${tenant.name | html}> "
+                + "${#if tenant.vip}VIP ${user}${#else}regular${#end}: ${price * (1 - tenant.rate)}, "
+                + "${items.filter(i -> i > tenant.min).count()}"));
+        CompiledTemplate residual = template.specialize(tenantEnv);
+
+        // 只依赖租户的片段合并为文本，选中的分支内联
+        List<Expression> ast = residual.getAst();
+        assertEquals("ACME <Acme> VIP ", ((StringLiteral) ast.get(0)).getValue());
+        assertFalse(ast.stream().anyMatch(segment -> segment instanceof IfBlock));
+
+        // 剩余模板不再读取租户变量
+        Environment request = new Environment();
+        request.setVariable("user", "bob");
+        request.setVariable("price", 100);
+        request.setVariable("items", Arrays.asList(1, 2, 3));
+        assertEquals("ACME <Acme> VIP bob: 80.0, 2", residual.execute(request));
+
+        // 按部分环境缓存，重新设置不可变变量后重新特化
+        assertSame(residual, template.specialize(tenantEnv));
+        tenantEnv.setConstant("tenant", tenant("Beta", false));
+        CompiledTemplate changed = template.specialize(tenantEnv);
+        assertNotSame(residual, changed);
+        assertEquals("BETA <Beta> regular: 80.0, 2", changed.execute(request));
+
+        Environment other = new Environment();
+        other.setConstant("tenant", tenant("Acme", true));
+        assertNotSame(changed, template.specialize(other));
+    }
+
+    @Test
+    void testResidualSemantics() throws Exception {
+        Environment tenantEnv = new Environment();
+        tenantEnv.setConstant("tenant", tenant("Acme", true));
+        tenantEnv.setConstant("rows", Arrays.asList("a", "b"));
+
+        // 循环变量遮蔽同名的不可变变量
+        ExpressionEngine engine = new ExpressionEngine(new Environment());
+        CompiledTemplate template = engine.compile(new StringReader("${#each tenant in rows}${tenant}${#end}"));
+        assertEquals("ab", template.specialize(tenantEnv).execute(new Environment()));
+
+        // 预先求值出错的子树保留，错误在渲染时抛出
+        CompiledTemplate broken = engine.compile(new StringReader("${tenant.missing.size()}"))
+                .specialize(tenantEnv);
+        assertThrows(KelpException.class, () -> broken.execute(new Environment()));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> tenantEnv.setVariable("tenant", null));
+        assertEquals("Variable 'tenant' is a constant, use setConstant to change it", e.getMessage());
+        assertTrue(tenantEnv.clone().isConstant("rows"));
+
+        engine.setBackend(Backend.BYTECODE);
+        CompiledTemplate bytecode = engine.compile(new StringReader("${tenant.name}"));
+        assertThrows(IllegalStateException.class, () -> bytecode.specialize(tenantEnv));
+    }
+
+    @Test
+    void testResidualKeepsRenderer() throws Exception {
+        Environment tenantEnv = new Environment();
+        tenantEnv.setConstant("tenant", tenant("Acme", true));
+        Environment request = new Environment();
+        request.setVariable("user", "bob");
+        String source = "${tenant.name} ${user}";
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            ExpressionEngine engine = new ExpressionEngine(new Environment());
+            engine.setParallelExecution(executor);
+            CompiledTemplate template = engine.compile(new StringReader(source));
+            CompiledTemplate residual = template.specialize(tenantEnv);
+            assertTrue(residual.getRenderer() instanceof ParallelRenderer);
+            assertEquals("Acme bob", residual.execute(request));
+
+            TemplateProfiler profiler = new TemplateProfiler();
+            engine.setProfiling(profiler);
+            residual = engine.compile(new StringReader(source)).specialize(tenantEnv);
+            assertTrue(residual.getRenderer() instanceof ProfilingRenderer);
+            assertEquals("Acme bob", residual.execute(request));
+            assertEquals(2, profiler.getTemplateCount());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.ldzsai.kelp.bulk;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.ldzsai.kelp.CompiledTemplate;
+import com.ldzsai.kelp.ExpressionEngine;
+import com.ldzsai.kelp.KelpException;
+import com.ldzsai.kelp.expression.Environment;
+
+public class BulkRendererTest {
+
+    private static CompiledTemplate compile(String template) throws KelpException {
+        return new ExpressionEngine(new Environment()).compile(new StringReader(template));
+    }
+
+    @Test
+    void testCsvOrdered() throws Exception {
+        StringBuilder csv = new StringBuilder("\uFEFFname,qty,price,zip\r\n");
+        csv.append("\"Lee, Ann\",2,1.5,01234\r\n");
+        csv.append("\n");
+        csv.append("\"say \"\"hi\"\"\nthere\",0,10,9\n");
+        List<String> expected = new ArrayList<>(Arrays.asList("Lee, Ann:3.0:01234", "say \"hi\"\nthere:0.0:9"));
+        for (int i = 0; i < 200; i++) {
+            csv.append("item").append(i).append(',').append(i).append(",2,-").append(i).append('\n');
+            expected.add("item" + i + ":" + (i * 2.0) + ":-" + i);
+        }
+        // 超过映射窗口的记录
+        String longName = String.join("", Collections.nCopies(300, "x"));
+        csv.append(longName).append(",1,1,0");
+        expected.add(longName + ":1.0:0");
+
+        Path input = Files.createTempFile("kelp-bulk", ".csv");
+        Path output = Files.createTempFile("kelp-bulk", ".txt");
+        try {
+            Files.write(input, csv.toString().getBytes(StandardCharsets.UTF_8));
+            BulkRenderer renderer = new BulkRenderer(compile("${name}:${qty * price}:${zip}"));
+            renderer.setThreads(3);
+            renderer.setBatchSize(7);
+            renderer.setMaxInFlightBatches(2);
+            renderer.setOutputBufferSize(256);
+            renderer.setWindowSize(64);
+
+            BulkResult result = renderer.render(input, output);
+            assertEquals(expected.size(), result.getRows());
+            String text = new String(Files.readAllBytes(output), StandardCharsets.UTF_8);
+            assertEquals(String.join("\n", expected) + "\n", text);
+            assertEquals(Files.size(output), result.getBytes());
+            assertTrue(result.getRowsPerSecond() > 0);
+        } finally {
+            Files.deleteIfExists(input);
+            Files.deleteIfExists(output);
+        }
+    }
+
+    @Test
+    void testNdjsonUnorderedWithGlobals() throws Exception {
+        StringBuilder ndjson = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            ndjson.append("{\"id\": ").append(i).append(", \"tags\": [\"a\", \"b\"]}\n");
+            expected.add("R" + i + " 2");
+        }
+        Environment globals = new Environment();
+        globals.setVariable("prefix", "R");
+        globals.setVariable("id", -1);
+
+        Path input = Files.createTempFile("kelp-bulk", ".ndjson");
+        Path output = Files.createTempFile("kelp-bulk", ".txt");
+        try {
+            Files.write(input, ndjson.toString().getBytes(StandardCharsets.UTF_8));
+            BulkRenderer renderer = new BulkRenderer(compile("${prefix}${id} ${tags.size()}"));
+            renderer.setGlobals(globals);
+            renderer.setOrdered(false);
+            renderer.setThreads(4);
+            renderer.setBatchSize(16);
+
+            assertEquals(500, renderer.render(input, output).getRows());
+            List<String> lines = new ArrayList<>(Files.readAllLines(output, StandardCharsets.UTF_8));
+            Collections.sort(lines);
+            Collections.sort(expected);
+            assertEquals(expected, lines);
+        } finally {
+            Files.deleteIfExists(input);
+            Files.deleteIfExists(output);
+        }
+    }
+
+    @Test
+    void testNumericFieldsKeepText() throws Exception {
+        Path input = Files.createTempFile("kelp-bulk", ".csv");
+        Path output = Files.createTempFile("kelp-bulk", ".txt");
+        try {
+            Files.write(input, "id,price\n12345678901234567890,19.90\n-0.50,7\n".getBytes(StandardCharsets.UTF_8));
+            BulkRenderer renderer = new BulkRenderer(compile("${id} ${price} ${price * 2} ${id > 0}"));
+            renderer.setThreads(1);
+            renderer.render(input, output);
+
+            // 超长整数和末尾的0按原文输出，运算时才转换为数值
+            String text = new String(Files.readAllBytes(output), StandardCharsets.UTF_8);
+            assertEquals("12345678901234567890 19.90 39.8 true\n-0.50 7 14.0 false\n", text);
+        } finally {
+            Files.deleteIfExists(input);
+            Files.deleteIfExists(output);
+        }
+    }
+
+    @Test
+    void testColumnTypes() throws Exception {
+        Path input = Files.createTempFile("kelp-bulk", ".csv");
+        Path output = Files.createTempFile("kelp-bulk", ".txt");
+        try {
+            Files.write(input, "zip,qty\n02139,7\n94105,007\n".getBytes(StandardCharsets.UTF_8));
+            BulkRenderer renderer = new BulkRenderer(compile("${zip.substring(0, 3)} ${qty * 2} ${qty.toString().length()}"));
+            renderer.setThreads(1);
+            renderer.render(input, output);
+
+            // 列的类型由首条数据记录确定，不随行变化
+            String text = new String(Files.readAllBytes(output), StandardCharsets.UTF_8);
+            assertEquals("021 14.0 1\n941 14.0 3\n", text);
+        } finally {
+            Files.deleteIfExists(input);
+            Files.deleteIfExists(output);
+        }
+    }
+
+    @Test
+    void testRowError() throws Exception {
+        Path input = Files.createTempFile("kelp-bulk", ".tsv");
+        Path output = Files.createTempFile("kelp-bulk", ".txt");
+        try {
+            Files.write(input, "name\tqty\na\t1\nb\tmany\nc\t3\n".getBytes(StandardCharsets.UTF_8));
+            BulkRenderer renderer = new BulkRenderer(compile("${qty * 2}"));
+            renderer.setThreads(2);
+            renderer.setBatchSize(1);
+
+            KelpException e = assertThrows(KelpException.class, () -> renderer.render(input, output));
+            assertTrue(e.getMessage().startsWith("Error rendering row 2: "), e.getMessage());
+        } finally {
+            Files.deleteIfExists(input);
+            Files.deleteIfExists(output);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.ldzsai.kelp.expression;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.ldzsai.kelp.ExpressionEngine;
+
+public class ConcurrentEnvironmentTest {
+
+    @Test
+    void testPersistentHashMap() {
+        PersistentHashMap map = PersistentHashMap.EMPTY;
+        for (int i = 0; i < 20_000; i++) {
+            map = map.put("key" + i, i);
+        }
+        // "Aa"与"BB"哈希值相同
+        PersistentHashMap collisions = map.put("Aa", "a").put("BB", "b").put("AaAa", 1).put("BBBB", 2).put("AaBB", 3);
+        assertEquals(20_000, map.size());
+        assertEquals(20_005, collisions.size());
+        for (int i = 0; i < 20_000; i++) {
+            assertEquals(i, collisions.get("key" + i));
+        }
+        assertEquals("a", collisions.get("Aa"));
+        assertEquals("b", collisions.get("BB"));
+        assertEquals(3, collisions.get("AaBB"));
+        assertNull(map.get("Aa"));
+        assertNull(collisions.get("BBAa"));
+
+        // 旧版本不受影响，未改变的写入不产生新版本
+        PersistentHashMap updated = collisions.put("key7", "seven").put("BB", null);
+        assertEquals(7, collisions.get("key7"));
+        assertEquals("seven", updated.get("key7"));
+        assertNull(updated.get("BB"));
+        assertEquals(20_005, updated.size());
+        assertSame(updated, updated.put("key7", "seven"));
+
+        int[] count = new int[1];
+        updated.forEach((key, value) -> count[0]++);
+        assertEquals(20_005, count[0]);
+    }
+
+    @Test
+    void testSnapshotIsolation() throws Exception {
+        ConcurrentEnvironment env = new ConcurrentEnvironment(name -> "resolved:" + name);
+        env.setVariable("a", 1);
+        env.setLazy("lazy", () -> "computed");
+        Environment snapshot = env.snapshot();
+        env.setVariable("a", 2);
+        env.setVariable("b", 3);
+
+        assertEquals(1, snapshot.getVariable("a"));
+        assertEquals("resolved:b", snapshot.getVariable("b"));
+        assertEquals("computed", snapshot.getVariable("lazy"));
+        assertTrue(env.getLazyVariables().get("lazy").isComputed());
+        assertEquals(2, env.getVariable("a"));
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.setVariable("a", 3));
+
+        Environment copy = snapshot.clone();
+        copy.setVariable("a", 4);
+        assertEquals(1, snapshot.getVariable("a"));
+        assertEquals(4, copy.getVariable("a"));
+
+        env.setConstant("tenant", "acme");
+        assertThrows(IllegalArgumentException.class, () -> env.setVariable("tenant", "other"));
+        assertTrue(env.clone().isConstant("tenant"));
+    }
+
+    @Test
+    void testConstantNotOverwrittenByConcurrentWrite() throws Exception {
+        for (int round = 0; round < 200; round++) {
+            ConcurrentEnvironment env = new ConcurrentEnvironment();
+            env.setVariable("k", "plain");
+            Thread writer = new Thread(() -> {
+                try {
+                    while (true) {
+                        env.setVariable("k", "plain");
+                    }
+                } catch (IllegalArgumentException e) {
+                    // 不可变变量设置后写入失败
+                }
+            });
+            writer.start();
+            env.setConstant("k", "constant");
+            writer.join();
+            assertEquals("constant", env.getVariable("k"));
+            assertEquals(1, env.getConstantsVersion());
+        }
+    }
+
+    @Test
+    void testConsistentRenderDuringUpdates() throws Exception {
+        ConcurrentEnvironment env = new ConcurrentEnvironment();
+        env.setVariables(pair(0));
+        ExpressionEngine engine = new ExpressionEngine(env);
+        String template = "${a}=${b}";
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            for (int i = 1; running.get(); i++) {
+                env.setVariables(pair(i));
+            }
+        });
+        writer.start();
+        try {
+            // 每次渲染看到同一版本的a和b
+            for (int i = 0; i < 20_000; i++) {
+                String[] parts = String.valueOf(engine.execute(template)).split("=");
+                assertEquals(parts[0], parts[1]);
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+    }
+
+    private static Map<String, Object> pair(int value) {
+        Map<String, Object> values = new HashMap<>();
+        values.put("a", value);
+        values.put("b", value);
+        return values;
+    }
+}
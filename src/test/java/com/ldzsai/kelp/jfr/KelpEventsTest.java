@@ -0,0 +1,193 @@
+package com.ldzsai.kelp.jfr;
+
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.ldzsai.kelp.AstRenderer;
+import com.ldzsai.kelp.Backend;
+import com.ldzsai.kelp.CompiledTemplate;
+import com.ldzsai.kelp.ExpressionEngine;
+import com.ldzsai.kelp.Lexer;
+import com.ldzsai.kelp.Parser;
+import com.ldzsai.kelp.expression.Environment;
+import com.ldzsai.kelp.jit.TieredCompiler;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class KelpEventsTest {
+
+    @Test
+    void testRecordedEvents() throws Exception {
+        Environment env = new Environment();
+        env.setVariable("name", " kelp ");
+        env.setVariable("items", Arrays.asList(1, 2));
+        ExpressionEngine engine = new ExpressionEngine(env);
+        String exp = "${name.trim()} ${#each x in items}${x}${#end}";
+
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable(TemplateCompileEvent.class);
+            recording.enable(CacheEvictionEvent.class);
+            recording.enable(SlowEvaluationEvent.class).withThreshold(Duration.ZERO);
+            recording.enable(MethodResolutionEvent.class).withThreshold(Duration.ZERO);
+            recording.start();
+            assertTrue(KelpEvents.isTracking());
+
+            assertEquals("kelp 12", engine.execute(exp));
+            assertEquals("kelp 12", engine.execute(exp));
+            engine.compile(new StringReader("${name.length()}"));
+            engine.clearCache();
+            recording.stop();
+
+            Path file = Files.createTempFile("kelp", ".jfr");
+            try {
+                recording.dump(file);
+                events = RecordingFile.readAllEvents(file);
+            } finally {
+                Files.delete(file);
+            }
+        }
+        assertFalse(KelpEvents.isTracking());
+
+        // 缓存中的模板编译一次，流式编译的模板没有源码
+        List<RecordedEvent> compiles = named(events, "com.ldzsai.kelp.TemplateCompile");
+        assertEquals(2, compiles.size());
+        RecordedEvent compile = compiles.stream().filter(e -> e.getLong("templateLength") > 0).findFirst().get();
+        assertEquals(exp.hashCode(), compile.getInt("templateHash"));
+        assertEquals((long) exp.length(), compile.getLong("templateLength"));
+        assertTrue(compile.getLong("lexDuration") > 0);
+        assertTrue(compile.getLong("parseDuration") > 0);
+        assertEquals("TREE", compile.getString("backend"));
+        assertTrue(compiles.stream().anyMatch(e -> e.getLong("templateLength") == -1));
+
+        List<RecordedEvent> evictions = named(events, "com.ldzsai.kelp.CacheEviction");
+        assertEquals(1, evictions.size());
+        assertEquals(exp.hashCode(), evictions.get(0).getInt("templateHash"));
+        assertEquals("clearCache", evictions.get(0).getString("reason"));
+
+        // 第二次执行命中内联缓存，不再查找方法
+        List<RecordedEvent> resolutions = named(events, "com.ldzsai.kelp.MethodResolution");
+        assertEquals(1, resolutions.size());
+        RecordedEvent resolution = resolutions.get(0);
+        assertEquals("trim", resolution.getString("methodName"));
+        assertEquals(String.class.getName(), resolution.getClass("targetClass").getName());
+        assertTrue(resolution.getBoolean("resolved"));
+        assertFalse(resolution.getBoolean("cacheReplaced"));
+        assertEquals(exp.hashCode(), resolution.getInt("templateHash"));
+        assertTrue(resolution.getInt("start") >= 2 && resolution.getInt("end") <= exp.indexOf('}'));
+
+        List<RecordedEvent> evaluations = named(events, "com.ldzsai.kelp.SlowEvaluation");
+        assertEquals(2L, evaluations.stream().filter(e -> "template".equals(e.getString("kind"))
+                && e.getInt("templateHash") == exp.hashCode()).count());
+        assertEquals(2L, evaluations.stream().filter(e -> "call".equals(e.getString("kind"))
+                && "trim".equals(e.getString("name")) && e.getInt("templateHash") == exp.hashCode()).count());
+    }
+
+    @Test
+    void testCompiledBackendEvents() throws Exception {
+        Environment env = new Environment();
+        env.setVariable("name", " kelp ");
+        String exp = "${name.trim()}";
+        ExpressionEngine bytecode = new ExpressionEngine(env);
+        bytecode.setBackend(Backend.BYTECODE);
+        CompiledTemplate tiered = new CompiledTemplate(new Parser(new Lexer(exp)).buildAst(),
+                new TieredCompiler(1, Runnable::run));
+        tiered.setTemplateHash(exp.hashCode());
+        // 第一次执行记录调用点的类型并提交编译，之后使用编译后的代码
+        assertEquals("kelp", tiered.execute(env));
+        assertFalse(tiered.getRenderer() instanceof AstRenderer);
+
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable(SlowEvaluationEvent.class).withThreshold(Duration.ZERO);
+            recording.enable(MethodResolutionEvent.class).withThreshold(Duration.ZERO);
+            recording.start();
+            assertEquals("kelp", bytecode.execute(exp));
+            assertEquals("kelp", tiered.execute(env));
+            recording.stop();
+
+            Path file = Files.createTempFile("kelp", ".jfr");
+            try {
+                recording.dump(file);
+                events = RecordingFile.readAllEvents(file);
+            } finally {
+                Files.delete(file);
+            }
+        }
+
+        // 两个后端的调用都经由通用路径记录，没有源码位置
+        List<RecordedEvent> calls = named(events, "com.ldzsai.kelp.SlowEvaluation").stream()
+                .filter(e -> "call".equals(e.getString("kind"))).collect(Collectors.toList());
+        assertEquals(2, calls.size());
+        for (RecordedEvent call : calls) {
+            assertEquals("trim", call.getString("name"));
+            assertEquals(exp.hashCode(), call.getInt("templateHash"));
+            assertEquals(-1, call.getInt("start"));
+        }
+        assertEquals(2, named(events, "com.ldzsai.kelp.MethodResolution").size());
+    }
+
+    @Test
+    void testStreamedAndParallelEvents() throws Exception {
+        Environment env = new Environment();
+        env.setVariable("name", " kelp ");
+        byte[] bytes = "${name.trim()}".getBytes(StandardCharsets.UTF_8);
+        int sourceHash = ByteBuffer.wrap(bytes).hashCode();
+        String exp = "${name.trim()}|${name.trim()}";
+        ExpressionEngine engine = new ExpressionEngine(env);
+        ExpressionEngine parallel = new ExpressionEngine(env);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        parallel.setParallelExecution(executor);
+        parallel.setParallelCostThreshold(1);
+
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable(TemplateCompileEvent.class);
+            recording.enable(SlowEvaluationEvent.class).withThreshold(Duration.ZERO);
+            recording.start();
+            CompiledTemplate template = engine.compile(ByteBuffer.wrap(bytes));
+            assertEquals(sourceHash, template.getTemplateHash());
+            assertEquals("kelp", template.execute(env));
+            assertEquals("kelp|kelp", parallel.execute(exp));
+            recording.stop();
+
+            Path file = Files.createTempFile("kelp", ".jfr");
+            try {
+                recording.dump(file);
+                events = RecordingFile.readAllEvents(file);
+            } finally {
+                Files.delete(file);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // 字节来源以源字节关联事件
+        RecordedEvent compile = named(events, "com.ldzsai.kelp.TemplateCompile").stream()
+                .filter(e -> e.getInt("templateHash") == sourceHash).findFirst().get();
+        assertEquals((long) bytes.length, compile.getLong("templateLength"));
+        List<RecordedEvent> calls = named(events, "com.ldzsai.kelp.SlowEvaluation").stream()
+                .filter(e -> "call".equals(e.getString("kind"))).collect(Collectors.toList());
+        assertEquals(1L, calls.stream().filter(e -> e.getInt("templateHash") == sourceHash).count());
+        // 并行片段在工作线程中求值，仍关联调用线程的模板
+        assertEquals(2L, calls.stream().filter(e -> e.getInt("templateHash") == exp.hashCode()).count());
+    }
+
+    private static List<RecordedEvent> named(List<RecordedEvent> events, String name) {
+        return events.stream().filter(e -> e.getEventType().getName().equals(name)).collect(Collectors.toList());
+    }
+}
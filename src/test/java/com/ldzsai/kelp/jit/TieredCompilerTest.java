@@ -0,0 +1,114 @@
+package com.ldzsai.kelp.jit;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.ldzsai.kelp.AstRenderer;
+import com.ldzsai.kelp.CompiledTemplate;
+import com.ldzsai.kelp.ExpressionEngine;
+import com.ldzsai.kelp.KelpException;
+import com.ldzsai.kelp.Lexer;
+import com.ldzsai.kelp.Parser;
+import com.ldzsai.kelp.expression.Environment;
+import com.ldzsai.kelp.expression.Expression;
+
+public class TieredCompilerTest {
+
+    @Test
+    void testHotTemplateIsCompiled() throws Exception {
+        Map<String, Object> user = new HashMap<>();
+        user.put("name", "kangert");
+
+        Environment env = new Environment();
+        env.setVariable("user", user);
+        env.setVariable("price", 2.5);
+        env.setVariable("Math", Math.class);
+
+        // 同步执行器，达到阈值时立即完成编译
+        TieredCompiler compiler = new TieredCompiler(2, Runnable::run);
+        ExpressionEngine engine = new ExpressionEngine(env);
+        engine.setTieredCompilation(compiler);
+
+        String exp = "Hi ${user.name.toUpperCase()}: ${price * 2 + 1} ${Math.max(1, 3)}";
+        assertEquals("Hi KANGERT: 6.0 3", engine.execute(exp));
+        assertEquals("Hi KANGERT: 6.0 3", engine.execute(exp));
+        assertEquals(1, compiler.getCompiledCount());
+
+        // 编译后结果与解释执行一致，类型守卫失败时走反射调用
+        assertEquals("Hi KANGERT: 6.0 3", engine.execute(exp));
+        env.setVariable("price", 4);
+        assertEquals("Hi KANGERT: 9.0 3", engine.execute(exp));
+    }
+
+    @Test
+    void testCompiledErrorsMatchInterpreter() throws Exception {
+        Environment env = new Environment();
+        env.setVariable("str", "kelp");
+
+        TieredCompiler compiler = new TieredCompiler(1, Runnable::run);
+        List<Expression> ast = new Parser(new Lexer("${str.charAt(1)}")).buildAst();
+        CompiledTemplate template = new CompiledTemplate(ast, compiler);
+        assertEquals("e", template.execute(env));
+        assertFalse(template.getRenderer() instanceof AstRenderer);
+
+        env.setVariable("str", "k");
+        KelpException e = assertThrows(KelpException.class, () -> template.execute(env));
+        assertTrue(e.getMessage().startsWith("Error invoking method charAt"));
+    }
+
+    @Test
+    void testBlocksInCompiledTemplate() throws Exception {
+        Environment env = new Environment();
+        env.setVariable("items", Arrays.asList("a", "b", "c"));
+
+        TieredCompiler compiler = new TieredCompiler(1, Runnable::run);
+        List<Expression> ast = new Parser(new Lexer("${#each item, i in items}${#if i > 0},${#end}${item}${#end}!")).buildAst();
+        CompiledTemplate template = new CompiledTemplate(ast, compiler);
+        assertEquals("a,b,c!", template.execute(env));
+        assertFalse(template.getRenderer() instanceof AstRenderer);
+        assertEquals("a,b,c!", template.execute(env));
+    }
+
+    @Test
+    void testPathInCompiledTemplate() throws Exception {
+        Map<String, Object> user = new HashMap<>();
+        user.put("tags", Arrays.asList("a", "b"));
+        Environment env = new Environment();
+        env.setVariable("ctx", Collections.singletonMap("user", user));
+
+        TieredCompiler compiler = new TieredCompiler(1, Runnable::run);
+        List<Expression> ast = new Parser(new Lexer("${ctx.user.tags[1]}")).buildAst();
+        CompiledTemplate template = new CompiledTemplate(ast, compiler);
+        assertEquals("b", template.execute(env));
+        assertFalse(template.getRenderer() instanceof AstRenderer);
+        assertEquals("b", template.execute(env));
+
+        user.remove("tags");
+        KelpException e = assertThrows(KelpException.class, () -> template.execute(env));
+        assertEquals("Cannot find the key 'tags' in the object", e.getMessage());
+    }
+
+    @Test
+    void testCloseStopsBackgroundCompilation() throws Exception {
+        Environment env = new Environment();
+        env.setVariable("n", 2);
+        List<Expression> ast = new Parser(new Lexer("${n * 3}")).buildAst();
+
+        CompiledTemplate template;
+        try (TieredCompiler compiler = new TieredCompiler(1)) {
+            compiler.close();
+            template = new CompiledTemplate(ast, compiler);
+            // 关闭后提交的模板计为编译失败，继续解释执行
+            assertEquals("6.0", template.execute(env));
+            assertEquals(1, compiler.getFailedCount());
+        }
+        assertTrue(template.getRenderer() instanceof AstRenderer);
+        assertEquals("6.0", template.execute(env));
+    }
+}
@@ -0,0 +1,69 @@
+package com.ldzsai.kelp.json;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.ldzsai.kelp.ExpressionEngine;
+import com.ldzsai.kelp.KelpException;
+import com.ldzsai.kelp.expression.Environment;
+
+public class JsonDocumentTest {
+    private static final String ORDER = "{\"order\": {\"id\": 42, \"total\": 99.5, \"paid\": true, \"note\": null,"
+            + " \"customer\": {\"name\": \"Zo\\u00eb \\\"Z\\\"\", \"城市\": \"上海\"},"
+            + " \"items\": [{\"sku\": \"A-1\", \"qty\": 2}, {\"sku\": \"B-2\", \"qty\": 0}, {\"sku\": \"C-3\", \"qty\": 5}]}}";
+
+    @Test
+    void testPathAccess() throws Exception {
+        Environment env = new Environment();
+        env.setVariable("doc", JsonDocument.of(ORDER.getBytes(StandardCharsets.UTF_8)));
+
+        ExpressionEngine engine = new ExpressionEngine(env);
+        assertEquals("42 99.5 true  C-3 Zoë \"Z\" 上海",
+                engine.execute("${doc.order.id} ${doc.order.total} ${doc.order.paid} ${doc.order.note} "
+                        + "${doc.order.items[2].sku} ${doc.order.customer.name} ${doc.order.customer['城市']}"));
+        assertEquals("{\"sku\": \"B-2\", \"qty\": 0}", engine.execute("${doc.order.items[1]}"));
+        assertEquals("7.0|2", engine.execute("${doc.order.items.map(i -> i.qty).sum()}|${doc.order.items.filter(i -> i.qty > 0).count()}"));
+        assertEquals("3", engine.execute("${doc.order.items.size()}"));
+
+        KelpException e = assertThrows(KelpException.class, () -> engine.execute("${doc.order.missing}"));
+        assertEquals("Cannot find the key 'missing' in the object", e.getMessage());
+        e = assertThrows(KelpException.class, () -> engine.execute("${doc.order.items[3]}"));
+        assertEquals("Array index out of bounds: 3 (array length: 3)", e.getMessage());
+    }
+
+    @Test
+    void testLargeArrayAndDirectBuffer() throws Exception {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 1000; i++) {
+            json.append(i > 0 ? "," : "").append("{\"n\":").append(i * 10_000_000L).append('}');
+        }
+        json.append(']');
+        byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+
+        JsonValue root = (JsonValue) JsonDocument.of(direct).root();
+        assertTrue(root.isArray());
+        assertEquals(1000, root.size());
+        assertEquals(7_770_000_000L, ((JsonValue) root.get(777)).get("n"));
+        assertEquals(100_000_000, ((JsonValue) root.get(10)).get("n"));
+    }
+
+    @Test
+    void testLargeIntegers() throws Exception {
+        JsonDocument doc = JsonDocument.of("{\"big\": 12345678901234567890, \"min\": -9223372036854775808}"
+                .getBytes(StandardCharsets.UTF_8));
+        assertEquals(1.2345678901234567E19, doc.get("big"));
+        assertEquals(Long.MIN_VALUE, doc.get("min"));
+    }
+
+    @Test
+    void testMalformedJson() {
+        JsonDocument doc = JsonDocument.of("{\"a\": [1, 2}".getBytes(StandardCharsets.UTF_8));
+        KelpException e = assertThrows(KelpException.class, () -> doc.get("a"));
+        assertTrue(e.getMessage().startsWith("Invalid JSON at offset 11"));
+    }
+}
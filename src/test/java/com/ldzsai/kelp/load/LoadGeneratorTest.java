@@ -0,0 +1,115 @@
+package com.ldzsai.kelp.load;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.ldzsai.kelp.ExpressionEngine;
+import com.ldzsai.kelp.expression.Environment;
+
+public class LoadGeneratorTest {
+
+    @Test
+    void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(99));
+        for (long i = 1; i <= 10_000; i++) {
+            histogram.record(i * 1000);
+        }
+        assertEquals(10_000, histogram.getCount());
+        assertEquals(10_000_000, histogram.getMax());
+        assertEquals(5_000_500, histogram.getMean(), 1e-6);
+        // 桶上界的相对误差不超过1/64
+        for (double p : new double[] { 1, 50, 90, 99, 99.9 }) {
+            long exact = (long) Math.ceil(p * 100) * 1000;
+            long value = histogram.getPercentile(p);
+            assertTrue(value >= exact && value <= exact + exact / 64, p + ": " + value + " vs " + exact);
+        }
+        assertEquals(10_000_000, histogram.getPercentile(100));
+
+        LatencyHistogram other = new LatencyHistogram();
+        other.record(5);
+        other.record(Long.MAX_VALUE);
+        histogram.merge(other);
+        assertEquals(10_002, histogram.getCount());
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(100));
+        assertEquals(5, histogram.getPercentile(0));
+    }
+
+    @Test
+    void testClosedAndOpenModel() throws Exception {
+        Map<String, String> corpus = new LinkedHashMap<>();
+        corpus.put("a", "Hello ${name}, ${qty * 2}");
+        corpus.put("b", "${name.length()}");
+        corpus.put("broken", "${missing.size()}");
+        EnvironmentGenerator generator = (template, sequence) -> {
+            Environment env = new Environment();
+            env.setVariable("name", "user" + sequence);
+            env.setVariable("qty", (int) (sequence % 10));
+            return env;
+        };
+
+        ExpressionEngine engine = new ExpressionEngine(new Environment());
+        LoadGenerator load = new LoadGenerator(engine, corpus, generator);
+        load.setThreads(2);
+        load.setWarmupMillis(50);
+        load.setDurationMillis(200);
+        load.setMissRatio(0.5);
+        load.setMaxCacheSize(50);
+
+        LoadResult closed = load.run();
+        assertTrue(closed.getOperations() > 0);
+        assertTrue(closed.getErrors() > 0 && closed.getErrors() < closed.getOperations());
+        assertTrue(closed.getFirstError().startsWith("broken: "), closed.getFirstError());
+        assertEquals(closed.getOperations(), closed.getLatency().getCount());
+        assertTrue(closed.getCacheHits() > 0 && closed.getCacheMisses() > 0);
+        assertTrue(engine.getCacheSize() <= 50 + 2);
+        assertTrue(closed.getThroughput() > 0);
+        assertTrue(closed.toString().startsWith("threads=2 rate=max ops="), closed.toString());
+
+        // 开环模型按计划速率发起请求
+        load.setMissRatio(0);
+        load.setTargetRate(2_000);
+        LoadResult open = load.run();
+        assertEquals(400.0, open.getOperations(), 2.0);
+        assertEquals(2_000.0, open.getThroughput(), 10.0);
+        assertEquals(0L, open.getCacheMisses());
+    }
+
+    @Test
+    void testCommand() throws Exception {
+        Path dir = Files.createTempDirectory("kelp-load");
+        try {
+            Files.write(dir.resolve("greeting.tpl"), "Hello ${user['name'].trim()}".getBytes(StandardCharsets.UTF_8));
+            Files.write(dir.resolve("readme.md"), "${".getBytes(StandardCharsets.UTF_8));
+            List<LoadResult> progress = new ArrayList<>();
+            List<LoadResult> results = LoadCommand.run(new String[] { "--threads", "1,2", "--rate", "0,500",
+                    "--warmup", "0", "--duration", "0.1", "--suffix", ".tpl", "--backend", "bytecode", dir.toString(),
+                    SampleGenerator.class.getName() }, progress::add);
+            assertEquals(4, results.size());
+            assertEquals(results, progress);
+            for (LoadResult result : results) {
+                assertEquals(0L, result.getErrors(), result.getFirstError());
+                assertTrue(result.getOperations() > 0);
+            }
+            assertEquals(2, results.get(3).getThreads());
+            assertEquals(500.0, results.get(3).getTargetRate());
+
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                    () -> LoadCommand.run(new String[] { dir.toString(), String.class.getName() }, result -> {
+                    }));
+            assertEquals("java.lang.String does not implement " + EnvironmentGenerator.class.getName(), e.getMessage());
+        } finally {
+            Files.deleteIfExists(dir.resolve("greeting.tpl"));
+            Files.deleteIfExists(dir.resolve("readme.md"));
+            Files.deleteIfExists(dir);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.ldzsai.kelp.load;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.ldzsai.kelp.expression.Environment;
+
+/**
+ * loadTest任务默认使用的环境生成器，变量与src/test/resources/load中的模板对应
+ */
+public class SampleGenerator implements EnvironmentGenerator {
+
+    @Override
+    public Environment next(String template, long sequence) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Map<String, Object> user = new HashMap<>();
+        user.put("name", " user" + sequence + " ");
+
+        List<Map<String, Object>> items = new ArrayList<>();
+        int count = 1 + random.nextInt(8);
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("name", "item" + i);
+            item.put("qty", random.nextInt(5));
+            item.put("price", random.nextInt(10_000) / 100.0);
+            items.add(item);
+        }
+
+        Environment env = new Environment();
+        env.setVariable("user", user);
+        env.setVariable("items", items);
+        env.setVariable("price", random.nextInt(10_000) / 100.0);
+        env.setVariable("qty", random.nextInt(100));
+        return env;
+    }
+}
@@ -0,0 +1,112 @@
+package com.ldzsai.kelp.profile;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.ldzsai.kelp.ExpressionEngine;
+import com.ldzsai.kelp.expression.Environment;
+
+public class TemplateProfilerTest {
+
+    @Test
+    void testHotNodes() throws Exception {
+        Environment env = new Environment();
+        env.setVariable("svc", new SlowService());
+        env.setVariable("n", 3);
+
+        ExpressionEngine engine = new ExpressionEngine(env);
+        TemplateProfiler profiler = new TemplateProfiler(2);
+        engine.setProfiling(profiler);
+
+        String template = "total: ${n * 2}\nslow: ${svc.work(n) + 1}";
+        for (int i = 0; i < 4; i++) {
+            assertEquals("total: 6.0\nslow: 4.0", engine.execute(template));
+        }
+        assertEquals(2, profiler.getSampledCount());
+
+        List<NodeProfile> hot = profiler.getHotNodes(10);
+        NodeProfile top = hot.get(0);
+        assertEquals("svc.work(n)", top.getExpression());
+        assertEquals("2:9", top.getLocation());
+        assertEquals(2, top.getInvocations());
+        assertTrue(top.getExclusiveNanos() >= 2 * 5_000_000L);
+
+        // 外层加法的包含时间覆盖方法调用，独占时间不包含
+        NodeProfile sum = hot.stream().filter(p -> p.getExpression().equals("svc.work(n) + 1")).findFirst().get();
+        assertTrue(sum.getInclusiveNanos() >= top.getInclusiveNanos());
+        assertTrue(sum.getExclusiveNanos() < top.getExclusiveNanos());
+        assertTrue(profiler.report(5).contains("svc.work(n)"));
+
+        profiler.reset();
+        assertTrue(profiler.getHotNodes(10).isEmpty());
+    }
+
+    @Test
+    void testBlocksStreamWhileProfiling() throws Exception {
+        Environment env = new Environment();
+        env.setVariable("rows", Arrays.asList("a", "b", "c"));
+        ExpressionEngine engine = new ExpressionEngine(env);
+        TemplateProfiler profiler = new TemplateProfiler(1);
+        engine.setProfiling(profiler);
+
+        // 块指令逐元素写出，不拼接为一整段
+        List<String> chunks = new ArrayList<>();
+        Appendable out = new Appendable() {
+            @Override
+            public Appendable append(CharSequence csq) {
+                chunks.add(csq.toString());
+                return this;
+            }
+
+            @Override
+            public Appendable append(CharSequence csq, int start, int end) {
+                return append(csq.subSequence(start, end));
+            }
+
+            @Override
+            public Appendable append(char c) {
+                return append(String.valueOf(c));
+            }
+        };
+        engine.render(engine.compile(new StringReader("${#each r in rows}<${r}>${#end}")), out);
+        assertEquals("<a><b><c>", String.join("", chunks));
+        assertTrue(chunks.size() >= 6, chunks.toString());
+        assertEquals(1, profiler.getSampledCount());
+        assertTrue(profiler.getHotNodes(10).stream().anyMatch(p -> p.getInvocations() == 1));
+    }
+
+    @Test
+    void testEvictedTemplatesAreReleased() throws Exception {
+        Environment env = new Environment();
+        env.setVariable("n", 3);
+        ExpressionEngine engine = new ExpressionEngine(env);
+        TemplateProfiler profiler = new TemplateProfiler(1);
+        engine.setProfiling(profiler);
+        for (int i = 0; i < 3; i++) {
+            engine.execute("${n + " + i + "}");
+        }
+        assertEquals(3, profiler.getTemplateCount());
+        assertEquals(3, profiler.getHotNodes(10).size());
+
+        // 移出缓存的模板被回收后，其统计不再保留
+        engine.clearCache();
+        for (int i = 0; i < 50 && profiler.getTemplateCount() > 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(0, profiler.getTemplateCount());
+        assertTrue(profiler.getHotNodes(10).isEmpty());
+    }
+
+    public static class SlowService {
+        public Integer work(Integer n) throws InterruptedException {
+            Thread.sleep(5);
+            return n;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.ldzsai.kelp.repository;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.ldzsai.kelp.CompiledTemplate;
+import com.ldzsai.kelp.ExpressionEngine;
+import com.ldzsai.kelp.KelpException;
+import com.ldzsai.kelp.expression.Environment;
+
+public class TemplateRepositoryTest {
+
+    /**
+     * 先写临时文件再原子替换，避免监视线程读到写了一半的文件
+     */
+    private static void write(Path file, String content) throws Exception {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, content.getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for reload");
+            Thread.sleep(10);
+        }
+    }
+
+    private static void delete(Path dir) throws Exception {
+        try (Stream<Path> stream = Files.walk(dir)) {
+            stream.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void testLoadAndHotSwap() throws Exception {
+        Path dir = Files.createTempDirectory("kelp-repo");
+        Environment env = new Environment();
+        env.setVariable("name", "Ann");
+        ExpressionEngine engine = new ExpressionEngine(env);
+        TemplateRepository repository = new TemplateRepository(engine, dir);
+        try {
+            write(dir.resolve("hello.tpl"), "Hello ${name}");
+            write(dir.resolve("notes.txt"), "${ broken");
+            Files.createDirectories(dir.resolve("mail"));
+            write(dir.resolve("mail/welcome.tpl"), "Welcome ${name}");
+            repository.setSuffix(".tpl");
+            repository.setSettleDelay(20);
+            repository.start();
+
+            assertEquals(new HashSet<>(Arrays.asList("hello.tpl", "mail/welcome.tpl")), repository.getNames());
+            assertEquals("Hello Ann", repository.get("hello.tpl").execute(env));
+            assertEquals("Welcome Ann", repository.get("mail/welcome.tpl").execute(env));
+            KelpException e = assertThrows(KelpException.class, () -> repository.get("notes.txt"));
+            assertEquals("Template not found: notes.txt", e.getMessage());
+
+            // 修改后在后台替换
+            CompiledTemplate old = repository.get("hello.tpl");
+            write(dir.resolve("hello.tpl"), "Hi ${name}!");
+            await(() -> "Hi Ann!".equals(render(repository, "hello.tpl", env)));
+            assertTrue(repository.getReloadCount() >= 1);
+            // 旧版本仍可继续使用
+            assertEquals("Hello Ann", old.execute(env));
+
+            // 编译失败时保留上一个可用版本
+            write(dir.resolve("hello.tpl"), "Hi ${name +}");
+            await(() -> repository.getLastError("hello.tpl") != null);
+            assertTrue(repository.getFailureCount() >= 1);
+            assertTrue(repository.getLastError("hello.tpl").getMessage().startsWith("Error compiling template hello.tpl"));
+            assertEquals("Hi Ann!", repository.get("hello.tpl").execute(env));
+
+            // 新建子目录与删除
+            Files.createDirectories(dir.resolve("news"));
+            write(dir.resolve("news/daily.tpl"), "News for ${name}");
+            Files.delete(dir.resolve("mail/welcome.tpl"));
+            await(() -> "News for Ann".equals(render(repository, "news/daily.tpl", env))
+                    && !repository.contains("mail/welcome.tpl"));
+        } finally {
+            repository.close();
+            delete(dir);
+        }
+        assertFalse(repository.isRunning());
+    }
+
+    @Test
+    void testRemovedDirectory() throws Exception {
+        Path dir = Files.createTempDirectory("kelp-repo");
+        Path outside = Files.createTempDirectory("kelp-moved");
+        ExpressionEngine engine = new ExpressionEngine(new Environment());
+        TemplateRepository repository = new TemplateRepository(engine, dir);
+        try {
+            write(dir.resolve("top.tpl"), "top");
+            Files.createDirectories(dir.resolve("sub/deep"));
+            write(dir.resolve("sub/a.tpl"), "a");
+            write(dir.resolve("sub/deep/b.tpl"), "b");
+            write(dir.resolve("subway.tpl"), "subway");
+            repository.setSettleDelay(20);
+            repository.start();
+            assertEquals(new HashSet<>(Arrays.asList("top.tpl", "sub/a.tpl", "sub/deep/b.tpl", "subway.tpl")),
+                    repository.getNames());
+
+            // 移出目录只产生目录本身的删除事件
+            Files.move(dir.resolve("sub"), outside.resolve("sub"));
+            await(() -> !repository.contains("sub/a.tpl") && !repository.contains("sub/deep/b.tpl"));
+            assertEquals(new HashSet<>(Arrays.asList("top.tpl", "subway.tpl")), repository.getNames());
+        } finally {
+            repository.close();
+            delete(dir);
+            delete(outside);
+        }
+    }
+
+    @Test
+    void testUnexpectedErrorKeepsWatching() throws Exception {
+        Path dir = Files.createTempDirectory("kelp-repo");
+        Environment env = new Environment();
+        // 模拟编译期间的意外运行时异常
+        ExpressionEngine engine = new ExpressionEngine(env) {
+            @Override
+            public CompiledTemplate compile(ByteBuffer buffer) throws KelpException {
+                if (StandardCharsets.UTF_8.decode(buffer.duplicate()).toString().equals("boom")) {
+                    throw new IllegalStateException("boom");
+                }
+                return super.compile(buffer);
+            }
+        };
+        TemplateRepository repository = new TemplateRepository(engine, dir);
+        try {
+            write(dir.resolve("a.tpl"), "a");
+            repository.setSettleDelay(20);
+            repository.start();
+
+            write(dir.resolve("a.tpl"), "boom");
+            await(() -> repository.getLastError("a.tpl") != null);
+            assertEquals("Error reloading template a.tpl: boom", repository.getLastError("a.tpl").getMessage());
+            assertTrue(repository.isRunning());
+
+            // 监视继续，后续修改仍被加载
+            write(dir.resolve("a.tpl"), "b");
+            await(() -> "b".equals(render(repository, "a.tpl", env)));
+            assertNull(repository.getLastError("a.tpl"));
+        } finally {
+            repository.close();
+            delete(dir);
+        }
+    }
+
+    private static String render(TemplateRepository repository, String name, Environment env) {
+        try {
+            return repository.contains(name) ? repository.get(name).execute(env) : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    @Test
+    void testStartFailsOnBrokenTemplate() throws Exception {
+        Path dir = Files.createTempDirectory("kelp-repo");
+        try {
+            write(dir.resolve("bad.tpl"), "${a +}");
+            TemplateRepository repository = new TemplateRepository(new ExpressionEngine(new Environment()), dir);
+            KelpException e = assertThrows(KelpException.class, repository::start);
+            assertTrue(e.getMessage().startsWith("Error compiling template bad.tpl"), e.getMessage());
+            assertFalse(repository.isRunning());
+        } finally {
+            delete(dir);
+        }
+    }
+}
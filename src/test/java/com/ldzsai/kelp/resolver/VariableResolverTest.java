@@ -0,0 +1,85 @@
+package com.ldzsai.kelp.resolver;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.ldzsai.kelp.CompiledTemplate;
+import com.ldzsai.kelp.ExpressionEngine;
+import com.ldzsai.kelp.KelpException;
+import com.ldzsai.kelp.expression.Environment;
+
+public class VariableResolverTest {
+
+    public static class Session {
+        public final String locale = "zh-CN";
+
+        private final String user;
+
+        Session(String user) {
+            this.user = user;
+        }
+
+        public String getUser() {
+            return user;
+        }
+
+        public boolean isAdmin() {
+            return "root".equals(user);
+        }
+
+        public List<String> roles() {
+            return new ArrayList<>(Arrays.asList("reader", "writer"));
+        }
+
+        public String getBroken() {
+            throw new IllegalStateException("session expired");
+        }
+    }
+
+    @Test
+    void testChainedResolvers() throws Exception {
+        Map<String, Object> context = new HashMap<>();
+        context.put("requestId", "r-1");
+        context.put("user", "guest");
+        context.put("count", 3);
+
+        Environment env = new Environment(VariableResolver.chain(
+                VariableResolver.of(context), VariableResolver.bean(new Session("root"))));
+        env.setVariable("count", 5);
+
+        ExpressionEngine engine = new ExpressionEngine(env);
+        assertEquals("r-1|guest|true|zh-CN|2|5|", engine.execute(
+                "${requestId}|${user}|${admin}|${locale}|${roles.size()}|${count}|${missing}"));
+
+        // 直接读取调用方的Map，修改后可见
+        context.put("requestId", "r-2");
+        assertEquals("r-2", engine.execute("${requestId}"));
+
+        KelpException e = assertThrows(KelpException.class, () -> engine.execute("${broken}"));
+        assertTrue(e.getMessage().contains("Error reading property broken: session expired"), e.getMessage());
+    }
+
+    @Test
+    void testRenderWithResolver() throws Exception {
+        ExpressionEngine engine = new ExpressionEngine(new Environment());
+        CompiledTemplate template = engine.compile(new StringReader("${user} has ${roles.size()} roles"));
+
+        StringBuilder out = new StringBuilder();
+        engine.render(template, VariableResolver.bean(new Session("alice")), out);
+        assertEquals("alice has 2 roles", out.toString());
+
+        Map<String, Object> headers = new HashMap<>();
+        headers.put("user", "bob");
+        headers.put("roles", new ArrayList<>(Arrays.asList("a")));
+        out.setLength(0);
+        engine.render(template, headers::get, out);
+        assertEquals("bob has 1 roles", out.toString());
+    }
+}
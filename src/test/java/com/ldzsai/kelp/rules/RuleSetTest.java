@@ -0,0 +1,83 @@
+package com.ldzsai.kelp.rules;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.ldzsai.kelp.KelpException;
+import com.ldzsai.kelp.expression.Environment;
+
+public class RuleSetTest {
+
+    @Test
+    void testSharedSubexpressions() throws Exception {
+        RuleSet rules = RuleSet.compile(Arrays.asList(
+                "${order.total * fx.rate(order.currency)}",
+                "${order.total * fx.rate(order.currency) >= 100}",
+                "${order.total * fx.rate(order.currency) * 0.05 + order.fee}",
+                "${fx.rate(order.currency)}",
+                "${order.items.filter(i -> i > 1).count()}",
+                "${order.missing * 2}"));
+        assertEquals(6, rules.getRuleCount());
+        // order.total * fx.rate(order.currency)及fx.rate(order.currency)；order.total只在前者内部出现
+        assertEquals(2, rules.getSharedCount());
+
+        Map<String, Object> order = new HashMap<>();
+        order.put("total", 200);
+        order.put("currency", "EUR");
+        order.put("fee", 1);
+        order.put("items", Arrays.asList(1, 2, 3));
+        FxService fx = new FxService();
+        Environment env = new Environment();
+        env.setVariable("order", order);
+        env.setVariable("fx", fx);
+
+        RuleResults results = rules.evaluate(env);
+        assertEquals(1, fx.calls);
+        assertEquals(100.0, results.getDouble(0));
+        assertTrue(results.getBoolean(1));
+        assertEquals(6.0, results.getDouble(2));
+        assertEquals(0.5, results.getDouble(3));
+        assertEquals(2, results.get(4));
+        assertTrue(results.isFailed(5));
+        assertEquals("Cannot find the key 'missing' in the object", results.getError(5).getMessage());
+        assertThrows(KelpException.class, () -> results.get(5));
+
+        // 复用结果，每个事件重新计算一次
+        order.put("total", 100);
+        rules.evaluate(env, results);
+        assertEquals(2, fx.calls);
+        assertFalse(results.getBoolean(1));
+        assertEquals(50.0, results.getDouble(0));
+
+        assertThrows(KelpException.class, () -> RuleSet.compile(Arrays.asList("${a} and ${b}")));
+    }
+
+    @Test
+    void testFormattedRules() throws Exception {
+        RuleSet rules = RuleSet.compile(Arrays.asList("${x + y | html}", "${x + y}", "${items.map(i -> x + y).count()}"));
+        // 格式化输出内的表达式与其他规则共享，lambda体内的节点不合并
+        assertEquals(1, rules.getSharedCount());
+
+        Environment env = new Environment();
+        env.setVariable("x", 1);
+        env.setVariable("y", 2);
+        env.setVariable("items", Arrays.asList(1, 2));
+        RuleResults results = rules.evaluate(env);
+        assertEquals("3.0", results.get(0));
+        assertEquals(3.0, results.getDouble(1));
+        assertEquals(2, results.get(2));
+    }
+
+    public static class FxService {
+        int calls;
+
+        public double rate(String currency) {
+            calls++;
+            return "EUR".equals(currency) ? 0.5 : 1.0;
+        }
+    }
+}
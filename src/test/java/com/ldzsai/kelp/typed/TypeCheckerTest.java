@@ -0,0 +1,127 @@
+package com.ldzsai.kelp.typed;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.ldzsai.kelp.CompiledTemplate;
+import com.ldzsai.kelp.ExpressionEngine;
+import com.ldzsai.kelp.KelpException;
+import com.ldzsai.kelp.expression.Environment;
+
+public class TypeCheckerTest {
+
+    @Test
+    void testSpecializedEvaluation() throws Exception {
+        Map<String, Object> item = new HashMap<>();
+        item.put("name", "kangert");
+
+        Environment env = new Environment();
+        env.setVariable("price", 2.5);
+        env.setVariable("items", Arrays.asList(item));
+        env.setVariable("Math", Math.class);
+
+        TypeSchema schema = new TypeSchema();
+        schema.define("price", double.class);
+        schema.define("items", StaticType.listOf(StaticType.mapOf(String.class)));
+        schema.define("Math", StaticType.classRef(Math.class));
+
+        ExpressionEngine engine = new ExpressionEngine(env);
+        CompiledTemplate template = engine.compile("${price * 2} ${items[0].name.toUpperCase()} ${Math.max(1, 3)}", schema);
+        List<?> ast = template.getAst();
+
+        assertTrue(ast.get(0) instanceof NumericBinaryOperation);
+        assertTrue(ast.get(2) instanceof ResolvedMethodCall);
+        assertEquals("5.0 KANGERT 3", template.execute(env));
+    }
+
+    @Test
+    void testCompileTimeTypeErrors() {
+        TypeSchema schema = new TypeSchema();
+        schema.define("name", String.class);
+        schema.define("price", double.class);
+
+        ExpressionEngine engine = new ExpressionEngine(new Environment());
+
+        assertThrows(KelpException.class, () -> engine.compile("${name * 2}", schema));
+        assertThrows(KelpException.class, () -> engine.compile("${price.total}", schema));
+        assertThrows(KelpException.class, () -> engine.compile("${name.noSuchMethod()}", schema));
+        assertThrows(KelpException.class, () -> engine.compile("${unknown}", schema));
+    }
+
+    @Test
+    void testBlocks() throws Exception {
+        TypeSchema schema = new TypeSchema();
+        schema.define("name", String.class);
+        schema.define("flag", boolean.class);
+        schema.define("prices", StaticType.listOf(double.class));
+
+        Environment env = new Environment();
+        env.setVariable("flag", true);
+        env.setVariable("prices", Arrays.asList(1.5, 2.0));
+        ExpressionEngine engine = new ExpressionEngine(env);
+
+        // 条件与循环体按片段检查，循环变量取元素类型
+        CompiledTemplate template = engine.compile("${#if flag}${#each p, i in prices}${i}:${p * 2} ${#end}${#end}", schema);
+        assertEquals("0:3.0 1:4.0 ", template.execute(env));
+
+        KelpException e = assertThrows(KelpException.class,
+                () -> engine.compile("${#if flag}${name * 2}${#end}", schema));
+        assertTrue(e.getMessage().contains("must be a number"));
+        assertThrows(KelpException.class, () -> engine.compile("${#if missing}x${#end}", schema));
+        e = assertThrows(KelpException.class, () -> engine.compile("${#if name}x${#else}y${#end}", schema));
+        assertTrue(e.getMessage().contains("condition of #if must be a boolean"));
+        assertThrows(KelpException.class, () -> engine.compile("${#if flag}x${#else}${missing}${#end}", schema));
+        assertThrows(KelpException.class, () -> engine.compile("${#each i in missing}${i}${#end}", schema));
+        assertThrows(KelpException.class, () -> engine.compile("${#each c in name}${c}${#end}", schema));
+        assertThrows(KelpException.class, () -> engine.compile("${#each p in prices}${p.noSuchMethod()}${#end}", schema));
+    }
+
+    @Test
+    void testComparisonsAndPipelines() throws Exception {
+        TypeSchema schema = new TypeSchema();
+        schema.define("name", String.class);
+        schema.define("price", double.class);
+        schema.define("prices", StaticType.listOf(double.class));
+
+        Environment env = new Environment();
+        env.setVariable("name", "kelp");
+        env.setVariable("price", 2.5);
+        env.setVariable("prices", Arrays.asList(1.5, 2.0, 3.0));
+        ExpressionEngine engine = new ExpressionEngine(env);
+
+        CompiledTemplate template = engine.compile("${price > 2} ${name == 'kelp'} ${name < 'z'} "
+                + "${prices.filter(p -> p > price).count()} ${prices.any(p -> p == 3)}", schema);
+        assertEquals("true true true 1 true", template.execute(env));
+
+        KelpException e = assertThrows(KelpException.class, () -> engine.compile("${name > 3}", schema));
+        assertEquals("Type error: cannot compare String with int using '>'", e.getMessage());
+        assertThrows(KelpException.class, () -> engine.compile("${missing > 1}", schema));
+        assertThrows(KelpException.class, () -> engine.compile("${missing.filter(p -> p > 1).count()}", schema));
+        assertThrows(KelpException.class, () -> engine.compile("${price.map(p -> p).count()}", schema));
+        // lambda参数为动态类型，体内的其他变量仍按声明检查
+        assertThrows(KelpException.class, () -> engine.compile("${prices.map(p -> p * name).sum()}", schema));
+        assertThrows(KelpException.class, () -> engine.compile("${prices.filter(p -> missing).count()}", schema));
+        assertThrows(KelpException.class, () -> engine.compile("${prices.filter(p -> name).count()}", schema));
+    }
+
+    @Test
+    void testAggregates() throws Exception {
+        TypeSchema schema = new TypeSchema();
+        schema.define("name", String.class);
+        schema.define("prices", StaticType.listOf(double.class));
+
+        Environment env = new Environment();
+        env.setVariable("prices", Arrays.asList(1.5, 2.0));
+        ExpressionEngine engine = new ExpressionEngine(env);
+        assertEquals("3.5 2", engine.compile("${sum(prices)} ${count(prices)}", schema).execute(env));
+
+        assertThrows(KelpException.class, () -> engine.compile("${sum(missing)}", schema));
+        assertThrows(KelpException.class, () -> engine.compile("${max(name)}", schema));
+        assertThrows(KelpException.class, () -> engine.compile("${count(prices) * name}", schema));
+    }
+}
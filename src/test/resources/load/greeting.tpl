@@ -0,0 +1 @@
+Hello ${user['name'].trim()}, you have ${items.size()} items in your cart.
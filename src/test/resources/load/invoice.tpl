@@ -0,0 +1 @@
+Invoice for ${user['name']}: ${items.map(i -> i.name)} total ${items.map(i -> i.price * i.qty).sum()} (${price * qty} after discount)
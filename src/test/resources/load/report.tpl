@@ -0,0 +1 @@
+<tr><td>${user['name'] | html}</td><td>${items.filter(i -> i.qty > 2).count()}</td><td>${items[0].name}</td><td>${price * qty + 0.5}</td></tr>